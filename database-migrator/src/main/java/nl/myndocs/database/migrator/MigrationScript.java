@@ -1,5 +1,6 @@
 package nl.myndocs.database.migrator;
 
+import nl.myndocs.database.migrator.database.TuningProfile;
 import nl.myndocs.database.migrator.definition.Migration;
 
 /**
@@ -11,4 +12,24 @@ public interface MigrationScript {
     String author();
 
     void migrate(Migration migration);
+
+    /**
+     * Server settings for this script, on top of the database's tuning profile.
+     * @return profile or null
+     */
+    default TuningProfile tuningProfile() {
+        return null;
+    }
+
+    /**
+     * Transactional scripts run in a single transaction, which is rolled back on failure. Operations, which commit
+     * in steps to keep tables available (i. e. {@link nl.myndocs.database.migrator.definition.Column.STRATEGY#ONLINE}
+     * type changes), are refused in them. Steps of non transactional scripts commit on their own and are not rolled back
+     * on failure. Such a script is recorded as running in the resume table, until it completes, and its steps resume
+     * or start over, when it is run again.
+     * @return false to allow operations, which commit in steps
+     */
+    default boolean isTransactional() {
+        return true;
+    }
 }
@@ -0,0 +1,96 @@
+package nl.myndocs.database.migrator.database;
+
+/**
+ * @author Mikhail Mikhailov
+ * A session, which may keep DDL on the target tables waiting and make the queries behind it pile up.
+ */
+public class Blocker {
+
+    /**
+     * Why the session is considered a blocker.
+     */
+    public enum KIND {
+        /**
+         * Holds a lock on a target table (or one of its partitions).
+         */
+        LOCK_HOLDER,
+        /**
+         * Idle in an open transaction for longer than allowed.
+         */
+        IDLE_IN_TRANSACTION,
+        /**
+         * Runs a transaction for longer than allowed.
+         */
+        LONG_TRANSACTION
+    }
+
+    private final long sessionId;
+    private final String user;
+    private final String state;
+    private final KIND kind;
+    private final String tableName;
+    private final long transactionAgeMillis;
+    private final String query;
+
+    /**
+     * Constructor.
+     * @param sessionId the server side session (process, thread) id
+     * @param user the user name
+     * @param state the session state, as reported by the server
+     * @param kind the kind
+     * @param tableName the locked table or null
+     * @param transactionAgeMillis age of the open transaction in millis
+     * @param query the current or last query or null
+     */
+    public Blocker(long sessionId, String user, String state, KIND kind, String tableName, long transactionAgeMillis, String query) {
+        this.sessionId = sessionId;
+        this.user = user;
+        this.state = state;
+        this.kind = kind;
+        this.tableName = tableName;
+        this.transactionAgeMillis = transactionAgeMillis;
+        this.query = query;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public KIND getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the locked table, if the kind is {@link KIND#LOCK_HOLDER}, null otherwise
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    public long getTransactionAgeMillis() {
+        return transactionAgeMillis;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return kind + " session " + sessionId + " (" + user + ", " + state + ")"
+                + (tableName != null ? " on [" + tableName + "]" : "")
+                + ", transaction open for " + transactionAgeMillis + " ms"
+                + (query != null ? ": " + query : "");
+    }
+}
@@ -0,0 +1,271 @@
+package nl.myndocs.database.migrator.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Server version and the feature flags derived from it.
+ * Probed once per data source (see {@link Selector}) and consulted by the dialects
+ * to pick the cheapest statement form, supported by the server.
+ */
+public class Capabilities {
+    /**
+     * Server features, the dialects may take advantage of.
+     */
+    public enum FEATURE {
+        /**
+         * ALTER TABLE ... RENAME COLUMN (MySQL 8.0+).
+         */
+        RENAME_COLUMN,
+        /**
+         * ADD COLUMN with ALGORITHM=INSTANT (MySQL 8.0.12+).
+         */
+        INSTANT_ADD_COLUMN,
+        /**
+         * RENAME COLUMN with ALGORITHM=INSTANT (MySQL 8.0.28+).
+         */
+        INSTANT_RENAME_COLUMN,
+        /**
+         * DROP COLUMN with ALGORITHM=INSTANT (MySQL 8.0.29+).
+         */
+        INSTANT_DROP_COLUMN,
+        /**
+         * ALGORITHM=INPLACE and LOCK=NONE clauses (MySQL 5.6+).
+         */
+        ONLINE_DDL,
+        /**
+         * GENERATED ... AS IDENTITY columns (Postgres 10+).
+         */
+        IDENTITY,
+        /**
+         * ADD COLUMN with a non-volatile default does not rewrite the table (Postgres 11+).
+         */
+        FAST_COLUMN_DEFAULT,
+        /**
+         * SET NOT NULL skips the scan, if a validated CHECK (col IS NOT NULL) exists (Postgres 12+).
+         */
+        NOT_NULL_FROM_CHECK,
+        /**
+         * Columns, indexes and keys of a partitioned table propagate to its attached partitions (Postgres 11+).
+         */
+        PARTITION_PROPAGATION,
+        /**
+         * ATTACH PARTITION takes SHARE UPDATE EXCLUSIVE lock on the partitioned table (Postgres 12+).
+         */
+        SHARE_LOCK_ATTACH,
+        /**
+         * DETACH PARTITION CONCURRENTLY (Postgres 14+).
+         */
+        DETACH_CONCURRENTLY,
+        /**
+         * Identity columns of a partitioned table propagate to its partitions and share the sequence (Postgres 17+).
+         */
+        PARTITIONED_IDENTITY,
+        /**
+         * ANALYZE ONLY on a partitioned table skips its partitions (Postgres 18+).
+         */
+        ANALYZE_ONLY
+    }
+
+    private final String productName;
+    private final String productVersion;
+    private final int majorVersion;
+    private final int minorVersion;
+    private final int patchVersion;
+    private final Set<FEATURE> features;
+
+    /**
+     * Constructor.
+     * @param productName the product name, as reported by the driver
+     * @param productVersion the full product version string
+     * @param majorVersion the major version
+     * @param minorVersion the minor version
+     */
+    public Capabilities(String productName, String productVersion, int majorVersion, int minorVersion) {
+        super();
+        this.productName = productName;
+        this.productVersion = productVersion;
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        this.patchVersion = parsePatchVersion(productVersion);
+        this.features = detectFeatures();
+    }
+
+    /**
+     * Reads the server version from connection meta data.
+     * @param connection the connection
+     * @return capabilities
+     */
+    public static Capabilities probe(Connection connection) {
+        try {
+            DatabaseMetaData metaData = connection.getMetaData();
+            return new Capabilities(
+                    metaData.getDatabaseProductName(),
+                    metaData.getDatabaseProductVersion(),
+                    metaData.getDatabaseMajorVersion(),
+                    metaData.getDatabaseMinorVersion());
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to probe server version.", e);
+        }
+    }
+
+    /**
+     * @return the productName
+     */
+    public String getProductName() {
+        return productName;
+    }
+
+    /**
+     * @return the productVersion
+     */
+    public String getProductVersion() {
+        return productVersion;
+    }
+
+    /**
+     * @return the majorVersion
+     */
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    /**
+     * @return the minorVersion
+     */
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    /**
+     * @return the patchVersion or 0, if it could not be determined
+     */
+    public int getPatchVersion() {
+        return patchVersion;
+    }
+
+    public boolean isMariaDB() {
+        return Objects.nonNull(productVersion) && productVersion.contains("MariaDB");
+    }
+
+    public boolean supports(FEATURE feature) {
+        return features.contains(feature);
+    }
+
+    /**
+     * Tells whether the server version is at least the given one.
+     * @param major the major version
+     * @param minor the minor version
+     * @param patch the patch version
+     * @return true, if so
+     */
+    public boolean isAtLeast(int major, int minor, int patch) {
+
+        if (majorVersion != major) {
+            return majorVersion > major;
+        }
+
+        if (minorVersion != minor) {
+            return minorVersion > minor;
+        }
+
+        return patchVersion >= patch;
+    }
+
+    private Set<FEATURE> detectFeatures() {
+
+        Set<FEATURE> result = EnumSet.noneOf(FEATURE.class);
+        if (Objects.isNull(productName)) {
+            return result;
+        }
+
+        switch (productName) {
+        case "MySQL":
+            // MariaDB poses as MySQL with own versioning, only the common denominator is taken
+            if (isMariaDB()) {
+                result.add(FEATURE.ONLINE_DDL);
+                break;
+            }
+
+            if (isAtLeast(5, 6, 0)) {
+                result.add(FEATURE.ONLINE_DDL);
+            }
+            if (isAtLeast(8, 0, 0)) {
+                result.add(FEATURE.RENAME_COLUMN);
+            }
+            if (isAtLeast(8, 0, 12)) {
+                result.add(FEATURE.INSTANT_ADD_COLUMN);
+            }
+            if (isAtLeast(8, 0, 28)) {
+                result.add(FEATURE.INSTANT_RENAME_COLUMN);
+            }
+            if (isAtLeast(8, 0, 29)) {
+                result.add(FEATURE.INSTANT_DROP_COLUMN);
+            }
+            break;
+        case "PostgreSQL":
+            if (majorVersion >= 10) {
+                result.add(FEATURE.IDENTITY);
+            }
+            if (majorVersion >= 11) {
+                result.add(FEATURE.FAST_COLUMN_DEFAULT);
+                result.add(FEATURE.PARTITION_PROPAGATION);
+            }
+            if (majorVersion >= 12) {
+                result.add(FEATURE.NOT_NULL_FROM_CHECK);
+                result.add(FEATURE.SHARE_LOCK_ATTACH);
+            }
+            if (majorVersion >= 14) {
+                result.add(FEATURE.DETACH_CONCURRENTLY);
+            }
+            if (majorVersion >= 17) {
+                result.add(FEATURE.PARTITIONED_IDENTITY);
+            }
+            if (majorVersion >= 18) {
+                result.add(FEATURE.ANALYZE_ONLY);
+            }
+            break;
+        default:
+            break;
+        }
+
+        return result;
+    }
+
+    /*
+     * Drivers report major and minor only, the patch level is taken from the version string,
+     * i. e. '8.0.28', '5.7.31-log' or '11.5 (Debian 11.5-1.pgdg90+1)'.
+     */
+    private static int parsePatchVersion(String productVersion) {
+
+        if (Objects.isNull(productVersion)) {
+            return 0;
+        }
+
+        String[] parts = productVersion.trim().split("[^0-9.]", 2)[0].split("\\.");
+        if (parts.length < 3 || parts[2].isEmpty()) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return productName + " " + productVersion + " " + features;
+    }
+}
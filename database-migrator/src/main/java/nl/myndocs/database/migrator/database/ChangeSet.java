@@ -0,0 +1,84 @@
+package nl.myndocs.database.migrator.database;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Mikhail Mikhailov
+ * Tables, columns and indexes, touched by a migration run, in the order they were touched.
+ * Used to refresh optimizer statistics and to prewarm new indexes afterwards.
+ */
+public class ChangeSet {
+
+    private final Map<String, Set<String>> columns = new LinkedHashMap<>();
+    private final Map<String, Set<String>> indexes = new LinkedHashMap<>();
+
+    /**
+     * Adds a table (or partition).
+     * @param tableName the table name
+     */
+    public void addTable(String tableName) {
+        columns.computeIfAbsent(tableName, name -> new LinkedHashSet<>());
+        indexes.computeIfAbsent(tableName, name -> new LinkedHashSet<>());
+    }
+
+    /**
+     * Adds a new or changed column.
+     * @param tableName the table name
+     * @param columnName the (final) column name
+     */
+    public void addColumn(String tableName, String columnName) {
+        addTable(tableName);
+        columns.get(tableName).add(columnName);
+    }
+
+    /**
+     * Adds a new index.
+     * @param tableName the table or partition name
+     * @param indexName the index name
+     */
+    public void addIndex(String tableName, String indexName) {
+        addTable(tableName);
+        indexes.get(tableName).add(indexName);
+    }
+
+    public Set<String> getTableNames() {
+        return Collections.unmodifiableSet(columns.keySet());
+    }
+
+    /**
+     * @param tableName the table name
+     * @return new and changed columns of the table
+     */
+    public Set<String> getColumnNames(String tableName) {
+        return Collections.unmodifiableSet(columns.getOrDefault(tableName, Collections.emptySet()));
+    }
+
+    /**
+     * @param tableName the table name
+     * @return new indexes of the table
+     */
+    public Set<String> getIndexNames(String tableName) {
+        return Collections.unmodifiableSet(indexes.getOrDefault(tableName, Collections.emptySet()));
+    }
+
+    public boolean isEmpty() {
+        return columns.isEmpty();
+    }
+
+    public void clear() {
+        columns.clear();
+        indexes.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return getTableNames().toString();
+    }
+}
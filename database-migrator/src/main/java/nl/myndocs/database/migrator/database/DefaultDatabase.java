@@ -2,33 +2,89 @@ package nl.myndocs.database.migrator.database;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 import nl.myndocs.database.migrator.database.exception.UnknownCascadeTypeException;
 import nl.myndocs.database.migrator.database.query.AlterColumn;
 import nl.myndocs.database.migrator.database.query.AlterPartition;
 import nl.myndocs.database.migrator.database.query.AlterTable;
 import nl.myndocs.database.migrator.database.query.Database;
+import nl.myndocs.database.migrator.definition.Backfill;
 import nl.myndocs.database.migrator.definition.Column;
 import nl.myndocs.database.migrator.definition.Constraint;
 import nl.myndocs.database.migrator.definition.ForeignKey;
 import nl.myndocs.database.migrator.definition.Index;
 import nl.myndocs.database.migrator.definition.Index.TYPE;
 import nl.myndocs.database.migrator.definition.Partition;
+import nl.myndocs.database.migrator.definition.PartitionSet;
 import nl.myndocs.database.migrator.definition.Table;
 
 /**
  * Created by albert on 18-8-2017.
  */
 public class DefaultDatabase implements Database, AlterTable, AlterPartition, AlterColumn {
+    private static final Logger logger = LoggerFactory.getLogger(DefaultDatabase.class);
+    /**
+     * Holds the last copied key of interrupted chunked copies.
+     */
+    public static final String RESUME_TABLE = "migration_resume";
+    /**
+     * Resume table marker prefix of non transactional scripts, which are running.
+     */
+    public static final String SCRIPT_MARKER = "script:";
+    /**
+     * Resume table marker prefix of tables, detached from a partitioned table by {@link #detachPartition(String, String)}.
+     */
+    public static final String DETACH_MARKER = "detached:";
+    /**
+     * Max concurrent connections for independent statements, if a data source is available.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+    /**
+     * Max statements, held in memory, while DDL of large partition sets is executed.
+     */
+    public static final int DDL_CHUNK_SIZE = 500;
+    /**
+     * Table of a statement: the one following the leading keywords or ON.
+     */
+    private static final Pattern STATEMENT_TABLE = Pattern.compile(
+            "^\\s*(?:ALTER TABLE|CREATE TABLE|DROP TABLE|UPDATE|INSERT INTO|DELETE FROM)\\s+(?:IF (?:NOT )?EXISTS\\s+)?([^\\s(,;]+)"
+            + "|\\sON\\s+([^\\s(,;]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Action of an ALTER TABLE statement, i. e. ADD CONSTRAINT or DROP COLUMN.
+     */
+    private static final Pattern STATEMENT_ACTION = Pattern.compile(
+            "^\\s*ALTER TABLE\\s+(?:ONLY\\s+)?(?:IF EXISTS\\s+)?[^\\s(,;]+\\s+"
+            + "((?:ADD|DROP|ALTER|RENAME|VALIDATE)(?:\\s+(?:COLUMN|CONSTRAINT|INDEX|KEY|PRIMARY KEY|FOREIGN KEY|UNIQUE))?)",
+            Pattern.CASE_INSENSITIVE);
 
     enum AlterMode {
         CREATE_TABLE,
@@ -36,12 +92,49 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
         ALTER_PARTITION
     }
 
+    /**
+     * Operations of a migration, whose statements are planned.
+     */
+    protected enum OPERATION {
+        ADD_COLUMN,
+        DROP_COLUMN,
+        CHANGE_TYPE,
+        SET_DEFAULT,
+        SET_NULL,
+        SET_NOT_NULL,
+        RENAME,
+        ADD_CONSTRAINT,
+        DROP_CONSTRAINT,
+        ADD_INDEX,
+        DROP_INDEX
+    }
+
     private final Connection connection;
+    private Capabilities capabilities;
     protected Table currentTable;
     protected Column currentColumn;
     protected Partition currentPartition;
     protected AlterMode alterMode;
     protected String schema;
+    private SizeThresholds sizeThresholds = SizeThresholds.defaults();
+    private TuningProfile tuningProfile;
+    private final Map<String, TuningProfile.Setting> appliedSettings = new LinkedHashMap<>();
+    private final Map<String, TuningProfile.Setting> originalSettings = new HashMap<>();
+    private final Map<String, Long> rowEstimates = new HashMap<>();
+    private DataSource dataSource;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private LockPolicy lockPolicy;
+    private PreflightPolicy preflightPolicy;
+    private StatisticsPolicy statisticsPolicy;
+    private MigrationPlan plan;
+    private final Map<String, long[]> planSizes = new HashMap<>();
+    private final PlannedOperations plannedOperations = new PlannedOperations();
+    private OPERATION plannedOperation;
+    private Object plannedOperand;
+    private final List<PendingValidation> pendingValidations = Collections.synchronizedList(new ArrayList<>());
+    private final List<PendingValidation> scriptValidations = new ArrayList<>();
+    private boolean transactional = true;
+    private String scriptId;
 
     public DefaultDatabase(Connection connection) {
         this.connection = connection;
@@ -52,14 +145,20 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
         this.schema = schema;
     }
 
+    public DefaultDatabase(Connection connection, String schema, Capabilities capabilities) {
+        this.connection = connection;
+        this.schema = schema;
+        this.capabilities = capabilities;
+    }
+
     @Override
     public void init() {
-        // Nothing
+        rowEstimates.clear();
     }
 
     @Override
     public void finish() {
-        // Nothing
+        resetTuning();
     }
     /**
      * @return the currentTable
@@ -86,7 +185,7 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
     public AlterTable alterTable(Table table) {
         currentTable = table;
         alterMode = AlterMode.ALTER_TABLE;
-        return this;
+        return Objects.nonNull(plan) ? plannedOperations : this;
     }
 
     /**
@@ -96,7 +195,7 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
     public AlterPartition alterPartition(Partition partition) {
         currentPartition = partition;
         alterMode = AlterMode.ALTER_PARTITION;
-        return this;
+        return Objects.nonNull(plan) ? plannedOperations : this;
     }
 
     @Override
@@ -138,7 +237,7 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
     public void createTable(Table table, Collection<Column> columns) {
         currentTable = table;
         alterMode = AlterMode.CREATE_TABLE;
-        executeInStatement(createTableSQL(table.getTableName(), columns));
+        executeInStatement(createTableSQL(table.getTableName(), columns) + tablespaceSQL(table.getTablespace()));
     }
 
     protected String createTableSQL(String tableName, Collection<Column> columns) {
@@ -155,223 +254,1467 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
 
     @Override
     public void addColumn(Column column) {
-        executeInStatement(addColumnSQL(getAlterTableName(), column));
-    }
 
-    protected String addColumnSQL(String tableName, Column column) {
-        return String.format("ALTER TABLE %s ADD COLUMN %s",
-                tableName,
-                translateColumnOptions(column));
+        if (isBatchedAddColumn(column)) {
+            addColumnBatched(column);
+            return;
+        }
+
+        executeInStatement(addColumnSQL(getAlterTableName(), column));
     }
 
-    @Override
-    public void changeType() {
-        executeInStatement(changeTypeSQL(getAlterTableName(), getCurrentColumn()));
+    /**
+     * Sets the server settings, applied while migrations run.
+     * @param tuningProfile the profile or null
+     */
+    public void setTuningProfile(TuningProfile tuningProfile) {
+        this.tuningProfile = tuningProfile;
     }
 
-    protected String changeTypeSQL(String tableName, Column column) {
-        return String.format("ALTER TABLE %s ALTER COLUMN %s %s",
-                tableName,
-                getAlterColumnName(),
-                getNativeColumnDefinition(column));
+    /**
+     * @return the tuningProfile or null
+     */
+    public TuningProfile getTuningProfile() {
+        return tuningProfile;
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public void dropColumn(String columnName) {
-        executeInStatement(dropColumnSQL(getAlterTableName(), columnName));
-    }
+    public void applyTuning(TuningProfile scriptProfile) {
 
-    protected String dropColumnSQL(String tableName, String columnName) {
-        return String.format("ALTER TABLE %s DROP COLUMN %s",
-                tableName,
-                columnName);
-    }
+        // A plan does not change the server
+        if (Objects.nonNull(plan)) {
+            return;
+        }
 
-    @Override
-    public void addConstraint(Constraint constraint) {
-        executeInStatement(addConstraintSQL(getAlterTableName(), constraint));
-    }
+        TuningProfile target = Objects.nonNull(tuningProfile) ? tuningProfile.with(scriptProfile) : scriptProfile;
+        Map<String, TuningProfile.Setting> wanted = new LinkedHashMap<>();
+        if (Objects.nonNull(target)) {
+            target.getSettings().forEach(setting -> wanted.put(setting.getKey(), setting));
+        }
 
-    protected String addConstraintSQL(String tableName, Constraint constraint) {
+        try {
 
-        String constraintName = constraint.getConstraintName();
-        Collection<String> columnNames = constraint.getColumnNames();
-        Constraint.TYPE type = constraint.getType();
+            for (Iterator<String> keys = appliedSettings.keySet().iterator(); keys.hasNext();) {
+                String key = keys.next();
+                if (!wanted.containsKey(key)) {
+                    restoreSetting(originalSettings.get(key));
+                    keys.remove();
+                }
+            }
 
-        switch (type) {
-        case PRIMARY_KEY:
-            return String.format("ALTER TABLE %s ADD CONSTRAINT %s PRIMARY KEY (%s)",
-                    tableName,
-                    constraintName,
-                    String.join(",", columnNames));
-        case UNIQUE:
-            return String.format("ALTER TABLE %s ADD CONSTRAINT %s UNIQUE (%s)",
-                    tableName,
-                    constraintName,
-                    String.join(",", columnNames));
-        case FOREIGN_KEY:
+            for (TuningProfile.Setting setting : wanted.values()) {
 
-            String foreignTable = constraint.getForeignKey().getForeignTable();
-            Collection<String> foreignNames = constraint.getForeignKey().getForeignKeys();
-            StringBuilder fkb = new StringBuilder();
-            fkb.append(
-                    String.format(
-                            "ALTER TABLE %s ADD CONSTRAINT %s FOREIGN KEY (%s) REFERENCES %s (%s)",
-                            tableName,
-                            constraintName,
-                            String.join(",", columnNames),
-                            foreignTable,
-                            String.join(",", foreignNames)
-                    )
-            );
+                TuningProfile.Setting applied = appliedSettings.get(setting.getKey());
+                if (Objects.nonNull(applied) && applied.getValue().equals(setting.getValue())) {
+                    continue;
+                }
 
-            if (constraint.getForeignKey().getDeleteCascade() != null) {
-                fkb.append(" ON DELETE " + getNativeCascadeType(constraint.getForeignKey().getDeleteCascade()));
-            }
+                if (!originalSettings.containsKey(setting.getKey())) {
+                    String previous = readSetting(setting.getName(), setting.isGlobal());
+                    if (Objects.isNull(previous)) {
+                        logger.warn("Setting {} is not supported by the server, skipping", setting.getKey());
+                    }
 
-            if (constraint.getForeignKey().getUpdateCascade() != null) {
-                fkb.append(" ON UPDATE " + getNativeCascadeType(constraint.getForeignKey().getUpdateCascade()));
+                    originalSettings.put(setting.getKey(), Objects.isNull(previous)
+                            ? null
+                            : new TuningProfile.Setting(setting.getName(), previous, setting.isGlobal()));
+                }
+
+                if (Objects.isNull(originalSettings.get(setting.getKey()))) {
+                    continue;
+                }
+
+                logger.debug("Applying setting {}", setting);
+                writeSetting(setting.getName(), setting.getValue(), setting.isGlobal());
+                appliedSettings.put(setting.getKey(), setting);
             }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to apply tuning profile " + wanted.values() + ".", e);
+        }
+    }
 
-            return fkb.toString();
-        case CHECK:
-            return String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s)",
-                    tableName,
-                    constraintName,
-                    constraint.getCheckExpression());
-        default:
-            break;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startScript(String migrationId, boolean transactional) {
+
+        this.scriptId = migrationId;
+        this.transactional = transactional;
+        scriptValidations.clear();
+        if (transactional || Objects.nonNull(plan)) {
+            return;
         }
 
-        return null;
+        String markerId = SCRIPT_MARKER + migrationId;
+        if (Objects.nonNull(loadResumeMarker(markerId))) {
+            logger.warn("Non transactional script {} was interrupted before, its steps resume or start over", migrationId);
+        }
+
+        ensureResumeTable();
+        saveResumeMarker(markerId, "running");
+        commit();
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public void dropConstraint(String constraintName) {
-        executeInStatement(dropConstraintSQL(getAlterTableName(), constraintName));
+    public void finishScript(boolean completed) {
+
+        if (completed && !transactional && Objects.isNull(plan)) {
+            clearResumeMarker(SCRIPT_MARKER + scriptId);
+        }
+
+        // Keys of a rolled back script do not exist
+        if (!completed) {
+            pendingValidations.removeAll(scriptValidations);
+        }
+
+        scriptValidations.clear();
+
+        scriptId = null;
+        transactional = true;
     }
 
-    protected String dropConstraintSQL(String tableName, String constraintName) {
-        return String.format("ALTER TABLE %s DROP CONSTRAINT %s", tableName, constraintName);
+    /**
+     * @return false, if the running script allows operations, which commit in steps
+     */
+    protected boolean isTransactional() {
+        return transactional;
     }
 
-    @Override
-    public void addIndex(Index index) {
-        executeInStatement(addIndexSQL(getAlterTableName(), index.getIndexName(), index.getColumnNames(), index.getType()));
+    /**
+     * Refuses operations, which commit in steps, in transactional scripts.
+     * @param operation the operation, named in the error
+     */
+    protected void requireNonTransactional(String operation) {
+        if (transactional) {
+            throw new InvalidSpecException(operation + " commits in steps and must run in a non transactional script"
+                    + " (see MigrationScript#isTransactional()).");
+        }
     }
 
-    protected String addIndexSQL(String tableName, String indexName, Collection<String> columnNames, Index.TYPE type) {
+    /**
+     * Runs statements, which must not run in a transaction block, in auto commit mode.
+     * Work done so far is committed first.
+     * @param statements the statements
+     */
+    protected void executeOutsideTransaction(List<String> statements) {
 
-        String sql = type == TYPE.UNIQUE
-                ? "CREATE UNIQUE INDEX %s ON %s (%s)"
-                : "CREATE INDEX %s ON %s (%s)";
+        if (Objects.nonNull(plan) || statements.isEmpty()) {
+            executeInStatement(statements);
+            return;
+        }
 
-        return String.format(sql, indexName, tableName, String.join(",", columnNames));
+        commit();
+        try {
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+            try {
+                executeInStatement(statements);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
     }
 
-    @Override
-    public void dropIndex(String indexName) {
-        executeInStatement(dropIndexSQL(indexName));
+    /**
+     * Restores all settings, changed by {@link #applyTuning(TuningProfile)}.
+     */
+    protected void resetTuning() {
+
+        for (String key : appliedSettings.keySet()) {
+            try {
+                restoreSetting(originalSettings.get(key));
+            } catch (SQLException e) {
+                logger.warn("Failed to restore setting {}", originalSettings.get(key), e);
+            }
+        }
+
+        appliedSettings.clear();
+        originalSettings.clear();
     }
 
-    protected String dropIndexSQL(String indexName) {
-        return String.format("DROP INDEX %s", indexName);
+    private void restoreSetting(TuningProfile.Setting original) throws SQLException {
+        logger.debug("Restoring setting {}", original);
+        writeSetting(original.getName(), original.getValue(), original.isGlobal());
     }
 
-    @Override
-    public void rename() {
-        executeInStatement(renameSQL(getAlterTableName(), getCurrentColumn().getRename()));
+    /**
+     * Reads the current value of a setting.
+     * @param name the name
+     * @param global server wide, if true, session otherwise
+     * @return the value or null, if the server does not know the setting
+     * @throws SQLException on failure
+     */
+    protected String readSetting(String name, boolean global) throws SQLException {
+        return null;
     }
 
-    protected String renameSQL(String tableName, String rename) {
-        return String.format("ALTER TABLE %s ALTER COLUMN %s RENAME TO %s",
-                        tableName,
-                        getAlterColumnName(),
-                        rename);
+    /**
+     * Changes a setting. Not reached for databases without settings, as {@link #readSetting(String, boolean)}
+     * reports every setting as unknown.
+     * @param name the name
+     * @param value the value
+     * @param global server wide, if true, session otherwise
+     * @throws SQLException on failure
+     */
+    protected void writeSetting(String name, String value, boolean global) throws SQLException {
+        logger.warn("Settings are not supported, ignoring {} = {}", name, value);
     }
 
     /**
-     * {@inheritDoc}
+     * Sets the estimated row counts, from which operations without explicit strategy go online.
+     * @param sizeThresholds the thresholds
      */
-    @Override
-    public void setNull() {
-        executeInStatement(setNullSQL(getAlterTableName(), getAlterColumnName()));
+    public void setSizeThresholds(SizeThresholds sizeThresholds) {
+        Objects.requireNonNull(sizeThresholds, "sizeThresholds must not be null");
+        this.sizeThresholds = sizeThresholds;
     }
 
-    protected String setNullSQL(String tableName, String columnName) {
-        return String.format("ALTER TABLE %s ALTER COLUMN %s DROP NOT NULL",
-                tableName,
-                columnName);
+    /**
+     * @return the sizeThresholds
+     */
+    public SizeThresholds getSizeThresholds() {
+        return sizeThresholds;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void setNotNull() {
-        executeInStatement(setNotNullSQL(getAlterTableName(), getAlterColumnName()));
+    public void estimateSizes(Collection<String> tableNames) {
+        tableNames.forEach(tableName -> rowEstimates.put(tableName.toLowerCase(), estimateRowCount(tableName)));
     }
 
-    protected String setNotNullSQL(String tableName, String columnName) {
-        return String.format("ALTER TABLE %s ALTER COLUMN %s SET NOT NULL",
-                tableName,
-                columnName);
+    /**
+     * Row estimate, gathered by {@link #estimateSizes(Collection)} or read from the catalog on first use.
+     * @param tableName the table name
+     * @return estimate or -1, if not known
+     */
+    protected long estimatedRows(String tableName) {
+        return rowEstimates.computeIfAbsent(tableName.toLowerCase(), name -> estimateRowCount(tableName));
     }
 
-    @Override
-    public boolean hasTable(String tableName) {
-        try {
+    /**
+     * Strategy of a column change. {@link Column.STRATEGY#IN_PLACE} alters the column in place.
+     * {@link Column.STRATEGY#DEFAULT} switches to {@link Column.STRATEGY#ONLINE} for tables with at least
+     * {@link SizeThresholds#getOnlineRows()} rows and a key other than the column, if the script is not transactional,
+     * as online changes commit in steps. Columns, whose dependencies the online change cannot carry over,
+     * are altered in place then (see {@link #changeTypeShadowed()}).
+     * @param column the column
+     * @return the strategy to use
+     */
+    protected Column.STRATEGY strategyOf(Column column) {
 
-            DatabaseMetaData metaData = connection.getMetaData();
-            ResultSet tables = metaData.getTables(null, Objects.nonNull(schema) ? schema : null, "%", new String[]{"TABLE"});
+        if (column.getStrategy() == Column.STRATEGY.IN_PLACE) {
+            return Column.STRATEGY.DEFAULT;
+        }
 
-            boolean tableExists = false;
-            while (tables.next()) {
-                if (tableName.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
-                    tableExists = true;
-                }
-            }
+        if (column.getStrategy() != Column.STRATEGY.DEFAULT) {
+            return column.getStrategy();
+        }
 
-            return tableExists;
-        } catch (SQLException e) {
-            throw new CouldNotProcessException(e);
+        String tableName = getAlterTableName();
+        long rows = estimatedRows(tableName);
+        if (rows < sizeThresholds.getOnlineRows() || Objects.isNull(findKeyColumn(tableName, column.getColumnName()))) {
+            return Column.STRATEGY.DEFAULT;
         }
-    }
 
-    @Override
-    public Connection getConnection() {
-        return connection;
+        if (isTransactional()) {
+            logger.info("Table {} holds about {} rows, but the script is transactional, altering column {} in place",
+                    tableName, rows, column.getColumnName());
+            return Column.STRATEGY.DEFAULT;
+        }
+
+        return Column.STRATEGY.ONLINE;
     }
 
     /**
-     * @return the schema
+     * {@inheritDoc}
+     * Explicitly requested or chosen for tables with at least {@link SizeThresholds#getConcurrentIndexRows()} rows,
+     * if the dialect builds indexes online and the script is not transactional.
      */
     @Override
-    public String getInitialSchema() {
-        return schema;
-    }
-    protected String getNativeCascadeType(ForeignKey.CASCADE cascade) {
-        switch (cascade) {
-            case RESTRICT:
-            case SET_NULL:
-            case SET_DEFAULT:
-            case NO_ACTION:
-            case CASCADE:
-                return cascade.name().replace("_", " ");
+    public boolean isConcurrent(String tableName, Index index) {
+
+        if (Objects.nonNull(index.getConcurrently())) {
+            return index.getConcurrently();
         }
 
-        throw new UnknownCascadeTypeException("Unknown type");
+        if (!supportsConcurrentIndex()) {
+            return false;
+        }
+
+        long rows = estimatedRows(tableName);
+        if (rows < sizeThresholds.getConcurrentIndexRows()) {
+            return false;
+        }
+
+        if (isTransactional()) {
+            logger.info("Table {} holds about {} rows, but the script is transactional, building index {} in place",
+                    tableName, rows, index.getIndexName());
+            return false;
+        }
+
+        return true;
     }
 
-    /*
-     * Column type and size may be an invalid combination,
-     * but this is up to the user, to avoid such a situation.
+    /**
+     * Tells, whether the dialect builds indexes without blocking writes.
+     * @return true, if so
      */
-    protected String getNativeColumnDefinition(Column column) {
+    protected boolean supportsConcurrentIndex() {
+        return false;
+    }
 
-        StringBuilder sb = new StringBuilder();
-        switch (column.getType()) {
-            case SMALL_INTEGER:
+    /**
+     * Tells, whether the server adds a column with default without rewriting the table.
+     * @return true, if so
+     */
+    protected boolean supportsFastColumnDefault() {
+        return true;
+    }
+
+    /**
+     * Decides on adding a column with default in batches.
+     * Forced by a non default strategy, otherwise chosen if the server rewrites the table
+     * and the table holds at least {@link SizeThresholds#getBatchRows()} rows.
+     * Batches commit on their own, so they run in non transactional scripts only.
+     * @param column the column
+     * @return true, if the column should be added in batches
+     */
+    protected boolean isBatchedAddColumn(Column column) {
+
+        if (Objects.isNull(column.getDefaultValue())
+         || column.getStrategy() == Column.STRATEGY.IN_PLACE
+         || Boolean.TRUE.equals(column.getPrimary())
+         || Boolean.TRUE.equals(column.getAutoIncrement())) {
+            return false;
+        }
+
+        String tableName = getAlterTableName();
+        if (column.getStrategy() == Column.STRATEGY.DEFAULT) {
+
+            if (supportsFastColumnDefault()) {
+                return false;
+            }
+
+            long rows = estimatedRows(tableName);
+            if (rows < sizeThresholds.getBatchRows()) {
+                return false;
+            }
+
+            if (isTransactional()) {
+                logger.info("Table {} holds about {} rows, but the script is transactional, adding column {} in one statement",
+                        tableName, rows, column.getColumnName());
+                return false;
+            }
+        } else {
+            requireNonTransactional("Batched add of column " + tableName + "." + column.getColumnName());
+        }
+
+        if (Objects.isNull(findKeyColumn(tableName))) {
+            logger.warn("Table {} has no single column key, adding column {} in one statement",
+                    tableName, column.getColumnName());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds a column with default without rewriting the table:
+     * adds the column as nullable, sets the default for new rows, fills existing rows in key ordered batches
+     * and finally adds NOT NULL, if requested. Each batch is committed separately.
+     * A rerun continues with the rows, which are still NULL.
+     * @param column the column
+     */
+    protected void addColumnBatched(Column column) {
+
+        String tableName = getAlterTableName();
+        String columnName = column.getColumnName();
+        String keyColumn = loadKeyColumn(tableName);
+
+        if (hasColumn(tableName, columnName)) {
+            logger.info("Column {}.{} exists, resuming batched fill", tableName, columnName);
+        } else {
+            executeInStatement(addColumnSQL(tableName, shadowColumn(column, columnName)));
+        }
+
+        executeInStatement(setDefaultSQL(tableName, columnName, column.getDefaultValue()));
+        commit();
+
+        new KeysetBackfill(this, tableName, keyColumn, column.getBackfill())
+            .update(columnName, columnName + " = DEFAULT", columnName + " IS NULL", null);
+
+        if (Objects.nonNull(column.getIsNotNull())) {
+            setNotNullValidated(tableName, column);
+        }
+    }
+
+    /**
+     * Adds NOT NULL to a filled column, keeping the time an exclusive lock is held as short as the dialect allows.
+     * @param tableName the table name
+     * @param column the column
+     */
+    protected void setNotNullValidated(String tableName, Column column) {
+        executeInStatement(setNotNullSQL(tableName, column.getColumnName()));
+    }
+
+    protected String addColumnSQL(String tableName, Column column) {
+        return String.format("ALTER TABLE %s ADD COLUMN %s",
+                tableName,
+                translateColumnOptions(column));
+    }
+
+    @Override
+    public void changeType() {
+
+        Column.STRATEGY strategy = strategyOf(getCurrentColumn());
+        if (strategy == Column.STRATEGY.ONLINE) {
+            changeTypeOnline();
+            return;
+        }
+
+        if (strategy == Column.STRATEGY.CHUNKED) {
+            changeTypeChunked();
+            return;
+        }
+
+        executeInStatement(changeTypeSQL(getAlterTableName(), getCurrentColumn()));
+    }
+
+    /**
+     * Online type change. Dialects, supporting triggers, override this with {@link #changeTypeShadowed()}.
+     */
+    protected void changeTypeOnline() {
+        logger.warn("Online type change is not supported, altering column {}.{} in place",
+                getAlterTableName(), getAlterColumnName());
+        executeInStatement(changeTypeSQL(getAlterTableName(), getCurrentColumn()));
+    }
+
+    /**
+     * Changes column type via a shadow column:
+     * adds the column with the new type, keeps it in sync by triggers,
+     * copies existing values in key ordered chunks and swaps the columns at the end.
+     * Indexes, constraints, the default and NOT NULL of the column are re-created on the shadow column
+     * (see {@link #loadShadowSwap(String, String, String, Column)}). Columns, whose dependencies can not be carried over,
+     * are refused before anything is changed, or altered in place, if the strategy was chosen by size.
+     * Steps commit on their own, so this runs in non transactional scripts only.
+     * Cleans up the shadow column and the triggers, if the copy fails or is aborted,
+     * and drops a shadow column, left over by an interrupted run, before it starts over.
+     */
+    protected void changeTypeShadowed() {
+
+        requireNonTransactional("Online type change of " + getAlterTableName() + "." + getAlterColumnName());
+
+        String tableName = getAlterTableName();
+        String columnName = getAlterColumnName();
+        Column column = getCurrentColumn();
+        String shadowName = shadowColumnName(columnName);
+        String keyColumn = loadKeyColumn(tableName, columnName);
+
+        ShadowSwap swap;
+        try {
+            swap = loadShadowSwap(tableName, columnName, shadowName, column);
+        } catch (InvalidSpecException e) {
+
+            // Chosen by size, not requested
+            if (column.getStrategy() != Column.STRATEGY.DEFAULT) {
+                throw e;
+            }
+
+            logger.warn("{} Altering column {}.{} in place", e.getMessage(), tableName, columnName);
+            executeInStatement(changeTypeSQL(tableName, column));
+            return;
+        }
+
+        commit();
+        if (hasColumn(tableName, shadowName)) {
+            logger.info("Dropping shadow column {}.{}, left over by an interrupted type change", tableName, shadowName);
+            executeInStatement(dropShadowSQL(tableName, columnName, shadowName));
+            commit();
+        }
+
+        try {
+
+            executeInStatement(addColumnSQL(tableName, shadowColumn(column, shadowName)));
+            executeInStatement(createShadowSyncSQL(tableName, columnName, shadowName));
+            commit();
+
+            new KeysetBackfill(this, tableName, keyColumn, column.getBackfill())
+                .update(columnName, backfillAssignment(columnName, shadowName, column), null, null);
+
+            executeOutsideTransaction(swap.getPrepareSQL());
+            swapShadow(tableName, swap);
+
+        } catch (RuntimeException e) {
+            cleanupShadow(tableName, columnName, shadowName);
+            throw e;
+        }
+
+        // The column is swapped already, constraints, existing rows violate, are left to validateDeferredConstraints()
+        for (PendingValidation validation : swap.getValidations()) {
+            try {
+                executeInStatement(validateConstraintSQL(validation));
+                commit();
+            } catch (CouldNotProcessException e) {
+                rollback();
+                pendingValidations.add(validation);
+                logger.warn("Validation of [{}] failed, the constraint is left for deferred validation", validation, e);
+            }
+        }
+    }
+
+    /**
+     * Reads indexes, constraints, the default and NOT NULL of the column from the catalog
+     * and returns the statements, carrying them over to the shadow column.
+     * Dialects refuse columns with dependencies, they can not carry over, with {@link InvalidSpecException}.
+     * @param tableName the table name
+     * @param columnName the column name
+     * @param shadowName the shadow column name
+     * @param column the new column definition
+     * @return the statements
+     */
+    protected ShadowSwap loadShadowSwap(String tableName, String columnName, String shadowName, Column column) {
+        return new ShadowSwap(new ArrayList<>(), swapShadowSQL(tableName, columnName, shadowName, column), new ArrayList<>());
+    }
+
+    protected void swapShadow(String tableName, ShadowSwap swap) {
+        executeInStatement(swap.getSwapSQL());
+        commit();
+    }
+
+    /**
+     * Changes column type by copying into a new column in key ordered chunks.
+     * The last copied key is stored in the resume table together with each chunk,
+     * so an interrupted copy picks up from there, when the migration is run again.
+     * Chunks commit on their own, so this runs in non transactional scripts only.
+     */
+    protected void changeTypeChunked() {
+
+        requireNonTransactional("Chunked type change of " + getAlterTableName() + "." + getAlterColumnName());
+
+        String tableName = getAlterTableName();
+        String columnName = getAlterColumnName();
+        Column column = getCurrentColumn();
+        String copyName = chunkedColumnName(columnName);
+        String markerId = tableName + "." + columnName;
+
+        boolean hasColumn = hasColumn(tableName, columnName);
+        boolean hasCopy = hasColumn(tableName, copyName);
+
+        Object resumeAfter = null;
+        if (hasColumn) {
+
+            String keyColumn = loadKeyColumn(tableName, columnName);
+            if (hasCopy) {
+                resumeAfter = loadResumeMarker(markerId);
+                logger.info("Resuming copy of {}.{} after key [{}]", tableName, columnName, resumeAfter);
+            } else {
+                executeInStatement(addColumnSQL(tableName, shadowColumn(column, copyName)));
+            }
+
+            ensureResumeTable();
+            commit();
+
+            new KeysetBackfill(this, tableName, keyColumn, column.getBackfill())
+                .update(columnName, backfillAssignment(columnName, copyName, column), null, resumeAfter,
+                        lastKey -> saveResumeMarker(markerId, lastKey));
+
+            executeInStatement(dropColumnSQL(tableName, columnName));
+        } else if (!hasCopy) {
+            throw new CouldNotProcessException("Neither column [" + columnName + "] nor its copy exists in [" + tableName + "].");
+        }
+
+        // Interrupted after drop, only the rename is left
+        executeInStatement(renameColumnSQL(tableName, copyName, columnName));
+        clearResumeMarker(markerId);
+        commit();
+    }
+
+    protected String chunkedColumnName(String columnName) {
+        return columnName + "_newtype";
+    }
+
+    protected String loadResumeMarker(String markerId) {
+
+        if (!hasTable(RESUME_TABLE)) {
+            return null;
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                String.format("SELECT last_key FROM %s WHERE marker_id = ?", RESUME_TABLE))) {
+
+            ps.setString(1, markerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to read resume marker [" + markerId + "].", e);
+        }
+    }
+
+    protected void ensureResumeTable() {
+
+        if (!hasTable(RESUME_TABLE)) {
+            executeInStatement(createTableSQL(RESUME_TABLE, Arrays.asList(
+                    new Column.Builder("marker_id", Column.TYPE.VARCHAR).size(255).primary(true).build(),
+                    new Column.Builder("last_key", Column.TYPE.VARCHAR).size(255).build())));
+        }
+    }
+
+    protected void saveResumeMarker(String markerId, Object lastKey) {
+        try (PreparedStatement update = connection.prepareStatement(
+                String.format("UPDATE %s SET last_key = ? WHERE marker_id = ?", RESUME_TABLE))) {
+
+            update.setString(1, String.valueOf(lastKey));
+            update.setString(2, markerId);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    String.format("INSERT INTO %s (marker_id, last_key) VALUES (?, ?)", RESUME_TABLE))) {
+                insert.setString(1, markerId);
+                insert.setString(2, String.valueOf(lastKey));
+                insert.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to save resume marker [" + markerId + "].", e);
+        }
+    }
+
+    protected void clearResumeMarker(String markerId) {
+
+        if (!hasTable(RESUME_TABLE)) {
+            return;
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                String.format("DELETE FROM %s WHERE marker_id = ?", RESUME_TABLE))) {
+            ps.setString(1, markerId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to clear resume marker [" + markerId + "].", e);
+        }
+    }
+
+    /**
+     * Records the partition as detached by the migrator, before it is detached,
+     * so an interrupted detach is picked up by the next run.
+     * @param partitionName the partition
+     */
+    protected void markDetached(String partitionName) {
+        ensureResumeTable();
+        saveResumeMarker(DETACH_MARKER + partitionName.toLowerCase(), partitionName);
+    }
+
+    protected boolean isMarkedDetached(String partitionName) {
+        return Objects.nonNull(loadResumeMarker(DETACH_MARKER + partitionName.toLowerCase()));
+    }
+
+    /**
+     * Leaves out tables, named like partitions, but not detached by the migrator (see {@link #markDetached(String)}),
+     * they belong to someone else.
+     * @param partitions partitions and detached tables
+     * @return partitions and tables, detached by the migrator
+     */
+    protected List<PartitionInfo> withMarkedDetached(List<PartitionInfo> partitions) {
+        return partitions.stream()
+                .filter(p -> p.getState() != PartitionInfo.STATE.DETACHED
+                          || isMarkedDetached(p.getPartitionName()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retires the table by the action, if it was detached by the migrator, and forgets it.
+     * @param partitionName the detached partition
+     * @param retire drops or moves the table
+     */
+    protected void retireMarkedDetached(String partitionName, Runnable retire) {
+
+        if (!isMarkedDetached(partitionName)) {
+            throw new InvalidSpecException("[" + partitionName + "] was not detached by the migrator and is not retired.");
+        }
+
+        retire.run();
+        clearResumeMarker(DETACH_MARKER + partitionName.toLowerCase());
+    }
+
+    protected String shadowColumnName(String columnName) {
+        return columnName + "_shadow";
+    }
+
+    protected Column shadowColumn(Column column, String shadowName) {
+        return new Column.Builder(shadowName, column.getType())
+                .size(column.getSize())
+                .udt(column.getUDT())
+                .build();
+    }
+
+    /**
+     * @return statements, creating triggers, which copy column value to the shadow column on write
+     */
+    protected List<String> createShadowSyncSQL(String tableName, String columnName, String shadowName) {
+        return new ArrayList<>();
+    }
+
+    /**
+     * @return statements, dropping the sync triggers, if they exist
+     */
+    protected List<String> dropShadowSyncSQL(String tableName, String columnName, String shadowName) {
+        return new ArrayList<>();
+    }
+
+    protected String backfillAssignment(String columnName, String shadowName, Column column) {
+        return shadowName + " = " + columnName;
+    }
+
+    /**
+     * @return statements, replacing the column with the shadow column
+     */
+    protected List<String> swapShadowSQL(String tableName, String columnName, String shadowName, Column column) {
+
+        List<String> statements = dropShadowSyncSQL(tableName, columnName, shadowName);
+        statements.add(dropColumnSQL(tableName, columnName));
+        statements.add(renameColumnSQL(tableName, shadowName, columnName));
+        return statements;
+    }
+
+    /**
+     * @return statements, dropping the sync triggers and the shadow column
+     */
+    protected List<String> dropShadowSQL(String tableName, String columnName, String shadowName) {
+
+        List<String> statements = dropShadowSyncSQL(tableName, columnName, shadowName);
+        statements.add(dropColumnSQL(tableName, shadowName));
+        return statements;
+    }
+
+    protected void cleanupShadow(String tableName, String columnName, String shadowName) {
+        try {
+
+            rollback();
+
+            if (hasColumn(tableName, shadowName)) {
+                executeInStatement(dropShadowSQL(tableName, columnName, shadowName));
+                commit();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Cleanup of shadow column {}.{} failed, remove it manually", tableName, shadowName, e);
+        }
+    }
+
+    protected String changeTypeSQL(String tableName, Column column) {
+        return String.format("ALTER TABLE %s ALTER COLUMN %s %s",
+                tableName,
+                getAlterColumnName(),
+                getNativeColumnDefinition(column));
+    }
+
+    @Override
+    public void dropColumn(String columnName) {
+        executeInStatement(dropColumnSQL(getAlterTableName(), columnName));
+    }
+
+    protected String dropColumnSQL(String tableName, String columnName) {
+        return String.format("ALTER TABLE %s DROP COLUMN %s",
+                tableName,
+                columnName);
+    }
+
+    @Override
+    public void addConstraint(Constraint constraint) {
+        addConstraint(getAlterTableName(), constraint);
+    }
+
+    /**
+     * Adds the constraint to a table or partition.
+     * Foreign keys with deferred validation are added without checking existing rows, if the dialect allows it.
+     * @param tableName the table or partition name
+     * @param constraint the constraint
+     */
+    protected void addConstraint(String tableName, Constraint constraint) {
+
+        if (constraint.getType() == Constraint.TYPE.FOREIGN_KEY
+         && constraint.getForeignKey().getValidation() != ForeignKey.VALIDATION.IMMEDIATE) {
+
+            List<PendingValidation> validations = addForeignKeyNotValid(tableName, constraint);
+            if (!validations.isEmpty()) {
+                pendingValidations.addAll(validations);
+                scriptValidations.addAll(validations);
+                return;
+            }
+        }
+
+        executeInStatement(addConstraintSQL(tableName, constraint));
+    }
+
+    /**
+     * Adds a foreign key without checking existing rows.
+     * @param tableName the table name
+     * @param constraint the constraint
+     * @return the validations, the key awaits, empty if not supported by the dialect
+     */
+    protected List<PendingValidation> addForeignKeyNotValid(String tableName, Constraint constraint) {
+        logger.warn("Deferred validation is not supported, foreign key {} on {} is validated immediately",
+                constraint.getConstraintName(), tableName);
+        return Collections.emptyList();
+    }
+
+    /**
+     * Adds the constraint of validated partitions to the partitioned table.
+     * @param connection the connection to use
+     * @param validation a validation of one of the partitions
+     * @throws SQLException on failure
+     */
+    protected void addPartitionedConstraint(Connection connection, PendingValidation validation) throws SQLException {
+        throw new CouldNotProcessException("Validation of [" + validation + "] per partition is not supported.");
+    }
+
+    /**
+     * Checks existing rows against a foreign key, added without validation.
+     * May be called concurrently on separate connections.
+     * @param connection the connection to use
+     * @param validation the constraint to validate
+     * @throws SQLException on failure or if rows violate the constraint
+     */
+    protected void validateConstraint(Connection connection, PendingValidation validation) throws SQLException {
+        throw new CouldNotProcessException("Deferred validation of [" + validation + "] is not supported.");
+    }
+
+    /**
+     * @param validation the constraint to validate
+     * @return the statement, validating a constraint, added without checking existing rows
+     */
+    protected String validateConstraintSQL(PendingValidation validation) {
+        return String.format("ALTER TABLE %s VALIDATE CONSTRAINT %s",
+                validation.getTableName(), validation.getConstraintName());
+    }
+
+    /**
+     * Loads constraints, left unvalidated by previous runs, from the catalog.
+     * @return constraints, the catalog knows to be unvalidated
+     */
+    protected List<PendingValidation> loadUnvalidatedConstraints() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void validateConstraints() {
+        validatePending(pendingValidations.stream()
+                .filter(v -> !v.isDeferred())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void validateDeferredConstraints() {
+
+        Set<PendingValidation> all = new LinkedHashSet<>(pendingValidations);
+        all.addAll(loadUnvalidatedConstraints());
+
+        validatePending(new ArrayList<>(all));
+    }
+
+    /**
+     * @return constraints, added without validation by this instance and not validated yet
+     */
+    public List<PendingValidation> getPendingValidations() {
+        synchronized (pendingValidations) {
+            return new ArrayList<>(pendingValidations);
+        }
+    }
+
+    private void validatePending(List<PendingValidation> validations) {
+
+        if (validations.isEmpty()) {
+            return;
+        }
+
+        logger.info("Validating constraints {}", validations);
+        newParallelRunner().run(validations, (c, v) -> {
+            validateConstraint(c, v);
+            pendingValidations.remove(v);
+        });
+
+        // Partitioned tables get the key, once all partitions are validated
+        Map<String, PendingValidation> parents = new LinkedHashMap<>();
+        validations.stream()
+            .filter(v -> Objects.nonNull(v.getParentTableName()))
+            .forEach(v -> parents.putIfAbsent((v.getParentTableName() + "." + v.getConstraintName()).toLowerCase(), v));
+        new ParallelRunner(null, connection, 1).run(parents.values(), this::addPartitionedConstraint);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void refreshStatistics(ChangeSet changes) {
+
+        if (Objects.isNull(statisticsPolicy) || Objects.nonNull(plan) || changes.isEmpty()) {
+            return;
+        }
+
+        try {
+
+            logger.info("Refreshing statistics of {}", changes);
+            newParallelRunner().run(analyzeSQL(changes, statisticsPolicy), this::executeMaintenance);
+
+            if (statisticsPolicy.isPrewarm()) {
+                newParallelRunner().run(prewarmSQL(changes), this::executeMaintenance);
+            }
+        } catch (SQLException | CouldNotProcessException e) {
+            logger.warn("Failed to refresh statistics of {}", changes, e);
+        }
+    }
+
+    /**
+     * Statements, refreshing statistics of the touched tables. They run in parallel, if a data source is set.
+     * The server has no statistics to refresh by default.
+     * @param changes the touched objects
+     * @param policy the policy
+     * @return SQL
+     * @throws SQLException if the catalog cannot be read
+     */
+    protected List<String> analyzeSQL(ChangeSet changes, StatisticsPolicy policy) throws SQLException {
+        logger.debug("No statistics to refresh on {}", getClass().getSimpleName());
+        return Collections.emptyList();
+    }
+
+    /**
+     * Statements, loading new indexes into the buffer cache. None by default.
+     * @param changes the touched objects
+     * @return SQL
+     * @throws SQLException if the catalog cannot be read
+     */
+    protected List<String> prewarmSQL(ChangeSet changes) throws SQLException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Runs independent statements, each in its own transaction, in parallel, if a data source is set.
+     * While planning, the statements are added to the plan.
+     * @param statements the statements
+     */
+    protected void executeInParallel(List<String> statements) {
+
+        if (Objects.nonNull(plan)) {
+            executeInStatement(statements);
+            return;
+        }
+
+        newParallelRunner().run(statements, this::executeMaintenance);
+    }
+
+    private void executeMaintenance(Connection c, String sql) throws SQLException {
+        try (Statement statement = c.createStatement()) {
+            logger.debug("Running {}", sql);
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PartitionInfo> loadPartitions(String tableName) {
+        throw new InvalidSpecException("Partition maintenance is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addPartition(String tableName, PartitionSet set, Partition partition) {
+        throw new InvalidSpecException("Partition maintenance is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void detachPartition(String tableName, String partitionName) {
+        throw new InvalidSpecException("Partition maintenance is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void retirePartition(String partitionName, String archiveSchema) {
+        throw new InvalidSpecException("Partition maintenance is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dropPartition(String tableName, String partitionName) {
+        throw new InvalidSpecException("Partition maintenance is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reorganizePartitions(String tableName, Collection<String> partitionNames, PartitionSet set) {
+        throw new InvalidSpecException("Partition maintenance is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void exchangePartition(String tableName, String partitionName, String otherTableName, boolean validate) {
+        throw new InvalidSpecException("Partition maintenance is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Backfill.Progress movePartition(String tableName, String partitionName, String tablespace, String keyColumn, Backfill options) {
+        throw new InvalidSpecException("Tablespaces are not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * @param value the value
+     * @return the value with LIKE wildcards escaped by backslash
+     */
+    protected String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("_", "\\_").replace("%", "\\%");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Backfill.Progress> splitHashPartitions(String tableName, String keyColumn, int factor, Backfill options) {
+        throw new InvalidSpecException("Hash partition split is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Backfill.Progress> partitionTable(String tableName, PartitionSet set, String keyColumn, boolean verify, Backfill options) {
+        throw new InvalidSpecException("Online partitioning is not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * @return a runner for independent statements, using the data source, if set
+     */
+    protected ParallelRunner newParallelRunner() {
+        return new ParallelRunner(dataSource, connection, parallelism);
+    }
+
+    /**
+     * Sets the data source, connections for parallel statements are taken from.
+     * @param dataSource the data source
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the dataSource or null
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Sets max concurrent connections for independent statements.
+     * @param parallelism the parallelism
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    protected String addConstraintSQL(String tableName, Constraint constraint) {
+
+        String constraintName = constraint.getConstraintName();
+        Collection<String> columnNames = constraint.getColumnNames();
+        Constraint.TYPE type = constraint.getType();
+
+        switch (type) {
+        case PRIMARY_KEY:
+            return String.format("ALTER TABLE %s ADD CONSTRAINT %s PRIMARY KEY (%s)",
+                    tableName,
+                    constraintName,
+                    String.join(",", columnNames));
+        case UNIQUE:
+            return String.format("ALTER TABLE %s ADD CONSTRAINT %s UNIQUE (%s)",
+                    tableName,
+                    constraintName,
+                    String.join(",", columnNames));
+        case FOREIGN_KEY:
+
+            String foreignTable = constraint.getForeignKey().getForeignTable();
+            Collection<String> foreignNames = constraint.getForeignKey().getForeignKeys();
+            StringBuilder fkb = new StringBuilder();
+            fkb.append(
+                    String.format(
+                            "ALTER TABLE %s ADD CONSTRAINT %s FOREIGN KEY (%s) REFERENCES %s (%s)",
+                            tableName,
+                            constraintName,
+                            String.join(",", columnNames),
+                            foreignTable,
+                            String.join(",", foreignNames)
+                    )
+            );
+
+            if (constraint.getForeignKey().getDeleteCascade() != null) {
+                fkb.append(" ON DELETE " + getNativeCascadeType(constraint.getForeignKey().getDeleteCascade()));
+            }
+
+            if (constraint.getForeignKey().getUpdateCascade() != null) {
+                fkb.append(" ON UPDATE " + getNativeCascadeType(constraint.getForeignKey().getUpdateCascade()));
+            }
+
+            return fkb.toString();
+        case CHECK:
+            return String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s)",
+                    tableName,
+                    constraintName,
+                    constraint.getCheckExpression());
+        default:
+            break;
+        }
+
+        return null;
+    }
+
+    @Override
+    public void dropConstraint(String constraintName) {
+        executeInStatement(dropConstraintSQL(getAlterTableName(), constraintName));
+    }
+
+    protected String dropConstraintSQL(String tableName, String constraintName) {
+        return String.format("ALTER TABLE %s DROP CONSTRAINT %s", tableName, constraintName);
+    }
+
+    @Override
+    public void addIndex(Index index) {
+        executeInStatement(addIndexSQL(getAlterTableName(), index.getIndexName(), index.getColumnNames(), index.getType())
+                + tablespaceSQL(index.getTablespace()));
+    }
+
+    /**
+     * Storage placement of a table, partition or index.
+     * @param tablespace the tablespace or null for the default one
+     * @return SQL, empty for the default tablespace
+     */
+    protected String tablespaceSQL(String tablespace) {
+
+        if (Objects.isNull(tablespace)) {
+            return "";
+        }
+
+        throw new InvalidSpecException("Tablespaces are not supported by " + getClass().getSimpleName() + ".");
+    }
+
+    protected String addIndexSQL(String tableName, String indexName, Collection<String> columnNames, Index.TYPE type) {
+
+        String sql = type == TYPE.UNIQUE
+                ? "CREATE UNIQUE INDEX %s ON %s (%s)"
+                : "CREATE INDEX %s ON %s (%s)";
+
+        return String.format(sql, indexName, tableName, String.join(",", columnNames));
+    }
+
+    @Override
+    public void dropIndex(String indexName) {
+        executeInStatement(dropIndexSQL(indexName));
+    }
+
+    protected String dropIndexSQL(String indexName) {
+        return String.format("DROP INDEX %s", indexName);
+    }
+
+    /**
+     * Dialects, able to drop indexes without blocking, override this.
+     * {@inheritDoc}
+     */
+    @Override
+    public void dropIndexConcurrently(String indexName) {
+        dropIndex(indexName);
+    }
+
+    @Override
+    public void rename() {
+        executeInStatement(renameSQL(getAlterTableName(), getCurrentColumn().getRename()));
+    }
+
+    protected String renameSQL(String tableName, String rename) {
+        return renameColumnSQL(tableName, getAlterColumnName(), rename);
+    }
+
+    protected String renameColumnSQL(String tableName, String columnName, String rename) {
+        return String.format("ALTER TABLE %s ALTER COLUMN %s RENAME TO %s",
+                        tableName,
+                        columnName,
+                        rename);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNull() {
+        executeInStatement(setNullSQL(getAlterTableName(), getAlterColumnName()));
+    }
+
+    protected String setNullSQL(String tableName, String columnName) {
+        return String.format("ALTER TABLE %s ALTER COLUMN %s DROP NOT NULL",
+                tableName,
+                columnName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNotNull() {
+        executeInStatement(setNotNullSQL(getAlterTableName(), getAlterColumnName()));
+    }
+
+    protected String setNotNullSQL(String tableName, String columnName) {
+        return String.format("ALTER TABLE %s ALTER COLUMN %s SET NOT NULL",
+                tableName,
+                columnName);
+    }
+
+    @Override
+    public boolean hasTable(String tableName) {
+        try {
+
+            DatabaseMetaData metaData = connection.getMetaData();
+            ResultSet tables = metaData.getTables(null, Objects.nonNull(schema) ? schema : null, "%", new String[]{"TABLE"});
+
+            boolean tableExists = false;
+            while (tables.next()) {
+                if (tableName.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                    tableExists = true;
+                }
+            }
+
+            return tableExists;
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Commits work done so far, if the connection is not in auto commit mode.
+     * Used by operations, which must not hold their locks for the whole migration.
+     */
+    protected void commit() {
+
+        if (Objects.nonNull(plan)) {
+            return;
+        }
+
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+    }
+
+    protected void rollback() {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+    }
+
+    /**
+     * Finds the single column primary key of a table, which is required for chunked operations.
+     * @param tableName the table name
+     * @return key column name
+     */
+    protected String loadKeyColumn(String tableName) {
+
+        String keyColumn = findKeyColumn(tableName);
+        if (Objects.isNull(keyColumn)) {
+            throw new CouldNotProcessException("Table [" + tableName + "] needs a single column primary key for chunked operations.");
+        }
+
+        return keyColumn;
+    }
+
+    /**
+     * Finds the single column primary key of a table for a copy of the changed column. The changed column
+     * cannot serve as the key, as dropping it at the end of the copy would drop the key.
+     * @param tableName the table name
+     * @param changedColumn the changed column
+     * @return key column name
+     */
+    protected String loadKeyColumn(String tableName, String changedColumn) {
+
+        String keyColumn = loadKeyColumn(tableName);
+        if (keyColumn.equalsIgnoreCase(changedColumn)) {
+            throw new InvalidSpecException("Column [" + tableName + "." + changedColumn
+                    + "] is the primary key, it can only be changed in place.");
+        }
+
+        return keyColumn;
+    }
+
+    /**
+     * @param tableName the table name
+     * @param changedColumn the changed column
+     * @return single column primary key other than the changed column or null
+     */
+    protected String findKeyColumn(String tableName, String changedColumn) {
+
+        String keyColumn = findKeyColumn(tableName);
+        return Objects.nonNull(keyColumn) && keyColumn.equalsIgnoreCase(changedColumn) ? null : keyColumn;
+    }
+
+    /**
+     * @param tableName the table name
+     * @return single column primary key or null, if there is none or the key is composite
+     */
+    protected String findKeyColumn(String tableName) {
+        try {
+
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String name : Arrays.asList(tableName, tableName.toUpperCase(), tableName.toLowerCase())) {
+
+                List<String> keyColumns = new ArrayList<>();
+                try (ResultSet keys = metaData.getPrimaryKeys(null, schema, name)) {
+                    while (keys.next()) {
+                        keyColumns.add(keys.getString("COLUMN_NAME"));
+                    }
+                }
+
+                if (keyColumns.size() == 1) {
+                    return keyColumns.get(0);
+                } else if (keyColumns.size() > 1) {
+                    break;
+                }
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+
+        return null;
+    }
+
+    protected boolean hasColumn(String tableName, String columnName) {
+        try {
+
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String name : Arrays.asList(tableName, tableName.toUpperCase(), tableName.toLowerCase())) {
+                try (ResultSet columns = metaData.getColumns(null, schema, name, null)) {
+                    while (columns.next()) {
+                        if (columnName.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+
+            return false;
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+    }
+
+    /**
+     * Cheap row count estimate from the catalog.
+     * @param tableName the table name
+     * @return estimate or -1, if not known
+     */
+    protected long estimateRowCount(String tableName) {
+        return -1L;
+    }
+
+    protected String limitSQL(String query, int rows) {
+        return query + " FETCH FIRST " + rows + " ROWS ONLY";
+    }
+
+    /**
+     * {@inheritDoc}
+     * Probed from the connection on first access, if not supplied by the {@link Selector}.
+     */
+    @Override
+    public Capabilities getCapabilities() {
+
+        if (Objects.isNull(capabilities)) {
+            capabilities = Capabilities.probe(connection);
+        }
+
+        return capabilities;
+    }
+
+    protected boolean supports(Capabilities.FEATURE feature) {
+        return getCapabilities().supports(feature);
+    }
+
+    /**
+     * @return the schema
+     */
+    @Override
+    public String getInitialSchema() {
+        return schema;
+    }
+    protected String getNativeCascadeType(ForeignKey.CASCADE cascade) {
+        switch (cascade) {
+            case RESTRICT:
+            case SET_NULL:
+            case SET_DEFAULT:
+            case NO_ACTION:
+            case CASCADE:
+                return cascade.name().replace("_", " ");
+        }
+
+        throw new UnknownCascadeTypeException("Unknown type");
+    }
+
+    /*
+     * Column type and size may be an invalid combination,
+     * but this is up to the user, to avoid such a situation.
+     */
+    protected String getNativeColumnDefinition(Column column) {
+
+        StringBuilder sb = new StringBuilder();
+        switch (column.getType()) {
+            case SMALL_INTEGER:
                 sb.append("SMALLINT");
                 break;
             case BIG_INTEGER:
@@ -388,50 +1731,556 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
                 break;
         }
 
-        if (Objects.nonNull(column.getSize())) {
-            sb.append("(")
-              .append(column.getSize())
-              .append(")");
+        if (Objects.nonNull(column.getSize())) {
+            sb.append("(")
+              .append(column.getSize())
+              .append(")");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Warns of identity and sequence options of an auto increment column, which the server cannot take.
+     * @param column the column
+     */
+    protected void warnIgnoredSequenceOptions(Column column) {
+
+        if (Objects.nonNull(column.getIdentity()) || Objects.nonNull(column.getSequenceIncrement())
+         || Objects.nonNull(column.getSequenceCache()) || Boolean.TRUE.equals(column.getSharedSequence())) {
+            logger.warn("Identity and sequence options not supported, creating plain auto increment column {} instead",
+                    column.getColumnName());
+        }
+    }
+
+    protected String getDefaultValue(Column column) {
+
+        String quote = "";
+        List<Column.TYPE> quotedTypes = Arrays.asList(
+                Column.TYPE.CHAR,
+                Column.TYPE.VARCHAR,
+                Column.TYPE.TEXT
+        );
+
+        if (quotedTypes.contains(column.getType())) {
+            quote = "'";
+        }
+
+        return "DEFAULT " + quote + column.getDefaultValue() + quote;
+    }
+
+    protected void executeInStatement(String query) {
+        executeInStatement(new String[]{query});
+    }
+
+    protected void executeInStatement(List<String> queries) {
+        executeInStatement(queries.toArray(new String[queries.size()]));
+    }
+
+    /**
+     * Executes the statements in chunks of {@link #DDL_CHUNK_SIZE}, in order and in the current transaction.
+     * @param queries the statements, generated lazily
+     */
+    protected void executeInChunks(Stream<String> queries) {
+
+        List<String> chunk = new ArrayList<>(DDL_CHUNK_SIZE);
+        queries.forEachOrdered(query -> {
+
+            chunk.add(query);
+            if (chunk.size() == DDL_CHUNK_SIZE) {
+                executeInStatement(chunk);
+                chunk.clear();
+            }
+        });
+
+        if (!chunk.isEmpty()) {
+            executeInStatement(chunk);
+        }
+    }
+
+    protected void executeInStatement(String[] queries) {
+
+        if (Objects.nonNull(plan)) {
+            Arrays.stream(queries).forEach(this::planStatement);
+            return;
+        }
+
+        if (Objects.nonNull(lockPolicy)) {
+            executeUnderLockPolicy(queries);
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            for (String query : queries) {
+                statement.execute(query);
+            }
+        } catch (SQLException sqlException) {
+            throw new CouldNotProcessException(sqlException);
         }
+    }
 
-        return sb.toString();
+    /**
+     * {@inheritDoc}
+     * Foreign keys, planned without validation, are forgotten, when planning ends.
+     */
+    @Override
+    public void setPlan(MigrationPlan plan) {
+
+        if (Objects.isNull(plan) && Objects.nonNull(this.plan)) {
+            pendingValidations.clear();
+        }
+
+        planSizes.clear();
+        this.plan = plan;
     }
 
-    protected String getDefaultValue(Column column) {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MigrationPlan getPlan() {
+        return plan;
+    }
 
-        String quote = "";
-        List<Column.TYPE> quotedTypes = Arrays.asList(
-                Column.TYPE.CHAR,
-                Column.TYPE.VARCHAR,
-                Column.TYPE.TEXT
-        );
+    /**
+     * Adds a statement to the plan together with the size of its table.
+     * @param sql the statement
+     */
+    protected void planStatement(String sql) {
 
-        if (quotedTypes.contains(column.getType())) {
-            quote = "'";
+        String tableName = statementTable(sql);
+        long[] size = Objects.isNull(tableName) ? new long[] {-1L, -1L}
+            : planSizes.computeIfAbsent(tableName.toLowerCase(),
+                    name -> hasTable(tableName)
+                        ? new long[] {estimateRowCount(tableName), estimateTableBytes(tableName)}
+                        : new long[] {-1L, -1L});
+
+        MigrationPlan.IMPACT impact = Objects.nonNull(plannedOperation)
+                ? planImpact(plannedOperation, plannedOperand, sql)
+                : null;
+
+        plan.add(tableName, sql, planLockLevel(sql), Objects.nonNull(impact) ? impact : planImpact(sql), size[0], size[1]);
+    }
+
+    /**
+     * @param sql the statement
+     * @return the upper case action of an ALTER TABLE statement, i. e. ADD CONSTRAINT, or null
+     */
+    protected String statementAction(String sql) {
+
+        Matcher matcher = STATEMENT_ACTION.matcher(sql);
+        return matcher.find() ? matcher.group(1).toUpperCase().replaceAll("\\s+", " ") : null;
+    }
+
+    /**
+     * @param sql the statement
+     * @return the table, the statement works on, or the current table, if not found in the statement
+     */
+    protected String statementTable(String sql) {
+
+        Matcher matcher = STATEMENT_TABLE.matcher(sql);
+        if (matcher.find()) {
+            return Objects.nonNull(matcher.group(1)) ? matcher.group(1) : matcher.group(2);
         }
 
-        return "DEFAULT " + quote + column.getDefaultValue() + quote;
+        return Objects.nonNull(currentTable) ? getAlterTableName() : null;
     }
 
-    protected void executeInStatement(String query) {
-        executeInStatement(new String[]{query});
+    /**
+     * Table level lock, the statement takes. Embedded databases lock the whole table for DDL.
+     * @param sql the statement
+     * @return lock name or null, if not known
+     */
+    protected String planLockLevel(String sql) {
+
+        String statement = sql.trim().toUpperCase();
+        if (statement.startsWith("CREATE TABLE")) {
+            return "NONE";
+        }
+
+        if (statement.startsWith("UPDATE") || statement.startsWith("INSERT") || statement.startsWith("DELETE")) {
+            return "ROW";
+        }
+
+        if (statement.startsWith("ALTER") || statement.startsWith("DROP") || statement.startsWith("CREATE")) {
+            return "EXCLUSIVE";
+        }
+
+        return null;
     }
 
-    protected void executeInStatement(List<String> queries) {
-        executeInStatement(queries.toArray(new String[queries.size()]));
+    /**
+     * Work of a statement on the existing rows, classified by the operation, it belongs to.
+     * Statements, the operation does not classify, i. e. helper statements of the operation,
+     * are classified by {@link #planImpact(String)}.
+     * @param operation the operation
+     * @param operand the constraint, index or column of the operation, the name of a dropped object otherwise
+     * @param sql the statement
+     * @return work on the existing rows or null, if not classified by the operation
+     */
+    protected MigrationPlan.IMPACT planImpact(OPERATION operation, Object operand, String sql) {
+
+        String action = statementAction(sql);
+        if (Objects.isNull(action)) {
+            return null;
+        }
+
+        switch (operation) {
+        case DROP_COLUMN:
+            return action.startsWith("DROP") && !action.equals("DROP CONSTRAINT") ? dropColumnImpact(sql) : null;
+        case ADD_CONSTRAINT:
+            if (!action.startsWith("ADD")) {
+                return null;
+            }
+
+            Constraint constraint = (Constraint) operand;
+            return constraint.getType() == Constraint.TYPE.FOREIGN_KEY
+                && constraint.getForeignKey().getValidation() != ForeignKey.VALIDATION.IMMEDIATE
+                && supportsForeignKeyNotValid()
+                    ? MigrationPlan.IMPACT.NONE
+                    : MigrationPlan.IMPACT.SCAN;
+        case DROP_CONSTRAINT:
+        case DROP_INDEX:
+        case RENAME:
+        case SET_DEFAULT:
+        case SET_NULL:
+            return action.startsWith("DROP") || action.startsWith("ALTER") || action.startsWith("RENAME")
+                    ? MigrationPlan.IMPACT.NONE
+                    : null;
+        case SET_NOT_NULL:
+            return action.startsWith("ALTER") ? MigrationPlan.IMPACT.SCAN : null;
+        default:
+            return null;
+        }
     }
 
-    protected void executeInStatement(String[] queries) {
+    /**
+     * Embedded databases copy the table, when a column is dropped.
+     * @param sql the statement
+     * @return work of DROP COLUMN on the existing rows
+     */
+    protected MigrationPlan.IMPACT dropColumnImpact(String sql) {
+        return MigrationPlan.IMPACT.REWRITE;
+    }
+
+    /**
+     * @return true, if foreign keys with deferred validation are added without checking existing rows
+     */
+    protected boolean supportsForeignKeyNotValid() {
+        return false;
+    }
+
+    /**
+     * Statements outside of a classified operation.
+     * @param sql the statement
+     * @return work on the existing rows
+     */
+    protected MigrationPlan.IMPACT planImpact(String sql) {
+
+        String statement = sql.trim().toUpperCase();
+        if (statement.startsWith("CREATE TABLE") || statement.startsWith("DROP INDEX") || statement.startsWith("DROP TABLE")
+         || statement.startsWith("DROP TRIGGER") || statement.startsWith("DROP SEQUENCE")) {
+            return MigrationPlan.IMPACT.NONE;
+        }
+
+        if (statement.startsWith("UPDATE") || statement.startsWith("CREATE INDEX") || statement.startsWith("CREATE UNIQUE INDEX")) {
+            return MigrationPlan.IMPACT.SCAN;
+        }
+
+        String action = statementAction(sql);
+        if ("RENAME".equals(action) || "DROP CONSTRAINT".equals(action)) {
+            return MigrationPlan.IMPACT.NONE;
+        }
+
+        if (Objects.nonNull(action) && action.startsWith("ALTER")
+         && (statement.endsWith(" DROP DEFAULT") || statement.endsWith(" DROP NOT NULL") || statement.contains(" SET DEFAULT "))) {
+            return MigrationPlan.IMPACT.NONE;
+        }
+
+        if ("ADD CONSTRAINT".equals(action) || "VALIDATE CONSTRAINT".equals(action)) {
+            return MigrationPlan.IMPACT.SCAN;
+        }
+
+        if ("DROP COLUMN".equals(action)) {
+            return dropColumnImpact(sql);
+        }
+
+        return MigrationPlan.IMPACT.UNKNOWN;
+    }
+
+    /**
+     * Table size from the catalog.
+     * @param tableName the table name
+     * @return size in bytes or -1, if not known
+     */
+    protected long estimateTableBytes(String tableName) {
+        return -1L;
+    }
+
+    /**
+     * Sets the policy, bounding the time statements wait for locks.
+     * The lock timeout is set for the session of this migrator only and restored after the statements.
+     * Inside a transaction, each statement runs after a savepoint, a timed out statement is rolled back
+     * to it and retried after the backoff of the policy, keeping the earlier statements of the script.
+     * Servers with implicitly committing DDL (MySQL, H2) retry without a savepoint. Servers, which abort
+     * the whole transaction on lock timeout (Derby), fail the script, unless it runs with autocommit.
+     * Dialects without a session lock timeout (Derby, HyperSQL) wait as long as the server does.
+     * @param lockPolicy the policy or null, to wait as long as the server does
+     */
+    public void setLockPolicy(LockPolicy lockPolicy) {
+        this.lockPolicy = lockPolicy;
+    }
+
+    /**
+     * @return the lockPolicy or null
+     */
+    public LockPolicy getLockPolicy() {
+        return lockPolicy;
+    }
+
+    /**
+     * Sets the policy, checking for blockers before tables are altered.
+     * @param preflightPolicy the policy or null, to skip the check
+     */
+    public void setPreflightPolicy(PreflightPolicy preflightPolicy) {
+        this.preflightPolicy = preflightPolicy;
+    }
+
+    /**
+     * @return the preflightPolicy or null
+     */
+    public PreflightPolicy getPreflightPolicy() {
+        return preflightPolicy;
+    }
+
+    /**
+     * Sets the policy, refreshing statistics of touched tables after a migration run.
+     * @param statisticsPolicy the policy or null, to leave statistics to the server
+     */
+    public void setStatisticsPolicy(StatisticsPolicy statisticsPolicy) {
+        this.statisticsPolicy = statisticsPolicy;
+    }
+
+    /**
+     * @return the statisticsPolicy or null
+     */
+    public StatisticsPolicy getStatisticsPolicy() {
+        return statisticsPolicy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPreflightEnabled() {
+        return Objects.nonNull(preflightPolicy) && Objects.isNull(plan);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void preflight(Collection<String> tableNames, boolean mayWait) {
+
+        if (Objects.isNull(preflightPolicy) || Objects.nonNull(plan) || tableNames.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        while (true) {
+
+            List<Blocker> blockers;
+            try {
+                blockers = findBlockers(tableNames, preflightPolicy);
+            } catch (SQLException e) {
+                throw new CouldNotProcessException("Blocker check for " + tableNames + " failed.", e);
+            }
+
+            if (Objects.nonNull(preflightPolicy.getListener())) {
+                preflightPolicy.getListener().accept(blockers);
+            }
+
+            if (blockers.isEmpty()) {
+                return;
+            }
+
+            logger.warn("Found {} blockers for {}: {}", blockers.size(), tableNames, blockers);
+            switch (preflightPolicy.getAction()) {
+            case REPORT:
+                return;
+            case FAIL:
+                throw new CouldNotProcessException("Found " + blockers.size() + " blockers for " + tableNames + ": " + blockers);
+            default:
+                if (!mayWait) {
+                    throw new CouldNotProcessException("Found " + blockers.size() + " blockers for " + tableNames
+                            + ", which are not waited out, as the script holds locks of earlier statements: " + blockers);
+                }
+                break;
+            }
+
+            long elapsed = System.currentTimeMillis() - start;
+            if (elapsed >= preflightPolicy.getWaitTimeoutMillis()) {
+                throw new CouldNotProcessException("No quiet window for " + tableNames + " within "
+                        + preflightPolicy.getWaitTimeoutMillis() + " ms, blockers: " + blockers);
+            }
+
+            sleep(Math.min(preflightPolicy.getPollIntervalMillis(), preflightPolicy.getWaitTimeoutMillis() - elapsed));
+        }
+    }
+
+    /**
+     * Finds sessions other than this one, holding locks on the given tables or their partitions for longer
+     * than {@link PreflightPolicy#getMaxLockHolderAgeMillis()}, and sessions with transactions open for longer than
+     * {@link PreflightPolicy#getMaxTransactionAgeMillis()}. Embedded databases have no such sessions.
+     * @param tableNames the tables
+     * @param policy the policy
+     * @return blockers
+     * @throws SQLException on failure
+     */
+    protected List<Blocker> findBlockers(Collection<String> tableNames, PreflightPolicy policy) throws SQLException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Sets the lock timeout of the session.
+     * @param statement the statement to use
+     * @param millis the timeout
+     * @throws SQLException on failure
+     */
+    protected void applyLockTimeout(Statement statement, long millis) throws SQLException {
+        logger.debug("Lock timeout is not supported, statements wait as long as the server does");
+    }
+
+    /**
+     * Restores the lock timeout of the session.
+     * @param statement the statement to use
+     * @throws SQLException on failure
+     */
+    protected void resetLockTimeout(Statement statement) throws SQLException {
+        // Nothing
+    }
+
+    /**
+     * @param e the exception
+     * @return true, if the exception reports a lock timeout
+     */
+    protected boolean isLockTimeout(SQLException e) {
+        return false;
+    }
+
+    /**
+     * Tells, whether DDL runs inside transactions, so that a timed out statement
+     * can be undone by rolling back to a savepoint.
+     * @return true, if so
+     */
+    protected boolean supportsTransactionalDDL() {
+        return true;
+    }
+
+    private void executeUnderLockPolicy(String[] queries) {
 
         try (Statement statement = connection.createStatement()) {
-            for (String query : queries) {
-                statement.execute(query);
+
+            applyLockTimeout(statement, lockPolicy.getLockTimeoutMillis());
+            try {
+                for (String query : queries) {
+                    executeUnderLockPolicy(statement, query);
+                }
+            } finally {
+                resetLockTimeoutQuietly(statement);
             }
         } catch (SQLException sqlException) {
             throw new CouldNotProcessException(sqlException);
         }
     }
 
+    /*
+     * Fails in an aborted transaction, whose rollback restores the setting anyway.
+     */
+    private void resetLockTimeoutQuietly(Statement statement) {
+        try {
+            resetLockTimeout(statement);
+        } catch (SQLException e) {
+            logger.debug("Failed to reset lock timeout.", e);
+        }
+    }
+
+    private void executeUnderLockPolicy(Statement statement, String query) throws SQLException {
+
+        boolean useSavepoint = !connection.getAutoCommit() && supportsTransactionalDDL();
+        long start = System.currentTimeMillis();
+        for (int attempt = 1;; attempt++) {
+
+            Savepoint savepoint = useSavepoint ? connection.setSavepoint() : null;
+            try {
+
+                statement.execute(query);
+                if (Objects.nonNull(savepoint)) {
+                    connection.releaseSavepoint(savepoint);
+                }
+
+                reportAttempt(new LockPolicy.Attempt(query, attempt, System.currentTimeMillis() - start, 0,
+                        LockPolicy.OUTCOME.ACQUIRED, null));
+                return;
+            } catch (SQLException e) {
+
+                if (!isLockTimeout(e)) {
+                    throw e;
+                }
+
+                if (Objects.nonNull(savepoint)) {
+                    rollbackTo(savepoint, e);
+                }
+
+                long elapsed = System.currentTimeMillis() - start;
+                long backoff = lockPolicy.backoff(attempt);
+                if (attempt >= lockPolicy.getMaxAttempts() || elapsed + backoff > lockPolicy.getBudgetMillis()) {
+                    reportAttempt(new LockPolicy.Attempt(query, attempt, elapsed, 0, LockPolicy.OUTCOME.GAVE_UP, e));
+                    throw new CouldNotProcessException("Could not acquire locks for [" + query + "] in "
+                            + attempt + " attempts and " + elapsed + " ms.", e);
+                }
+
+                reportAttempt(new LockPolicy.Attempt(query, attempt, elapsed, backoff, LockPolicy.OUTCOME.TIMED_OUT, e));
+                sleep(backoff);
+            }
+        }
+    }
+
+    /*
+     * Some servers abort the whole transaction on lock timeout, then the savepoint is gone
+     * and the statement cannot be retried.
+     */
+    private void rollbackTo(Savepoint savepoint, SQLException cause) throws SQLException {
+        try {
+            connection.rollback(savepoint);
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+            throw cause;
+        }
+    }
+
+    private void reportAttempt(LockPolicy.Attempt attempt) {
+
+        if (attempt.getOutcome() == LockPolicy.OUTCOME.ACQUIRED && attempt.getAttempt() == 1) {
+            logger.debug("Lock attempt: {}", attempt);
+        } else {
+            logger.warn("Lock attempt: {}", attempt);
+        }
+
+        if (Objects.nonNull(lockPolicy.getListener())) {
+            lockPolicy.getListener().accept(attempt);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CouldNotProcessException("Interrupted while waiting.", e);
+        }
+    }
+
     protected String translateColumnOptions(Column column) {
 
         StringBuilder cb = new StringBuilder(column.getColumnName())
@@ -459,4 +2308,92 @@ public class DefaultDatabase implements Database, AlterTable, AlterPartition, Al
     protected String escapeString(String line) {
         return line.replaceAll("'", "''");
     }
+
+    /**
+     * Operations in planning mode. Records the operation and its operand, so that the planned statements
+     * are classified by what they do rather than by their text.
+     */
+    private class PlannedOperations implements AlterTable, AlterColumn, AlterPartition {
+
+        @Override
+        public AlterColumn alterColumn(Column column) {
+            DefaultDatabase.this.alterColumn(column);
+            return this;
+        }
+
+        @Override
+        public void addColumn(Column column) {
+            planned(OPERATION.ADD_COLUMN, column, () -> DefaultDatabase.this.addColumn(column));
+        }
+
+        @Override
+        public void dropColumn(String columnName) {
+            planned(OPERATION.DROP_COLUMN, columnName, () -> DefaultDatabase.this.dropColumn(columnName));
+        }
+
+        @Override
+        public void addConstraint(Constraint constraint) {
+            planned(OPERATION.ADD_CONSTRAINT, constraint, () -> DefaultDatabase.this.addConstraint(constraint));
+        }
+
+        @Override
+        public void dropConstraint(String constraintName) {
+            planned(OPERATION.DROP_CONSTRAINT, constraintName, () -> DefaultDatabase.this.dropConstraint(constraintName));
+        }
+
+        @Override
+        public void addIndex(Index index) {
+            planned(OPERATION.ADD_INDEX, index, () -> DefaultDatabase.this.addIndex(index));
+        }
+
+        @Override
+        public void dropIndex(String indexName) {
+            planned(OPERATION.DROP_INDEX, indexName, () -> DefaultDatabase.this.dropIndex(indexName));
+        }
+
+        @Override
+        public void dropIndexConcurrently(String indexName) {
+            planned(OPERATION.DROP_INDEX, indexName, () -> DefaultDatabase.this.dropIndexConcurrently(indexName));
+        }
+
+        @Override
+        public void changeType() {
+            planned(OPERATION.CHANGE_TYPE, currentColumn, DefaultDatabase.this::changeType);
+        }
+
+        @Override
+        public void setDefault() {
+            planned(OPERATION.SET_DEFAULT, currentColumn, DefaultDatabase.this::setDefault);
+        }
+
+        @Override
+        public void rename() {
+            planned(OPERATION.RENAME, currentColumn, DefaultDatabase.this::rename);
+        }
+
+        @Override
+        public void setNull() {
+            planned(OPERATION.SET_NULL, currentColumn, DefaultDatabase.this::setNull);
+        }
+
+        @Override
+        public void setNotNull() {
+            planned(OPERATION.SET_NOT_NULL, currentColumn, DefaultDatabase.this::setNotNull);
+        }
+
+        private void planned(OPERATION operation, Object operand, Runnable action) {
+
+            OPERATION previousOperation = plannedOperation;
+            Object previousOperand = plannedOperand;
+
+            plannedOperation = operation;
+            plannedOperand = operand;
+            try {
+                action.run();
+            } finally {
+                plannedOperation = previousOperation;
+                plannedOperand = previousOperand;
+            }
+        }
+    }
 }
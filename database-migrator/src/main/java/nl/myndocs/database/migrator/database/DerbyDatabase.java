@@ -1,7 +1,11 @@
 package nl.myndocs.database.migrator.database;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,8 +22,58 @@ public class DerbyDatabase extends DefaultDatabase {
         super(connection);
     }
 
+    public DerbyDatabase(Connection connection, Capabilities capabilities) {
+        super(connection, null, capabilities);
+    }
+
+    /**
+     * Derby has no session wide lock timeout, only the database wide and persistent derby.locks.waitTimeout property,
+     * which would change the timeout of all other sessions. Statements wait as long as the database is configured to.
+     * {@inheritDoc}
+     */
+    @Override
+    protected void applyLockTimeout(Statement statement, long millis) throws SQLException {
+        logger.warn("Derby has no session lock timeout, statements wait for derby.locks.waitTimeout instead of {} ms", millis);
+    }
+
+    /**
+     * Derby rolls back the whole transaction on lock timeout, so the savepoint is gone.
+     * Statements are retried only, if run with autocommit.
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isLockTimeout(SQLException e) {
+        return "40XL1".equals(e.getSQLState());
+    }
+
+    /**
+     * Statistics of all indexes of the table are rebuilt.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> analyzeSQL(ChangeSet changes, StatisticsPolicy policy) {
+        return changes.getTableNames().stream()
+                .map(tableName -> "CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS(CURRENT SCHEMA, '"
+                        + tableName.toUpperCase().replace("'", "''") + "', NULL)")
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     * Derby cannot change column types in place, so the values are always copied to a new column.
+     * The copy runs in primary key chunks, if the table has a single column key other than the column
+     * and the script is not transactional,
+     * otherwise in one statement within the script transaction.
+     */
     @Override
     public void changeType() {
+
+        if (strategyOf(getCurrentColumn()) == Column.STRATEGY.CHUNKED
+         || (!isTransactional() && findKeyColumn(getAlterTableName(), getAlterColumnName()) != null)) {
+            changeTypeChunked();
+            return;
+        }
+
         String[] alters = new String[]{
                 "ALTER TABLE %1$s ADD COLUMN %2$s_newtype %3$s",
                 "UPDATE %1$s SET %2$s_newtype = %2$s",
@@ -40,16 +94,12 @@ public class DerbyDatabase extends DefaultDatabase {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public void rename() {
-        executeInStatement(
-                String.format(
-                        "RENAME COLUMN %s.%s TO %s",
-                        getAlterTableName(),
-                        getAlterColumnName(),
-                        getCurrentColumn().getRename()
-                )
-        );
+    protected String renameColumnSQL(String tableName, String columnName, String rename) {
+        return String.format("RENAME COLUMN %s.%s TO %s", tableName, columnName, rename);
     }
 
     @Override
@@ -62,7 +112,9 @@ public class DerbyDatabase extends DefaultDatabase {
                 return super.getNativeColumnDefinition(column)
                         + " "
                         + (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement()
-                                ? "GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1)"
+                                ? "GENERATED " + (column.getIdentity() == Column.IDENTITY.BY_DEFAULT ? "BY DEFAULT" : "ALWAYS")
+                                    + " AS IDENTITY (START WITH 1, INCREMENT BY "
+                                    + (Objects.nonNull(column.getSequenceIncrement()) ? column.getSequenceIncrement() : 1) + ")"
                                 : "");
             case UUID:
                 logger.warn("UUID not supported, creating CHAR(36) instead");
@@ -1,18 +1,74 @@
 package nl.myndocs.database.migrator.database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
 import nl.myndocs.database.migrator.definition.Column;
 
 /**
  * Created by albert on 18-8-2017.
  */
 public class H2Database extends DefaultDatabase {
+
+    private Long previousLockTimeout;
+
     public H2Database(Connection connection) {
         super(connection);
     }
 
+    public H2Database(Connection connection, Capabilities capabilities) {
+        super(connection, null, capabilities);
+    }
+
+    /**
+     * LOCK_TIMEOUT is a session setting in millis. The previous value is restored afterwards.
+     * {@inheritDoc}
+     */
+    @Override
+    protected void applyLockTimeout(Statement statement, long millis) throws SQLException {
+
+        try (ResultSet rs = statement.executeQuery("CALL LOCK_TIMEOUT()")) {
+            previousLockTimeout = rs.next() ? rs.getLong(1) : null;
+        }
+
+        statement.execute("SET LOCK_TIMEOUT " + millis);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void resetLockTimeout(Statement statement) throws SQLException {
+        if (Objects.nonNull(previousLockTimeout)) {
+            statement.execute("SET LOCK_TIMEOUT " + previousLockTimeout);
+        }
+    }
+
+    /**
+     * LOCK_TIMEOUT_1
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isLockTimeout(SQLException e) {
+        return e.getErrorCode() == 50200;
+    }
+
+    /**
+     * DDL commits implicitly.
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsTransactionalDDL() {
+        return false;
+    }
+
     @Override
     protected String getNativeColumnDefinition(Column column) {
 
@@ -20,6 +76,10 @@ public class H2Database extends DefaultDatabase {
             case BIG_INTEGER:
             case SMALL_INTEGER:
             case INTEGER:
+                if (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement()) {
+                    warnIgnoredSequenceOptions(column);
+                }
+
                 return super.getNativeColumnDefinition(column)
                         + " "
                         + (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement() ? "AUTO_INCREMENT" : "");
@@ -31,4 +91,32 @@ public class H2Database extends DefaultDatabase {
 
         return super.getNativeColumnDefinition(column);
     }
+
+    /**
+     * Row count, as kept by H2 for the query planner.
+     * {@inheritDoc}
+     */
+    @Override
+    protected long estimateRowCount(String tableName) {
+
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "SELECT ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = SCHEMA() AND UPPER(TABLE_NAME) = UPPER(?)")) {
+
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1L;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+    }
+
+    /**
+     * H2 analyzes all tables of the database at once.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> analyzeSQL(ChangeSet changes, StatisticsPolicy policy) {
+        return Collections.singletonList("ANALYZE");
+    }
 }
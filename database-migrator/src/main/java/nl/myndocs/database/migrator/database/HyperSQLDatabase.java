@@ -1,11 +1,15 @@
 package nl.myndocs.database.migrator.database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
 import nl.myndocs.database.migrator.definition.Column;
 
 /**
@@ -17,6 +21,10 @@ public class HyperSQLDatabase extends DefaultDatabase {
         super(connection);
     }
 
+    public HyperSQLDatabase(Connection connection, Capabilities capabilities) {
+        super(connection, null, capabilities);
+    }
+
     @Override
     protected String getNativeColumnDefinition(Column column) {
 
@@ -24,6 +32,10 @@ public class HyperSQLDatabase extends DefaultDatabase {
             case BIG_INTEGER:
             case SMALL_INTEGER:
             case INTEGER:
+                if (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement()) {
+                    warnIgnoredSequenceOptions(column);
+                }
+
                 return super.getNativeColumnDefinition(column)
                         + " "
                         + (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement() ? "IDENTITY" : "");
@@ -38,4 +50,23 @@ public class HyperSQLDatabase extends DefaultDatabase {
 
         return super.getNativeColumnDefinition(column);
     }
+
+    /**
+     * Row count from the table statistics.
+     * {@inheritDoc}
+     */
+    @Override
+    protected long estimateRowCount(String tableName) {
+
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "SELECT CARDINALITY FROM INFORMATION_SCHEMA.SYSTEM_TABLESTATS WHERE TABLE_SCHEMA = CURRENT_SCHEMA AND UPPER(TABLE_NAME) = UPPER(?)")) {
+
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1L;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+    }
 }
@@ -0,0 +1,254 @@
+package nl.myndocs.database.migrator.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.definition.Backfill;
+
+/**
+ * @author Mikhail Mikhailov
+ * Runs an UPDATE over a table or copies its rows in chunks, ordered by a single column key.
+ * Every chunk is committed separately, so locks are held for one chunk at a time only.
+ */
+public class KeysetBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(KeysetBackfill.class);
+
+    private final DefaultDatabase database;
+    private final Connection connection;
+    private final String tableName;
+    private final String keyColumn;
+    private final Backfill options;
+
+    public KeysetBackfill(DefaultDatabase database, String tableName, String keyColumn, Backfill options) {
+        this(database, null, tableName, keyColumn, options);
+    }
+
+    /**
+     * Constructor for runs on a connection, other than the one of the database, i. e. in parallel with others.
+     * The listener of the options must then be thread safe.
+     * @param database the database
+     * @param connection the connection or null, to use the one of the database
+     * @param tableName the table
+     * @param keyColumn the key column
+     * @param options the options
+     */
+    public KeysetBackfill(DefaultDatabase database, Connection connection, String tableName, String keyColumn, Backfill options) {
+
+        Objects.requireNonNull(database, "database must not be null");
+        Objects.requireNonNull(tableName, "tableName must not be null");
+        Objects.requireNonNull(keyColumn, "keyColumn must not be null");
+
+        this.database = database;
+        this.connection = connection;
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.options = Objects.nonNull(options) ? options : Backfill.defaults();
+    }
+
+    /**
+     * Runs UPDATE table SET assignments WHERE key in (lower, upper] [AND condition] chunk by chunk.
+     * @param columnName the column being filled, for progress reporting
+     * @param assignments the SET clause
+     * @param condition optional additional condition or null
+     * @param startAfter the key to resume after or null, to start from the beginning
+     * @return the progress
+     */
+    public Backfill.Progress update(String columnName, String assignments, String condition, Object startAfter) {
+        return update(columnName, assignments, condition, startAfter, null);
+    }
+
+    /**
+     * Same as {@link #update(String, String, String, Object)}, but calls the checkpoint
+     * with the last key of each chunk before the chunk is committed.
+     * @param columnName the column being filled, for progress reporting
+     * @param assignments the SET clause
+     * @param condition optional additional condition or null
+     * @param startAfter the key to resume after or null, to start from the beginning
+     * @param checkpoint the checkpoint or null
+     * @return the progress
+     */
+    public Backfill.Progress update(String columnName, String assignments, String condition, Object startAfter,
+            Consumer<Object> checkpoint) {
+
+        String extra = Objects.nonNull(condition) ? " AND (" + condition + ")" : "";
+        String firstUpdateSQL = String.format("UPDATE %1$s SET %2$s WHERE %3$s <= ?%4$s",
+                tableName, assignments, keyColumn, extra);
+        String nextUpdateSQL = String.format("UPDATE %1$s SET %2$s WHERE %3$s > ? AND %3$s <= ?%4$s",
+                tableName, assignments, keyColumn, extra);
+
+        return run(columnName, null, Collections.singletonList(firstUpdateSQL), Collections.singletonList(nextUpdateSQL),
+                startAfter, checkpoint);
+    }
+
+    /**
+     * Runs INSERT INTO target SELECT * FROM table WHERE key in (lower, upper] [AND condition] chunk by chunk.
+     * Chunks are bounded by keys of matching rows only, so a condition on the key is cheap.
+     * @param target the target table
+     * @param condition optional condition or null
+     * @param startAfter the key to resume after or null, to start from the beginning
+     * @param checkpoint the checkpoint or null
+     * @return the progress
+     */
+    public Backfill.Progress copy(String target, String condition, Object startAfter, Consumer<Object> checkpoint) {
+        return run(null, condition, Collections.singletonList(copySQL(target, condition, false)),
+                Collections.singletonList(copySQL(target, condition, true)), startAfter, checkpoint);
+    }
+
+    /**
+     * Runs INSERT INTO target SELECT * FROM table WHERE key in (lower, upper] [AND condition] chunk by chunk
+     * for every target, reading each chunk once per target.
+     * @param targets target tables with their optional conditions in order
+     * @param startAfter the key to resume after or null, to start from the beginning
+     * @param checkpoint the checkpoint or null
+     * @return the progress
+     */
+    public Backfill.Progress copy(Map<String, String> targets, Object startAfter, Consumer<Object> checkpoint) {
+
+        List<String> firstCopySQL = new ArrayList<>(targets.size());
+        List<String> nextCopySQL = new ArrayList<>(targets.size());
+        targets.forEach((target, condition) -> {
+            firstCopySQL.add(copySQL(target, condition, false));
+            nextCopySQL.add(copySQL(target, condition, true));
+        });
+
+        return run(null, null, firstCopySQL, nextCopySQL, startAfter, checkpoint);
+    }
+
+    private String copySQL(String target, String condition, boolean next) {
+        return String.format("INSERT INTO %1$s SELECT * FROM %2$s WHERE %3$s%4$s <= ?%5$s",
+                target, tableName, next ? keyColumn + " > ? AND " : "", keyColumn,
+                Objects.nonNull(condition) ? " AND (" + condition + ")" : "");
+    }
+
+    private Backfill.Progress run(String columnName, String boundaryCondition, List<String> firstSQL, List<String> nextSQL,
+            Object startAfter, Consumer<Object> checkpoint) {
+
+        Backfill.Progress progress = new Backfill.Progress(tableName, columnName, database.estimateRowCount(tableName));
+        String extra = Objects.nonNull(boundaryCondition) ? "(" + boundaryCondition + ")" : null;
+
+        String firstBoundarySQL = database.limitSQL(String.format("SELECT %2$s FROM %1$s%3$s ORDER BY %2$s",
+                tableName, keyColumn, Objects.nonNull(extra) ? " WHERE " + extra : ""), options.getChunkSize());
+        String nextBoundarySQL = database.limitSQL(String.format("SELECT %2$s FROM %1$s WHERE %2$s > ?%3$s ORDER BY %2$s",
+                tableName, keyColumn, Objects.nonNull(extra) ? " AND " + extra : ""), options.getChunkSize());
+
+        // Planned only, the chunks are not run
+        if (Objects.nonNull(database.getPlan())) {
+            nextSQL.forEach(database::planStatement);
+            progress.complete();
+            return progress;
+        }
+
+        Connection connection = Objects.nonNull(this.connection) ? this.connection : database.getConnection();
+        Object lower = startAfter;
+        try {
+
+            while (true) {
+
+                Object upper = nextBoundary(connection, lower == null ? firstBoundarySQL : nextBoundarySQL, lower);
+                if (upper == null) {
+                    break;
+                }
+
+                int rows = 0;
+                for (String sql : lower == null ? firstSQL : nextSQL) {
+                    try (PreparedStatement ps = connection.prepareStatement(sql)) {
+
+                        if (lower == null) {
+                            ps.setObject(1, upper);
+                        } else {
+                            ps.setObject(1, lower);
+                            ps.setObject(2, upper);
+                        }
+
+                        rows += ps.executeUpdate();
+                    }
+                }
+
+                if (Objects.nonNull(checkpoint)) {
+                    checkpoint.accept(upper);
+                }
+
+                commit(connection);
+                lower = upper;
+
+                progress.advance(rows, upper);
+                report(progress);
+
+                if (progress.isAborted()) {
+                    throw new CouldNotProcessException("Backfill of [" + tableName + "] aborted after key [" + upper + "].");
+                }
+
+                pause();
+            }
+
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Backfill of [" + tableName + "] failed after key [" + lower + "].", e);
+        }
+
+        progress.complete();
+        report(progress);
+        return progress;
+    }
+
+    private void commit(Connection connection) throws SQLException {
+
+        if (Objects.isNull(this.connection)) {
+            database.commit();
+        } else if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    private Object nextBoundary(Connection connection, String sql, Object lower) throws SQLException {
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+
+            if (lower != null) {
+                ps.setObject(1, lower);
+            }
+
+            Object upper = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    upper = rs.getObject(1);
+                }
+            }
+
+            return upper;
+        }
+    }
+
+    private void report(Backfill.Progress progress) {
+
+        logger.debug("Backfill progress: {}", progress);
+        if (Objects.nonNull(options.getListener())) {
+            options.getListener().accept(progress);
+        }
+    }
+
+    private void pause() {
+
+        if (options.getPauseMillis() <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(options.getPauseMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CouldNotProcessException("Backfill of [" + tableName + "] interrupted.", e);
+        }
+    }
+}
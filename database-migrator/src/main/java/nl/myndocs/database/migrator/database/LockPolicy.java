@@ -0,0 +1,229 @@
+package nl.myndocs.database.migrator.database;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Bounds the time a statement waits for its locks. A statement, which cannot get its locks in time,
+ * is cancelled and retried after an exponentially growing, jittered pause, until the attempts
+ * or the time budget are exhausted. Queued DDL thus never blocks the traffic behind it for long.
+ */
+public class LockPolicy {
+
+    public static final long DEFAULT_LOCK_TIMEOUT = 2000L;
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+    public static final long DEFAULT_INITIAL_BACKOFF = 500L;
+    public static final long DEFAULT_MAX_BACKOFF = 30000L;
+    public static final long DEFAULT_BUDGET = 300000L;
+
+    /**
+     * Outcome of a single attempt.
+     */
+    public enum OUTCOME {
+        /**
+         * Locks acquired, the statement succeeded.
+         */
+        ACQUIRED,
+        /**
+         * Lock timeout, the statement will be retried.
+         */
+        TIMED_OUT,
+        /**
+         * Lock timeout, attempts or budget exhausted.
+         */
+        GAVE_UP
+    }
+
+    private final long lockTimeoutMillis;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long budgetMillis;
+    private final Consumer<Attempt> listener;
+
+    private LockPolicy(Builder builder) {
+
+        if (builder.lockTimeoutMillis <= 0) {
+            throw new InvalidSpecException("lockTimeout must be positive");
+        }
+
+        if (builder.maxAttempts <= 0) {
+            throw new InvalidSpecException("maxAttempts must be positive");
+        }
+
+        if (builder.initialBackoffMillis < 0 || builder.maxBackoffMillis < builder.initialBackoffMillis) {
+            throw new InvalidSpecException("backoff must not be negative and initial backoff must not exceed max backoff");
+        }
+
+        lockTimeoutMillis = builder.lockTimeoutMillis;
+        maxAttempts = builder.maxAttempts;
+        initialBackoffMillis = builder.initialBackoffMillis;
+        maxBackoffMillis = builder.maxBackoffMillis;
+        budgetMillis = builder.budgetMillis;
+        listener = builder.listener;
+    }
+
+    /**
+     * @return the lock timeout in millis
+     */
+    public long getLockTimeoutMillis() {
+        return lockTimeoutMillis;
+    }
+
+    /**
+     * @return the maxAttempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the total time in millis, a statement may spend on waiting and retrying
+     */
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * @return the listener or null
+     */
+    public Consumer<Attempt> getListener() {
+        return listener;
+    }
+
+    /**
+     * Pause before the next attempt: exponential growth, capped by the max backoff,
+     * with random jitter over the upper half, so that concurrent migrators do not retry in lockstep.
+     * @param attempt the number of the failed attempt, starting with 1
+     * @return pause in millis
+     */
+    public long backoff(int attempt) {
+
+        long base = initialBackoffMillis;
+        for (int i = 1; i < attempt && base < maxBackoffMillis; i++) {
+            base *= 2;
+        }
+
+        base = Math.min(base, maxBackoffMillis);
+        long half = base / 2;
+        return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+    }
+
+    public static class Builder {
+        private long lockTimeoutMillis = DEFAULT_LOCK_TIMEOUT;
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF;
+        private long maxBackoffMillis = DEFAULT_MAX_BACKOFF;
+        private long budgetMillis = DEFAULT_BUDGET;
+        private Consumer<Attempt> listener;
+
+        /**
+         * Max time to wait for locks per attempt.
+         * @param lockTimeoutMillis the timeout in millis
+         * @return self
+         */
+        public Builder lockTimeout(long lockTimeoutMillis) {
+            this.lockTimeoutMillis = lockTimeoutMillis;
+            return this;
+        }
+
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder backoff(long initialBackoffMillis, long maxBackoffMillis) {
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        /**
+         * Total time in millis, a statement may spend on waiting and retrying.
+         * @param budgetMillis the budget
+         * @return self
+         */
+        public Builder budget(long budgetMillis) {
+            this.budgetMillis = budgetMillis;
+            return this;
+        }
+
+        /**
+         * Called for every attempt.
+         * @param listener the listener
+         * @return self
+         */
+        public Builder listener(Consumer<Attempt> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public LockPolicy build() {
+            return new LockPolicy(this);
+        }
+    }
+
+    /**
+     * A single attempt to run a statement.
+     */
+    public static class Attempt {
+        private final String statement;
+        private final int attempt;
+        private final long elapsedMillis;
+        private final long backoffMillis;
+        private final OUTCOME outcome;
+        private final SQLException cause;
+
+        public Attempt(String statement, int attempt, long elapsedMillis, long backoffMillis, OUTCOME outcome, SQLException cause) {
+            this.statement = statement;
+            this.attempt = attempt;
+            this.elapsedMillis = elapsedMillis;
+            this.backoffMillis = backoffMillis;
+            this.outcome = outcome;
+            this.cause = cause;
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        /**
+         * @return millis since the first attempt started
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return pause before the next attempt or 0
+         */
+        public long getBackoffMillis() {
+            return backoffMillis;
+        }
+
+        public OUTCOME getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return the lock timeout error or null
+         */
+        public SQLException getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + statement + "] attempt " + attempt + " " + outcome + " after " + elapsedMillis + " ms"
+                    + (backoffMillis > 0 ? ", retrying in " + backoffMillis + " ms" : "");
+        }
+    }
+}
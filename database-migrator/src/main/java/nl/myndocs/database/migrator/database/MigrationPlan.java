@@ -0,0 +1,155 @@
+package nl.myndocs.database.migrator.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author Mikhail Mikhailov
+ * Statements, pending scripts would run, with the lock each of them takes, whether it scans
+ * or rewrites the table and the current size of the table, taken from the catalog.
+ * Built by {@link nl.myndocs.database.migrator.processor.Migrator#plan(nl.myndocs.database.migrator.MigrationScript...)}.
+ */
+public class MigrationPlan {
+
+    /**
+     * Work, a statement does on the existing rows of the table.
+     */
+    public enum IMPACT {
+        /**
+         * Catalog change only.
+         */
+        NONE,
+        /**
+         * Reads all rows (index build, constraint validation, chunked update).
+         */
+        SCAN,
+        /**
+         * Writes a new copy of the table and its indexes.
+         */
+        REWRITE,
+        /**
+         * Raw SQL or a statement, the dialect cannot classify.
+         */
+        UNKNOWN
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private String migrationId;
+
+    /**
+     * Marks the start of the next script.
+     * @param migrationId the script id
+     */
+    public void startScript(String migrationId) {
+        this.migrationId = migrationId;
+    }
+
+    /**
+     * Adds a statement of the current script.
+     * @param tableName the table or null, if not known
+     * @param statement the statement
+     * @param lockLevel the lock, taken by the statement, or null, if not known
+     * @param impact the impact
+     * @param estimatedRows estimated row count or -1
+     * @param estimatedBytes estimated size in bytes or -1
+     */
+    public void add(String tableName, String statement, String lockLevel, IMPACT impact, long estimatedRows, long estimatedBytes) {
+        entries.add(new Entry(migrationId, tableName, statement, lockLevel, impact, estimatedRows, estimatedBytes));
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return entries, rewriting a table
+     */
+    public List<Entry> getRewrites() {
+        return entries.stream()
+                .filter(entry -> entry.getImpact() == IMPACT.REWRITE)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return entries.stream()
+                .map(Entry::toString)
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
+
+    /**
+     * A single statement.
+     */
+    public static class Entry {
+        private final String migrationId;
+        private final String tableName;
+        private final String statement;
+        private final String lockLevel;
+        private final IMPACT impact;
+        private final long estimatedRows;
+        private final long estimatedBytes;
+
+        Entry(String migrationId, String tableName, String statement, String lockLevel, IMPACT impact,
+                long estimatedRows, long estimatedBytes) {
+            this.migrationId = migrationId;
+            this.tableName = tableName;
+            this.statement = statement;
+            this.lockLevel = lockLevel;
+            this.impact = impact;
+            this.estimatedRows = estimatedRows;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public String getMigrationId() {
+            return migrationId;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        /**
+         * @return the lock, as named by the server (i. e. ACCESS EXCLUSIVE or SHARED, COPY), or null
+         */
+        public String getLockLevel() {
+            return lockLevel;
+        }
+
+        public IMPACT getImpact() {
+            return impact;
+        }
+
+        /**
+         * @return estimated row count or -1
+         */
+        public long getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        /**
+         * @return estimated size in bytes or -1
+         */
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "[" + migrationId + "] " + (tableName != null ? tableName : "?")
+                    + " " + (lockLevel != null ? lockLevel : "UNKNOWN LOCK") + ", " + impact
+                    + ", rows: " + estimatedRows + ", bytes: " + estimatedBytes + ": " + statement;
+        }
+    }
+}
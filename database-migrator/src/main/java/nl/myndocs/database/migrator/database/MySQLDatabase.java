@@ -1,22 +1,49 @@
 package nl.myndocs.database.migrator.database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 import nl.myndocs.database.migrator.definition.Column;
+import nl.myndocs.database.migrator.definition.Constraint;
+import nl.myndocs.database.migrator.definition.ForeignKey;
+import nl.myndocs.database.migrator.definition.HashPartitionSpec;
+import nl.myndocs.database.migrator.definition.Index;
+import nl.myndocs.database.migrator.definition.ListPartitionSpec;
+import nl.myndocs.database.migrator.definition.Partition;
+import nl.myndocs.database.migrator.definition.PartitionSet;
+import nl.myndocs.database.migrator.definition.PartitionSpec;
+import nl.myndocs.database.migrator.definition.RangePartitionSpec;
+import nl.myndocs.database.migrator.definition.Table;
 
 /**
  * Created by albert on 18-8-2017.
  */
 public class MySQLDatabase extends DefaultDatabase {
     private static final Logger logger = LoggerFactory.getLogger(MySQLDatabase.class);
+    private static final Pattern MAXVALUE_BOUND
+        = Pattern.compile("MAXVALUE(\\s*,\\s*MAXVALUE)*", Pattern.CASE_INSENSITIVE);
     private final Connection connection;
 
     public MySQLDatabase(Connection connection) {
@@ -25,67 +52,796 @@ public class MySQLDatabase extends DefaultDatabase {
         this.connection = connection;
     }
 
+    public MySQLDatabase(Connection connection, Capabilities capabilities) {
+        super(connection, null, capabilities);
+
+        this.connection = connection;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String dropConstraintSQL(String tableName, String constraintName) {
+        // TODO Auto-generated method stub
+        return super.dropConstraintSQL(tableName, constraintName);
+    }
+    // TODO query MySQL information schema to find out,
+    // what kind of constraint is that due to idiotic MySQL dialect.
+    /*
+    @Override
+    public void dropForeignKey(String constraintName) {
+        String dropConstraintFormat = "ALTER TABLE %s DROP FOREIGN KEY %s";
+
+        String dropConstraintQuery = String.format(
+                dropConstraintFormat,
+                getAlterTableName(),
+                constraintName
+        );
+
+        executeInStatement(dropConstraintQuery);
+    }
+    */
+
+    @Override
+    protected String escapeString(String line) {
+        String escapedLine = line.replaceAll("\\\\", "\\\\\\\\");
+
+        return super.escapeString(escapedLine);
+    }
+
+    /**
+     * Metadata locks are bounded by lock_wait_timeout, which has a resolution of seconds.
+     * {@inheritDoc}
+     */
+    @Override
+    protected void applyLockTimeout(Statement statement, long millis) throws SQLException {
+        statement.execute("SET SESSION lock_wait_timeout = " + Math.max(1L, (millis + 999L) / 1000L));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void resetLockTimeout(Statement statement) throws SQLException {
+        statement.execute("SET SESSION lock_wait_timeout = DEFAULT");
+    }
+
+    /**
+     * ER_LOCK_WAIT_TIMEOUT
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isLockTimeout(SQLException e) {
+        return e.getErrorCode() == 1205;
+    }
+
+    /**
+     * DDL commits implicitly.
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsTransactionalDDL() {
+        return false;
+    }
+
+    /**
+     * Metadata lock holders come from performance_schema.metadata_locks, open transactions from
+     * information_schema.innodb_trx. Servers without the metadata lock instrumentation report open transactions only.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<Blocker> findBlockers(Collection<String> tableNames, PreflightPolicy policy) throws SQLException {
+
+        List<Blocker> blockers = new ArrayList<>();
+        Set<Long> sessions = new HashSet<>();
+
+        String placeholders = tableNames.stream().map(t -> "?").collect(Collectors.joining(", "));
+        try (PreparedStatement ps = getConnection().prepareStatement(findLockHoldersSQL(placeholders))) {
+
+            int i = 1;
+            for (String tableName : tableNames) {
+                ps.setString(i++, tableName.toLowerCase());
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long age = rs.getLong(5);
+                    if (age >= policy.getMaxLockHolderAgeMillis() && sessions.add(rs.getLong(1))) {
+                        blockers.add(new Blocker(rs.getLong(1), rs.getString(2), rs.getString(3),
+                                Blocker.KIND.LOCK_HOLDER, rs.getString(4), age, rs.getString(6)));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Metadata locks are not available, checking open transactions only: {}", e.getMessage());
+        }
+
+        try (Statement statement = getConnection().createStatement();
+             ResultSet rs = statement.executeQuery(findOpenTransactionsSQL())) {
+
+            while (rs.next()) {
+                long age = rs.getLong(4);
+                if (age >= policy.getMaxTransactionAgeMillis() && sessions.add(rs.getLong(1))) {
+                    String command = rs.getString(3);
+                    blockers.add(new Blocker(rs.getLong(1), rs.getString(2), command,
+                            "Sleep".equalsIgnoreCase(command) ? Blocker.KIND.IDLE_IN_TRANSACTION : Blocker.KIND.LONG_TRANSACTION,
+                            null, age, rs.getString(5)));
+                }
+            }
+        }
+
+        return blockers;
+    }
+
+    protected String findLockHoldersSQL(String placeholders) {
+        return "SELECT t.processlist_id, t.processlist_user, t.processlist_command, m.object_name, "
+             + "COALESCE(TIMESTAMPDIFF(MICROSECOND, x.trx_started, NOW(6)) DIV 1000, t.processlist_time * 1000), "
+             + "t.processlist_info "
+             + "FROM performance_schema.metadata_locks m "
+             + "JOIN performance_schema.threads t ON t.thread_id = m.owner_thread_id "
+             + "LEFT JOIN information_schema.innodb_trx x ON x.trx_mysql_thread_id = t.processlist_id "
+             + "WHERE m.object_type = 'TABLE' AND m.object_schema = DATABASE() AND m.lock_status = 'GRANTED' "
+             + "AND LOWER(m.object_name) IN (" + placeholders + ") AND t.processlist_id <> CONNECTION_ID()";
+    }
+
+    protected String findOpenTransactionsSQL() {
+        return "SELECT x.trx_mysql_thread_id, p.user, p.command, "
+             + "TIMESTAMPDIFF(MICROSECOND, x.trx_started, NOW(6)) DIV 1000, p.info "
+             + "FROM information_schema.innodb_trx x "
+             + "LEFT JOIN information_schema.processlist p ON p.id = x.trx_mysql_thread_id "
+             + "WHERE x.trx_mysql_thread_id <> CONNECTION_ID()";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String readSetting(String name, boolean global) throws SQLException {
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SHOW " + (global ? "GLOBAL" : "SESSION") + " VARIABLES LIKE ?")) {
+
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (name.equalsIgnoreCase(rs.getString(1))) {
+                        return rs.getString(2);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Numbers are passed as is, everything else as string, as numeric variables refuse strings.
+     * {@inheritDoc}
+     */
+    @Override
+    protected void writeSetting(String name, String value, boolean global) throws SQLException {
+
+        String literal = value.matches("-?\\d+") ? value : "'" + escapeString(value) + "'";
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET " + (global ? "GLOBAL " : "SESSION ") + name + " = " + literal);
+        }
+    }
+
+    /**
+     * In-place index builds do not block writes.
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsConcurrentIndex() {
+        return supports(Capabilities.FEATURE.ONLINE_DDL);
+    }
+
+    /**
+     * Histograms on new and changed columns are updated on MySQL 8.0+, if the policy asks for them.
+     * Columns, covered by a single column unique index, are reported and skipped by the server.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> analyzeSQL(ChangeSet changes, StatisticsPolicy policy) {
+
+        boolean histograms = policy.getHistogramBuckets() > 0
+                && !getCapabilities().isMariaDB()
+                && getCapabilities().isAtLeast(8, 0, 0);
+
+        List<String> statements = new ArrayList<>();
+        for (String tableName : changes.getTableNames()) {
+
+            statements.add("ANALYZE TABLE " + tableName);
+            if (histograms && !changes.getColumnNames(tableName).isEmpty()) {
+                statements.add("ANALYZE TABLE " + tableName + " UPDATE HISTOGRAM ON "
+                        + String.join(", ", changes.getColumnNames(tableName))
+                        + " WITH " + policy.getHistogramBuckets() + " BUCKETS");
+            }
+        }
+
+        return statements;
+    }
+
+    /**
+     * InnoDB has no prewarm for single indexes, so the new index is read in full by a forced index scan.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> prewarmSQL(ChangeSet changes) {
+
+        List<String> statements = new ArrayList<>();
+        changes.getTableNames().forEach(tableName -> changes.getIndexNames(tableName)
+                .forEach(indexName -> statements.add("SELECT COUNT(*) FROM " + tableName + " FORCE INDEX (" + indexName + ")")));
+
+        return statements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long estimateTableBytes(String tableName) {
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT DATA_LENGTH + INDEX_LENGTH FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1L;
+            }
+        } catch (SQLException sqlException) {
+            throw new CouldNotProcessException(sqlException);
+        }
+    }
+
+    /**
+     * Lock and algorithm, as requested by the statement, or as the server picks them without the clauses.
+     * All of them take an exclusive metadata lock for a moment at start and end.
+     * {@inheritDoc}
+     */
+    @Override
+    protected String planLockLevel(String sql) {
+
+        String statement = sql.trim().toUpperCase();
+        if (!isAlterStatement(statement)) {
+            return super.planLockLevel(sql);
+        }
+
+        switch (planAlgorithm(statement)) {
+        case "INSTANT":
+            return "NONE (INSTANT)";
+        case "INPLACE":
+            return "NONE (INPLACE)";
+        default:
+            return "SHARED (COPY)";
+        }
+    }
+
+    /**
+     * INSTANT changes touch the catalog only, INPLACE column changes and COPY rebuild the table.
+     * {@inheritDoc}
+     */
+    @Override
+    protected MigrationPlan.IMPACT planImpact(String sql) {
+
+        String statement = sql.trim().toUpperCase();
+        if (statement.startsWith("SET ")) {
+            return MigrationPlan.IMPACT.NONE;
+        }
+
+        if (!isAlterStatement(statement)) {
+            return super.planImpact(sql);
+        }
+
+        String algorithm = planAlgorithm(statement);
+        if ("INSTANT".equals(algorithm) || statement.startsWith("DROP INDEX") || statement.contains(" DROP INDEX ")
+         || statement.contains(" RENAME ") || statement.contains(" SET DEFAULT") || statement.contains(" DROP DEFAULT")) {
+            return MigrationPlan.IMPACT.NONE;
+        }
+
+        if (statement.contains(" FOREIGN KEY ")) {
+            return "COPY".equals(algorithm) ? MigrationPlan.IMPACT.REWRITE : MigrationPlan.IMPACT.NONE;
+        }
+
+        if (statement.contains(" COLUMN ") || statement.contains(" CHANGE ") || statement.contains(" PRIMARY KEY")
+         || "COPY".equals(algorithm)) {
+            return MigrationPlan.IMPACT.REWRITE;
+        }
+
+        return MigrationPlan.IMPACT.SCAN;
+    }
+
+    /**
+     * Foreign keys with deferred validation are added INPLACE with foreign_key_checks disabled.
+     * Other keys are classified by the algorithm of the statement.
+     * {@inheritDoc}
+     */
+    @Override
+    protected MigrationPlan.IMPACT planImpact(OPERATION operation, Object operand, String sql) {
+
+        if (operation == OPERATION.ADD_CONSTRAINT) {
+            Constraint constraint = (Constraint) operand;
+            return constraint.getType() == Constraint.TYPE.FOREIGN_KEY
+                && constraint.getForeignKey().getValidation() != ForeignKey.VALIDATION.IMMEDIATE
+                && Objects.nonNull(statementAction(sql))
+                    ? MigrationPlan.IMPACT.NONE
+                    : null;
+        }
+
+        return super.planImpact(operation, operand, sql);
+    }
+
+    /**
+     * Columns are dropped INSTANT from 8.0.29, the table is rebuilt otherwise.
+     * {@inheritDoc}
+     */
+    @Override
+    protected MigrationPlan.IMPACT dropColumnImpact(String sql) {
+        return "INSTANT".equals(planAlgorithm(sql.trim().toUpperCase()))
+                ? MigrationPlan.IMPACT.NONE
+                : MigrationPlan.IMPACT.REWRITE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsForeignKeyNotValid() {
+        return true;
+    }
+
+    private boolean isAlterStatement(String statement) {
+        return statement.startsWith("ALTER TABLE") || statement.startsWith("CREATE INDEX")
+            || statement.startsWith("CREATE UNIQUE INDEX") || statement.startsWith("DROP INDEX");
+    }
+
+    private String planAlgorithm(String statement) {
+
+        if (statement.contains("ALGORITHM=INSTANT")) {
+            return "INSTANT";
+        }
+
+        if (statement.contains("ALGORITHM=INPLACE")) {
+            return "INPLACE";
+        }
+
+        if (statement.contains("ALGORITHM=COPY") || statement.contains(" MODIFY ") || statement.contains(" CHANGE ")
+         || statement.contains(" FOREIGN KEY ")) {
+            return "COPY";
+        }
+
+        if (statement.contains(" ADD COLUMN ")) {
+            return supports(Capabilities.FEATURE.INSTANT_ADD_COLUMN) ? "INSTANT" : "INPLACE";
+        }
+
+        if (statement.contains(" DROP COLUMN ")) {
+            return supports(Capabilities.FEATURE.INSTANT_DROP_COLUMN) ? "INSTANT" : "INPLACE";
+        }
+
+        return "INPLACE";
+    }
+
+    /**
+     * Primary and unique keys, requested concurrently, are added with ALGORITHM=INPLACE, LOCK=NONE,
+     * which is the nearest MySQL has to building the index first.
+     */
+    @Override
+    protected void addConstraint(String tableName, Constraint constraint) {
+
+        if (Boolean.TRUE.equals(constraint.getConcurrently()) && supports(Capabilities.FEATURE.ONLINE_DDL)) {
+            String sql = addConstraintSQL(tableName, constraint);
+            executeWithFallback(sql + ", ALGORITHM=INPLACE, LOCK=NONE", sql);
+            return;
+        }
+
+        super.addConstraint(tableName, constraint);
+    }
+
+    /**
+     * Adds the key with foreign_key_checks disabled, which skips the check of existing rows
+     * and allows ALGORITHM=INPLACE. Checks are enabled again right after.
+     */
+    @Override
+    protected List<PendingValidation> addForeignKeyNotValid(String tableName, Constraint constraint) {
+
+        String sql = addConstraintSQL(tableName, constraint);
+
+        executeInStatement("SET foreign_key_checks = 0");
+        try {
+            if (supports(Capabilities.FEATURE.ONLINE_DDL)) {
+                executeWithFallback(sql + ", ALGORITHM=INPLACE", sql);
+            } else {
+                executeInStatement(sql);
+            }
+        } finally {
+            executeInStatement("SET foreign_key_checks = 1");
+        }
+
+        return Collections.singletonList(new PendingValidation(tableName, constraint));
+    }
+
+    /**
+     * MySQL has no validation statement, rows without a parent are searched instead.
+     * Only constraints added by this instance can be validated, MySQL does not track unchecked keys.
+     */
+    @Override
+    protected void validateConstraint(Connection connection, PendingValidation validation) throws SQLException {
+
+        Constraint constraint = validation.getConstraint();
+        if (Objects.isNull(constraint)) {
+            throw new CouldNotProcessException("Definition of [" + validation + "] is unknown.");
+        }
+
+        List<String> childColumns = new ArrayList<>(constraint.getColumnNames());
+        List<String> parentColumns = new ArrayList<>(constraint.getForeignKey().getForeignKeys());
+
+        List<String> notNull = new ArrayList<>();
+        List<String> join = new ArrayList<>();
+        for (int i = 0; i < childColumns.size(); i++) {
+            notNull.add("c." + childColumns.get(i) + " IS NOT NULL");
+            join.add("p." + parentColumns.get(i) + " = c." + childColumns.get(i));
+        }
+
+        String sql = String.format("SELECT 1 FROM %s c WHERE %s AND NOT EXISTS (SELECT 1 FROM %s p WHERE %s) LIMIT 1",
+                validation.getTableName(),
+                String.join(" AND ", notNull),
+                constraint.getForeignKey().getForeignTable(),
+                String.join(" AND ", join));
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+
+            if (rs.next()) {
+                throw new CouldNotProcessException("Rows of [" + validation.getTableName()
+                        + "] violate foreign key [" + validation.getConstraintName() + "].");
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addIndex(Index index) {
+
+        if (Objects.nonNull(index.getTablespace())) {
+            throw new InvalidSpecException("MySQL does not support tablespaces of indexes, ["
+                    + index.getIndexName() + "] cannot be created.");
+        }
+
+        String sql = addIndexSQL(getAlterTableName(), index.getIndexName(), index.getColumnNames(), index.getType());
+        if (isConcurrent(getAlterTableName(), index) && supports(Capabilities.FEATURE.ONLINE_DDL)) {
+            executeWithFallback(sql + " ALGORITHM=INPLACE LOCK=NONE", sql);
+        } else {
+            executeInStatement(sql);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dropIndexConcurrently(String indexName) {
+
+        String sql = String.format("ALTER TABLE %s DROP INDEX %s", getAlterTableName(), indexName);
+        if (supports(Capabilities.FEATURE.ONLINE_DDL)) {
+            executeWithFallback(sql + ", ALGORITHM=INPLACE, LOCK=NONE", sql);
+        } else {
+            executeInStatement(sql);
+        }
+    }
+
+    @Override
+    public void dropConstraint(String constraintName) {
+        String dropConstraintFormat = "ALTER TABLE %s DROP INDEX %s";
+
+        String dropConstraintQuery = String.format(
+                dropConstraintFormat,
+                getAlterTableName(),
+                constraintName
+        );
+
+        executeInStatement(dropConstraintQuery);
+    }
+
+    @Override
+    protected String changeTypeSQL(String tableName, Column column) {
+
+        String alterTypeFormat = "ALTER TABLE %s MODIFY COLUMN %s %s";
+        return String.format(
+                        alterTypeFormat,
+                        tableName,
+                        getAlterColumnName(),
+                        getNativeColumnDefinition(column)
+                );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void changeTypeOnline() {
+        changeTypeShadowed();
+    }
+
+    @Override
+    protected List<String> createShadowSyncSQL(String tableName, String columnName, String shadowName) {
+        return new ArrayList<>(Arrays.asList(
+                String.format("CREATE TRIGGER %1$s_ins BEFORE INSERT ON %2$s FOR EACH ROW SET NEW.%3$s = NEW.%4$s",
+                        shadowTriggerName(tableName, columnName), tableName, shadowName, columnName),
+                String.format("CREATE TRIGGER %1$s_upd BEFORE UPDATE ON %2$s FOR EACH ROW SET NEW.%3$s = NEW.%4$s",
+                        shadowTriggerName(tableName, columnName), tableName, shadowName, columnName)));
+    }
+
+    @Override
+    protected List<String> dropShadowSyncSQL(String tableName, String columnName, String shadowName) {
+        return new ArrayList<>(Arrays.asList(
+                String.format("DROP TRIGGER IF EXISTS %s_ins", shadowTriggerName(tableName, columnName)),
+                String.format("DROP TRIGGER IF EXISTS %s_upd", shadowTriggerName(tableName, columnName))));
+    }
+
+    /**
+     * Indexes of the column are built on the shadow column before the swap. The swap drops the triggers
+     * and swaps the columns in one ALTER statement while the table is write locked, so no write is missed in between.
+     * It moves NOT NULL, the default, ON UPDATE and the index names over; a primary key is dropped and added again,
+     * which rebuilds the table under the lock. AUTO_INCREMENT and generated columns, columns of foreign keys
+     * and of full text, spatial or functional indexes are refused.
+     * {@inheritDoc}
+     */
+    @Override
+    protected ShadowSwap loadShadowSwap(String tableName, String columnName, String shadowName, Column column) {
+
+        List<String> prepare = new ArrayList<>();
+        List<String> clauses = new ArrayList<>();
+        List<String> renames = new ArrayList<>();
+        StringBuilder definition = new StringBuilder(getNativeColumnDefinition(shadowColumn(column, shadowName)));
+        String refusal = "Column [" + tableName + "." + columnName + "] is %s, its type can not be changed online.";
+
+        try {
+
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT IS_NULLABLE, COLUMN_DEFAULT, EXTRA FROM information_schema.COLUMNS "
+                  + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+
+                ps.setString(1, tableName);
+                ps.setString(2, columnName);
+                try (ResultSet rs = ps.executeQuery()) {
+
+                    if (!rs.next()) {
+                        throw new InvalidSpecException("Column [" + tableName + "." + columnName + "] does not exist.");
+                    }
+
+                    String extra = Objects.toString(rs.getString(3), "").toUpperCase();
+                    if (extra.contains("AUTO_INCREMENT")) {
+                        // BEFORE INSERT triggers see 0 instead of the generated value
+                        throw new InvalidSpecException(String.format(refusal, "an AUTO_INCREMENT column"));
+                    } else if (extra.contains("GENERATED") && !extra.contains("DEFAULT_GENERATED")) {
+                        throw new InvalidSpecException(String.format(refusal, "a generated column"));
+                    }
+
+                    if ("NO".equals(rs.getString(1))) {
+                        definition.append(" NOT NULL");
+                    }
+
+                    String defaultValue = rs.getString(2);
+                    if (Objects.nonNull(defaultValue) && extra.contains("DEFAULT_GENERATED")) {
+                        definition.append(defaultValue.toUpperCase().startsWith("CURRENT_TIMESTAMP")
+                                ? " DEFAULT " + defaultValue
+                                : " DEFAULT (" + defaultValue + ")");
+                    } else if (Objects.nonNull(defaultValue)) {
+                        definition.append(" DEFAULT '").append(defaultValue.replace("'", "''")).append("'");
+                    }
+
+                    int onUpdate = extra.indexOf("ON UPDATE ");
+                    if (onUpdate >= 0) {
+                        definition.append(" ").append(extra.substring(onUpdate));
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT CONSTRAINT_NAME FROM information_schema.KEY_COLUMN_USAGE "
+                  + "WHERE TABLE_SCHEMA = DATABASE() AND REFERENCED_TABLE_NAME IS NOT NULL "
+                  + "AND ((TABLE_NAME = ? AND COLUMN_NAME = ?) "
+                  + "OR (REFERENCED_TABLE_SCHEMA = DATABASE() AND REFERENCED_TABLE_NAME = ? AND REFERENCED_COLUMN_NAME = ?))")) {
+
+                ps.setString(1, tableName);
+                ps.setString(2, columnName);
+                ps.setString(3, tableName);
+                ps.setString(4, columnName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        throw new InvalidSpecException(String.format(refusal, "used by foreign key " + rs.getString(1)));
+                    }
+                }
+            }
+
+            Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+            Set<String> uniqueIndexes = new HashSet<>();
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT INDEX_NAME, NON_UNIQUE, COLUMN_NAME, SUB_PART, INDEX_TYPE, COLLATION FROM information_schema.STATISTICS "
+                  + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME IN ("
+                  + "SELECT INDEX_NAME FROM information_schema.STATISTICS "
+                  + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?) "
+                  + "ORDER BY INDEX_NAME, SEQ_IN_INDEX")) {
+
+                ps.setString(1, tableName);
+                ps.setString(2, tableName);
+                ps.setString(3, columnName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+
+                        String indexName = rs.getString(1);
+                        if (Objects.isNull(rs.getString(3)) || !Arrays.asList("BTREE", "HASH").contains(rs.getString(5))) {
+                            throw new InvalidSpecException(String.format(refusal, "part of " + rs.getString(5) + " index " + indexName));
+                        }
+
+                        if (rs.getInt(2) == 0) {
+                            uniqueIndexes.add(indexName);
+                        }
+
+                        String part = columnName.equalsIgnoreCase(rs.getString(3)) ? shadowName : rs.getString(3);
+                        if (Objects.nonNull(rs.getObject(4))) {
+                            part += "(" + rs.getInt(4) + ")";
+                        }
+
+                        indexColumns.computeIfAbsent(indexName, name -> new ArrayList<>())
+                            .add("D".equals(rs.getString(6)) ? part + " DESC" : part);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, List<String>> index : indexColumns.entrySet()) {
+
+                String indexName = index.getKey();
+                if ("PRIMARY".equals(indexName)) {
+                    clauses.add("DROP PRIMARY KEY");
+                    renames.add(String.format("ADD PRIMARY KEY (%s)", String.join(", ", index.getValue())
+                            .replace(shadowName, columnName)));
+                    continue;
+                }
+
+                String shadowIndexName = shadowIndexName(indexName);
+                String sql = String.format("ALTER TABLE %s ADD %sINDEX %s (%s)", tableName,
+                        uniqueIndexes.contains(indexName) ? "UNIQUE " : "", shadowIndexName, String.join(", ", index.getValue()));
+                prepare.add(supports(Capabilities.FEATURE.ONLINE_DDL) ? sql + ", ALGORITHM=INPLACE, LOCK=NONE" : sql);
+                clauses.add("DROP INDEX " + indexName);
+                renames.add(String.format("RENAME INDEX %s TO %s", shadowIndexName, indexName));
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to read dependencies of column [" + tableName + "." + columnName + "].", e);
+        }
+
+        clauses.add("DROP COLUMN " + columnName);
+        clauses.add(String.format("CHANGE %s %s %s", shadowName, columnName, definition));
+        clauses.addAll(renames);
+
+        List<String> swap = dropShadowSyncSQL(tableName, columnName, shadowName);
+        swap.add(String.format("ALTER TABLE %s %s", tableName, String.join(", ", clauses)));
+        return new ShadowSwap(prepare, swap, new ArrayList<>());
+    }
+
+    /*
+     * The table is write locked, so no write is missed in between.
+     */
+    @Override
+    protected void swapShadow(String tableName, ShadowSwap swap) {
+
+        executeInStatement(String.format("LOCK TABLES %s WRITE", tableName));
+        try {
+            executeInStatement(swap.getSwapSQL());
+        } finally {
+            executeInStatement("UNLOCK TABLES");
+        }
+    }
+
+    private String shadowIndexName(String indexName) {
+        String name = indexName + "_shadow";
+        return name.length() > 64 ? indexName.substring(0, 57) + "_shadow" : name;
+    }
+
+    private String shadowTriggerName(String tableName, String columnName) {
+        return tableName + "_" + columnName + "_sync";
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    protected String dropConstraintSQL(String tableName, String constraintName) {
-        // TODO Auto-generated method stub
-        return super.dropConstraintSQL(tableName, constraintName);
-    }
-    // TODO query MySQL information schema to find out,
-    // what kind of constraint is that due to idiotic MySQL dialect.
-    /*
-    @Override
-    public void dropForeignKey(String constraintName) {
-        String dropConstraintFormat = "ALTER TABLE %s DROP FOREIGN KEY %s";
+    protected long estimateRowCount(String tableName) {
 
-        String dropConstraintQuery = String.format(
-                dropConstraintFormat,
-                getAlterTableName(),
-                constraintName
-        );
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
 
-        executeInStatement(dropConstraintQuery);
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1L;
+            }
+        } catch (SQLException sqlException) {
+            throw new CouldNotProcessException(sqlException);
+        }
     }
-    */
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    protected String escapeString(String line) {
-        String escapedLine = line.replaceAll("\\\\", "\\\\\\\\");
+    protected String limitSQL(String query, int rows) {
+        return query + " LIMIT " + rows;
+    }
 
-        return super.escapeString(escapedLine);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addColumn(Column column) {
+
+        if (isBatchedAddColumn(column)) {
+            addColumnBatched(column);
+            return;
+        }
+
+        String sql = addColumnSQL(getAlterTableName(), column);
+        if (supports(Capabilities.FEATURE.INSTANT_ADD_COLUMN)) {
+            executeWithFallback(sql + ", ALGORITHM=INSTANT", sql);
+        } else {
+            executeInStatement(sql);
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public void dropConstraint(String constraintName) {
-        String dropConstraintFormat = "ALTER TABLE %s DROP INDEX %s";
+    protected boolean supportsFastColumnDefault() {
+        return supports(Capabilities.FEATURE.INSTANT_ADD_COLUMN);
+    }
 
-        String dropConstraintQuery = String.format(
-                dropConstraintFormat,
-                getAlterTableName(),
-                constraintName
-        );
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setNotNullValidated(String tableName, Column column) {
 
-        executeInStatement(dropConstraintQuery);
+        String sql = String.format("ALTER TABLE %s MODIFY COLUMN %s", tableName, translateColumnOptions(column));
+        if (supports(Capabilities.FEATURE.ONLINE_DDL)) {
+            executeWithFallback(sql + ", ALGORITHM=INPLACE, LOCK=NONE", sql);
+        } else {
+            executeInStatement(sql);
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public void changeType() {
+    public void dropColumn(String columnName) {
 
-        String alterTypeFormat = "ALTER TABLE %s MODIFY COLUMN %s %s";
-        executeInStatement(
-                String.format(
-                        alterTypeFormat,
-                        getAlterTableName(),
-                        getAlterColumnName(),
-                        getNativeColumnDefinition(getCurrentColumn())
-                )
-        );
+        String sql = dropColumnSQL(getAlterTableName(), columnName);
+        if (supports(Capabilities.FEATURE.INSTANT_DROP_COLUMN)) {
+            executeWithFallback(sql + ", ALGORITHM=INSTANT", sql);
+        } else {
+            executeInStatement(sql);
+        }
     }
 
     @Override
     public void rename() {
+
+        if (supports(Capabilities.FEATURE.RENAME_COLUMN)) {
+
+            String sql = renameSQL(getAlterTableName(), getCurrentColumn().getRename());
+            if (supports(Capabilities.FEATURE.INSTANT_RENAME_COLUMN)) {
+                executeWithFallback(sql + ", ALGORITHM=INSTANT", sql);
+            } else {
+                executeInStatement(sql);
+            }
+
+            return;
+        }
+
+        // Pre 8.0 servers need the full column definition
         DatabaseColumn databaseColumn = loadDatabaseColumn(
                 getAlterTableName(),
                 getAlterColumnName()
@@ -104,6 +860,450 @@ public class MySQLDatabase extends DefaultDatabase {
         );
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String renameColumnSQL(String tableName, String columnName, String rename) {
+        return String.format("ALTER TABLE %s RENAME COLUMN %s TO %s",
+                tableName,
+                columnName,
+                rename);
+    }
+
+    /**
+     * Partitioned tables are created with all of their partitions in a single statement.
+     * RANGE sets become RANGE COLUMNS with the upper bounds as VALUES LESS THAN, so partitions must be given in ascending,
+     * gapless order (a lower bound is implied by the previous partition). The default partition becomes the MAXVALUE partition.
+     * LIST sets become LIST COLUMNS and cannot have a default partition. HASH sets become KEY partitions, which take keys of any type,
+     * in order of their remainders. Sub-partitions must be HASH partitions of the same key and size under every partition.
+     * Partitioned tables cannot be placed in general tablespaces.
+     * {@inheritDoc}
+     */
+    @Override
+    public void createTable(Table table, Collection<Column> columns) {
+
+        if (!table.isPartitioned()) {
+            super.createTable(table, columns);
+            return;
+        }
+
+        if (Objects.nonNull(table.getTablespace())) {
+            throw new InvalidSpecException("MySQL does not support tablespaces of partitioned tables, ["
+                    + table.getTableName() + "] cannot be created.");
+        }
+
+        currentTable = table;
+        alterMode = AlterMode.CREATE_TABLE;
+
+        executeInStatement(createTableSQL(table.getTableName(), columns) + partitionBySQL(table.getPartitions()));
+    }
+
+    /**
+     * General tablespaces hold tables only, not partitions or indexes.
+     * {@inheritDoc}
+     */
+    @Override
+    protected String tablespaceSQL(String tablespace) {
+        return Objects.isNull(tablespace) ? "" : " TABLESPACE " + tablespace;
+    }
+
+    protected String partitionBySQL(PartitionSet set) {
+
+        if (set.stream().anyMatch(Partition::isForeign)) {
+            throw new InvalidSpecException("MySQL does not support foreign partitions.");
+        }
+
+        String keyColumns = String.join(", ", set.getKeyColumns());
+        StringBuilder sb = new StringBuilder(" PARTITION BY ");
+        switch (set.getType()) {
+        case RANGE:
+            sb.append("RANGE COLUMNS(").append(keyColumns).append(")");
+            break;
+        case LIST:
+            sb.append("LIST COLUMNS(").append(keyColumns).append(")");
+            break;
+        default:
+            sb.append("KEY(").append(keyColumns).append(")");
+            break;
+        }
+
+        PartitionSet subPartitions = subPartitionsOf(set);
+        boolean isNamed = Objects.nonNull(subPartitions) && set.stream().allMatch(Partition::isSubPartitioned);
+        if (Objects.nonNull(subPartitions)) {
+
+            sb.append(" SUBPARTITION BY KEY(").append(String.join(", ", subPartitions.getKeyColumns())).append(")");
+            if (!isNamed) {
+                sb.append(" SUBPARTITIONS ").append(subPartitions.getSize());
+            }
+        }
+
+        return sb.append(" (")
+                 .append(orderedPartitions(set)
+                     .map(p -> partitionSQL(set, p, isNamed))
+                     .collect(Collectors.joining(", ")))
+                 .append(")")
+                 .toString();
+    }
+
+    /*
+     * MySQL sub-partitions RANGE and LIST partitions by HASH or KEY only,
+     * with the same number of sub-partitions under every partition.
+     */
+    private PartitionSet subPartitionsOf(PartitionSet set) {
+
+        List<PartitionSet> subPartitions = set.stream()
+                .filter(Partition::isSubPartitioned)
+                .map(Partition::getSubPartitions)
+                .collect(Collectors.toList());
+
+        if (subPartitions.isEmpty()) {
+            return null;
+        }
+
+        PartitionSet first = subPartitions.get(0);
+        if (set.getType() == PartitionSet.TYPE.HASH
+         || subPartitions.stream().anyMatch(s -> s.getType() != PartitionSet.TYPE.HASH
+                 || s.getSize() != first.getSize()
+                 || !new ArrayList<>(s.getKeyColumns()).equals(new ArrayList<>(first.getKeyColumns())))) {
+            throw new InvalidSpecException("MySQL sub-partitions RANGE and LIST partitions only, "
+                    + "by HASH partitions of the same key and size under every partition.");
+        }
+
+        return first;
+    }
+
+    /*
+     * HASH partitions in order of their remainders, the default partition last.
+     */
+    private Stream<Partition> orderedPartitions(PartitionSet set) {
+
+        if (set.getType() == PartitionSet.TYPE.HASH) {
+            return set.stream()
+                    .sorted(Comparator.comparingInt(p -> ((HashPartitionSpec) p.getPartitionSpec()).getRemainder()));
+        }
+
+        return Stream.concat(set.stream().filter(p -> !p.isDefault()), set.stream().filter(Partition::isDefault));
+    }
+
+    /**
+     * Partition definition.
+     * @param set the partitions
+     * @param partition the partition
+     * @param withSubPartitions add the sub-partition definitions
+     * @return SQL
+     */
+    protected String partitionSQL(PartitionSet set, Partition partition, boolean withSubPartitions) {
+
+        if (Objects.nonNull(partition.getTablespace())) {
+            throw new InvalidSpecException("MySQL does not support tablespaces of partitions, ["
+                    + partition.getPartitionName() + "] cannot be created.");
+        }
+
+        StringBuilder sb = new StringBuilder("PARTITION ").append(partition.getPartitionName());
+        switch (set.getType()) {
+        case RANGE:
+            sb.append(" VALUES LESS THAN (")
+              .append(partition.isDefault()
+                      ? set.getKeyColumns().stream().map(c -> "MAXVALUE").collect(Collectors.joining(", "))
+                      : String.join(", ", ((RangePartitionSpec) partition.getPartitionSpec()).getTo()))
+              .append(")");
+            break;
+        case LIST:
+            if (partition.isDefault()) {
+                throw new InvalidSpecException("MySQL does not support default LIST partitions, ["
+                        + partition.getPartitionName() + "] cannot be created.");
+            }
+
+            sb.append(" VALUES IN (")
+              .append(String.join(", ", ((ListPartitionSpec) partition.getPartitionSpec()).getValues()))
+              .append(")");
+            break;
+        default:
+            break;
+        }
+
+        if (withSubPartitions && partition.isSubPartitioned()) {
+            sb.append(" (")
+              .append(orderedPartitions(partition.getSubPartitions())
+                  .map(p -> "SUBPARTITION " + p.getPartitionName())
+                  .collect(Collectors.joining(", ")))
+              .append(")");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Partitions come from information_schema.PARTITIONS, sizes of sub-partitions are summed up.
+     * The MAXVALUE partition of a RANGE partitioned table is reported as default partition, since it takes
+     * every row above the other ones. Not partitioned tables, named like partitions and detached by the migrator,
+     * are reported as detached.
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PartitionInfo> loadPartitions(String tableName) {
+
+        List<PartitionInfo> result = new ArrayList<>();
+        try (PreparedStatement ps = getConnection().prepareStatement(loadPartitionsSQL())) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, escapeLike(tableName + "_p") + "%");
+            ps.setString(3, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+
+                String from = "MINVALUE";
+                while (rs.next()) {
+
+                    String method = rs.getString(3);
+                    String description = rs.getString(4);
+                    boolean isRange = Objects.nonNull(method) && method.startsWith("RANGE");
+                    boolean isList = Objects.nonNull(method) && method.startsWith("LIST");
+
+                    String bound = null;
+                    if (isRange) {
+                        bound = MAXVALUE_BOUND.matcher(description).matches() ? "DEFAULT" : "VALUES LESS THAN (" + description + ")";
+                    } else if (isList) {
+                        bound = "VALUES IN (" + description + ")";
+                    }
+
+                    result.add(new PartitionInfo(
+                            rs.getString(1),
+                            PartitionInfo.STATE.valueOf(rs.getString(2)),
+                            bound,
+                            isRange ? from : null,
+                            isRange ? description : null,
+                            rs.getLong(5),
+                            rs.getLong(6)));
+
+                    if (isRange) {
+                        from = description;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to load partitions of [" + tableName + "].", e);
+        }
+
+        return withMarkedDetached(result);
+    }
+
+    /**
+     * Partitions of the table in their order and not partitioned tables of the current database, named like them.
+     * @return SQL
+     */
+    protected String loadPartitionsSQL() {
+        return "SELECT p.PARTITION_NAME, 'ATTACHED', p.PARTITION_METHOD, p.PARTITION_DESCRIPTION, "
+             + "COALESCE(SUM(p.TABLE_ROWS), -1), COALESCE(SUM(p.DATA_LENGTH + p.INDEX_LENGTH), 0), p.PARTITION_ORDINAL_POSITION "
+             + "FROM information_schema.PARTITIONS p "
+             + "WHERE p.TABLE_SCHEMA = DATABASE() AND p.TABLE_NAME = ? AND p.PARTITION_NAME IS NOT NULL "
+             + "GROUP BY p.PARTITION_NAME, p.PARTITION_METHOD, p.PARTITION_DESCRIPTION, p.PARTITION_ORDINAL_POSITION "
+             + "UNION ALL "
+             + "SELECT t.TABLE_NAME, 'DETACHED', NULL, NULL, COALESCE(t.TABLE_ROWS, -1), "
+             + "COALESCE(t.DATA_LENGTH + t.INDEX_LENGTH, 0), NULL "
+             + "FROM information_schema.TABLES t "
+             + "WHERE t.TABLE_SCHEMA = DATABASE() AND t.TABLE_TYPE = 'BASE TABLE' AND t.TABLE_NAME LIKE ? "
+             + "AND COALESCE(t.CREATE_OPTIONS, '') NOT LIKE '%partitioned%' "
+             + "AND t.TABLE_NAME NOT IN (SELECT x.PARTITION_NAME FROM information_schema.PARTITIONS x "
+             + "WHERE x.TABLE_SCHEMA = DATABASE() AND x.TABLE_NAME = ? AND x.PARTITION_NAME IS NOT NULL) "
+             + "ORDER BY 2, 7, 1";
+    }
+
+    /**
+     * RANGE and LIST partitions are added with ALGORITHM=INPLACE, LOCK=NONE, without a copy of rows.
+     * A RANGE partition is split off the MAXVALUE partition by REORGANIZE PARTITION instead, which copies the rows
+     * of the MAXVALUE partition under a shared lock. HASH partitions are added under a shared lock, rows of all
+     * partitions are redistributed. RANGE partitions can be added above the highest one only.
+     * {@inheritDoc}
+     */
+    @Override
+    public void addPartition(String tableName, PartitionSet set, Partition partition) {
+
+        if (partition.isForeign()) {
+            throw new InvalidSpecException("MySQL does not support foreign partitions.");
+        }
+
+        if (set.getType() == PartitionSet.TYPE.RANGE && !partition.isDefault()) {
+
+            PartitionInfo maxValue = loadPartitions(tableName).stream()
+                    .filter(p -> p.getState() == PartitionInfo.STATE.ATTACHED && p.isDefault())
+                    .findFirst()
+                    .orElse(null);
+
+            if (Objects.nonNull(maxValue)) {
+                executeAlterPartitions(tableName, "SHARED", String.format("REORGANIZE PARTITION %s INTO (%s, %s)",
+                        maxValue.getPartitionName(),
+                        partitionSQL(set, partition, true),
+                        partitionSQL(set, new Partition.Builder()
+                                .setPartitionName(maxValue.getPartitionName())
+                                .setPartitionSpec(PartitionSpec.ofDefault())
+                                .build(), false)));
+                return;
+            }
+        }
+
+        executeAlterPartitions(tableName, set.getType() == PartitionSet.TYPE.HASH ? "SHARED" : "NONE",
+                "ADD PARTITION (" + partitionSQL(set, partition, true) + ")");
+    }
+
+    /**
+     * MySQL cannot detach partitions. Rows of the partition are exchanged with an empty table of the same name
+     * and the emptied partition is dropped. A table, left over by an interrupted run, is reused,
+     * if either it or the partition is empty. Sub-partitioned partitions cannot be exchanged.
+     * {@inheritDoc}
+     */
+    @Override
+    public void detachPartition(String tableName, String partitionName) {
+
+        try {
+
+            if (!hasTable(partitionName)) {
+                markDetached(partitionName);
+                executeInStatement(new String[] {
+                    String.format("CREATE TABLE %s LIKE %s", partitionName, tableName),
+                    String.format("ALTER TABLE %s REMOVE PARTITIONING", partitionName)
+                });
+            } else if (!isMarkedDetached(partitionName)) {
+                throw new InvalidSpecException("Table [" + partitionName + "] exists and was not detached by the migrator.");
+            }
+
+            if (queryFlag(String.format("SELECT EXISTS (SELECT 1 FROM %s PARTITION (%s))", tableName, partitionName))) {
+
+                if (queryFlag(String.format("SELECT EXISTS (SELECT 1 FROM %s)", partitionName))) {
+                    throw new CouldNotProcessException("Partition [" + partitionName + "] of [" + tableName
+                            + "] and the table [" + partitionName + "] both have rows.");
+                }
+
+                exchangePartition(tableName, partitionName, partitionName, false);
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to inspect partition [" + partitionName + "].", e);
+        }
+
+        dropPartition(tableName, partitionName);
+    }
+
+    private boolean queryFlag(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * The archive schema is a database in MySQL.
+     * {@inheritDoc}
+     */
+    @Override
+    public void retirePartition(String partitionName, String archiveSchema) {
+        retireMarkedDetached(partitionName, () -> {
+
+            if (Objects.isNull(archiveSchema)) {
+                executeInStatement(String.format("DROP TABLE IF EXISTS %s", partitionName));
+                return;
+            }
+
+            executeInStatement(String.format("CREATE DATABASE IF NOT EXISTS %s", archiveSchema));
+            if (hasTable(partitionName)) {
+                executeInStatement(String.format("RENAME TABLE %s TO %s.%s", partitionName, archiveSchema, partitionName));
+            }
+        });
+    }
+
+    /**
+     * Dropped with ALGORITHM=INPLACE, LOCK=NONE together with its rows. RANGE and LIST partitions only,
+     * MySQL can merely coalesce HASH partitions.
+     * {@inheritDoc}
+     */
+    @Override
+    public void dropPartition(String tableName, String partitionName) {
+        executeAlterPartitions(tableName, "NONE", "DROP PARTITION " + partitionName);
+    }
+
+    /**
+     * Rows of the replaced partitions are copied with ALGORITHM=INPLACE under a shared lock.
+     * {@inheritDoc}
+     */
+    @Override
+    public void reorganizePartitions(String tableName, Collection<String> partitionNames, PartitionSet set) {
+
+        if (partitionNames.isEmpty()) {
+            throw new InvalidSpecException("No partitions of [" + tableName + "] to reorganize.");
+        }
+
+        if (set.stream().anyMatch(Partition::isForeign)) {
+            throw new InvalidSpecException("MySQL does not support foreign partitions.");
+        }
+
+        executeAlterPartitions(tableName, "SHARED", String.format("REORGANIZE PARTITION %s INTO (%s)",
+                String.join(", ", partitionNames),
+                orderedPartitions(set)
+                    .map(p -> partitionSQL(set, p, true))
+                    .collect(Collectors.joining(", "))));
+    }
+
+    /**
+     * The exchange swaps table spaces and takes no ALGORITHM clause. Without validation rows of the table
+     * are not scanned, which is up to the caller then.
+     * {@inheritDoc}
+     */
+    @Override
+    public void exchangePartition(String tableName, String partitionName, String otherTableName, boolean validate) {
+        executeInStatement(String.format("ALTER TABLE %s EXCHANGE PARTITION %s WITH TABLE %s%s",
+                tableName, partitionName, otherTableName, validate ? "" : " WITHOUT VALIDATION"));
+    }
+
+    /*
+     * Partition changes take ALGORITHM and LOCK ahead of the change. Servers, which refuse them, pick their own.
+     */
+    private void executeAlterPartitions(String tableName, String lock, String change) {
+
+        String sql = String.format("ALTER TABLE %s %s", tableName, change);
+        if (supports(Capabilities.FEATURE.ONLINE_DDL)) {
+            executeWithFallback(String.format("ALTER TABLE %s ALGORITHM=INPLACE, LOCK=%s, %s", tableName, lock, change), sql);
+        } else {
+            executeInStatement(sql);
+        }
+    }
+
+    /*
+     * INSTANT is refused for some table layouts (i. e. FULLTEXT indexes or
+     * too many row versions), in which case the server decides on the algorithm.
+     * Only a refused algorithm or lock falls back, other errors, lock wait timeouts included, are thrown.
+     * Statements with LOCK=NONE fail instead, the fallback may lock the table for the whole change.
+     */
+    private void executeWithFallback(String preferred, String fallback) {
+        try {
+            executeInStatement(preferred);
+        } catch (CouldNotProcessException e) {
+
+            if (!isAlterOperationNotSupported(e)) {
+                throw e;
+            }
+
+            if (preferred.contains("LOCK=NONE")) {
+                throw new CouldNotProcessException("Statement [" + preferred
+                        + "] cannot run without locking the table.", e.getCause());
+            }
+
+            logger.warn("Statement [{}] refused, falling back to [{}]: {}", preferred, fallback, e.getMessage());
+            executeInStatement(fallback);
+        }
+    }
+
+    /*
+     * ER_ALTER_OPERATION_NOT_SUPPORTED and ER_ALTER_OPERATION_NOT_SUPPORTED_REASON.
+     */
+    private static boolean isAlterOperationNotSupported(CouldNotProcessException e) {
+
+        if (!(e.getCause() instanceof SQLException)) {
+            return false;
+        }
+
+        int errorCode = ((SQLException) e.getCause()).getErrorCode();
+        return errorCode == 1845 || errorCode == 1846;
+    }
+
     private DatabaseColumn loadDatabaseColumn(String tableName, String columnName) {
         try (Statement statement = connection.createStatement()) {
 
@@ -141,6 +1341,10 @@ public class MySQLDatabase extends DefaultDatabase {
             case BIG_INTEGER:
             case SMALL_INTEGER:
             case INTEGER:
+                if (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement()) {
+                    warnIgnoredSequenceOptions(column);
+                }
+
                 return super.getNativeColumnDefinition(column)
                         + " "
                         + (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement() ? "AUTO_INCREMENT" : "");
@@ -0,0 +1,136 @@
+package nl.myndocs.database.migrator.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Runs independent statements (i. e. one per partition) on separate connections, taken from a data source.
+ * Without a data source, or with parallelism of 1, the items are processed one by one on the given connection.
+ * All items are processed, failures are collected and reported at the end.
+ */
+public class ParallelRunner {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelRunner.class);
+
+    /**
+     * Work on a single item.
+     * @param <T> the item type
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        void run(Connection connection, T item) throws SQLException;
+    }
+
+    private final DataSource dataSource;
+    private final Connection connection;
+    private final int parallelism;
+
+    /**
+     * Constructor.
+     * @param dataSource the data source or null
+     * @param connection the connection to use, if run sequentially
+     * @param parallelism max number of concurrent connections
+     */
+    public ParallelRunner(DataSource dataSource, Connection connection, int parallelism) {
+
+        Objects.requireNonNull(connection, "connection must not be null");
+
+        this.dataSource = dataSource;
+        this.connection = connection;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Runs the task for every item. Every item is committed separately.
+     * @param items the items
+     * @param task the task
+     * @param <T> the item type
+     */
+    public <T> void run(Collection<T> items, Task<T> task) {
+
+        if (items.isEmpty()) {
+            return;
+        }
+
+        List<String> failures = new ArrayList<>();
+        Throwable cause = null;
+
+        if (Objects.isNull(dataSource) || parallelism == 1 || items.size() == 1) {
+
+            for (T item : items) {
+                try {
+                    task.run(connection, item);
+                    if (!connection.getAutoCommit()) {
+                        connection.commit();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    rollback();
+                    failures.add(item + ": " + e.getMessage());
+                    cause = Objects.isNull(cause) ? e : cause;
+                }
+            }
+        } else {
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, items.size()));
+            try {
+
+                List<Future<?>> futures = new ArrayList<>();
+                for (T item : items) {
+                    futures.add(executor.submit(() -> {
+                        try (Connection c = dataSource.getConnection()) {
+                            c.setAutoCommit(true);
+                            task.run(c, item);
+                        } catch (SQLException e) {
+                            throw new CouldNotProcessException(item + ": " + e.getMessage(), e);
+                        }
+                    }));
+                }
+
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        // Errors of a task (i. e. AssertionError) are kept as they are
+                        failures.add(e.getCause().getMessage());
+                        cause = Objects.isNull(cause) ? e.getCause() : cause;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CouldNotProcessException("Interrupted while waiting for parallel statements.", e);
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            logger.warn("{} of {} items failed: {}", failures.size(), items.size(), failures);
+            throw new CouldNotProcessException(failures.size() + " of " + items.size() + " items failed: " + failures, cause);
+        }
+    }
+
+    private void rollback() {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            logger.warn("Rollback failed.", e);
+        }
+    }
+}
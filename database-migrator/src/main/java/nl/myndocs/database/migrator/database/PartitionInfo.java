@@ -0,0 +1,133 @@
+package nl.myndocs.database.migrator.database;
+
+/**
+ * @author Mikhail Mikhailov
+ * A partition of a table, as found in the catalog, with its bounds and size.
+ */
+public class PartitionInfo {
+
+    /**
+     * Attachment state.
+     */
+    public enum STATE {
+        /**
+         * Attached to the partitioned table.
+         */
+        ATTACHED,
+        /**
+         * Concurrent detach was interrupted, the detach must be finalized.
+         */
+        DETACH_PENDING,
+        /**
+         * A table, named like a partition of the table, but not attached (left over by an earlier run).
+         */
+        DETACHED
+    }
+
+    private final String partitionName;
+    private final STATE state;
+    private final String bound;
+    private final String from;
+    private final String to;
+    private final long estimatedRows;
+    private final long bytes;
+    private final String tablespace;
+
+    /**
+     * Constructor.
+     * @param partitionName the partition name
+     * @param state the state
+     * @param bound the bound, as printed by the server (i. e. FOR VALUES FROM ('2024-01-01') TO ('2024-01-02')), or null
+     * @param from lower range bound literal (MINVALUE included) or null, if not a range partition
+     * @param to upper range bound literal (MAXVALUE included) or null, if not a range partition
+     * @param estimatedRows estimated row count or -1
+     * @param bytes size with indexes and toast in bytes
+     */
+    public PartitionInfo(String partitionName, STATE state, String bound, String from, String to, long estimatedRows, long bytes) {
+        this(partitionName, state, bound, from, to, estimatedRows, bytes, null);
+    }
+
+    /**
+     * Constructor.
+     * @param partitionName the partition name
+     * @param state the state
+     * @param bound the bound, as printed by the server, or null
+     * @param from lower range bound literal (MINVALUE included) or null, if not a range partition
+     * @param to upper range bound literal (MAXVALUE included) or null, if not a range partition
+     * @param estimatedRows estimated row count or -1
+     * @param bytes size with indexes and toast in bytes
+     * @param tablespace the tablespace or null for the default one
+     */
+    public PartitionInfo(String partitionName, STATE state, String bound, String from, String to, long estimatedRows, long bytes,
+            String tablespace) {
+        this.partitionName = partitionName;
+        this.state = state;
+        this.bound = bound;
+        this.from = from;
+        this.to = to;
+        this.estimatedRows = estimatedRows;
+        this.bytes = bytes;
+        this.tablespace = tablespace;
+    }
+
+    public String getPartitionName() {
+        return partitionName;
+    }
+
+    public STATE getState() {
+        return state;
+    }
+
+    public String getBound() {
+        return bound;
+    }
+
+    /**
+     * @return true, if this is the default partition
+     */
+    public boolean isDefault() {
+        return "DEFAULT".equalsIgnoreCase(bound);
+    }
+
+    /**
+     * @return lower range bound literal or null
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * @return upper range bound literal or null
+     */
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * @return estimated row count or -1
+     */
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the tablespace or null for the default one
+     */
+    public String getTablespace() {
+        return tablespace;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return partitionName + " (" + state + ") " + (bound != null ? bound : "no bound")
+                + ", rows: " + estimatedRows + ", bytes: " + bytes
+                + (tablespace != null ? ", tablespace: " + tablespace : "");
+    }
+}
@@ -0,0 +1,133 @@
+package nl.myndocs.database.migrator.database;
+
+import java.util.Objects;
+
+import nl.myndocs.database.migrator.definition.Constraint;
+import nl.myndocs.database.migrator.definition.ForeignKey;
+
+/**
+ * @author Mikhail Mikhailov
+ * A constraint, added without checking existing rows, which awaits validation.
+ */
+public class PendingValidation {
+
+    private final String tableName;
+    private final String constraintName;
+    private final Constraint constraint;
+    private final String parentTableName;
+
+    /**
+     * Constructor.
+     * @param tableName the table (or partition) name
+     * @param constraint the constraint definition
+     */
+    public PendingValidation(String tableName, Constraint constraint) {
+        this(tableName, constraint.getConstraintName(), constraint, null);
+    }
+
+    /**
+     * Constructor for constraints, found in the catalog.
+     * @param tableName the table (or partition) name
+     * @param constraintName the constraint name
+     */
+    public PendingValidation(String tableName, String constraintName) {
+        this(tableName, constraintName, null, null);
+    }
+
+    /**
+     * Constructor for the constraint of a partition, which is added to the partitioned table,
+     * once all partitions are validated.
+     * @param partitionName the partition name
+     * @param parentTableName the partitioned table name
+     * @param constraint the constraint definition
+     */
+    public PendingValidation(String partitionName, String parentTableName, Constraint constraint) {
+        this(partitionName, constraint.getConstraintName(), constraint, parentTableName);
+    }
+
+    /**
+     * Constructor for the constraint of a partition, found in the catalog, which is missing on the partitioned table.
+     * @param partitionName the partition name
+     * @param parentTableName the partitioned table name
+     * @param constraintName the constraint name
+     */
+    public PendingValidation(String partitionName, String parentTableName, String constraintName) {
+        this(partitionName, constraintName, null, parentTableName);
+    }
+
+    private PendingValidation(String tableName, String constraintName, Constraint constraint, String parentTableName) {
+
+        Objects.requireNonNull(tableName, "tableName must not be null");
+        Objects.requireNonNull(constraintName, "constraintName must not be null");
+
+        this.tableName = tableName;
+        this.constraintName = constraintName;
+        this.constraint = constraint;
+        this.parentTableName = parentTableName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getConstraintName() {
+        return constraintName;
+    }
+
+    /**
+     * @return the constraint definition or null, if the constraint was found in the catalog
+     */
+    public Constraint getConstraint() {
+        return constraint;
+    }
+
+    /**
+     * @return the partitioned table, the constraint is added to once all its partitions are validated, or null
+     */
+    public String getParentTableName() {
+        return parentTableName;
+    }
+
+    /**
+     * @return true, if validation is left to the maintenance phase
+     */
+    public boolean isDeferred() {
+        return Objects.isNull(constraint)
+            || constraint.getForeignKey().getValidation() == ForeignKey.VALIDATION.DEFERRED;
+    }
+
+    /**
+     * Same constraint on the same table, names compared ignoring case as the catalogs may fold them.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof PendingValidation)) {
+            return false;
+        }
+
+        PendingValidation other = (PendingValidation) obj;
+        return tableName.equalsIgnoreCase(other.tableName) && constraintName.equalsIgnoreCase(other.constraintName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(tableName.toLowerCase(), constraintName.toLowerCase());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return tableName + "." + constraintName;
+    }
+}
@@ -1,18 +1,32 @@
 package nl.myndocs.database.migrator.database;
 
+import java.sql.Array;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+import nl.myndocs.database.migrator.definition.Backfill;
 import nl.myndocs.database.migrator.definition.Column;
 import nl.myndocs.database.migrator.definition.Constraint;
 import nl.myndocs.database.migrator.definition.Constraint.TYPE;
@@ -28,11 +42,65 @@ import nl.myndocs.database.migrator.definition.Table;
  * Created by albert on 18-8-2017.
  */
 public class PostgresDatabase extends DefaultDatabase {
+    private static final Logger logger = LoggerFactory.getLogger(PostgresDatabase.class);
 
     private static final String DEFAULT_POSTGRES_SCHEMA_NAME = "public";
 
+    /**
+     * Types, whose typmod may grow (or be dropped) without a table rewrite.
+     */
+    private static final List<String> WIDENING_TYPES
+        = Arrays.asList("varchar", "varbit", "numeric", "time", "timetz", "timestamp", "timestamptz");
+    /**
+     * Pairs of binary coercible types, the conversion between them is a catalog update only.
+     */
+    private static final List<String> BINARY_COERCIBLE_TYPES
+        = Arrays.asList("varchar:text", "text:varchar", "cidr:inet", "xml:text");
+    /**
+     * Time zone names, equal to UTC. With them timestamp and timestamptz share the binary representation.
+     */
+    private static final List<String> UTC_ZONES
+        = Arrays.asList("UTC", "Etc/UTC", "UCT", "Etc/UCT", "GMT", "Etc/GMT", "Universal", "Etc/Universal", "Zulu", "Etc/Zulu");
+
+    private static final String ACCESS_EXCLUSIVE = "ACCESS EXCLUSIVE";
+    private static final String SHARE_UPDATE_EXCLUSIVE = "SHARE UPDATE EXCLUSIVE";
+    private static final Pattern PLANNED_TYPE_CHANGE
+        = Pattern.compile("ALTER COLUMN\\s+(\\S+)\\s+TYPE\\s", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PLANNED_ATTACH
+        = Pattern.compile("\\sATTACH PARTITION\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RANGE_BOUND
+        = Pattern.compile("FOR VALUES FROM \\((.*)\\) TO \\((.*)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HASH_BOUND
+        = Pattern.compile("FOR VALUES WITH \\(modulus (\\d+), remainder (\\d+)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PLANNED_SET_NOT_NULL
+        = Pattern.compile("ALTER COLUMN\\s+(\\S+)\\s+SET NOT NULL", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Cost of a column type change, as classified from the live catalog.
+     */
+    public enum TYPE_CHANGE {
+        /**
+         * The column already has the requested type.
+         */
+        NONE,
+        /**
+         * Catalog update only, i. e. widening a varchar or varchar to text.
+         */
+        METADATA_ONLY,
+        /**
+         * The table is scanned or its indexes rebuilt, but the heap is not rewritten.
+         */
+        REVALIDATE,
+        /**
+         * The table and its indexes are rewritten under ACCESS EXCLUSIVE lock.
+         */
+        REWRITE
+    }
+
     private String initialSchema;
 
+    private RewritePolicy rewritePolicy;
+
     public PostgresDatabase(Connection connection, String schema) {
         super(connection, schema);
     }
@@ -41,9 +109,14 @@ public class PostgresDatabase extends DefaultDatabase {
         super(connection);
     }
 
+    public PostgresDatabase(Connection connection, String schema, Capabilities capabilities) {
+        super(connection, schema, capabilities);
+    }
+
     @Override
     public void init() {
 
+        super.init();
         String selectedSchema = schema != null ? schema : DEFAULT_POSTGRES_SCHEMA_NAME;
         String currentSchema = this.initialSchema = null;
 
@@ -78,6 +151,55 @@ public class PostgresDatabase extends DefaultDatabase {
         if (Objects.nonNull(initialSchema)) {
             executeInStatement(String.format("SET SEARCH_PATH = %s", initialSchema));
         }
+
+        super.finish();
+    }
+
+    /**
+     * PostgreSQL has no server wide settings, which could be changed from a session.
+     * {@inheritDoc}
+     */
+    @Override
+    protected String readSetting(String name, boolean global) throws SQLException {
+
+        if (global) {
+            logger.warn("Global setting {} is not supported, use session settings", name);
+            return null;
+        }
+
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "SELECT current_setting(name) FROM pg_settings WHERE name = lower(?)")) {
+
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void writeSetting(String name, String value, boolean global) throws SQLException {
+        try (PreparedStatement ps = getConnection().prepareStatement("SELECT set_config(?, ?, false)")) {
+            ps.setString(1, name);
+            ps.setString(2, value);
+            ps.executeQuery().close();
+        }
+    }
+
+    /**
+     * The partition constraint of a hash partition.
+     * @param parentOid oid of the partitioned table
+     * @param modulus the modulus
+     * @param remainder the remainder
+     * @param keyColumns the key columns
+     * @return expression
+     */
+    protected String hashBoundCheckExpression(String parentOid, int modulus, int remainder, Collection<String> keyColumns) {
+        return String.format("satisfies_hash_partition(%s::oid, %d, %d, %s)",
+                parentOid, modulus, remainder, String.join(", ", keyColumns));
     }
 
     /**
@@ -86,304 +208,2576 @@ public class PostgresDatabase extends DefaultDatabase {
     @Override
     public void updateTable(Table table) {
 
-        if (!table.isPartitioned()) {
+        if (!detachesPartitions(table)) {
             super.updateTable(table);
             return;
         }
 
         currentTable = table;
+        prevalidateBounds(table.getTableName(), table.getPartitions(), table.getPartitions().getPartitions());
         executeInStatement(updateTablePartitionedSQL(table));
     }
 
-    protected List<String> updateTablePartitionedSQL(Table table) {
-        return table.getPartitionStream()
-                .map(p -> String.format("ALTER TABLE %s DETACH PARTITION %s", table.getTableName(), p.getPartitionName()))
-                .collect(Collectors.toList());
+    /**
+     * Adds a NOT VALID check, implying the bounds, to every given partition, commits and validates the checks
+     * in parallel under SHARE UPDATE EXCLUSIVE lock. ATTACH PARTITION then skips the scan of the partition.
+     * The checks are dropped by {@link #attachPartitionSQL(String, PartitionSet, Partition)}.
+     * Transactional scripts do not commit in between, their ATTACH scans the partitions.
+     * @param tableName the partitioned table
+     * @param set the partitions
+     * @param partitions the partitions to attach
+     */
+    protected void prevalidateBounds(String tableName, PartitionSet set, Collection<Partition> partitions) {
+
+        if (!commitsInSteps()) {
+            logger.info("Bounds of partitions of {} are not checked in advance in a transactional script, ATTACH will scan them",
+                    tableName);
+            return;
+        }
+
+        List<String> checks = new ArrayList<>();
+        List<String> validations = new ArrayList<>();
+        for (Partition partition : partitions) {
+
+            if (partition.isForeign() || partition.isSubPartitioned()) {
+                continue;
+            }
+
+            String expression = boundCheckExpression(tableName, set, partition);
+            if (Objects.isNull(expression)) {
+                logger.info("Bounds of partition {} cannot be checked in advance, ATTACH will scan it",
+                        partition.getPartitionName());
+                continue;
+            }
+
+            String checkName = boundCheckName(partition.getPartitionName());
+            checks.add(dropConstraintIfExistsSQL(partition.getPartitionName(), checkName));
+            checks.add(String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s) NOT VALID",
+                    partition.getPartitionName(), checkName, expression));
+            validations.add(String.format("ALTER TABLE %s VALIDATE CONSTRAINT %s",
+                    partition.getPartitionName(), checkName));
+        }
+
+        if (checks.isEmpty()) {
+            return;
+        }
+
+        executeInStatement(checks);
+        commit();
+
+        logger.info("Validating bounds of {} partitions of {}", validations.size(), tableName);
+        executeInParallel(validations);
+    }
+
+    /*
+     * Partition steps commit in non transactional scripts and in auto commit mode (partition maintenance) only.
+     */
+    private boolean commitsInSteps() {
+        try {
+            return !isTransactional() || getConnection().getAutoCommit();
+        } catch (SQLException e) {
+            throw new CouldNotProcessException(e);
+        }
+    }
+
+    /**
+     * CHECK expression, which the server recognizes as implying the partition constraint.
+     * Hash bounds and single column range and list bounds only.
+     * @param tableName the partitioned table
+     * @param set the partitions
+     * @param partition the partition
+     * @return expression or null
+     */
+    protected String boundCheckExpression(String tableName, PartitionSet set, Partition partition) {
+
+        if (set.getType() == PartitionSet.TYPE.HASH && !partition.isDefault()) {
+            try {
+                List<String> oid = queryStrings("SELECT to_regclass(?)::oid::text", tableName);
+                return oid.isEmpty() || Objects.isNull(oid.get(0))
+                        ? null
+                        : hashBoundCheckExpression(oid.get(0), set.getSize(),
+                                ((HashPartitionSpec) partition.getPartitionSpec()).getRemainder(), set.getKeyColumns());
+            } catch (SQLException e) {
+                throw new CouldNotProcessException(e);
+            }
+        }
+
+        if (set.getKeyColumns().size() != 1 || partition.isDefault()) {
+            return null;
+        }
+
+        String key = set.getKeyColumns().iterator().next();
+        switch (set.getType()) {
+            case RANGE:
+                RangePartitionSpec rs = (RangePartitionSpec) partition.getPartitionSpec();
+                if (rs.getFrom().length != 1 || rs.getTo().length != 1) {
+                    return null;
+                }
+
+                StringBuilder b = new StringBuilder(key).append(" IS NOT NULL");
+                if (!"MINVALUE".equalsIgnoreCase(rs.getFrom()[0].trim())) {
+                    b.append(" AND ").append(key).append(" >= ").append(rs.getFrom()[0]);
+                }
+                if (!"MAXVALUE".equalsIgnoreCase(rs.getTo()[0].trim())) {
+                    b.append(" AND ").append(key).append(" < ").append(rs.getTo()[0]);
+                }
+
+                return b.toString();
+            case LIST:
+                ListPartitionSpec ls = (ListPartitionSpec) partition.getPartitionSpec();
+                List<String> values = Arrays.stream(ls.getValues())
+                        .filter(v -> !"NULL".equalsIgnoreCase(v.trim()))
+                        .collect(Collectors.toList());
+
+                if (values.size() == ls.getValues().length) {
+                    return key + " IS NOT NULL AND " + key + " IN (" + String.join(",", values) + ")";
+                }
+
+                return values.isEmpty()
+                        ? key + " IS NULL"
+                        : "(" + key + " IS NULL OR " + key + " IN (" + String.join(",", values) + "))";
+            default:
+                return null;
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void finishTable(Table table) {
+    public List<PartitionInfo> loadPartitions(String tableName) {
+
+        List<PartitionInfo> result = new ArrayList<>();
+        try (PreparedStatement ps = getConnection().prepareStatement(loadPartitionsSQL())) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, escapeLike(tableName + "_p") + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+
+                    String bound = rs.getString(3);
+                    Matcher range = Objects.nonNull(bound) ? RANGE_BOUND.matcher(bound) : null;
+                    boolean isRange = Objects.nonNull(range) && range.matches();
+
+                    result.add(new PartitionInfo(
+                            rs.getString(1),
+                            PartitionInfo.STATE.valueOf(rs.getString(2)),
+                            bound,
+                            isRange ? range.group(1) : null,
+                            isRange ? range.group(2) : null,
+                            rs.getLong(4),
+                            rs.getLong(5),
+                            rs.getString(6)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to load partitions of [" + tableName + "].", e);
+        }
 
-        if (!table.isPartitioned()) {
-            super.finishTable(table);
+        return withMarkedDetached(result);
+    }
+
+    /**
+     * Partitions of the table and not attached tables of the current schema, named like them.
+     * Tables, not detached by the migrator, are filtered afterwards.
+     * @return SQL
+     */
+    protected String loadPartitionsSQL() {
+        String pending = supports(Capabilities.FEATURE.DETACH_CONCURRENTLY) ? "i.inhdetachpending" : "false";
+        return "WITH parent AS (SELECT to_regclass(?) AS oid) "
+             + "SELECT c.relname, CASE WHEN " + pending + " THEN 'DETACH_PENDING' ELSE 'ATTACHED' END, "
+             + "pg_get_expr(c.relpartbound, c.oid), c.reltuples::bigint, pg_total_relation_size(c.oid), t.spcname "
+             + "FROM parent JOIN pg_inherits i ON i.inhparent = parent.oid JOIN pg_class c ON c.oid = i.inhrelid "
+             + "LEFT JOIN pg_tablespace t ON t.oid = c.reltablespace "
+             + "UNION ALL "
+             + "SELECT c.relname, 'DETACHED', NULL, c.reltuples::bigint, pg_total_relation_size(c.oid), t.spcname "
+             + "FROM pg_class c LEFT JOIN pg_tablespace t ON t.oid = c.reltablespace "
+             + "WHERE c.relkind = 'r' AND NOT c.relispartition AND c.relname LIKE ? "
+             + "AND c.relnamespace = current_schema()::regnamespace "
+             + "AND NOT EXISTS (SELECT 1 FROM pg_inherits i WHERE i.inhrelid = c.oid) "
+             + "ORDER BY 1";
+    }
+
+    /**
+     * From 12 on, an empty table is created and attached, which takes SHARE UPDATE EXCLUSIVE lock
+     * on the partitioned table only. CREATE TABLE ... PARTITION OF would take ACCESS EXCLUSIVE lock.
+     * A default partition is scanned for rows of the new partition either way.
+     * Sub-partitions are created with the partition, before it is attached. The bounds of an existing table,
+     * i. e. one loaded in advance, are validated before it is attached
+     * (see {@link #prevalidateBounds(String, PartitionSet, Collection)}).
+     * {@inheritDoc}
+     */
+    @Override
+    public void addPartition(String tableName, PartitionSet set, Partition partition) {
+
+        if (partition.isForeign() || !supports(Capabilities.FEATURE.SHARE_LOCK_ATTACH)) {
+            executeInStatement(createPartitionTreeSQL(tableName, set, partition).collect(Collectors.toList()));
             return;
         }
 
-        executeInStatement(finishTablePartitionedSQL(table));
+        boolean preloaded = hasTable(partition.getPartitionName());
+        PartitionSet subPartitions = partition.getSubPartitions();
+        executeInStatement(String.format(
+                "CREATE TABLE IF NOT EXISTS %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING STORAGE)%s%s",
+                partition.getPartitionName(), tableName, partition.isSubPartitioned() ? partitionBySQL(subPartitions) : "",
+                tablespaceSQL(partition.getTablespace())));
+
+        if (partition.isSubPartitioned()) {
+            executeInChunks(subPartitions.stream()
+                .flatMap(p -> createPartitionTreeSQL(partition.getPartitionName(), subPartitions, p)));
+        }
+
+        if (preloaded) {
+            prevalidateBounds(tableName, set, Collections.singletonList(partition));
+        }
+
+        executeInStatement(attachPartitionSQL(tableName, set, partition));
     }
 
-    protected List<String> finishTablePartitionedSQL(Table table) {
-        return table.getPartitionStream()
-                .map(p -> String.format("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES %s",
-                        table.getTableName(),
-                        p.getPartitionName(),
-                        createPartitionSpecSQL(table.getPartitions(), p)))
-                .collect(Collectors.toList());
+    /**
+     * Detaches concurrently from 14 on, if run with autocommit and the table has no default partition.
+     * Otherwise the detach takes ACCESS EXCLUSIVE lock on the partitioned table, which a lock policy should bound.
+     * {@inheritDoc}
+     */
+    @Override
+    public void detachPartition(String tableName, String partitionName) {
+
+        markDetached(partitionName);
+
+        boolean concurrently;
+        try {
+
+            if (supports(Capabilities.FEATURE.DETACH_CONCURRENTLY)
+             && queryFlag("SELECT inhdetachpending FROM pg_inherits WHERE inhrelid = to_regclass(?)", partitionName)) {
+                logger.info("Finalizing interrupted detach of {} from {}", partitionName, tableName);
+                executeInStatement(String.format("ALTER TABLE %s DETACH PARTITION %s FINALIZE", tableName, partitionName));
+                return;
+            }
+
+            concurrently = supports(Capabilities.FEATURE.DETACH_CONCURRENTLY)
+                    && getConnection().getAutoCommit()
+                    && !queryFlag("SELECT partdefid <> 0 FROM pg_partitioned_table WHERE partrelid = to_regclass(?)", tableName);
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to inspect partition [" + partitionName + "].", e);
+        }
+
+        if (!concurrently) {
+            logger.warn("Detaching {} from {} under ACCESS EXCLUSIVE lock", partitionName, tableName);
+        }
+
+        executeInStatement(String.format("ALTER TABLE %s DETACH PARTITION %s%s",
+                tableName, partitionName, concurrently ? " CONCURRENTLY" : ""));
+    }
+
+    private boolean queryFlag(String sql, String... parameters) throws SQLException {
+        try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
+
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setString(i + 1, parameters[i]);
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void createTable(Table table, Collection<Column> columns) {
+    public void retirePartition(String partitionName, String archiveSchema) {
+        retireMarkedDetached(partitionName, () -> {
 
-        if (!table.isPartitioned()) {
-            super.createTable(table, columns);
-        } else {
+            if (Objects.isNull(archiveSchema)) {
+                executeInStatement(String.format("DROP TABLE IF EXISTS %s", partitionName));
+                return;
+            }
 
-            currentTable = table;
-            alterMode = AlterMode.CREATE_TABLE;
+            executeInStatement(new String[] {
+                String.format("CREATE SCHEMA IF NOT EXISTS %s", archiveSchema),
+                String.format("ALTER TABLE IF EXISTS %s SET SCHEMA %s", partitionName, archiveSchema)
+            });
+        });
+    }
 
-            PartitionSet set = table.getPartitions();
-            List<String> statements = new ArrayList<>((set.getSize() * 2) + 1);
+    /**
+     * Every partition is split on its own in four steps:
+     * <ol>
+     * <li>The new partitions are created as plain tables with a check, implying their bounds.
+     * A trigger on the partition logs keys of changed rows.</li>
+     * <li>Rows are copied in chunks, each chunk in its own transaction.</li>
+     * <li>Rows of logged keys are copied again, until the log is almost empty.</li>
+     * <li>Under ACCESS EXCLUSIVE lock on the partitioned table, the rest of the log is applied,
+     * the partition is detached and dropped and the new partitions are attached without a scan.</li>
+     * </ol>
+     * Left overs of an interrupted split are dropped and the partition is split from the start.
+     * Tables, referenced by foreign keys, cannot be split, because their partitions cannot be detached.
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Backfill.Progress> splitHashPartitions(String tableName, String keyColumn, int factor, Backfill options) {
 
-            // 1. Create parent table
-            statements.add(createTablePartitionedSQL(table.getTableName(), columns, set));
+        if (factor < 2) {
+            throw new InvalidSpecException("factor must be at least 2");
+        }
 
-            // 2. Create children, but do not attach
-            set.getPartitions().stream()
-                .map(p -> createPartitionTablesSQL(table.getTableName(), set, p))
-                .collect(Collectors.toCollection(() -> statements));
+        List<Backfill.Progress> result = new ArrayList<>();
+        try {
 
-            // 3. Create sequences if needed
-            Collection<Column> aiColumns = table.getNewColumns().stream()
-                    .filter(c -> c.getAutoIncrement() != null && c.getAutoIncrement())
-                    .collect(Collectors.toList());
+            List<String> partitionKey = queryStrings(hashKeyColumnsSQL(), tableName);
+            if (partitionKey.isEmpty() || partitionKey.contains(null)) {
+                throw new InvalidSpecException("[" + tableName + "] is not hash partitioned by columns.");
+            }
+
+            if (queryFlag("SELECT EXISTS (SELECT 1 FROM pg_constraint WHERE contype = 'f' AND confrelid = to_regclass(?))", tableName)) {
+                throw new InvalidSpecException("[" + tableName + "] is referenced by foreign keys.");
+            }
+
+            String parentOid = queryStrings("SELECT to_regclass(?)::oid::text", tableName).get(0);
+            String keyType = keyType(tableName, keyColumn);
+
+            for (PartitionInfo partition : loadPartitions(tableName)) {
+
+                Matcher hash = Objects.nonNull(partition.getBound()) ? HASH_BOUND.matcher(partition.getBound()) : null;
+                if (partition.getState() != PartitionInfo.STATE.ATTACHED || Objects.isNull(hash) || !hash.matches()) {
+                    continue;
+                }
+
+                int modulus = Integer.parseInt(hash.group(1));
+                int remainder = Integer.parseInt(hash.group(2));
+
+                Map<String, String> children = new LinkedHashMap<>();
+                for (int i = 0; i < factor; i++) {
+                    children.put(partition.getPartitionName() + "_s" + i,
+                            hashBoundCheckExpression(parentOid, modulus * factor, remainder + (i * modulus), partitionKey));
+                }
 
-            if (!aiColumns.isEmpty()) {
-                set.getPartitions().stream()
-                    .filter(p -> !p.isForeign())
-                    .map(p -> createSequenceSpecSQL(p.getPartitionName(), aiColumns))
-                    .flatMap(Collection::stream)
-                    .collect(Collectors.toCollection(() -> statements));
+                result.add(splitHashPartition(tableName, partition.getPartitionName(), modulus, remainder,
+                        children, keyColumn, keyType, Objects.nonNull(options) ? options : Backfill.defaults()));
             }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to split partitions of [" + tableName + "].", e);
+        }
+
+        return result;
+    }
+
+    private Backfill.Progress splitHashPartition(String tableName, String partitionName, int modulus, int remainder,
+            Map<String, String> children, String keyColumn, String keyType, Backfill options) throws SQLException {
+
+        String logName = partitionName + "_split_log";
+        List<String> cleanup = dropChangeLogSQL(partitionName, logName);
+        children.keySet().forEach(child -> cleanup.add(String.format("DROP TABLE IF EXISTS %s", child)));
+
+        try {
+
+            logger.info("Splitting {} of {} into {} partitions", partitionName, tableName, children.size());
+
+            // 1. New partitions and change log
+            List<String> statements = new ArrayList<>(cleanup);
+            children.forEach((child, condition) -> {
+                statements.add(String.format("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING STORAGE INCLUDING INDEXES)",
+                        child, tableName));
+                statements.add(String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s)", child, boundCheckName(child), condition));
+            });
+            statements.addAll(createChangeLogSQL(partitionName, logName, keyColumn));
+            executeInStatement(statements);
+            commit();
+
+            // 2. Copy
+            Backfill.Progress progress = new KeysetBackfill(this, partitionName, keyColumn, options).copy(children, null, null);
 
-            // 4. Immediately detach
-            statements.addAll(updateTablePartitionedSQL(table));
+            // 3. Catch up with changes, made during the copy
+            catchUpChangeLog(partitionName, logName, children, keyColumn, keyType, options.getChunkSize());
+
+            // 4. Swap
+            executeInStatement(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", tableName));
+            drainChangeLog(partitionName, logName, children, keyColumn, keyType, options.getChunkSize());
+
+            statements.clear();
+            statements.addAll(dropChangeLogSQL(partitionName, logName));
+            statements.add(String.format("ALTER TABLE %s DETACH PARTITION %s", tableName, partitionName));
+            statements.add(String.format("DROP TABLE %s", partitionName));
+
+            int i = 0;
+            for (String child : children.keySet()) {
+
+                int childRemainder = remainder + (i++ * modulus);
+                String childName = tableName + "_h" + childRemainder;
+
+                statements.add(String.format("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES WITH (MODULUS %d, REMAINDER %d)",
+                        tableName, child, modulus * children.size(), childRemainder));
+                statements.add(dropConstraintIfExistsSQL(child, boundCheckName(child)));
+                if (partitionName.equalsIgnoreCase(childName) || !hasTable(childName)) {
+                    statements.add(String.format("ALTER TABLE %s RENAME TO %s", child, childName));
+                }
+            }
 
             executeInStatement(statements);
+            commit();
+
+            logger.info("Split {} of {}: {}", partitionName, tableName, progress);
+            return progress;
+        } catch (RuntimeException | SQLException e) {
+
+            rollback();
+            executeInStatement(cleanup);
+            commit();
+            throw e;
         }
     }
 
-    protected String createTablePartitionedSQL(String tableName, Collection<Column> columns, PartitionSet set) {
-        String commonSQL = super.createTableSQL(tableName, columns);
-        StringBuilder b = new StringBuilder(commonSQL)
-                .append(" PARTITION BY ");
+    /**
+     * The partition is moved in four steps, much like a hash partition is split:
+     * <ol>
+     * <li>The copy [partition]_moved is created like the partition in the tablespace, with its indexes and a check,
+     * implying the partition constraint. A trigger on the partition logs keys of changed rows.</li>
+     * <li>Rows are copied in chunks, each chunk in its own transaction.</li>
+     * <li>Rows of logged keys are copied again, until the log is almost empty.</li>
+     * <li>Under ACCESS EXCLUSIVE lock on the partitioned table, the rest of the log is applied, the partition is detached
+     * and dropped, and the copy takes the names of the partition and its indexes and is attached without a scan.</li>
+     * </ol>
+     * ALTER TABLE ... SET TABLESPACE would hold ACCESS EXCLUSIVE lock on the partition, while all of it is rewritten.
+     * Left overs of an interrupted move are dropped and the partition is moved from the start.
+     * Sub-partitioned partitions must be moved leaf by leaf. Tables, referenced by foreign keys, are not supported.
+     * {@inheritDoc}
+     */
+    @Override
+    public Backfill.Progress movePartition(String tableName, String partitionName, String tablespace, String keyColumn, Backfill options) {
 
-        switch (set.getType()) {
-        case HASH:
-            b.append("HASH");
-            break;
-        case LIST:
-            b.append("LIST");
-            break;
-        case RANGE:
-            b.append("RANGE");
-            break;
-        default:
-            break;
+        Backfill backfill = Objects.nonNull(options) ? options : Backfill.defaults();
+        String newName = partitionName + "_moved";
+        String oldName = partitionName + "_unmoved";
+        String logName = partitionName + "_move_log";
+
+        List<String> cleanup = dropChangeLogSQL(partitionName, logName);
+        cleanup.add(String.format("DROP TABLE IF EXISTS %s", newName));
+
+        try {
+
+            if (!queryFlag("SELECT relkind = 'r' AND relispartition FROM pg_class WHERE oid = to_regclass(?)", partitionName)) {
+                throw new InvalidSpecException("[" + partitionName + "] is not a partition or has sub-partitions.");
+            }
+
+            if (queryFlag("SELECT bool_and(t.spcname = ?) FROM pg_class c "
+                        + "JOIN pg_tablespace t ON t.oid = COALESCE(NULLIF(c.reltablespace, 0), "
+                        + "(SELECT dattablespace FROM pg_database WHERE datname = current_database())) "
+                        + "WHERE c.oid = to_regclass(?) OR c.oid IN (SELECT indexrelid FROM pg_index WHERE indrelid = to_regclass(?))",
+                        tablespace, partitionName, partitionName)) {
+                logger.debug("{} is in {} already", partitionName, tablespace);
+                return null;
+            }
+
+            if (queryFlag("SELECT EXISTS (SELECT 1 FROM pg_constraint WHERE contype = 'f' AND confrelid = to_regclass(?))", tableName)) {
+                throw new InvalidSpecException("[" + tableName + "] is referenced by foreign keys.");
+            }
+
+            String keyType = keyType(partitionName, keyColumn);
+            String bound = queryStrings("SELECT pg_get_expr(relpartbound, oid) FROM pg_class WHERE oid = to_regclass(?)", partitionName).get(0);
+            String condition = queryStrings("SELECT pg_get_partition_constraintdef(to_regclass(?))", partitionName).get(0);
+            try {
+
+                logger.info("Moving {} of {} to {}", partitionName, tableName, tablespace);
+
+                // 1. Copy in the tablespace and change log
+                List<String> statements = new ArrayList<>(cleanup);
+                statements.add(String.format("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING STORAGE INCLUDING INDEXES)%s",
+                        newName, partitionName, tablespaceSQL(tablespace)));
+                if (Objects.nonNull(condition)) {
+                    statements.add(String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s)", newName, boundCheckName(newName), condition));
+                }
+
+                executeInStatement(statements);
+                executeInStatement(queryStrings("SELECT format('ALTER INDEX %s SET TABLESPACE %s', indexrelid::regclass, ?::text) "
+                        + "FROM pg_index WHERE indrelid = to_regclass(?)", tablespace, newName));
+                executeInStatement(createChangeLogSQL(partitionName, logName, keyColumn));
+                commit();
+
+                // 2. Copy
+                Backfill.Progress progress = new KeysetBackfill(this, partitionName, keyColumn, backfill).copy(newName, null, null, null);
+
+                // 3. Catch up with changes, made during the copy
+                Map<String, String> targets = Collections.singletonMap(newName, null);
+                catchUpChangeLog(partitionName, logName, targets, keyColumn, keyType, backfill.getChunkSize());
+
+                // 4. Swap
+                executeInStatement(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", tableName));
+                drainChangeLog(partitionName, logName, targets, keyColumn, keyType, backfill.getChunkSize());
+
+                statements.clear();
+                statements.addAll(dropChangeLogSQL(partitionName, logName));
+                statements.add(String.format("ALTER TABLE %s DETACH PARTITION %s", tableName, partitionName));
+                statements.addAll(swapTablesSQL(partitionName, newName, oldName));
+                statements.add(String.format("DROP TABLE %s", oldName));
+                statements.add(String.format("ALTER TABLE %s ATTACH PARTITION %s %s", tableName, partitionName, bound));
+                if (Objects.nonNull(condition)) {
+                    statements.add(dropConstraintIfExistsSQL(partitionName, boundCheckName(newName)));
+                }
+
+                executeInStatement(statements);
+                commit();
+
+                logger.info("Moved {} of {} to {}: {}", partitionName, tableName, tablespace, progress);
+                return progress;
+            } catch (RuntimeException | SQLException e) {
+
+                rollback();
+                executeInStatement(cleanup);
+                commit();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to move partition [" + partitionName + "].", e);
         }
+    }
 
-        b.append("(")
-         .append(String.join(",", set.getKeyColumns()))
-         .append(")");
+    /**
+     * The table is converted in four steps:
+     * <ol>
+     * <li>The partitioned replacement [table]_partitioned is created like the table, with its defaults, checks,
+     * indexes and foreign keys, and the partitions of the set. A trigger on the table logs keys of changed rows.</li>
+     * <li>Rows are copied in chunks, each chunk in its own transaction. With single column RANGE or LIST keys
+     * and HASH keys, every partition is filled on its own, in parallel, if a data source is set.</li>
+     * <li>Rows of logged keys are copied again, until the log is almost empty. The copy is then optionally verified
+     * without lock, by counting rows of both tables, whose keys are not in the log, in one snapshot.</li>
+     * <li>Under ACCESS EXCLUSIVE lock on the table, the rest of the log is applied, privileges and row level
+     * security policies are granted on the replacement, the table is renamed to [table]_unpartitioned and
+     * the replacement and its indexes take the names of the table and its indexes. Owned sequences move
+     * to the replacement.</li>
+     * </ol>
+     * On failure everything is rolled back and the replacement is dropped. The original table is kept for
+     * a manual check and must be dropped, before the next conversion of a table with the same name.
+     * Tables, referenced by foreign keys or views, having identity columns or triggers, are not supported,
+     * as these would stay with the original table.
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Backfill.Progress> partitionTable(String tableName, PartitionSet set, String keyColumn, boolean verify, Backfill options) {
+
+        Backfill backfill = Objects.nonNull(options) ? options : Backfill.defaults();
+        String newName = tableName + "_partitioned";
+        String oldName = tableName + "_unpartitioned";
+        String logName = tableName + "_partition_log";
+
+        List<String> cleanup = dropChangeLogSQL(tableName, logName);
+        cleanup.add(String.format("DROP TABLE IF EXISTS %s", newName));
+
+        try {
+
+            String keyType = checkPartitionable(tableName, oldName, logName, set, keyColumn);
+            try {
+
+                logger.info("Partitioning {} into {} partitions", tableName, set.getSize());
+
+                // 1. Partitioned replacement and change log
+                List<String> statements = new ArrayList<>(cleanup);
+                statements.add(String.format("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING STORAGE "
+                        + "INCLUDING INDEXES INCLUDING COMMENTS)%s", newName, tableName, partitionBySQL(set)));
+                statements.addAll(queryStrings(copyForeignKeysSQL(), newName, tableName));
+                executeInStatement(statements);
+                executeInChunks(set.stream().flatMap(p -> createPartitionTreeSQL(newName, set, p)));
+                executeInStatement(createChangeLogSQL(tableName, logName, keyColumn));
+                commit();
+
+                // 2. Copy
+                Map<String, String> targets = copyTargets(newName, set);
+                List<Backfill.Progress> progress = Collections.synchronizedList(new ArrayList<>());
+                newParallelRunner().run(targets.entrySet(), (c, target) -> progress.add(
+                        new KeysetBackfill(this, c, tableName, keyColumn, backfill).copy(target.getKey(), target.getValue(), null, null)));
+
+                // 3. Catch up with changes, made during the copy
+                Map<String, String> replacement = Collections.singletonMap(newName, null);
+                catchUpChangeLog(tableName, logName, replacement, keyColumn, keyType, backfill.getChunkSize());
+                if (verify) {
+                    verifyCopy(tableName, newName, logName, keyColumn);
+                }
+
+                // 4. Swap
+                executeInStatement(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", tableName));
+                drainChangeLog(tableName, logName, replacement, keyColumn, keyType, backfill.getChunkSize());
+
+                statements.clear();
+                statements.addAll(dropChangeLogSQL(tableName, logName));
+                statements.addAll(queryStrings(copyPrivilegesSQL(), newName, tableName));
+                statements.addAll(queryStrings(copyPoliciesSQL(), newName, tableName));
+                statements.addAll(swapTablesSQL(tableName, newName, oldName));
+                executeInStatement(statements);
+                commit();
+
+                logger.info("Partitioned {}, the original table is kept as {}", tableName, oldName);
+                return progress;
+            } catch (RuntimeException | SQLException e) {
+
+                rollback();
+                executeInStatement(cleanup);
+                commit();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to partition [" + tableName + "].", e);
+        }
+    }
+
+    /*
+     * Rows, whose keys are not logged, are copied and unchanged since. One statement counts them in one snapshot.
+     */
+    private void verifyCopy(String tableName, String newName, String logName, String keyColumn) throws SQLException {
+
+        String unlogged = "(SELECT COUNT(*) FROM %1$s t WHERE NOT EXISTS (SELECT 1 FROM %2$s l WHERE l.key_value = t.%3$s))";
+        boolean equal = queryFlag(String.format("SELECT " + unlogged + " = " + unlogged.replace("%1$s", "%4$s"),
+                tableName, logName, keyColumn, newName));
+        commit();
+
+        if (!equal) {
+            throw new CouldNotProcessException("Row counts of [" + tableName + "] and [" + newName + "] differ.");
+        }
+    }
+
+    /*
+     * Returns the type name of the key column.
+     */
+    private String checkPartitionable(String tableName, String oldName, String logName, PartitionSet set, String keyColumn)
+            throws SQLException {
+
+        if (!supports(Capabilities.FEATURE.PARTITION_PROPAGATION)) {
+            throw new InvalidSpecException("Online partitioning is not supported before PostgreSQL 11.");
+        }
+
+        if (!queryFlag("SELECT relkind = 'r' FROM pg_class WHERE oid = to_regclass(?)", tableName)) {
+            throw new InvalidSpecException("[" + tableName + "] is not a plain table.");
+        }
+
+        if (hasTable(oldName)) {
+            throw new InvalidSpecException("[" + oldName + "], left by an earlier conversion, must be dropped first.");
+        }
+
+        if (set.stream().anyMatch(Partition::isForeign)) {
+            throw new InvalidSpecException("Foreign partitions are not supported.");
+        }
+
+        if (queryFlag("SELECT EXISTS (SELECT 1 FROM pg_constraint WHERE contype = 'f' AND confrelid = to_regclass(?))", tableName)) {
+            throw new InvalidSpecException("[" + tableName + "] is referenced by foreign keys.");
+        }
+
+        if (queryFlag("SELECT EXISTS (SELECT 1 FROM pg_attribute WHERE attrelid = to_regclass(?) AND attidentity <> '')", tableName)) {
+            throw new InvalidSpecException("[" + tableName + "] has identity columns.");
+        }
+
+        if (queryFlag("SELECT EXISTS (SELECT 1 FROM pg_depend d JOIN pg_rewrite r ON r.oid = d.objid "
+                + "WHERE d.classid = 'pg_rewrite'::regclass AND d.refobjid = to_regclass(?) AND r.ev_class <> d.refobjid)", tableName)) {
+            throw new InvalidSpecException("[" + tableName + "] is used by views, re-create them after the conversion.");
+        }
+
+        // The log trigger of an interrupted run is dropped with the run's left overs
+        if (queryFlag("SELECT EXISTS (SELECT 1 FROM pg_trigger WHERE tgrelid = to_regclass(?) AND NOT tgisinternal AND tgname <> ?)",
+                tableName, logName)) {
+            throw new InvalidSpecException("[" + tableName + "] has triggers, re-create them after the conversion.");
+        }
+
+        return keyType(tableName, keyColumn);
+    }
+
+    /*
+     * Type name of the column, as taken by createArrayOf.
+     */
+    private String keyType(String tableName, String keyColumn) throws SQLException {
+        return queryStrings(
+                "SELECT t.typname FROM pg_attribute a JOIN pg_type t ON t.oid = a.atttypid WHERE a.attrelid = to_regclass(?) AND a.attname = ?",
+                tableName, keyColumn).stream().findFirst()
+            .orElseThrow(() -> new InvalidSpecException("Column [" + keyColumn + "] not found in [" + tableName + "]."));
+    }
+
+    /*
+     * Partitions with conditions, selecting their rows, or the partitioned table, if a condition is missing.
+     */
+    private Map<String, String> copyTargets(String tableName, PartitionSet set) throws SQLException {
+
+        String oid = queryStrings("SELECT to_regclass(?)::oid::text", tableName).get(0);
+        Map<String, String> targets = new LinkedHashMap<>();
+        for (Partition partition : (Iterable<Partition>) set.stream()::iterator) {
+
+            String condition = set.getType() == PartitionSet.TYPE.HASH
+                    ? hashBoundCheckExpression(oid, set.getSize(),
+                            ((HashPartitionSpec) partition.getPartitionSpec()).getRemainder(), set.getKeyColumns())
+                    : boundCheckExpression(tableName, set, partition);
+
+            if (Objects.isNull(condition)) {
+                return Collections.singletonMap(tableName, null);
+            }
+
+            targets.put(partition.getPartitionName(), condition);
+        }
+
+        return targets;
+    }
+
+    /**
+     * Statements, adding foreign keys of a table to another one. Parameters are the target and the source table.
+     * @return SQL
+     */
+    protected String copyForeignKeysSQL() {
+        return "SELECT format('ALTER TABLE %s ADD CONSTRAINT %I %s', ?::text, conname, pg_get_constraintdef(oid)) "
+             + "FROM pg_constraint WHERE contype = 'f' AND conrelid = to_regclass(?) ORDER BY conname";
+    }
+
+    /**
+     * Statements, granting privileges on a table and its columns on another one. Parameters are the target
+     * and the source table. Privileges of the owner are left to the owner of the target.
+     * @return SQL
+     */
+    protected String copyPrivilegesSQL() {
+        return "WITH t AS (SELECT ?::text AS target, c.oid, c.relacl, c.relowner FROM pg_class c WHERE c.oid = to_regclass(?)) "
+             + "SELECT format('GRANT %s ON TABLE %s TO %s%s', a.privilege_type, t.target, "
+             + "CASE WHEN a.grantee = 0 THEN 'PUBLIC' ELSE quote_ident(pg_get_userbyid(a.grantee)) END, "
+             + "CASE WHEN a.is_grantable THEN ' WITH GRANT OPTION' ELSE '' END) "
+             + "FROM t CROSS JOIN LATERAL aclexplode(t.relacl) a WHERE a.grantee <> t.relowner "
+             + "UNION ALL "
+             + "SELECT format('GRANT %s (%I) ON TABLE %s TO %s%s', a.privilege_type, att.attname, t.target, "
+             + "CASE WHEN a.grantee = 0 THEN 'PUBLIC' ELSE quote_ident(pg_get_userbyid(a.grantee)) END, "
+             + "CASE WHEN a.is_grantable THEN ' WITH GRANT OPTION' ELSE '' END) "
+             + "FROM t JOIN pg_attribute att ON att.attrelid = t.oid AND att.attnum > 0 AND NOT att.attisdropped "
+             + "CROSS JOIN LATERAL aclexplode(att.attacl) a WHERE a.grantee <> t.relowner";
+    }
+
+    /**
+     * Statements, enabling row level security on another table like on a table and copying its policies.
+     * Parameters are the target and the source table.
+     * @return SQL
+     */
+    protected String copyPoliciesSQL() {
+        return "WITH t AS (SELECT ?::text AS target, c.oid, c.relrowsecurity, c.relforcerowsecurity FROM pg_class c "
+             + "WHERE c.oid = to_regclass(?)) "
+             + "SELECT format('ALTER TABLE %s ENABLE ROW LEVEL SECURITY', t.target) FROM t WHERE t.relrowsecurity "
+             + "UNION ALL "
+             + "SELECT format('ALTER TABLE %s FORCE ROW LEVEL SECURITY', t.target) FROM t WHERE t.relforcerowsecurity "
+             + "UNION ALL "
+             + "SELECT format('CREATE POLICY %I ON %s AS %s FOR %s TO %s%s%s', p.polname, t.target, "
+             + "CASE WHEN p.polpermissive THEN 'PERMISSIVE' ELSE 'RESTRICTIVE' END, "
+             + "CASE p.polcmd WHEN 'r' THEN 'SELECT' WHEN 'a' THEN 'INSERT' WHEN 'w' THEN 'UPDATE' WHEN 'd' THEN 'DELETE' ELSE 'ALL' END, "
+             + "(SELECT string_agg(CASE WHEN r = 0 THEN 'PUBLIC' ELSE quote_ident(pg_get_userbyid(r)) END, ', ') FROM unnest(p.polroles) r), "
+             + "' USING (' || pg_get_expr(p.polqual, p.polrelid) || ')', "
+             + "' WITH CHECK (' || pg_get_expr(p.polwithcheck, p.polrelid) || ')') "
+             + "FROM t JOIN pg_policy p ON p.polrelid = t.oid";
+    }
+
+    /*
+     * Renames the tables, indexes of the replacement get the names of the matching indexes of the table.
+     */
+    private List<String> swapTablesSQL(String tableName, String newName, String oldName) throws SQLException {
+
+        List<String> statements = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        Set<String> taken = new LinkedHashSet<>();
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "SELECT o.relname, n.relname FROM pg_index oi "
+              + "JOIN pg_class o ON o.oid = oi.indexrelid "
+              + "JOIN pg_index ni ON ni.indrelid = to_regclass(?) AND ni.indisunique = oi.indisunique "
+              + "JOIN pg_class n ON n.oid = ni.indexrelid "
+              + "WHERE oi.indrelid = to_regclass(?) "
+              + "AND regexp_replace(pg_get_indexdef(oi.indexrelid), '^.*? ON (ONLY )?\\S+ USING ', '') "
+              + "  = regexp_replace(pg_get_indexdef(ni.indexrelid), '^.*? ON (ONLY )?\\S+ USING ', '') "
+              + "ORDER BY 1, 2")) {
+
+            ps.setString(1, newName);
+            ps.setString(2, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+
+                    String index = rs.getString(1);
+                    String replacement = rs.getString(2);
+                    if (!taken.add(index) || !taken.add(replacement)) {
+                        continue;
+                    }
+
+                    statements.add(String.format("ALTER INDEX %s RENAME TO %s", index, index + "_unpartitioned"));
+                    indexes.add(String.format("ALTER INDEX %s RENAME TO %s", replacement, index));
+                }
+            }
+        }
+
+        statements.add(String.format("ALTER TABLE %s RENAME TO %s", tableName, oldName));
+        statements.add(String.format("ALTER TABLE %s RENAME TO %s", newName, tableName));
+        statements.addAll(indexes);
+        queryStrings("SELECT format('ALTER SEQUENCE %s OWNED BY %s.%I', s.oid::regclass, ?::text, a.attname) FROM pg_depend d "
+                   + "JOIN pg_class s ON s.oid = d.objid AND s.relkind = 'S' "
+                   + "JOIN pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid "
+                   + "WHERE d.refobjid = to_regclass(?) AND d.deptype = 'a'", tableName, tableName)
+            .forEach(statements::add);
+
+        return statements;
+    }
+
+    /**
+     * A log of keys of changed rows of the source table, written by a trigger.
+     * Changes of the source are then repeated on copies of its rows by
+     * {@link #replayChangeLog(String, String, Map, String, String, int)}.
+     * @param sourceName the table
+     * @param logName the log table, also the name of the trigger and its function
+     * @param keyColumn the logged key column
+     * @return SQL
+     */
+    protected List<String> createChangeLogSQL(String sourceName, String logName, String keyColumn) {
+        return Arrays.asList(
+            String.format("CREATE TABLE %s AS SELECT %s AS key_value FROM %s WITH NO DATA", logName, keyColumn, sourceName),
+            String.format("ALTER TABLE %s ADD COLUMN id bigserial PRIMARY KEY", logName),
+            String.format("CREATE FUNCTION %1$s() RETURNS trigger LANGUAGE plpgsql AS $$ BEGIN "
+                    + "IF TG_OP <> 'INSERT' THEN INSERT INTO %1$s (key_value) VALUES (OLD.%2$s); END IF; "
+                    + "IF TG_OP <> 'DELETE' THEN INSERT INTO %1$s (key_value) VALUES (NEW.%2$s); END IF; "
+                    + "RETURN NULL; END $$", logName, keyColumn),
+            String.format("CREATE TRIGGER %1$s AFTER INSERT OR UPDATE OR DELETE ON %2$s FOR EACH ROW EXECUTE PROCEDURE %1$s()",
+                    logName, sourceName));
+    }
+
+    protected List<String> dropChangeLogSQL(String sourceName, String logName) {
+        return new ArrayList<>(Arrays.asList(
+            String.format("DROP TRIGGER IF EXISTS %s ON %s", logName, sourceName),
+            String.format("DROP FUNCTION IF EXISTS %s()", logName),
+            String.format("DROP TABLE IF EXISTS %s", logName)));
+    }
+
+    /*
+     * Replays the log in rounds, each in its own transaction, until a round takes less than a batch.
+     */
+    private void catchUpChangeLog(String sourceName, String logName, Map<String, String> targets,
+            String keyColumn, String keyType, int limit) throws SQLException {
+
+        int replayed;
+        do {
+            replayed = replayChangeLog(sourceName, logName, targets, keyColumn, keyType, limit);
+            commit();
+            logger.info("Replayed {} changes of {}", replayed, sourceName);
+        } while (replayed >= limit);
+    }
+
+    /*
+     * Replays the log until it is empty in the current transaction, meant to run under lock.
+     */
+    private void drainChangeLog(String sourceName, String logName, Map<String, String> targets,
+            String keyColumn, String keyType, int limit) throws SQLException {
+        while (replayChangeLog(sourceName, logName, targets, keyColumn, keyType, limit) > 0) {
+            logger.debug("Replaying changes of {} under lock", sourceName);
+        }
+    }
+
+    /**
+     * Takes a batch of logged keys off the log and copies rows with these keys again.
+     * Changes, committed after the log was read, stay in the log for the next round.
+     * @param sourceName the table
+     * @param logName the log
+     * @param targets copies of the table with optional conditions, selecting their rows
+     * @param keyColumn the key column
+     * @param keyType the server type name of the key column
+     * @param limit max number of keys
+     * @return number of logged keys
+     * @throws SQLException if a statement fails
+     */
+    protected int replayChangeLog(String sourceName, String logName, Map<String, String> targets,
+            String keyColumn, String keyType, int limit) throws SQLException {
+
+        Set<Object> keys = new LinkedHashSet<>();
+        try (PreparedStatement ps = getConnection().prepareStatement(String.format(
+                "DELETE FROM %1$s WHERE id IN (SELECT id FROM %1$s ORDER BY id LIMIT %2$d) RETURNING key_value", logName, limit));
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                keys.add(rs.getObject(1));
+            }
+        }
+
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        Array array = getConnection().createArrayOf(keyType, keys.toArray());
+        for (Map.Entry<String, String> target : targets.entrySet()) {
+
+            try (PreparedStatement delete = getConnection().prepareStatement(
+                    String.format("DELETE FROM %s WHERE %s = ANY(?)", target.getKey(), keyColumn))) {
+                delete.setArray(1, array);
+                delete.executeUpdate();
+            }
+
+            try (PreparedStatement insert = getConnection().prepareStatement(
+                    String.format("INSERT INTO %s SELECT * FROM %s WHERE %s = ANY(?)%s", target.getKey(), sourceName, keyColumn,
+                            Objects.nonNull(target.getValue()) ? " AND " + target.getValue() : ""))) {
+                insert.setArray(1, array);
+                insert.executeUpdate();
+            }
+        }
+
+        return keys.size();
+    }
+
+    /**
+     * Partition key columns of a hash partitioned table, null for expressions.
+     * @return SQL
+     */
+    protected String hashKeyColumnsSQL() {
+        return "SELECT a.attname FROM pg_partitioned_table p "
+             + "CROSS JOIN LATERAL unnest(p.partattrs::int2[]) WITH ORDINALITY k(attnum, n) "
+             + "LEFT JOIN pg_attribute a ON a.attrelid = p.partrelid AND a.attnum = k.attnum "
+             + "WHERE p.partrelid = to_regclass(?) AND p.partstrat = 'h' ORDER BY k.n";
+    }
+
+    private List<String> queryStrings(String sql, String... parameters) throws SQLException {
+        try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
+
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setString(i + 1, parameters[i]);
+            }
+
+            List<String> result = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            }
+
+            return result;
+        }
+    }
+
+    protected String boundCheckName(String partitionName) {
+        return partitionName + "_bounds";
+    }
+
+    protected String dropConstraintIfExistsSQL(String tableName, String constraintName) {
+        return String.format("ALTER TABLE %s DROP CONSTRAINT IF EXISTS %s", tableName, constraintName);
+    }
+
+    /**
+     * Tells, whether partitions are detached, while their table is altered, and every change is repeated on them.
+     * From 11 on, changes of the partitioned table propagate to the attached partitions, so partitions stay
+     * attached and are touched only by changes, local to them (own indexes and constraints, sequences,
+     * checks of an online SET NOT NULL). Attaching scans every partition to validate its bounds.
+     * @param table the table
+     * @return true, if so
+     */
+    protected boolean detachesPartitions(Table table) {
+        return table.isPartitioned() && !supports(Capabilities.FEATURE.PARTITION_PROPAGATION);
+    }
+
+    protected List<String> updateTablePartitionedSQL(Table table) {
+        return table.getPartitionStream()
+                .map(p -> String.format("ALTER TABLE %s DETACH PARTITION %s", table.getTableName(), p.getPartitionName()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finishTable(Table table) {
+
+        if (!detachesPartitions(table)) {
+            super.finishTable(table);
+            return;
+        }
+
+        executeInStatement(finishTablePartitionedSQL(table));
+    }
+
+    protected List<String> finishTablePartitionedSQL(Table table) {
+        return table.getPartitionStream()
+                .map(p -> attachPartitionSQL(table.getTableName(), table.getPartitions(), p))
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Attaches the partition and drops its bound check, if any, added by {@link #prevalidateBounds(String, PartitionSet)}.
+     * @param tableName the partitioned table
+     * @param set the partitions
+     * @param partition the partition
+     * @return SQL
+     */
+    protected List<String> attachPartitionSQL(String tableName, PartitionSet set, Partition partition) {
+
+        List<String> statements = new ArrayList<>(2);
+        statements.add(String.format("ALTER TABLE %s ATTACH PARTITION %s %s",
+                tableName,
+                partition.getPartitionName(),
+                partitionBoundSQL(set, partition)));
+
+        if (!partition.isForeign() && !partition.isSubPartitioned() && Objects.nonNull(boundCheckExpression(tableName, set, partition))) {
+            statements.add(dropConstraintIfExistsSQL(partition.getPartitionName(), boundCheckName(partition.getPartitionName())));
+        }
+
+        return statements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createTable(Table table, Collection<Column> columns) {
+
+        if (!table.isPartitioned()) {
+            super.createTable(table, columns);
+            executeInStatement(alterSerialSequenceSQL(table.getTableName(), columns));
+        } else {
+
+            currentTable = table;
+            alterMode = AlterMode.CREATE_TABLE;
+
+            PartitionSet set = table.getPartitions();
+
+            // 1. Create parent table
+            executeInStatement(createTablePartitionedSQL(table.getTableName(), columns, set) + tablespaceSQL(table.getTablespace()));
+
+            // 2. Create children of all levels, but do not attach
+            executeInChunks(set.stream()
+                .flatMap(p -> createPartitionTreeSQL(table.getTableName(), set, p)));
+
+            // 3. Create sequences if needed
+            executeInChunks(createSequencesPartitionedSQL(table, set.streamTree().filter(p -> !p.isForeign()), table.getNewColumns()));
+
+            // 4. Immediately detach, if changes do not propagate
+            if (detachesPartitions(table)) {
+                executeInStatement(updateTablePartitionedSQL(table));
+            }
+        }
+    }
+
+    protected String createTablePartitionedSQL(String tableName, Collection<Column> columns, PartitionSet set) {
+        return super.createTableSQL(tableName, columns) + partitionBySQL(set);
+    }
+
+    protected String partitionBySQL(PartitionSet set) {
+
+        StringBuilder b = new StringBuilder(" PARTITION BY ");
+        switch (set.getType()) {
+        case HASH:
+            b.append("HASH");
+            break;
+        case LIST:
+            b.append("LIST");
+            break;
+        case RANGE:
+            b.append("RANGE");
+            break;
+        default:
+            break;
+        }
+
+        b.append("(")
+         .append(String.join(",", set.getKeyColumns()))
+         .append(")");
+
+        return b.toString();
+    }
+
+    protected String createPartitionTablesSQL(String parentName, PartitionSet set, Partition partition) {
+
+        if (partition.isForeign()) {
+            return String.format("CREATE FOREIGN TABLE %s PARTITION OF %s %s SERVER %s%s",
+                    partition.getPartitionName(),
+                    parentName,
+                    partitionBoundSQL(set, partition),
+                    partition.getForeignNode(),
+                    partition.getForeignOptions().isEmpty()
+                        ? ""
+                        : " OPTIONS (" +
+                            partition.getForeignOptions().entrySet().stream()
+                                .map(entry ->
+                                    new StringBuilder()
+                                        .append(entry.getKey())
+                                        .append(" '")
+                                        .append(entry.getValue())
+                                        .append("'")
+                                        .toString()
+                                )
+                                .collect(Collectors.joining(","))
+                            + ")");
+        }
+
+        return String.format("CREATE TABLE %s PARTITION OF %s %s",
+                partition.getPartitionName(),
+                parentName,
+                partitionBoundSQL(set, partition));
+    }
+
+    /**
+     * Creates the partition and, if it is sub-partitioned, its sub-partitions, level by level.
+     * @param parentName the partitioned table
+     * @param set the partitions
+     * @param partition the partition
+     * @return SQL, generated lazily
+     */
+    protected Stream<String> createPartitionTreeSQL(String parentName, PartitionSet set, Partition partition) {
+
+        String sql = createPartitionTablesSQL(parentName, set, partition);
+        if (!partition.isSubPartitioned()) {
+            return Stream.of(sql + tablespaceSQL(partition.getTablespace()));
+        }
+
+        PartitionSet subPartitions = partition.getSubPartitions();
+        return Stream.concat(Stream.of(sql + partitionBySQL(subPartitions) + tablespaceSQL(partition.getTablespace())),
+                subPartitions.stream().flatMap(p -> createPartitionTreeSQL(partition.getPartitionName(), subPartitions, p)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String tablespaceSQL(String tablespace) {
+        return Objects.isNull(tablespace) ? "" : " TABLESPACE " + tablespace;
+    }
+
+    protected String partitionBoundSQL(PartitionSet set, Partition partition) {
+        return partition.isDefault() ? "DEFAULT" : "FOR VALUES " + createPartitionSpecSQL(set, partition);
+    }
+
+    protected String createPartitionSpecSQL(PartitionSet set, Partition partition) {
+
+        switch (set.getType()) {
+            case HASH:
+                HashPartitionSpec hs = (HashPartitionSpec) partition.getPartitionSpec();
+                return "WITH (MODULUS " + set.getSize() + ", REMAINDER " + hs.getRemainder() + ")";
+            case LIST:
+                ListPartitionSpec ls = (ListPartitionSpec) partition.getPartitionSpec();
+                return "IN (" + String.join(",", ls.getValues()) + ")";
+            case RANGE:
+                RangePartitionSpec rs = (RangePartitionSpec) partition.getPartitionSpec();
+                return "FROM (" + String.join(",", rs.getFrom()) + ") TO (" + String.join(",", rs.getTo()) + ")";
+            default:
+                break;
+        }
+
+        return null;
+    }
+
+    /**
+     * Sequences of the generated columns of a partitioned table, other than identity ones.
+     * Shared sequences belong to the partitioned table, which passes the NEXTVAL default on to its partitions,
+     * detached partitions get it explicitly. The others are created per partition.
+     * Identity columns, which do not propagate to partitions (before 17), get a shared sequence.
+     * @param table the partitioned table
+     * @param partitions the partitions
+     * @param columns the columns
+     * @return statements
+     */
+    protected Stream<String> createSequencesPartitionedSQL(Table table, Stream<Partition> partitions, Collection<Column> columns) {
+
+        Map<Boolean, List<Column>> sequenced = columns.stream()
+                .filter(c -> Boolean.TRUE.equals(c.getAutoIncrement()) && !isIdentity(c))
+                .collect(Collectors.partitioningBy(c -> Boolean.TRUE.equals(c.getSharedSequence()) || Objects.nonNull(c.getIdentity())));
+
+        List<Column> shared = sequenced.get(true);
+        List<Column> own = sequenced.get(false);
+        if (shared.isEmpty() && own.isEmpty()) {
+            return Stream.empty();
+        }
+
+        boolean detached = detachesPartitions(table);
+        return Stream.concat(
+            createSequenceSpecSQL(table.getTableName(), shared).stream(),
+            partitions.flatMap(p -> Stream.concat(
+                detached
+                    ? shared.stream().flatMap(c -> Stream.of(
+                        super.setNotNullSQL(p.getPartitionName(), c.getColumnName()),
+                        setDefaultSQL(p.getPartitionName(), c.getColumnName(),
+                                "NEXTVAL('" + sequenceName(table.getTableName(), c) + "')")))
+                    : Stream.empty(),
+                createSequenceSpecSQL(p.getPartitionName(), own).stream())));
+    }
+
+    /**
+     * The sequences of a generated column of a partitioned table, created with the column
+     * (see {@link #createSequencesPartitionedSQL(Table, Stream, Collection)}), take its new type.
+     * @param table the partitioned table
+     * @param partitions the partitions
+     * @param column the column
+     * @return statements
+     */
+    protected Stream<String> alterSequencesPartitionedSQL(Table table, Stream<Partition> partitions, Column column) {
+
+        if (!Boolean.TRUE.equals(column.getAutoIncrement()) || isIdentity(column)) {
+            return Stream.empty();
+        }
+
+        String type = getNativeTypeDefinition(column);
+        if (Boolean.TRUE.equals(column.getSharedSequence()) || Objects.nonNull(column.getIdentity())) {
+            return Stream.of(String.format("ALTER SEQUENCE %s AS %s", sequenceName(table.getTableName(), column), type));
+        }
+
+        return partitions.map(p -> String.format("ALTER SEQUENCE %s AS %s", sequenceName(p.getPartitionName(), column), type));
+    }
+
+    protected String sequenceName(String tableName, Column column) {
+        return "sq_" + tableName + "_" + column.getColumnName();
+    }
+
+    /**
+     * @param column the column
+     * @return INCREMENT BY and CACHE clauses of the sequence of the column, empty for the server defaults
+     */
+    protected String sequenceOptionsSQL(Column column) {
+
+        StringBuilder b = new StringBuilder();
+        if (Objects.nonNull(column.getSequenceIncrement())) {
+            b.append(" INCREMENT BY ").append(column.getSequenceIncrement());
+        }
+
+        if (Objects.nonNull(column.getSequenceCache())) {
+            b.append(" CACHE ").append(column.getSequenceCache());
+        }
+
+        return b.toString();
+    }
+
+    /**
+     * SERIAL takes no sequence options, so they are set on the sequence it creates.
+     * The sequence name is looked up, as SERIAL shortens and deduplicates it.
+     * @param tableName the table
+     * @param columns the columns
+     * @return statements
+     */
+    protected List<String> alterSerialSequenceSQL(String tableName, Collection<Column> columns) {
+        return columns.stream()
+                .filter(c -> Boolean.TRUE.equals(c.getAutoIncrement()) && !isIdentity(c) && !sequenceOptionsSQL(c).isEmpty())
+                .map(c -> String.format("DO $$ BEGIN EXECUTE 'ALTER SEQUENCE ' || pg_get_serial_sequence('%s', '%s') || '%s'; END $$",
+                        tableName, c.getColumnName(), sequenceOptionsSQL(c)))
+                .collect(Collectors.toList());
+    }
+
+    /*
+     * Identity columns of partitioned tables do not propagate to partitions before 17, shared sequences stand in for them.
+     */
+    private boolean isIdentity(Column column) {
+        return Objects.nonNull(column.getIdentity())
+            && supports(Capabilities.FEATURE.IDENTITY)
+            && (!getCurrentTable().isPartitioned() || supports(Capabilities.FEATURE.PARTITIONED_IDENTITY));
+    }
+
+    protected Collection<String> createSequenceSpecSQL(String tableName, Collection<Column> aiColumns) {
+
+        return aiColumns.stream()
+                .flatMap(c -> {
+                    final String seqName = sequenceName(tableName, c);
+
+                    return Stream.of(
+                        String.format("CREATE SEQUENCE %s AS %s%s OWNED BY %s.%s",
+                                seqName, getNativeColumnDefinition(c), sequenceOptionsSQL(c), tableName, c.getColumnName()),
+                        super.setNotNullSQL(tableName, c.getColumnName()),
+                        setDefaultSQL(tableName, c.getColumnName(), "NEXTVAL('" + seqName + "')"));
+                    }
+                )
+                .collect(Collectors.toList());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDefault() {
+
+        super.setDefault();
+        if (!detachesPartitions(currentTable)) {
+            return;
+        }
+
+        executeInStatement(setDefaultPartitionedSQL(currentTable, getCurrentColumn().getDefaultValue()));
+    }
+
+    protected List<String> setDefaultPartitionedSQL(Table table, String defaultValue) {
+        return table.getPartitionStream()
+                .map(p -> setDefaultSQL(p.getPartitionName(), getAlterColumnName(), defaultValue))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    protected String setDefaultSQL(String tableName, String columnName, String defaultValue) {
+        return String.format("ALTER TABLE %s ALTER COLUMN %s SET DEFAULT %s", tableName, columnName, defaultValue);
+    }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addColumn(Column column) {
+
+        super.addColumn(column);
+        if (!currentTable.isPartitioned()) {
+            executeInStatement(alterSerialSequenceSQL(getAlterTableName(), Collections.singletonList(column)));
+            return;
+        }
+
+        List<String> statements = detachesPartitions(currentTable)
+                ? new ArrayList<>(addColumnPartitionedSQL(currentTable, column))
+                : new ArrayList<>();
+
+        createSequencesPartitionedSQL(currentTable, currentTable.getPartitionStream(), Collections.singletonList(column))
+            .collect(Collectors.toCollection(() -> statements));
+
+        executeInStatement(statements);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsFastColumnDefault() {
+        return supports(Capabilities.FEATURE.FAST_COLUMN_DEFAULT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isBatchedAddColumn(Column column) {
+        return !currentTable.isPartitioned() && super.isBatchedAddColumn(column);
+    }
+
+    /**
+     * Validates a NOT VALID check first, which takes a SHARE UPDATE EXCLUSIVE lock only.
+     * Since 12 SET NOT NULL uses the validated check instead of a scan and the check is dropped,
+     * older servers keep the check in place of the column constraint.
+     * Steps commit on their own, so this runs in non transactional scripts only.
+     * The check is dropped again, if rows with NULL fail the validation.
+     */
+    @Override
+    protected void setNotNullValidated(String tableName, Column column) {
+
+        String columnName = column.getColumnName();
+        requireNonTransactional("Online SET NOT NULL of " + tableName + "." + columnName);
+
+        executeInStatement(addNotNullCheckSQL(tableName, columnName));
+        commit();
+
+        validateNotNullCheck(tableName, columnName);
+
+        if (!supports(Capabilities.FEATURE.NOT_NULL_FROM_CHECK)) {
+            logger.info("Server is older than 12, NOT NULL on {}.{} is enforced by check {}",
+                    tableName, columnName, notNullCheckName(tableName, columnName));
+            return;
+        }
+
+        executeInStatement(replaceNotNullCheckSQL(tableName, columnName));
+    }
+
+    protected List<String> addNotNullCheckSQL(String tableName, String columnName) {
+
+        String checkName = notNullCheckName(tableName, columnName);
+        return Arrays.asList(
+                // Left over by an interrupted run
+                dropNotNullCheckSQL(tableName, columnName),
+                String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s IS NOT NULL) NOT VALID",
+                        tableName, checkName, columnName));
+    }
+
+    /**
+     * Validates the check of an online SET NOT NULL and commits. A check, which fails, is dropped.
+     * @param tableName the table or partition name
+     * @param columnName the column name
+     */
+    protected void validateNotNullCheck(String tableName, String columnName) {
+        try {
+
+            executeInStatement(validateNotNullCheckSQL(tableName, columnName));
+            commit();
+        } catch (CouldNotProcessException e) {
+
+            rollback();
+            executeInStatement(dropNotNullCheckSQL(tableName, columnName));
+            commit();
+            throw e;
+        }
+    }
+
+    protected String validateNotNullCheckSQL(String tableName, String columnName) {
+        return String.format("ALTER TABLE %s VALIDATE CONSTRAINT %s",
+                tableName, notNullCheckName(tableName, columnName));
+    }
+
+    protected List<String> replaceNotNullCheckSQL(String tableName, String columnName) {
+        return Arrays.asList(
+                super.setNotNullSQL(tableName, columnName),
+                dropConstraintSQL(tableName, notNullCheckName(tableName, columnName)));
+    }
+
+    protected String notNullCheckName(String tableName, String columnName) {
+        return tableName + "_" + columnName + "_not_null";
+    }
+
+    protected List<String> addColumnPartitionedSQL(Table table, Column column) {
+        return table.getPartitionStream()
+                .map(p -> super.addColumnSQL(p.getPartitionName(), column))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void applyLockTimeout(Statement statement, long millis) throws SQLException {
+        statement.execute("SET lock_timeout = " + millis);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void resetLockTimeout(Statement statement) throws SQLException {
+        statement.execute("SET lock_timeout = DEFAULT");
+    }
+
+    /**
+     * lock_not_available
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isLockTimeout(SQLException e) {
+        return "55P03".equals(e.getSQLState());
+    }
+
+    /**
+     * Looks at client sessions in pg_stat_activity, holding or waiting for relation locks on the target tables in pg_locks.
+     * Transactions, which do not touch the tables, cannot keep the DDL waiting and are not reported.
+     * pg_stat_activity is read once per transaction, the snapshot is dropped, so each poll sees current sessions.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<Blocker> findBlockers(Collection<String> tableNames, PreflightPolicy policy) throws SQLException {
+
+        try (Statement statement = getConnection().createStatement()) {
+            statement.execute("SELECT pg_stat_clear_snapshot()");
+        }
+
+        List<Blocker> blockers = new ArrayList<>();
+        try (PreparedStatement ps = getConnection().prepareStatement(findBlockersSQL())) {
+
+            ps.setArray(1, getConnection().createArrayOf("text", tableNames.toArray()));
+            ps.setLong(2, Math.min(policy.getMaxLockHolderAgeMillis(), policy.getMaxTransactionAgeMillis()));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+
+                    String state = rs.getString(3);
+                    long age = rs.getLong(5);
+
+                    Blocker.KIND kind;
+                    if (age >= policy.getMaxLockHolderAgeMillis()) {
+                        kind = Blocker.KIND.LOCK_HOLDER;
+                    } else if (Objects.nonNull(state) && state.startsWith("idle in transaction")) {
+                        kind = Blocker.KIND.IDLE_IN_TRANSACTION;
+                    } else {
+                        kind = Blocker.KIND.LONG_TRANSACTION;
+                    }
+
+                    blockers.add(new Blocker(rs.getLong(1), rs.getString(2), state, kind, rs.getString(4), age, rs.getString(6)));
+                }
+            }
+        }
+
+        return blockers;
+    }
+
+    /**
+     * One row per client session with a lock on a target table (or a partition of it), granted or queued,
+     * preferring a granted lock. Background workers, i. e. autovacuum, are left out.
+     * clock_timestamp(), as now() stands still in the running transaction.
+     * @return SQL
+     */
+    protected String findBlockersSQL() {
+        return "WITH names AS (SELECT to_regclass(t)::oid AS oid FROM unnest(?::text[]) t), "
+             + "targets AS (SELECT oid FROM names WHERE oid IS NOT NULL "
+             + "UNION SELECT inhrelid FROM pg_inherits WHERE inhparent IN (SELECT oid FROM names)) "
+             + "SELECT DISTINCT ON (a.pid) a.pid, a.usename, a.state, c.relname, "
+             + "(EXTRACT(EPOCH FROM clock_timestamp() - a.xact_start) * 1000)::bigint AS age_millis, a.query "
+             + "FROM pg_stat_activity a "
+             + "JOIN pg_locks l ON l.pid = a.pid AND l.relation IN (SELECT oid FROM targets) "
+             + "JOIN pg_class c ON c.oid = l.relation "
+             + "WHERE a.pid <> pg_backend_pid() AND a.datname = current_database() "
+             + "AND a.backend_type = 'client backend' AND a.xact_start IS NOT NULL "
+             + "AND clock_timestamp() - a.xact_start >= ?::bigint * INTERVAL '1 millisecond' "
+             + "ORDER BY a.pid, l.granted DESC, c.relname";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long estimateTableBytes(String tableName) {
+        return relationSize(tableName);
+    }
+
+    /**
+     * Table level lock modes as documented for the statements.
+     * {@inheritDoc}
+     */
+    @Override
+    protected String planLockLevel(String sql) {
+
+        String statement = sql.trim().toUpperCase();
+        if (statement.startsWith("CREATE TABLE")) {
+            return statement.contains(" PARTITION OF ") ? ACCESS_EXCLUSIVE : "NONE";
+        }
+
+        if (statement.startsWith("CREATE INDEX") || statement.startsWith("CREATE UNIQUE INDEX")) {
+            return statement.contains(" CONCURRENTLY ") ? SHARE_UPDATE_EXCLUSIVE : "SHARE";
+        }
+
+        if (statement.startsWith("DROP INDEX")) {
+            return statement.contains(" CONCURRENTLY ") ? SHARE_UPDATE_EXCLUSIVE : ACCESS_EXCLUSIVE;
+        }
+
+        if (statement.startsWith("CREATE TRIGGER") || statement.startsWith("DROP TRIGGER")) {
+            return "SHARE ROW EXCLUSIVE";
+        }
+
+        if (statement.startsWith("ANALYZE")) {
+            return SHARE_UPDATE_EXCLUSIVE;
+        }
+
+        if (statement.startsWith("ALTER TABLE")) {
+
+            if (statement.contains(" VALIDATE CONSTRAINT ") || statement.contains(" SET STATISTICS ")
+             || statement.contains(" DETACH PARTITION ") && statement.contains(" CONCURRENTLY")) {
+                return SHARE_UPDATE_EXCLUSIVE;
+            }
+
+            if (statement.contains(" ATTACH PARTITION ")) {
+                return getCapabilities().isAtLeast(12, 0, 0) ? SHARE_UPDATE_EXCLUSIVE : ACCESS_EXCLUSIVE;
+            }
+
+            if (statement.contains(" FOREIGN KEY ")) {
+                return "SHARE ROW EXCLUSIVE";
+            }
+
+            return ACCESS_EXCLUSIVE;
+        }
+
+        if (statement.startsWith("UPDATE") || statement.startsWith("INSERT") || statement.startsWith("DELETE")) {
+            return "ROW EXCLUSIVE";
+        }
+
+        if (statement.startsWith("CREATE SEQUENCE") || statement.startsWith("ALTER SEQUENCE")
+         || statement.startsWith("CREATE OR REPLACE FUNCTION") || statement.startsWith("DROP FUNCTION")) {
+            return "NONE";
+        }
+
+        return super.planLockLevel(sql);
+    }
+
+    /**
+     * Keys with deferred validation are added NOT VALID, keys requested concurrently are promoted from
+     * a concurrently built index. Type changes and NOT NULL are classified by their statements.
+     * {@inheritDoc}
+     */
+    @Override
+    protected MigrationPlan.IMPACT planImpact(OPERATION operation, Object operand, String sql) {
+
+        if (operation == OPERATION.CHANGE_TYPE || operation == OPERATION.SET_NOT_NULL) {
+            return null;
+        }
+
+        if (operation == OPERATION.ADD_CONSTRAINT && "ADD CONSTRAINT".equals(statementAction(sql))) {
+            Constraint constraint = (Constraint) operand;
+            if (Boolean.TRUE.equals(constraint.getConcurrently()) && isKeyAddedConcurrently()) {
+                return MigrationPlan.IMPACT.NONE;
+            }
+        }
+
+        return super.planImpact(operation, operand, sql);
+    }
+
+    /**
+     * The column is only hidden, no rows are touched. The statement still waits for ACCESS EXCLUSIVE
+     * and drops dependent indexes and constraints, so it is not reported as a catalog only change.
+     * {@inheritDoc}
+     */
+    @Override
+    protected MigrationPlan.IMPACT dropColumnImpact(String sql) {
+        return MigrationPlan.IMPACT.UNKNOWN;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsForeignKeyNotValid() {
+        return true;
+    }
+
+    /**
+     * Type changes are classified against the live column, NOT NULL after a validated check
+     * of the same plan does not scan on PostgreSQL 12+.
+     * {@inheritDoc}
+     */
+    @Override
+    protected MigrationPlan.IMPACT planImpact(String sql) {
+
+        String statement = sql.trim().toUpperCase();
+        if (!statement.startsWith("ALTER TABLE")) {
+
+            if (statement.startsWith("CREATE TRIGGER") || statement.startsWith("CREATE SEQUENCE")
+             || statement.startsWith("ALTER SEQUENCE") || statement.startsWith("CREATE OR REPLACE FUNCTION")) {
+                return MigrationPlan.IMPACT.NONE;
+            }
+
+            return super.planImpact(sql);
+        }
+
+        Matcher attach = PLANNED_ATTACH.matcher(sql);
+        if (attach.find()) {
+            String validation = String.format("ALTER TABLE %s VALIDATE CONSTRAINT %s",
+                    attach.group(1), boundCheckName(attach.group(1)));
+            return getPlan().getEntries().stream().anyMatch(entry -> entry.getStatement().equalsIgnoreCase(validation))
+                    ? MigrationPlan.IMPACT.NONE
+                    : MigrationPlan.IMPACT.SCAN;
+        }
+
+        if (statement.contains(" VALIDATE CONSTRAINT ")) {
+            return MigrationPlan.IMPACT.SCAN;
+        }
+
+        if (statement.contains(" ADD CONSTRAINT ")) {
+            return statement.contains(" NOT VALID") || statement.contains(" USING INDEX ")
+                ? MigrationPlan.IMPACT.NONE
+                : MigrationPlan.IMPACT.SCAN;
+        }
+
+        Matcher type = PLANNED_TYPE_CHANGE.matcher(sql);
+        if (type.find() && Objects.nonNull(currentColumn)) {
+            switch (classifyTypeChange(statementTable(sql), type.group(1), currentColumn)) {
+            case NONE:
+            case METADATA_ONLY:
+                return MigrationPlan.IMPACT.NONE;
+            case REVALIDATE:
+                return MigrationPlan.IMPACT.SCAN;
+            default:
+                return MigrationPlan.IMPACT.REWRITE;
+            }
+        }
+
+        Matcher notNull = PLANNED_SET_NOT_NULL.matcher(sql);
+        if (notNull.find()) {
+            String validation = validateNotNullCheckSQL(statementTable(sql), notNull.group(1));
+            boolean checked = supports(Capabilities.FEATURE.NOT_NULL_FROM_CHECK) && getPlan().getEntries().stream()
+                    .anyMatch(entry -> entry.getStatement().equalsIgnoreCase(validation));
+            return checked ? MigrationPlan.IMPACT.NONE : MigrationPlan.IMPACT.SCAN;
+        }
+
+        if (statement.contains(" ADD COLUMN ")) {
+
+            if (statement.contains("SERIAL") || statement.contains("NEXTVAL(") || statement.contains(" AS IDENTITY") || statement.contains("RANDOM()")
+             || statement.contains(" STORED") || statement.contains("CLOCK_TIMESTAMP()")) {
+                return MigrationPlan.IMPACT.REWRITE;
+            }
+
+            return statement.contains(" DEFAULT ") && !statement.contains(" DEFAULT NULL")
+                    && !supports(Capabilities.FEATURE.FAST_COLUMN_DEFAULT)
+                ? MigrationPlan.IMPACT.REWRITE
+                : MigrationPlan.IMPACT.NONE;
+        }
+
+        if (statement.contains(" SET TABLESPACE ") || statement.contains(" SET LOGGED") || statement.contains(" SET UNLOGGED")) {
+            return MigrationPlan.IMPACT.REWRITE;
+        }
+
+        return super.planImpact(sql);
+    }
+
+    /**
+     * Sets the policy, refusing type changes, which rewrite large tables.
+     * @param rewritePolicy the policy or null, to allow all rewrites
+     */
+    public void setRewritePolicy(RewritePolicy rewritePolicy) {
+        this.rewritePolicy = rewritePolicy;
+    }
+
+    /**
+     * @return the rewritePolicy or null
+     */
+    public RewritePolicy getRewritePolicy() {
+        return rewritePolicy;
+    }
+
+    /**
+     * Classifies the change against the live column type and picks the cheapest path.
+     * Changes, not needing a rewrite, are run in place regardless of the requested strategy.
+     */
+    @Override
+    public void changeType() {
+
+        Column column = getCurrentColumn();
+        TYPE_CHANGE change = classifyTypeChange(getAlterTableName(), getAlterColumnName(), column);
+
+        logger.debug("Type change of {}.{} to {} classified as {}",
+                getAlterTableName(), getAlterColumnName(), getNativeTypeDefinition(column), change);
+
+        if (change == TYPE_CHANGE.NONE) {
+            logger.info("Column {}.{} is already of type {}, skipping type change",
+                    getAlterTableName(), getAlterColumnName(), getNativeTypeDefinition(column));
+            return;
+        }
+
+        if (change != TYPE_CHANGE.REWRITE) {
+
+            if (column.getStrategy() == Column.STRATEGY.ONLINE || column.getStrategy() == Column.STRATEGY.CHUNKED) {
+                logger.info("Type change of {}.{} does not rewrite the table, altering in place instead of {}",
+                        getAlterTableName(), getAlterColumnName(), column.getStrategy());
+            }
+
+        } else if (strategyOf(column) != Column.STRATEGY.DEFAULT) {
+
+            if (!currentTable.isPartitioned()) {
+                super.changeType();
+                return;
+            }
+
+            logger.warn("{} type change is not supported for partitioned table {}, altering column {} in place",
+                    strategyOf(column), getAlterTableName(), getAlterColumnName());
+            checkRewritePolicy(column);
+        } else {
+            checkRewritePolicy(column);
+        }
+
+        executeInStatement(changeTypeSQL(getAlterTableName(), getCurrentColumn()));
+        if (!currentTable.isPartitioned()) {
+            return;
+        }
+
+        List<String> statements = detachesPartitions(currentTable)
+                ? new ArrayList<>(changeTypePartitionedSQL(currentTable, getCurrentColumn()))
+                : new ArrayList<>();
+
+        alterSequencesPartitionedSQL(currentTable, currentTable.getPartitionStream(), getCurrentColumn())
+            .collect(Collectors.toCollection(() -> statements));
+
+        executeInStatement(statements);
+    }
+
+    protected List<String> changeTypePartitionedSQL(Table table, Column column) {
+        return table.getPartitionStream()
+                .map(p -> changeTypeSQL(p.getPartitionName(), column))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String changeTypeSQL(String tableName, Column column) {
+        return String.format("ALTER TABLE %s ALTER COLUMN %s TYPE %s",
+                tableName,
+                getAlterColumnName(),
+                getNativeTypeDefinition(column));
+    }
+
+    /**
+     * Type of the column without identity or SERIAL, which only column definitions take.
+     * Type changes keep the identity or the sequence of the column.
+     * @param column the column
+     * @return the type
+     */
+    protected String getNativeTypeDefinition(Column column) {
+
+        switch (column.getType()) {
+            case BIG_INTEGER:
+            case INTEGER:
+            case SMALL_INTEGER:
+                return super.getNativeColumnDefinition(column);
+            default:
+                return getNativeColumnDefinition(column);
+        }
+    }
+
+    /**
+     * Compares the live type of a column with the requested one.
+     * @param tableName the table name
+     * @param columnName the column name
+     * @param column the requested column definition
+     * @return classification, {@link TYPE_CHANGE#REWRITE}, if the types could not be resolved
+     */
+    public TYPE_CHANGE classifyTypeChange(String tableName, String columnName, Column column) {
+
+        String definition = getNativeTypeDefinition(column);
+
+        PgType current = loadColumnType(tableName, columnName);
+        PgType requested = loadType(definition);
+        if (Objects.isNull(current) || Objects.isNull(requested)) {
+            return TYPE_CHANGE.REWRITE;
+        }
+
+        int requestedMod = requestedTypmod(requested, column, definition);
+        if (current.oid == requested.oid) {
+
+            if (current.typmod == requestedMod) {
+                return TYPE_CHANGE.NONE;
+            }
+
+            // Growing or dropping the typmod of the types below is binary compatible
+            boolean widened = requestedMod == -1 || (current.typmod != -1 && requestedMod > current.typmod);
+            return widened && requestedMod != Integer.MIN_VALUE && WIDENING_TYPES.contains(current.name)
+                    ? TYPE_CHANGE.METADATA_ONLY
+                    : TYPE_CHANGE.REWRITE;
+        }
+
+        // varchar(n) -> text, text -> varchar
+        if (BINARY_COERCIBLE_TYPES.contains(current.name + ":" + requested.name) && requestedMod == -1) {
+            return TYPE_CHANGE.METADATA_ONLY;
+        }
+
+        // Since 12 timestamp <-> timestamptz skip the rewrite, if the session time zone is UTC.
+        // Indexes on the column are still rebuilt.
+        if (isTimestampSwitch(current, requested)
+         && (requestedMod == -1 || requestedMod == current.typmod)
+         && getCapabilities().isAtLeast(12, 0, 0)
+         && isSessionInUtc()) {
+            return TYPE_CHANGE.REVALIDATE;
+        }
+
+        // To a domain over the current type: domain constraints are checked by a scan
+        if (requested.domain && requested.baseOid == current.oid && requested.baseTypmod == current.typmod) {
+            return TYPE_CHANGE.REVALIDATE;
+        }
+
+        // From a domain to its base type: constraints are merely dropped
+        if (current.domain && current.baseOid == requested.oid && current.baseTypmod == requestedMod) {
+            return TYPE_CHANGE.METADATA_ONLY;
+        }
+
+        return TYPE_CHANGE.REWRITE;
+    }
+
+    /**
+     * Total size of the table, its partitions and indexes in bytes.
+     * @param tableName the table name
+     * @return size in bytes or 0, if the table does not exist
+     */
+    protected long relationSize(String tableName) {
+
+        List<String> names = new ArrayList<>();
+        names.add(tableName);
+        if (Objects.nonNull(currentTable) && currentTable.isPartitioned() && tableName.equals(getAlterTableName())) {
+            currentTable.getPartitionStream()
+                .map(Partition::getPartitionName)
+                .collect(Collectors.toCollection(() -> names));
+        }
+
+        long total = 0;
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "SELECT COALESCE(pg_total_relation_size(to_regclass(?)), 0)")) {
+
+            for (String name : names) {
+                ps.setString(1, name);
+                try (ResultSet rs = ps.executeQuery()) {
+                    total += rs.next() ? rs.getLong(1) : 0L;
+                }
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to read size of [" + tableName + "].", e);
+        }
+
+        return total;
+    }
+
+    private void checkRewritePolicy(Column column) {
+
+        // Reported as rewrite by the plan
+        if (Objects.isNull(rewritePolicy) || Objects.nonNull(getPlan())) {
+            return;
+        }
+
+        long size = relationSize(getAlterTableName());
+        if (!rewritePolicy.permits(size, Boolean.TRUE.equals(column.getAllowRewrite()))) {
+            throw new CouldNotProcessException("Type change of [" + getAlterTableName() + "." + getAlterColumnName()
+                    + "] rewrites " + size + " bytes, the rewrite policy allows " + rewritePolicy.getMaxTableBytes()
+                    + ". Use the ONLINE or CHUNKED strategy or allow the rewrite on the column explicitly.");
+        }
+    }
+
+    private PgType loadColumnType(String tableName, String columnName) {
+
+        String sql = "SELECT t.oid, t.typname, t.typtype, t.typbasetype, a.atttypmod, t.typtypmod "
+                   + "FROM pg_attribute a JOIN pg_type t ON t.oid = a.atttypid "
+                   + "WHERE a.attrelid = to_regclass(?) AND a.attname = ? AND a.attnum > 0 AND NOT a.attisdropped";
+
+        try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, columnName.toLowerCase());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new PgType(rs) : null;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to read type of [" + tableName + "." + columnName + "].", e);
+        }
+    }
+
+    private PgType loadType(String definition) {
+
+        String sql = "SELECT t.oid, t.typname, t.typtype, t.typbasetype, t.typtypmod, t.typtypmod "
+                   + "FROM pg_type t WHERE t.oid = to_regtype(?)";
+
+        try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
+
+            ps.setString(1, definition);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new PgType(rs) : null;
+            }
+        } catch (SQLException e) {
+            // Not resolvable, i. e. a SERIAL pseudo type
+            logger.debug("Failed to resolve type [{}].", definition, e);
+            return null;
+        }
+    }
+
+    /*
+     * to_regtype() drops the typmod, it is restored from the column definition.
+     * Integer.MIN_VALUE stands for 'unknown' (UDT with arguments).
+     */
+    private int requestedTypmod(PgType requested, Column column, String definition) {
+
+        if (column.getType() == Column.TYPE.UDT) {
+            return definition.contains("(") ? Integer.MIN_VALUE : -1;
+        }
+
+        boolean lengthType = "varchar".equals(requested.name) || "bpchar".equals(requested.name);
+        if (Objects.isNull(column.getSize())) {
+            // CHAR means CHAR(1)
+            return "bpchar".equals(requested.name) ? 5 : -1;
+        }
+
+        // Character lengths are stored with the varlena header size added
+        return lengthType ? column.getSize() + 4 : column.getSize();
+    }
+
+    private boolean isTimestampSwitch(PgType current, PgType requested) {
+        return ("timestamp".equals(current.name) && "timestamptz".equals(requested.name))
+            || ("timestamptz".equals(current.name) && "timestamp".equals(requested.name));
+    }
+
+    private boolean isSessionInUtc() {
+
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT current_setting('TimeZone')")) {
+            return rs.next() && UTC_ZONES.contains(rs.getString(1));
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to read session time zone.", e);
+        }
+    }
+
+    /**
+     * Row of pg_type, reduced to what the type change planner needs.
+     */
+    private static class PgType {
+        private final long oid;
+        private final String name;
+        private final boolean domain;
+        private final long baseOid;
+        private final int typmod;
+        private final int baseTypmod;
+
+        PgType(ResultSet rs) throws SQLException {
+            this.oid = rs.getLong(1);
+            this.name = rs.getString(2);
+            this.domain = "d".equals(rs.getString(3));
+            this.baseOid = rs.getLong(4);
+            this.typmod = rs.getInt(5);
+            this.baseTypmod = rs.getInt(6);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void changeTypeOnline() {
+        changeTypeShadowed();
+    }
+
+    @Override
+    protected List<String> createShadowSyncSQL(String tableName, String columnName, String shadowName) {
+
+        String triggerName = shadowTriggerName(tableName, columnName);
+        return new ArrayList<>(Arrays.asList(
+                String.format("CREATE OR REPLACE FUNCTION %1$s() RETURNS TRIGGER AS $$ "
+                            + "BEGIN NEW.%2$s := NEW.%3$s; RETURN NEW; END; $$ LANGUAGE plpgsql",
+                        triggerName, shadowName, columnName),
+                String.format("CREATE TRIGGER %1$s BEFORE INSERT OR UPDATE ON %2$s FOR EACH ROW EXECUTE PROCEDURE %1$s()",
+                        triggerName, tableName)));
+    }
+
+    @Override
+    protected List<String> dropShadowSyncSQL(String tableName, String columnName, String shadowName) {
+
+        String triggerName = shadowTriggerName(tableName, columnName);
+        return new ArrayList<>(Arrays.asList(
+                String.format("DROP TRIGGER IF EXISTS %s ON %s", triggerName, tableName),
+                String.format("DROP FUNCTION IF EXISTS %s()", triggerName)));
+    }
+
+    @Override
+    protected String backfillAssignment(String columnName, String shadowName, Column column) {
+        return String.format("%s = CAST(%s AS %s)",
+                shadowName,
+                columnName,
+                getNativeColumnDefinition(shadowColumn(column, shadowName)));
+    }
+
+    /**
+     * Indexes of the column are built concurrently on the shadow column and a NOT NULL check on it is validated
+     * before the swap. The swap runs in one transaction, the exclusive lock is held for catalog changes only:
+     * keys are attached to the new indexes, the default, NOT NULL and the ownership of a serial sequence move over,
+     * foreign keys and checks are re-added without checking rows and validated after the swap.
+     * Columns, referenced by foreign keys, views, triggers, policies or generated columns, identity columns
+     * and columns of exclusion constraints are refused.
+     * {@inheritDoc}
+     */
+    @Override
+    protected ShadowSwap loadShadowSwap(String tableName, String columnName, String shadowName, Column column) {
+
+        List<String> prepare = new ArrayList<>();
+        List<String> swap = new ArrayList<>();
+        List<String> afterRename = new ArrayList<>();
+        List<PendingValidation> validate = new ArrayList<>();
+
+        swap.add(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", tableName));
+        swap.addAll(dropShadowSyncSQL(tableName, columnName, shadowName));
+
+        try {
+
+            try (PreparedStatement ps = getConnection().prepareStatement(loadShadowColumnSQL())) {
+
+                ps.setString(1, tableName);
+                ps.setString(2, columnName);
+                ps.setString(3, tableName);
+                ps.setString(4, columnName);
+                try (ResultSet rs = ps.executeQuery()) {
+
+                    if (!rs.next()) {
+                        throw new InvalidSpecException("Column [" + tableName + "." + columnName + "] does not exist.");
+                    }
+
+                    if (Objects.nonNull(rs.getString(4))) {
+                        throw new InvalidSpecException("Column [" + tableName + "." + columnName + "] is " + rs.getString(4)
+                                + ", its type can not be changed online.");
+                    }
+
+                    if (Objects.nonNull(rs.getString(2))) {
+                        afterRename.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET DEFAULT %s",
+                                tableName, columnName, rs.getString(2)));
+                    }
+
+                    if (rs.getBoolean(1)) {
+                        prepare.addAll(addNotNullCheckSQL(tableName, shadowName));
+                        prepare.add(validateNotNullCheckSQL(tableName, shadowName));
+                        afterRename.add(super.setNotNullSQL(tableName, columnName));
+                        afterRename.add(dropConstraintSQL(tableName, notNullCheckName(tableName, shadowName)));
+                        if (!supports(Capabilities.FEATURE.NOT_NULL_FROM_CHECK)) {
+                            logger.info("Server is older than 12, SET NOT NULL on {}.{} scans the table during the swap",
+                                    tableName, columnName);
+                        }
+                    }
+
+                    if (Objects.nonNull(rs.getString(3))) {
+                        // The sequence would be dropped together with the column
+                        swap.add(String.format("ALTER SEQUENCE %s OWNED BY %s.%s", rs.getString(3), tableName, shadowName));
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = getConnection().prepareStatement(loadShadowIndexesSQL())) {
+
+                ps.setString(1, tableName);
+                ps.setString(2, columnName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+
+                        String indexName = rs.getString(1);
+                        String shadowIndexName = shadowIndexName(indexName);
+                        prepare.add(shadowIndexSQL(rs.getString(2), shadowIndexName, columnName, shadowName));
+
+                        if (Objects.isNull(rs.getString(3))) {
+                            afterRename.add(String.format("ALTER INDEX %s RENAME TO %s", shadowIndexName, indexName));
+                            continue;
+                        }
+
+                        String definition = rs.getString(5);
+                        int deferrable = definition.indexOf(" DEFERRABLE");
+                        afterRename.add(String.format("ALTER TABLE %s ADD CONSTRAINT %s %s USING INDEX %s%s",
+                                tableName, rs.getString(3), "p".equals(rs.getString(4)) ? "PRIMARY KEY" : "UNIQUE",
+                                shadowIndexName, deferrable < 0 ? "" : definition.substring(deferrable)));
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = getConnection().prepareStatement(loadShadowConstraintsSQL())) {
+
+                ps.setString(1, tableName);
+                ps.setString(2, columnName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+
+                        String definition = rs.getString(2).replaceFirst(" NOT VALID$", "");
+                        afterRename.add(String.format("ALTER TABLE %s ADD CONSTRAINT %s %s NOT VALID",
+                                tableName, rs.getString(1), definition));
+                        if (rs.getBoolean(3)) {
+                            validate.add(new PendingValidation(tableName, rs.getString(1)));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to read dependencies of column [" + tableName + "." + columnName + "].", e);
+        }
+
+        swap.add(dropColumnSQL(tableName, columnName));
+        swap.add(renameColumnSQL(tableName, shadowName, columnName));
+        swap.addAll(afterRename);
+        return new ShadowSwap(prepare, swap, validate);
+    }
+
+    /**
+     * Parameters are table and column name, twice.
+     * @return SQL, returning NOT NULL, the default, the owned sequence of the column and why it is refused, if it is
+     */
+    protected String loadShadowColumnSQL() {
+        String identity = supports(Capabilities.FEATURE.IDENTITY) ? "a.attidentity <> ''" : "false";
+        String dependent = "EXISTS (SELECT 1 FROM pg_depend dep WHERE dep.refclassid = 'pg_class'::regclass "
+                         + "AND dep.refobjid = a.attrelid AND dep.refobjsubid = a.attnum AND ";
+        return "SELECT a.attnotnull, pg_get_expr(d.adbin, d.adrelid), pg_get_serial_sequence(?, ?), "
+             + "CASE WHEN " + identity + " THEN 'an identity column' "
+             + "WHEN EXISTS (SELECT 1 FROM pg_constraint c WHERE c.contype = 'f' AND c.confrelid = a.attrelid "
+             + "AND a.attnum = ANY (c.confkey)) THEN 'referenced by a foreign key' "
+             + "WHEN EXISTS (SELECT 1 FROM pg_constraint c WHERE c.contype = 'x' AND c.conrelid = a.attrelid "
+             + "AND a.attnum = ANY (c.conkey)) THEN 'part of an exclusion constraint' "
+             + "WHEN " + dependent + "dep.classid = 'pg_rewrite'::regclass) THEN 'used by a view' "
+             + "WHEN " + dependent + "dep.classid = 'pg_trigger'::regclass) THEN 'used by a trigger' "
+             + "WHEN " + dependent + "dep.classid = 'pg_policy'::regclass) THEN 'used by a policy' "
+             + "WHEN " + dependent + "dep.classid = 'pg_class'::regclass AND dep.objid = a.attrelid) THEN 'used by a generated column' "
+             + "END "
+             + "FROM pg_attribute a LEFT JOIN pg_attrdef d ON d.adrelid = a.attrelid AND d.adnum = a.attnum "
+             + "WHERE a.attrelid = to_regclass(?) AND a.attname = ? AND NOT a.attisdropped";
+    }
+
+    /**
+     * Parameters are table and column name.
+     * @return SQL, returning name and definition of the indexes of the column, name, type and definition of their keys
+     */
+    protected String loadShadowIndexesSQL() {
+        return "WITH col AS (SELECT attrelid, attnum FROM pg_attribute "
+             + "WHERE attrelid = to_regclass(?) AND attname = ? AND NOT attisdropped) "
+             + "SELECT ic.relname, pg_get_indexdef(i.indexrelid), c.conname, c.contype, pg_get_constraintdef(c.oid) "
+             + "FROM col JOIN pg_index i ON i.indrelid = col.attrelid JOIN pg_class ic ON ic.oid = i.indexrelid "
+             + "LEFT JOIN pg_constraint c ON c.conindid = i.indexrelid AND c.conrelid = i.indrelid AND c.contype IN ('p', 'u') "
+             + "WHERE col.attnum = ANY (i.indkey::int2[]) "
+             + "OR EXISTS (SELECT 1 FROM pg_depend dep WHERE dep.classid = 'pg_class'::regclass "
+             + "AND dep.objid = i.indexrelid AND dep.refobjid = col.attrelid AND dep.refobjsubid = col.attnum) "
+             + "ORDER BY 1";
+    }
+
+    /**
+     * Parameters are table and column name.
+     * @return SQL, returning name, definition and validity of the foreign keys and checks of the column
+     */
+    protected String loadShadowConstraintsSQL() {
+        return "WITH col AS (SELECT attrelid, attnum FROM pg_attribute "
+             + "WHERE attrelid = to_regclass(?) AND attname = ? AND NOT attisdropped) "
+             + "SELECT c.conname, pg_get_constraintdef(c.oid), c.convalidated "
+             + "FROM col JOIN pg_constraint c ON c.conrelid = col.attrelid "
+             + "WHERE c.contype IN ('f', 'c') AND c.conislocal AND col.attnum = ANY (c.conkey) "
+             + "ORDER BY 1";
+    }
+
+    /**
+     * Turns the definition of an index into a concurrent build of the same index on the shadow column.
+     * @param indexDefinition the index definition, as returned by pg_get_indexdef
+     * @param shadowIndexName the name of the new index
+     * @param columnName the column name
+     * @param shadowName the shadow column name
+     * @return SQL
+     */
+    protected String shadowIndexSQL(String indexDefinition, String shadowIndexName, String columnName, String shadowName) {
+
+        int using = indexDefinition.indexOf(" USING ");
+        String head = indexDefinition.substring(0, using).replaceFirst("^CREATE (UNIQUE )?INDEX \\S+ ON ",
+                "CREATE $1INDEX CONCURRENTLY " + Matcher.quoteReplacement(shadowIndexName) + " ON ");
+        String tail = indexDefinition.substring(using).replaceAll("(?<![\\w.\"'])" + Pattern.quote(columnName) + "(?![\\w\"'])",
+                Matcher.quoteReplacement(shadowName));
+        return head + tail;
+    }
+
+    private String shadowIndexName(String indexName) {
+        String name = indexName + "_shadow";
+        return name.length() > 63 ? indexName.substring(0, 56) + "_shadow" : name;
+    }
+
+    @Override
+    protected String renameColumnSQL(String tableName, String columnName, String rename) {
+        return String.format("ALTER TABLE %s RENAME %s TO %s", tableName, columnName, rename);
+    }
+
+    private String shadowTriggerName(String tableName, String columnName) {
+        return tableName + "_" + columnName + "_sync";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long estimateRowCount(String tableName) {
+
+        try (PreparedStatement ps = getConnection().prepareStatement(estimateRowCountSQL())) {
+
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && !rs.wasNull() ? rs.getLong(1) : -1L;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to estimate row count of [" + tableName + "].", e);
+        }
+    }
+
+    /**
+     * Partitioned tables count the rows of their partitions. Never analyzed relations
+     * (reltuples -1 on PostgreSQL 14+) do not count, so the estimate is -1, if none was analyzed.
+     * @return SQL
+     */
+    protected String estimateRowCountSQL() {
+        return "WITH t AS (SELECT to_regclass(?) AS oid) "
+             + "SELECT SUM(c.reltuples)::bigint FROM pg_class c, t "
+             + "WHERE c.reltuples >= 0 AND (c.oid = t.oid "
+             + "OR c.oid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = t.oid))";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsConcurrentIndex() {
+        return true;
+    }
+
+    /**
+     * Partitions and inheritance children are analyzed one by one, so they run in parallel.
+     * A partitioned table is analyzed with ONLY afterwards (PostgreSQL 18+). Older servers recurse
+     * into all partitions on ANALYZE of the partitioned table, so it is analyzed as a whole there.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> analyzeSQL(ChangeSet changes, StatisticsPolicy policy) throws SQLException {
+
+        Set<String> statements = new LinkedHashSet<>();
+        for (String tableName : changes.getTableNames()) {
 
-        return b.toString();
-    }
+            List<String[]> tree = new ArrayList<>();
+            try (PreparedStatement ps = getConnection().prepareStatement(inheritanceTreeSQL())) {
+                ps.setString(1, tableName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        tree.add(new String[] { rs.getString(1), rs.getString(2) });
+                    }
+                }
+            }
 
-    protected String createPartitionTablesSQL(String parentName, PartitionSet set, Partition partition) {
+            if (tree.isEmpty()) {
+                continue;
+            }
 
-        if (partition.isForeign()) {
-            return String.format("CREATE FOREIGN TABLE %s PARTITION OF %s FOR VALUES %s SERVER %s%s",
-                    partition.getPartitionName(),
-                    parentName,
-                    createPartitionSpecSQL(set, partition),
-                    partition.getForeignNode(),
-                    partition.getForeignOptions().isEmpty()
-                        ? ""
-                        : " OPTIONS (" +
-                            partition.getForeignOptions().entrySet().stream()
-                                .map(entry ->
-                                    new StringBuilder()
-                                        .append(entry.getKey())
-                                        .append(" '")
-                                        .append(entry.getValue())
-                                        .append("'")
-                                        .toString()
-                                )
-                                .collect(Collectors.joining(","))
-                            + ")");
+            if (tree.size() == 1 || ("p".equals(tree.get(0)[1]) && !supports(Capabilities.FEATURE.ANALYZE_ONLY))) {
+                statements.add("ANALYZE " + tree.get(0)[0]);
+                continue;
+            }
+
+            tree.forEach(relation -> statements.add("p".equals(relation[1])
+                    ? "ANALYZE ONLY " + relation[0]
+                    : "ANALYZE " + relation[0]));
         }
 
-        return String.format("CREATE TABLE %s PARTITION OF %s FOR VALUES %s",
-                partition.getPartitionName(),
-                parentName,
-                createPartitionSpecSQL(set, partition));
+        return new ArrayList<>(statements);
     }
 
-    protected String createPartitionSpecSQL(PartitionSet set, Partition partition) {
+    /**
+     * The table first, then its partitions (children) on all levels.
+     * @return SQL
+     */
+    protected String inheritanceTreeSQL() {
+        return "WITH RECURSIVE tree AS ("
+             + "SELECT to_regclass(?) AS oid, 0 AS depth "
+             + "UNION ALL "
+             + "SELECT i.inhrelid, tree.depth + 1 FROM pg_inherits i JOIN tree ON i.inhparent = tree.oid) "
+             + "SELECT c.oid::regclass::text, c.relkind FROM tree JOIN pg_class c ON c.oid = tree.oid "
+             + "ORDER BY tree.depth";
+    }
 
-        switch (set.getType()) {
-            case HASH:
-                HashPartitionSpec hs = (HashPartitionSpec) partition.getPartitionSpec();
-                return "WITH (MODULUS " + set.getPartitions().size() + ", REMAINDER " + hs.getRemainder() + ")";
-            case LIST:
-                ListPartitionSpec ls = (ListPartitionSpec) partition.getPartitionSpec();
-                return "IN (" + String.join(",", ls.getValues()) + ")";
-            case RANGE:
-                RangePartitionSpec rs = (RangePartitionSpec) partition.getPartitionSpec();
-                return "FROM (" + String.join(",", rs.getFrom()) + ") TO (" + String.join(",", rs.getTo()) + ")";
-            default:
-                break;
-        }
+    /**
+     * New indexes and their partitions are loaded with pg_prewarm, if the extension is installed.
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> prewarmSQL(ChangeSet changes) throws SQLException {
 
-        return null;
-    }
+        try (Statement statement = getConnection().createStatement();
+             ResultSet rs = statement.executeQuery("SELECT 1 FROM pg_extension WHERE extname = 'pg_prewarm'")) {
 
-    protected Collection<String> createSequenceSpecSQL(String tableName, Collection<Column> aiColumns) {
+            if (!rs.next()) {
+                logger.warn("Extension pg_prewarm is not installed, new indexes are not prewarmed");
+                return Collections.emptyList();
+            }
+        }
 
-        return aiColumns.stream()
-                .flatMap(c -> {
-                    final String seqName = new StringBuilder("sq_")
-                            .append(tableName)
-                            .append("_")
-                            .append(c.getColumnName())
-                            .toString();
+        List<String> statements = new ArrayList<>();
+        changes.getTableNames().forEach(tableName -> changes.getIndexNames(tableName)
+                .forEach(indexName -> statements.add(prewarmIndexSQL(indexName))));
 
-                    return Stream.of(
-                        String.format("CREATE SEQUENCE %s AS %s OWNED BY %s.%s", seqName, getNativeColumnDefinition(c), tableName, c.getColumnName()),
-                        super.setNotNullSQL(tableName, c.getColumnName()),
-                        setDefaultSQL(tableName, c.getColumnName(), "NEXTVAL('" + seqName + "')"));
-                    }
-                )
-                .collect(Collectors.toList());
+        return statements;
+    }
 
+    protected String prewarmIndexSQL(String indexName) {
+        String literal = "'" + indexName.replace("'", "''") + "'";
+        return "SELECT pg_prewarm(c.oid) FROM pg_class c WHERE c.relkind = 'i' "
+             + "AND (c.oid = to_regclass(" + literal + ") "
+             + "OR c.oid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = to_regclass(" + literal + ")))";
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void setDefault() {
+    public void dropColumn(String columnName) {
 
-        super.setDefault();
-        if (!currentTable.isPartitioned()) {
+        super.dropColumn(columnName);
+        if (!detachesPartitions(currentTable)) {
             return;
         }
 
-        executeInStatement(setDefaultPartitionedSQL(currentTable, getCurrentColumn().getDefaultValue()));
+        executeInStatement(dropColumnPartitionedSQL(currentTable, columnName));
     }
 
-    protected List<String> setDefaultPartitionedSQL(Table table, String defaultValue) {
+    protected List<String> dropColumnPartitionedSQL(Table table, String columnName) {
         return table.getPartitionStream()
-                .map(p -> setDefaultSQL(p.getPartitionName(), getAlterColumnName(), defaultValue))
+                .map(p -> super.dropColumnSQL(p.getPartitionName(), columnName))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    protected String setDefaultSQL(String tableName, String columnName, String defaultValue) {
-        return String.format("ALTER TABLE %s ALTER COLUMN %s SET DEFAULT %s", tableName, columnName, defaultValue);
+    public void addConstraint(Constraint constraint) {
+
+        if (alterMode == AlterMode.ALTER_TABLE) {
+            addConstraint(currentTable.getTableName(), constraint);
+        } else if (alterMode == AlterMode.ALTER_PARTITION) {
+            addConstraint(currentPartition.getPartitionName(), constraint);
+        }
     }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public void addColumn(Column column) {
+    protected void addConstraint(String tableName, Constraint constraint) {
 
-        super.addColumn(column);
-        if (!currentTable.isPartitioned()) {
-            return;
-        }
+        if (Boolean.TRUE.equals(constraint.getConcurrently())) {
 
-        List<String> statements = new ArrayList<>(addColumnPartitionedSQL(currentTable, column));
+            if (isKeyAddedConcurrently()) {
+                addKeyConcurrently(tableName, constraint);
+                return;
+            }
 
-        if (column.getAutoIncrement() != null && column.getAutoIncrement()) {
-            getCurrentTable().getPartitionStream()
-                .map(p -> createSequenceSpecSQL(p.getPartitionName(), Collections.singletonList(column)))
-                .flatMap(Collection::stream)
-                .collect(Collectors.toCollection(() -> statements));
+            logger.warn("Constraint {} on partitioned table {} cannot be added concurrently, adding in place",
+                    constraint.getConstraintName(), tableName);
         }
 
-        executeInStatement(statements);
+        super.addConstraint(tableName, constraint);
     }
 
-    protected List<String> addColumnPartitionedSQL(Table table, Column column) {
-        return table.getPartitionStream()
-                .map(p -> super.addColumnSQL(p.getPartitionName(), column))
-                .collect(Collectors.toList());
+    /**
+     * USING INDEX is not supported for partitioned parents.
+     * @return true, if keys of the current table or partition are promoted from concurrently built indexes
+     */
+    protected boolean isKeyAddedConcurrently() {
+        return alterMode == AlterMode.ALTER_PARTITION || !currentTable.isPartitioned();
     }
 
-    @Override
-    public void changeType() {
+    /**
+     * Builds the unique index concurrently under the constraint name and promotes it to the constraint.
+     * The promotion takes ACCESS EXCLUSIVE lock for a catalog update only. Primary keys on nullable columns
+     * still scan the table for SET NOT NULL, so the columns should be NOT NULL already.
+     * @param tableName the table name
+     * @param constraint the primary key or unique constraint
+     */
+    protected void addKeyConcurrently(String tableName, Constraint constraint) {
 
-        executeInStatement(changeTypeSQL(getAlterTableName(), getCurrentColumn()));
-        if (!currentTable.isPartitioned()) {
+        String constraintName = constraint.getConstraintName();
+        if (hasConstraint(tableName, constraintName)) {
+            logger.info("Constraint {} exists on {}, skipping", constraintName, tableName);
             return;
         }
 
-        List<String> statements = new ArrayList<>(changeTypePartitionedSQL(currentTable, getCurrentColumn()));
-
-        if (getCurrentColumn().getAutoIncrement() != null && getCurrentColumn().getAutoIncrement()) {
-            getCurrentTable().getPartitionStream()
-                .map(p -> createSequenceSpecSQL(p.getPartitionName(), Collections.singletonList(getCurrentColumn())))
-                .flatMap(Collection::stream)
-                .collect(Collectors.toCollection(() -> statements));
-        }
+        Index index = new Index.Builder(constraintName, Index.TYPE.UNIQUE, new ArrayList<>(constraint.getColumnNames()))
+                .include(constraint.getIncludeNames() != null ? constraint.getIncludeNames() : Collections.emptyList())
+                .concurrently(true)
+                .build();
 
-        executeInStatement(statements);
+        addIndexConcurrently(tableName, index);
+        executeInStatement(String.format("ALTER TABLE %s ADD CONSTRAINT %s %s USING INDEX %s",
+                tableName,
+                constraintName,
+                constraint.getType() == TYPE.PRIMARY_KEY ? "PRIMARY KEY" : "UNIQUE",
+                constraintName));
     }
 
-    protected List<String> changeTypePartitionedSQL(Table table, Column column) {
-        return table.getPartitionStream()
-                .map(p -> changeTypeSQL(p.getPartitionName(), column))
-                .collect(Collectors.toList());
+    protected boolean hasConstraint(String tableName, String constraintName) {
+
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "SELECT 1 FROM pg_constraint WHERE conrelid = to_regclass(?) AND conname = ?")) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, constraintName.toLowerCase());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to check constraint [" + constraintName + "].", e);
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * NOT VALID takes SHARE ROW EXCLUSIVE locks for the catalog update only, no rows are read.
+     * Partitioned tables do not accept NOT VALID keys, the key is added to every leaf partition instead.
+     * The partitions are validated in parallel and the key is added to the partitioned table afterwards,
+     * which attaches the validated keys of the partitions without a scan.
+     * Partitioned tables without partitions get the key right away.
      */
     @Override
-    protected String changeTypeSQL(String tableName, Column column) {
-        return String.format("ALTER TABLE %s ALTER COLUMN %s TYPE %s",
-                getAlterTableName(),
-                getAlterColumnName(),
-                getNativeColumnDefinition(column));
+    protected List<PendingValidation> addForeignKeyNotValid(String tableName, Constraint constraint) {
+
+        List<String> partitions = loadLeafPartitions(tableName);
+        if (Objects.isNull(partitions)) {
+            executeInStatement(addConstraintSQL(tableName, constraint) + " NOT VALID");
+            return Collections.singletonList(new PendingValidation(tableName, constraint));
+        }
+
+        List<PendingValidation> validations = new ArrayList<>();
+        for (String partition : partitions) {
+            executeInStatement(addConstraintSQL(partition, constraint) + " NOT VALID");
+            validations.add(new PendingValidation(partition, tableName, constraint));
+        }
+
+        return validations;
     }
 
     /**
+     * @param tableName the table name
+     * @return leaf partitions of a partitioned table, null if the table is not partitioned
+     */
+    protected List<String> loadLeafPartitions(String tableName) {
+
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "WITH RECURSIVE tree (oid) AS (SELECT to_regclass(?)::oid "
+              + "UNION ALL SELECT i.inhrelid FROM pg_inherits i JOIN tree ON i.inhparent = tree.oid) "
+              + "SELECT c.relname, c.relkind, c.oid = to_regclass(?) FROM tree JOIN pg_class c ON c.oid = tree.oid "
+              + "ORDER BY 1")) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, tableName);
+
+            boolean partitioned = false;
+            List<String> partitions = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getBoolean(3)) {
+                        partitioned = "p".equals(rs.getString(2));
+                    } else if ("r".equals(rs.getString(2))) {
+                        partitions.add(rs.getString(1));
+                    }
+                }
+            }
+
+            return partitioned ? partitions : null;
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to load partitions of [" + tableName + "].", e);
+        }
+    }
+
+    /**
+     * Adds the key to the partitioned table, the validated keys of the partitions are attached to it.
      * {@inheritDoc}
      */
     @Override
-    public void dropColumn(String columnName) {
+    protected void addPartitionedConstraint(Connection connection, PendingValidation validation) throws SQLException {
+
+        String parentTableName = validation.getParentTableName();
+        String definition = null;
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT pg_get_constraintdef(c.oid), "
+              + "EXISTS (SELECT 1 FROM pg_constraint p WHERE p.conrelid = to_regclass(?) AND p.conname = c.conname) "
+              + "FROM pg_constraint c WHERE c.conrelid = to_regclass(?) AND c.conname = ?")) {
+
+            ps.setString(1, parentTableName);
+            ps.setString(2, validation.getTableName());
+            ps.setString(3, validation.getConstraintName().toLowerCase());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    if (rs.getBoolean(2)) {
+                        return;
+                    }
 
-        super.dropColumn(columnName);
-        if (!currentTable.isPartitioned()) {
-            return;
+                    definition = rs.getString(1);
+                }
+            }
         }
 
-        executeInStatement(dropColumnPartitionedSQL(currentTable, columnName));
+        String sql = Objects.nonNull(validation.getConstraint())
+                ? addConstraintSQL(parentTableName, validation.getConstraint())
+                : String.format("ALTER TABLE %s ADD CONSTRAINT %s %s", parentTableName, validation.getConstraintName(),
+                        Objects.requireNonNull(definition, "definition of " + validation + " not found").replaceFirst(" NOT VALID$", ""));
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
     }
 
-    protected List<String> dropColumnPartitionedSQL(Table table, String columnName) {
-        return table.getPartitionStream()
-                .map(p -> super.dropColumnSQL(p.getPartitionName(), columnName))
-                .collect(Collectors.toList());
+    /**
+     * VALIDATE CONSTRAINT scans the table under SHARE UPDATE EXCLUSIVE lock, writes are not blocked.
+     */
+    @Override
+    protected void validateConstraint(Connection connection, PendingValidation validation) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(validateConstraintSQL(validation));
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void addConstraint(Constraint constraint) {
-
-        if (alterMode == AlterMode.ALTER_TABLE) {
-            executeInStatement(addConstraintSQL(currentTable.getTableName(), constraint));
-        } else if (alterMode == AlterMode.ALTER_PARTITION) {
-            executeInStatement(addConstraintSQL(currentPartition.getPartitionName(), constraint));
+    protected List<PendingValidation> loadUnvalidatedConstraints() {
+
+        // Keys of partitions, whose partitioned table misses the key, are added to the root after the validation.
+        // Checks are left unvalidated by online type changes, whose rows violate them
+        String sql = "SELECT c.conrelid::regclass::text, c.conname, "
+                   + "CASE WHEN c.contype = 'f' AND NOT EXISTS (SELECT 1 FROM pg_constraint p WHERE p.conrelid = root.oid AND p.conname = c.conname) "
+                   + "THEN root.oid::regclass::text END "
+                   + "FROM pg_constraint c "
+                   + "JOIN pg_namespace n ON n.oid = c.connamespace "
+                   + "LEFT JOIN LATERAL (WITH RECURSIVE up (oid, depth) AS ("
+                   + "SELECT i.inhparent, 1 FROM pg_inherits i WHERE i.inhrelid = c.conrelid "
+                   + "UNION ALL SELECT i.inhparent, up.depth + 1 FROM pg_inherits i JOIN up ON i.inhrelid = up.oid) "
+                   + "SELECT up.oid FROM up JOIN pg_class pc ON pc.oid = up.oid AND pc.relkind = 'p' "
+                   + "ORDER BY up.depth DESC LIMIT 1) root ON true "
+                   + "WHERE c.contype IN ('f', 'c') AND NOT c.convalidated AND n.nspname = current_schema()";
+
+        List<PendingValidation> result = new ArrayList<>();
+        try (Statement statement = getConnection().createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+
+            while (rs.next()) {
+                result.add(Objects.isNull(rs.getString(3))
+                        ? new PendingValidation(rs.getString(1), rs.getString(2))
+                        : new PendingValidation(rs.getString(1), rs.getString(3), rs.getString(2)));
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to load unvalidated constraints.", e);
         }
+
+        return result;
     }
 
     @Override
@@ -419,19 +2813,97 @@ public class PostgresDatabase extends DefaultDatabase {
     @Override
     public void addIndex(Index index) {
 
+        String tableName = null;
         if (alterMode == AlterMode.ALTER_TABLE) {
-            executeInStatement(addIndexSQL(currentTable.getTableName(), index));
+            tableName = currentTable.getTableName();
         } else if (alterMode == AlterMode.ALTER_PARTITION) {
-            executeInStatement(addIndexSQL(currentPartition.getPartitionName(), index));
+            tableName = currentPartition.getPartitionName();
+        }
+
+        if (Objects.isNull(tableName)) {
+            return;
+        }
+
+        if (isConcurrent(tableName, index)) {
+
+            // Partitioned parents cannot be indexed concurrently, only their partitions
+            if (alterMode == AlterMode.ALTER_PARTITION || !currentTable.isPartitioned()) {
+                addIndexConcurrently(tableName, index);
+                return;
+            }
+
+            logger.warn("Index {} on partitioned table {} cannot be built concurrently, building in place",
+                    index.getIndexName(), tableName);
+        }
+
+        executeInStatement(addIndexSQL(tableName, index));
+    }
+
+    /**
+     * Builds the index with CREATE INDEX CONCURRENTLY, which must run outside of a transaction.
+     * An interrupted build leaves an INVALID index behind, which is dropped before the retry.
+     * A valid index of the same name is taken as built by a previous attempt.
+     * @param tableName the table name
+     * @param index the index
+     */
+    protected void addIndexConcurrently(String tableName, Index index) {
+
+        Boolean valid = loadIndexValidity(index.getIndexName());
+        if (Boolean.TRUE.equals(valid)) {
+            logger.info("Index {} exists, skipping concurrent build", index.getIndexName());
+            return;
+        }
+
+        if (Boolean.FALSE.equals(valid)) {
+            logger.warn("Dropping INVALID index {}, left over by an interrupted build", index.getIndexName());
+            executeInStatement(dropIndexConcurrentlySQL(index.getIndexName()));
+        }
+
+        executeInStatement(addIndexSQL(tableName, index, true));
+    }
+
+    /**
+     * @param indexName the index name
+     * @return true, if the index is valid, false if invalid, null if it does not exist
+     */
+    protected Boolean loadIndexValidity(String indexName) {
+
+        try (PreparedStatement ps = getConnection().prepareStatement(
+                "SELECT i.indisvalid FROM pg_index i WHERE i.indexrelid = to_regclass(?)")) {
+
+            ps.setString(1, indexName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getBoolean(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Failed to check index [" + indexName + "].", e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dropIndexConcurrently(String indexName) {
+        executeInStatement(dropIndexConcurrentlySQL(indexName));
+    }
+
+    protected String dropIndexConcurrentlySQL(String indexName) {
+        return String.format("DROP INDEX CONCURRENTLY IF EXISTS %s", indexName);
+    }
+
     protected String addIndexSQL(String tableName, Index index) {
+        return addIndexSQL(tableName, index, false);
+    }
+
+    protected String addIndexSQL(String tableName, Index index, boolean concurrently) {
 
         StringBuilder sqlb = new StringBuilder(
             String.format(index.getType() == Index.TYPE.UNIQUE
-                ? "CREATE UNIQUE INDEX %s ON %s"
-                : "CREATE INDEX %s ON %s", index.getIndexName(), tableName));
+                ? "CREATE UNIQUE INDEX%s %s ON %s"
+                : "CREATE INDEX%s %s ON %s",
+                concurrently ? " CONCURRENTLY" : "",
+                index.getIndexName(), tableName));
 
         switch (index.getType()) {
         case BTREE:
@@ -461,14 +2933,14 @@ public class PostgresDatabase extends DefaultDatabase {
             sqlb.append(String.format(" INCLUDE (%s)", String.join(",", index.getIncludeNames())));
         }
 
-        return sqlb.toString();
+        return sqlb.append(tablespaceSQL(index.getTablespace())).toString();
     }
 
     @Override
     public void rename() {
 
         executeInStatement(renameSQL(getAlterTableName(), getCurrentColumn().getRename()));
-        if (!currentTable.isPartitioned()) {
+        if (!detachesPartitions(currentTable)) {
             return;
         }
 
@@ -480,10 +2952,7 @@ public class PostgresDatabase extends DefaultDatabase {
      */
     @Override
     protected String renameSQL(String tableName, String rename) {
-        return String.format("ALTER TABLE %s RENAME %s TO %s",
-                tableName,
-                getAlterColumnName(),
-                rename);
+        return renameColumnSQL(tableName, getAlterColumnName(), rename);
     }
 
     protected List<String> renamePartitionedSQL(Table table, String rename) {
@@ -499,6 +2968,8 @@ public class PostgresDatabase extends DefaultDatabase {
     public void setNull() {
 
         super.setNull();
+        // NOT NULL may be enforced by the check of an online SET NOT NULL on servers before 12
+        executeInStatement(dropNotNullCheckSQL(getAlterTableName(), getAlterColumnName()));
         if (!currentTable.isPartitioned()) {
             return;
         }
@@ -507,9 +2978,22 @@ public class PostgresDatabase extends DefaultDatabase {
     }
 
     protected List<String> setNullPartitionedSQL(Table table, String columnName) {
-        return table.getPartitionStream()
-                .map(p -> super.setNullSQL(p.getPartitionName(), columnName))
-                .collect(Collectors.toList());
+
+        boolean detached = detachesPartitions(table);
+        List<String> statements = new ArrayList<>();
+        table.getPartitionStream().forEach(p -> {
+            if (detached) {
+                statements.add(super.setNullSQL(p.getPartitionName(), columnName));
+            }
+            // Checks of an online SET NOT NULL are local to the partitions
+            statements.add(dropNotNullCheckSQL(p.getPartitionName(), columnName));
+        });
+
+        return statements;
+    }
+
+    protected String dropNotNullCheckSQL(String tableName, String columnName) {
+        return dropConstraintIfExistsSQL(tableName, notNullCheckName(tableName, columnName));
     }
 
     /**
@@ -518,8 +3002,13 @@ public class PostgresDatabase extends DefaultDatabase {
     @Override
     public void setNotNull() {
 
+        if (strategyOf(getCurrentColumn()) == Column.STRATEGY.ONLINE) {
+            setNotNullOnline();
+            return;
+        }
+
         super.setNotNull();
-        if (!currentTable.isPartitioned()) {
+        if (!detachesPartitions(currentTable)) {
             return;
         }
 
@@ -532,21 +3021,114 @@ public class PostgresDatabase extends DefaultDatabase {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * SET NOT NULL without a scan under ACCESS EXCLUSIVE lock, see {@link #setNotNullValidated(String, Column)}.
+     */
+    protected void setNotNullOnline() {
+
+        if (!currentTable.isPartitioned()) {
+            setNotNullValidated(getAlterTableName(), getCurrentColumn());
+            return;
+        }
+
+        if (!detachesPartitions(currentTable)) {
+            setNotNullOnlineAttached(currentTable, getAlterColumnName());
+            return;
+        }
+
+        // The parent holds no rows
+        super.setNotNull();
+        executeInStatement(setNotNullOnlinePartitionedSQL(currentTable, getAlterColumnName()));
+    }
+
+    /**
+     * Checks are added to and validated on every attached partition under SHARE UPDATE EXCLUSIVE lock.
+     * SET NOT NULL on the partitioned table then recurses into the partitions, using their validated checks
+     * instead of a scan (12+). Older servers keep the checks in place of the column constraint.
+     * Steps commit on their own, so this runs in non transactional scripts only. If a partition fails
+     * the validation, the checks of all partitions are dropped again.
+     * @param table the partitioned table
+     * @param columnName the column name
+     */
+    protected void setNotNullOnlineAttached(Table table, String columnName) {
+
+        requireNonTransactional("Online SET NOT NULL of " + table.getTableName() + "." + columnName);
+
+        List<String> checks = new ArrayList<>();
+        table.getPartitionStream()
+            .forEach(p -> checks.addAll(addNotNullCheckSQL(p.getPartitionName(), columnName)));
+        executeInStatement(checks);
+        commit();
+
+        try {
+            table.getPartitionStream().forEach(p -> validateNotNullCheck(p.getPartitionName(), columnName));
+        } catch (CouldNotProcessException e) {
+
+            executeInStatement(table.getPartitionStream()
+                    .map(p -> dropNotNullCheckSQL(p.getPartitionName(), columnName))
+                    .collect(Collectors.toList()));
+            commit();
+            throw e;
+        }
+
+        if (!supports(Capabilities.FEATURE.NOT_NULL_FROM_CHECK)) {
+            logger.info("Server is older than 12, NOT NULL on partitions of {}.{} is enforced by checks",
+                    table.getTableName(), columnName);
+            return;
+        }
+
+        List<String> statements = new ArrayList<>();
+        statements.add(super.setNotNullSQL(table.getTableName(), columnName));
+        table.getPartitionStream()
+            .forEach(p -> statements.add(dropConstraintSQL(p.getPartitionName(), notNullCheckName(p.getPartitionName(), columnName))));
+        executeInStatement(statements);
+    }
+
+    /*
+     * Partitions stay detached and locked until the script commits,
+     * so the steps run in the script transaction without intermediate commits.
+     * Every child is still scanned once only, by VALIDATE.
+     */
+    protected List<String> setNotNullOnlinePartitionedSQL(Table table, String columnName) {
+
+        List<String> statements = new ArrayList<>();
+        table.getPartitionStream()
+            .forEach(p -> statements.addAll(addNotNullCheckSQL(p.getPartitionName(), columnName)));
+        table.getPartitionStream()
+            .forEach(p -> statements.add(validateNotNullCheckSQL(p.getPartitionName(), columnName)));
+
+        if (supports(Capabilities.FEATURE.NOT_NULL_FROM_CHECK)) {
+            table.getPartitionStream()
+                .forEach(p -> statements.addAll(replaceNotNullCheckSQL(p.getPartitionName(), columnName)));
+        }
+
+        return statements;
+    }
+
     @Override
     protected String getNativeColumnDefinition(Column column) {
 
         switch (column.getType()) {
             case BIG_INTEGER:
+                if (isIdentity(column)) {
+                    return super.getNativeColumnDefinition(column) + identitySQL(column);
+                }
                 if (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement() && !getCurrentTable().isPartitioned()) {
                     return "BIGSERIAL";
                 }
                 break;
             case SMALL_INTEGER:
+                if (isIdentity(column)) {
+                    return super.getNativeColumnDefinition(column) + identitySQL(column);
+                }
                 if (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement() && !getCurrentTable().isPartitioned()) {
                     return "SMALLSERIAL";
                 }
                 break;
             case INTEGER:
+                if (isIdentity(column)) {
+                    return super.getNativeColumnDefinition(column) + identitySQL(column);
+                }
                 if (Objects.nonNull(column.getAutoIncrement()) && column.getAutoIncrement() && !getCurrentTable().isPartitioned()) {
                     return "SERIAL";
                 }
@@ -563,4 +3145,11 @@ public class PostgresDatabase extends DefaultDatabase {
 
         return super.getNativeColumnDefinition(column);
     }
+
+    protected String identitySQL(Column column) {
+
+        String options = sequenceOptionsSQL(column).trim();
+        return " GENERATED " + (column.getIdentity() == Column.IDENTITY.ALWAYS ? "ALWAYS" : "BY DEFAULT") + " AS IDENTITY"
+                + (options.isEmpty() ? "" : " (" + options + ")");
+    }
 }
@@ -0,0 +1,146 @@
+package nl.myndocs.database.migrator.database;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Tells, what to do, if sessions are found, which would keep DDL on the target tables waiting:
+ * lock holders on the tables, long running and idle in transaction sessions.
+ */
+public class PreflightPolicy {
+
+    public static final long DEFAULT_MAX_TRANSACTION_AGE = 60000L;
+    public static final long DEFAULT_MAX_LOCK_HOLDER_AGE = 1000L;
+    public static final long DEFAULT_WAIT_TIMEOUT = 300000L;
+    public static final long DEFAULT_POLL_INTERVAL = 5000L;
+
+    /**
+     * Reaction on blockers.
+     */
+    public enum ACTION {
+        /**
+         * Report the blockers and go on.
+         */
+        REPORT,
+        /**
+         * Poll, until no blockers are found, fail after the wait timeout.
+         */
+        WAIT,
+        /**
+         * Fail immediately.
+         */
+        FAIL
+    }
+
+    private final ACTION action;
+    private final long maxTransactionAgeMillis;
+    private final long maxLockHolderAgeMillis;
+    private final long waitTimeoutMillis;
+    private final long pollIntervalMillis;
+    private final Consumer<List<Blocker>> listener;
+
+    private PreflightPolicy(Builder builder) {
+
+        if (builder.maxTransactionAgeMillis < 0 || builder.maxLockHolderAgeMillis < 0) {
+            throw new InvalidSpecException("max ages must not be negative");
+        }
+
+        if (builder.waitTimeoutMillis < 0 || builder.pollIntervalMillis <= 0) {
+            throw new InvalidSpecException("wait timeout must not be negative and poll interval must be positive");
+        }
+
+        action = builder.action;
+        maxTransactionAgeMillis = builder.maxTransactionAgeMillis;
+        maxLockHolderAgeMillis = builder.maxLockHolderAgeMillis;
+        waitTimeoutMillis = builder.waitTimeoutMillis;
+        pollIntervalMillis = builder.pollIntervalMillis;
+        listener = builder.listener;
+    }
+
+    public ACTION getAction() {
+        return action;
+    }
+
+    /**
+     * @return transactions, open for longer, are reported. PostgreSQL reports only transactions,
+     * holding or waiting for a lock on a target table, MySQL all of them
+     */
+    public long getMaxTransactionAgeMillis() {
+        return maxTransactionAgeMillis;
+    }
+
+    /**
+     * @return sessions, locking a target table for longer, are reported
+     */
+    public long getMaxLockHolderAgeMillis() {
+        return maxLockHolderAgeMillis;
+    }
+
+    public long getWaitTimeoutMillis() {
+        return waitTimeoutMillis;
+    }
+
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    /**
+     * @return the listener or null
+     */
+    public Consumer<List<Blocker>> getListener() {
+        return listener;
+    }
+
+    public static class Builder {
+        private ACTION action = ACTION.REPORT;
+        private long maxTransactionAgeMillis = DEFAULT_MAX_TRANSACTION_AGE;
+        private long maxLockHolderAgeMillis = DEFAULT_MAX_LOCK_HOLDER_AGE;
+        private long waitTimeoutMillis = DEFAULT_WAIT_TIMEOUT;
+        private long pollIntervalMillis = DEFAULT_POLL_INTERVAL;
+        private Consumer<List<Blocker>> listener;
+
+        public Builder action(ACTION action) {
+            this.action = action;
+            return this;
+        }
+
+        public Builder maxTransactionAge(long maxTransactionAgeMillis) {
+            this.maxTransactionAgeMillis = maxTransactionAgeMillis;
+            return this;
+        }
+
+        public Builder maxLockHolderAge(long maxLockHolderAgeMillis) {
+            this.maxLockHolderAgeMillis = maxLockHolderAgeMillis;
+            return this;
+        }
+
+        /**
+         * Used with {@link ACTION#WAIT} only.
+         * @param waitTimeoutMillis max time to wait for a quiet window
+         * @param pollIntervalMillis pause between checks
+         * @return self
+         */
+        public Builder waitFor(long waitTimeoutMillis, long pollIntervalMillis) {
+            this.waitTimeoutMillis = waitTimeoutMillis;
+            this.pollIntervalMillis = pollIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Called with the blockers found by every check.
+         * @param listener the listener
+         * @return self
+         */
+        public Builder listener(Consumer<List<Blocker>> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public PreflightPolicy build() {
+            return new PreflightPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nl.myndocs.database.migrator.database;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Refuses statements, rewriting tables above a size threshold,
+ * unless the column change explicitly allows a rewrite.
+ */
+public class RewritePolicy {
+
+    private final long maxTableBytes;
+
+    private RewritePolicy(Builder builder) {
+
+        if (builder.maxTableBytes < 0) {
+            throw new InvalidSpecException("maxTableBytes must not be negative");
+        }
+
+        this.maxTableBytes = builder.maxTableBytes;
+    }
+
+    /**
+     * @return the size in bytes (heap, toast and indexes), above which rewrites are refused
+     */
+    public long getMaxTableBytes() {
+        return maxTableBytes;
+    }
+
+    public boolean permits(long tableBytes, boolean allowRewrite) {
+        return allowRewrite || tableBytes <= maxTableBytes;
+    }
+
+    public static class Builder {
+        private long maxTableBytes = Long.MAX_VALUE;
+
+        public Builder maxTableBytes(long maxTableBytes) {
+            this.maxTableBytes = maxTableBytes;
+            return this;
+        }
+
+        public RewritePolicy build() {
+            return new RewritePolicy(this);
+        }
+    }
+}
@@ -2,7 +2,13 @@ package nl.myndocs.database.migrator.database;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import javax.sql.DataSource;
+
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
 import nl.myndocs.database.migrator.database.exception.UnknownDatabaseTypeException;
 import nl.myndocs.database.migrator.database.query.Database;
 
@@ -13,21 +19,14 @@ public class Selector {
     private static final String MYSQL_PRODUCT_NAME = "MySQL";
     private static final String POSTGRES_PRODUCT_NAME = "PostgreSQL";
 
-    public Database loadFromConnection(Connection connection) {
-        try {
-            switch (connection.getMetaData().getDatabaseProductName()) {
-                case DERBY_PRODUCT_NAME: return new DerbyDatabase(connection);
-                case H2_PRODUCT_NAME: return new H2Database(connection);
-                case MYSQL_PRODUCT_NAME: return new MySQLDatabase(connection);
-                case HSQL_PRODUCT_NAME: return new HyperSQLDatabase(connection);
-                case POSTGRES_PRODUCT_NAME: return new PostgresDatabase(connection);
-                default: break; // SONAR
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Probed capabilities per data source, shared by all selectors. Entries go with their data source.
+     */
+    private static final Map<DataSource, Capabilities> DATA_SOURCE_CAPABILITIES
+        = Collections.synchronizedMap(new WeakHashMap<>());
 
-        throw new UnknownDatabaseTypeException();
+    public Database loadFromConnection(Connection connection) {
+        return loadFromConnection(connection, null);
     }
     /**
      * Restricts operations to a particular schema.
@@ -36,17 +35,63 @@ public class Selector {
      * @return database instance
      */
     public Database loadFromConnection(Connection connection, String schema) {
+        return load(connection, schema, Capabilities.probe(connection));
+    }
+    /**
+     * Takes a connection from the data source.
+     * The connection is owned by the returned database and should be closed by the caller,
+     * when the database is no longer needed.
+     * @param dataSource the data source
+     * @return database instance
+     */
+    public Database loadFromDataSource(DataSource dataSource) {
+        return loadFromDataSource(dataSource, null);
+    }
+    /**
+     * Takes a connection from the data source and restricts operations to a particular schema.
+     * @param dataSource the data source
+     * @param schema the schema name
+     * @return database instance
+     */
+    public Database loadFromDataSource(DataSource dataSource, String schema) {
+
+        Connection connection;
         try {
-            switch (connection.getMetaData().getDatabaseProductName()) {
-                case DERBY_PRODUCT_NAME: return new DerbyDatabase(connection);
-                case H2_PRODUCT_NAME: return new H2Database(connection);
-                case MYSQL_PRODUCT_NAME: return new MySQLDatabase(connection);
-                case HSQL_PRODUCT_NAME: return new HyperSQLDatabase(connection);
-                case POSTGRES_PRODUCT_NAME: return new PostgresDatabase(connection, schema);
-                default: break; // SONAR
-            }
+            connection = dataSource.getConnection();
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new CouldNotProcessException("Failed to obtain connection from data source.", e);
+        }
+
+        try {
+
+            Capabilities capabilities = DATA_SOURCE_CAPABILITIES
+                    .computeIfAbsent(dataSource, ds -> Capabilities.probe(connection));
+
+            DefaultDatabase database = load(connection, schema, capabilities);
+            database.setDataSource(dataSource);
+            return database;
+        } catch (RuntimeException e) {
+
+            // The connection is not owned by a database yet
+            try {
+                connection.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+
+            throw e;
+        }
+    }
+
+    private DefaultDatabase load(Connection connection, String schema, Capabilities capabilities) {
+
+        switch (capabilities.getProductName()) {
+            case DERBY_PRODUCT_NAME: return new DerbyDatabase(connection, capabilities);
+            case H2_PRODUCT_NAME: return new H2Database(connection, capabilities);
+            case MYSQL_PRODUCT_NAME: return new MySQLDatabase(connection, capabilities);
+            case HSQL_PRODUCT_NAME: return new HyperSQLDatabase(connection, capabilities);
+            case POSTGRES_PRODUCT_NAME: return new PostgresDatabase(connection, schema, capabilities);
+            default: break; // SONAR
         }
 
         throw new UnknownDatabaseTypeException();
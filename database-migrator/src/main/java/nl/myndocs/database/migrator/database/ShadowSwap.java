@@ -0,0 +1,46 @@
+package nl.myndocs.database.migrator.database;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * @author Mikhail Mikhailov
+ * Statements of an online type change, which carry indexes, constraints, the default and NOT NULL
+ * of a column over to its shadow column.
+ */
+public class ShadowSwap {
+
+    private final List<String> prepareSQL;
+    private final List<String> swapSQL;
+    private final List<PendingValidation> validations;
+
+    /**
+     * Constructor.
+     * @param prepareSQL statements, run outside of a transaction after the copy, i. e. concurrent index builds
+     * @param swapSQL statements of the swap transaction, replacing the column with the shadow column
+     * @param validations constraints, which were valid before and are added without checking existing rows
+     */
+    public ShadowSwap(List<String> prepareSQL, List<String> swapSQL, List<PendingValidation> validations) {
+
+        Objects.requireNonNull(prepareSQL, "prepareSQL must not be null");
+        Objects.requireNonNull(swapSQL, "swapSQL must not be null");
+        Objects.requireNonNull(validations, "validations must not be null");
+
+        this.prepareSQL = Collections.unmodifiableList(prepareSQL);
+        this.swapSQL = Collections.unmodifiableList(swapSQL);
+        this.validations = Collections.unmodifiableList(validations);
+    }
+
+    public List<String> getPrepareSQL() {
+        return prepareSQL;
+    }
+
+    public List<String> getSwapSQL() {
+        return swapSQL;
+    }
+
+    public List<PendingValidation> getValidations() {
+        return validations;
+    }
+}
@@ -0,0 +1,98 @@
+package nl.myndocs.database.migrator.database;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Estimated row counts, from which operations without an explicit strategy switch
+ * from direct DDL to their batched, online or concurrent variants. These commit in steps,
+ * so they are chosen in non transactional scripts only. Tables without an estimate count as small.
+ */
+public class SizeThresholds {
+
+    public static final long DEFAULT_BATCH_ROWS = 100000L;
+    public static final long DEFAULT_ONLINE_ROWS = 1000000L;
+    public static final long DEFAULT_CONCURRENT_INDEX_ROWS = 100000L;
+
+    private final long batchRows;
+    private final long onlineRows;
+    private final long concurrentIndexRows;
+
+    private SizeThresholds(Builder builder) {
+
+        if (builder.batchRows < 0 || builder.onlineRows < 0 || builder.concurrentIndexRows < 0) {
+            throw new InvalidSpecException("thresholds must not be negative");
+        }
+
+        batchRows = builder.batchRows;
+        onlineRows = builder.onlineRows;
+        concurrentIndexRows = builder.concurrentIndexRows;
+    }
+
+    /**
+     * @return thresholds with default values
+     */
+    public static SizeThresholds defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * @return columns with default are added in batches from this row count, if the server would rewrite the table
+     */
+    public long getBatchRows() {
+        return batchRows;
+    }
+
+    /**
+     * @return column type and NOT NULL changes switch to the ONLINE strategy from this row count
+     */
+    public long getOnlineRows() {
+        return onlineRows;
+    }
+
+    /**
+     * @return indexes are built concurrently from this row count
+     */
+    public long getConcurrentIndexRows() {
+        return concurrentIndexRows;
+    }
+
+    public static class Builder {
+        private long batchRows = DEFAULT_BATCH_ROWS;
+        private long onlineRows = DEFAULT_ONLINE_ROWS;
+        private long concurrentIndexRows = DEFAULT_CONCURRENT_INDEX_ROWS;
+
+        public Builder() {
+            super();
+        }
+
+        /**
+         * Copy constructor.
+         * @param thresholds the thresholds to start with
+         */
+        public Builder(SizeThresholds thresholds) {
+            batchRows = thresholds.batchRows;
+            onlineRows = thresholds.onlineRows;
+            concurrentIndexRows = thresholds.concurrentIndexRows;
+        }
+
+        public Builder batchRows(long batchRows) {
+            this.batchRows = batchRows;
+            return this;
+        }
+
+        public Builder onlineRows(long onlineRows) {
+            this.onlineRows = onlineRows;
+            return this;
+        }
+
+        public Builder concurrentIndexRows(long concurrentIndexRows) {
+            this.concurrentIndexRows = concurrentIndexRows;
+            return this;
+        }
+
+        public SizeThresholds build() {
+            return new SizeThresholds(this);
+        }
+    }
+}
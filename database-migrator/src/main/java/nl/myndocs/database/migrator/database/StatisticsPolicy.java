@@ -0,0 +1,69 @@
+package nl.myndocs.database.migrator.database;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Tells, how optimizer statistics of the tables, touched by a migration run, are refreshed,
+ * before the run reports completion. Failures are logged, the applied scripts stay applied.
+ */
+public class StatisticsPolicy {
+
+    public static final int MAX_HISTOGRAM_BUCKETS = 1024;
+
+    private final boolean prewarm;
+    private final int histogramBuckets;
+
+    private StatisticsPolicy(Builder builder) {
+
+        if (builder.histogramBuckets < 0 || builder.histogramBuckets > MAX_HISTOGRAM_BUCKETS) {
+            throw new InvalidSpecException("histogram buckets must be between 0 and " + MAX_HISTOGRAM_BUCKETS);
+        }
+
+        prewarm = builder.prewarm;
+        histogramBuckets = builder.histogramBuckets;
+    }
+
+    /**
+     * @return true, if new indexes are loaded into the buffer cache after the refresh
+     */
+    public boolean isPrewarm() {
+        return prewarm;
+    }
+
+    /**
+     * @return buckets of histograms on new and changed columns (MySQL 8.0+), 0 for none
+     */
+    public int getHistogramBuckets() {
+        return histogramBuckets;
+    }
+
+    public static class Builder {
+        private boolean prewarm;
+        private int histogramBuckets;
+
+        /**
+         * Loads new indexes into the buffer cache (pg_prewarm on PostgreSQL, an index scan on MySQL).
+         * @param prewarm whether to prewarm
+         * @return self
+         */
+        public Builder prewarm(boolean prewarm) {
+            this.prewarm = prewarm;
+            return this;
+        }
+
+        /**
+         * Updates histograms on new and changed columns (MySQL 8.0+).
+         * @param histogramBuckets number of buckets, 0 for none
+         * @return self
+         */
+        public Builder histogramBuckets(int histogramBuckets) {
+            this.histogramBuckets = histogramBuckets;
+            return this;
+        }
+
+        public StatisticsPolicy build() {
+            return new StatisticsPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package nl.myndocs.database.migrator.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+import nl.myndocs.database.migrator.database.query.Database;
+
+/**
+ * @author Mikhail Mikhailov
+ * Server settings, applied while migrations run and restored afterwards.
+ * Settings, unknown to the server, are skipped.
+ */
+public class TuningProfile {
+
+    /**
+     * A single setting.
+     */
+    public static class Setting {
+        private final String name;
+        private final String value;
+        private final boolean global;
+
+        Setting(String name, String value, boolean global) {
+            this.name = name;
+            this.value = value;
+            this.global = global;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return true, if the setting is server wide (MySQL SET GLOBAL), false for the session
+         */
+        public boolean isGlobal() {
+            return global;
+        }
+
+        /**
+         * @return name, qualified by scope
+         */
+        public String getKey() {
+            return (global ? "global." : "") + name.toLowerCase();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return getKey() + " = " + value;
+        }
+    }
+
+    private final List<Setting> settings;
+
+    private TuningProfile(Builder builder) {
+        settings = Collections.unmodifiableList(new ArrayList<>(builder.settings.values()));
+    }
+
+    public List<Setting> getSettings() {
+        return settings;
+    }
+
+    /**
+     * Settings of this profile, overridden by the ones of the other.
+     * @param other the other profile or null
+     * @return merged profile
+     */
+    public TuningProfile with(TuningProfile other) {
+
+        Builder builder = new Builder();
+        settings.forEach(s -> builder.settings.put(s.getKey(), s));
+        if (Objects.nonNull(other)) {
+            other.settings.forEach(s -> builder.settings.put(s.getKey(), s));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * PostgreSQL: memory and parallel workers for index builds, no wait for WAL flush on commit of backfill chunks.
+     * @return profile
+     */
+    public static TuningProfile postgres() {
+        return new Builder()
+                .set("maintenance_work_mem", "1GB")
+                .set("max_parallel_maintenance_workers", "4")
+                .set("synchronous_commit", "off")
+                .build();
+    }
+
+    /**
+     * MySQL: sort buffer for index builds. Session settings only, see {@link #mysqlOnlineAlterLog()}
+     * and {@link #mysqlNoUniqueChecks()} for the opt-in ones.
+     * @return profile
+     */
+    public static TuningProfile mysql() {
+        return new Builder()
+                .set("sort_buffer_size", "67108864")
+                .build();
+    }
+
+    /**
+     * MySQL: room for concurrent writes during online ALTER. The setting is server wide: it applies to
+     * every session of the server while migrations run and needs the SUPER or SYSTEM_VARIABLES_ADMIN
+     * privilege. It is restored to the previous value by {@link Database#finish()}, so a migrator, which
+     * is killed in between, leaves it changed.
+     * @return profile
+     */
+    public static TuningProfile mysqlOnlineAlterLog() {
+        return new Builder()
+                .setGlobal("innodb_online_alter_log_max_size", "1073741824")
+                .build();
+    }
+
+    /**
+     * MySQL: no uniqueness checks of secondary indexes on bulk changes. Duplicates, written while it is
+     * applied, are not detected and corrupt unique indexes, so use it only for data known to be unique,
+     * i. e. as script profile of a backfill.
+     * @return profile
+     */
+    public static TuningProfile mysqlNoUniqueChecks() {
+        return new Builder()
+                .set("unique_checks", "0")
+                .build();
+    }
+
+    public static class Builder {
+        private final Map<String, Setting> settings = new LinkedHashMap<>();
+
+        /**
+         * Session setting.
+         * @param name the name
+         * @param value the value
+         * @return self
+         */
+        public Builder set(String name, String value) {
+            return add(new Setting(name, value, false));
+        }
+
+        /**
+         * Server wide setting (MySQL only), restored to the previous value afterwards.
+         * @param name the name
+         * @param value the value
+         * @return self
+         */
+        public Builder setGlobal(String name, String value) {
+            return add(new Setting(name, value, true));
+        }
+
+        private Builder add(Setting setting) {
+
+            if (Objects.isNull(setting.getName()) || !setting.getName().matches("[A-Za-z_][A-Za-z0-9_.]*")) {
+                throw new InvalidSpecException("Invalid setting name [" + setting.getName() + "]");
+            }
+
+            if (Objects.isNull(setting.getValue())) {
+                throw new InvalidSpecException("Setting [" + setting.getName() + "] needs a value");
+            }
+
+            settings.put(setting.getKey(), setting);
+            return this;
+        }
+
+        public TuningProfile build() {
+            return new TuningProfile(this);
+        }
+    }
+}
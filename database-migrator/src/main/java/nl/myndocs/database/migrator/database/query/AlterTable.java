@@ -22,4 +22,6 @@ public interface AlterTable {
     void addIndex(Index index);
 
     void dropIndex(String indexName);
+
+    void dropIndexConcurrently(String indexName);
 }
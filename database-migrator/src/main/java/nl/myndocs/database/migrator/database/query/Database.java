@@ -2,9 +2,18 @@ package nl.myndocs.database.migrator.database.query;
 
 import java.sql.Connection;
 import java.util.Collection;
+import java.util.List;
 
+import nl.myndocs.database.migrator.database.Capabilities;
+import nl.myndocs.database.migrator.database.ChangeSet;
+import nl.myndocs.database.migrator.database.MigrationPlan;
+import nl.myndocs.database.migrator.database.PartitionInfo;
+import nl.myndocs.database.migrator.database.TuningProfile;
+import nl.myndocs.database.migrator.definition.Backfill;
 import nl.myndocs.database.migrator.definition.Column;
+import nl.myndocs.database.migrator.definition.Index;
 import nl.myndocs.database.migrator.definition.Partition;
+import nl.myndocs.database.migrator.definition.PartitionSet;
 import nl.myndocs.database.migrator.definition.Table;
 
 /**
@@ -31,4 +40,173 @@ public interface Database {
     Connection getConnection();
 
     String getInitialSchema();
+
+    Capabilities getCapabilities();
+
+    /**
+     * Applies the database's tuning profile together with the given one, restoring settings of the previous call,
+     * which are not part of it any more. All settings are restored by {@link #finish()}.
+     * @param scriptProfile the profile of the script or null
+     */
+    void applyTuning(TuningProfile scriptProfile);
+
+    /**
+     * Starts a script. Non transactional scripts are recorded as running, until they complete.
+     * @param migrationId the script
+     * @param transactional false to allow operations, which commit in steps
+     */
+    void startScript(String migrationId, boolean transactional);
+
+    /**
+     * Ends the script, started last. The record of a completed non transactional script is removed in the current
+     * transaction, so it goes together with the change log entry.
+     * @param completed true, if the script completed
+     */
+    void finishScript(boolean completed);
+
+    /**
+     * Reads row estimates of the given tables from the catalog, used to pick strategies of the following operations.
+     * @param tableNames the existing tables about to be altered
+     */
+    void estimateSizes(Collection<String> tableNames);
+
+    /**
+     * Tells, whether the index is built outside of the script transaction.
+     * @param tableName the table or partition name
+     * @param index the index
+     * @return true, if so
+     */
+    boolean isConcurrent(String tableName, Index index);
+
+    /**
+     * Looks for sessions, which would keep DDL on the given tables waiting, and reacts as the preflight policy says.
+     * Called before the first statement of a script on the tables.
+     * @param tableNames the tables about to be altered or referenced
+     * @param mayWait false, if the running transaction holds locks already, which waiting would keep held,
+     * then blockers fail the script instead of being waited out
+     */
+    void preflight(Collection<String> tableNames, boolean mayWait);
+
+    /**
+     * @return true, if tables are checked for blockers before scripts run
+     */
+    boolean isPreflightEnabled();
+
+    /**
+     * Switches to planning: statements are added to the plan instead of being run, commits are skipped.
+     * @param plan the plan or null, to run statements again
+     */
+    void setPlan(MigrationPlan plan);
+
+    /**
+     * @return the plan being built or null
+     */
+    MigrationPlan getPlan();
+
+    /**
+     * Validates foreign keys, added without validation by the last script, unless deferred.
+     */
+    void validateConstraints();
+
+    /**
+     * Validates all foreign keys, added without validation and not validated yet.
+     */
+    void validateDeferredConstraints();
+
+    /**
+     * Refreshes optimizer statistics of the touched tables and prewarms new indexes, as the statistics policy says.
+     * @param changes tables, columns and indexes, touched by the run
+     */
+    void refreshStatistics(ChangeSet changes);
+
+    /**
+     * Reads partitions of the table from the catalog, together with tables named like its partitions,
+     * which were detached by {@link #detachPartition(String, String)} (see {@link PartitionInfo.STATE#DETACHED}).
+     * @param tableName the partitioned table
+     * @return partitions
+     */
+    List<PartitionInfo> loadPartitions(String tableName);
+
+    /**
+     * Adds a partition to an existing partitioned table, taking as weak a lock on it as the server allows.
+     * @param tableName the partitioned table
+     * @param set the partition set, the partition belongs to
+     * @param partition the partition
+     */
+    void addPartition(String tableName, PartitionSet set, Partition partition);
+
+    /**
+     * Detaches a partition, concurrently where supported, or finalizes an interrupted concurrent detach.
+     * @param tableName the partitioned table
+     * @param partitionName the partition
+     */
+    void detachPartition(String tableName, String partitionName);
+
+    /**
+     * Drops a detached partition or moves it to the archive schema.
+     * Tables, not detached by {@link #detachPartition(String, String)}, are refused.
+     * @param partitionName the detached partition
+     * @param archiveSchema the archive schema or null, to drop the table
+     */
+    void retirePartition(String partitionName, String archiveSchema);
+
+    /**
+     * Drops a partition together with its rows, taking as weak a lock on the partitioned table as the server allows.
+     * @param tableName the partitioned table
+     * @param partitionName the partition
+     */
+    void dropPartition(String tableName, String partitionName);
+
+    /**
+     * Replaces adjacent partitions by the partitions of the set, moving their rows.
+     * The new partitions must cover the same values as the replaced ones.
+     * @param tableName the partitioned table
+     * @param partitionNames the replaced partitions
+     * @param set the new partitions, of the type of the table
+     */
+    void reorganizePartitions(String tableName, Collection<String> partitionNames, PartitionSet set);
+
+    /**
+     * Swaps the rows of a partition and a not partitioned table of the same structure.
+     * @param tableName the partitioned table
+     * @param partitionName the partition
+     * @param otherTableName the table
+     * @param validate check, that rows of the table belong to the partition
+     */
+    void exchangePartition(String tableName, String partitionName, String otherTableName, boolean validate);
+
+    /**
+     * Moves a partition with its indexes to another tablespace, while the partitioned table is in use,
+     * copying rows in chunks, where the server cannot move it without blocking.
+     * @param tableName the partitioned table
+     * @param partitionName the partition
+     * @param tablespace the target tablespace
+     * @param keyColumn a not null, indexed column, rows are copied in the order of
+     * @param options chunk size, pause between chunks and progress listener
+     * @return progress of the copy or null, if the partition is in the tablespace already
+     */
+    Backfill.Progress movePartition(String tableName, String partitionName, String tablespace, String keyColumn, Backfill options);
+
+    /**
+     * Splits every partition of a hash partitioned table into factor partitions with factor times the modulus.
+     * Rows are copied in chunks, while the table is in use, and the partitions are swapped in afterwards.
+     * @param tableName the hash partitioned table
+     * @param keyColumn a not null, indexed column, rows are copied in the order of, usually the primary key
+     * @param factor number of partitions, every partition is split into
+     * @param options chunk size, pause between chunks and progress listener
+     * @return progress of the copy of every split partition
+     */
+    List<Backfill.Progress> splitHashPartitions(String tableName, String keyColumn, int factor, Backfill options);
+
+    /**
+     * Converts an existing table to a partitioned one. Rows are copied in chunks, while the table is in use,
+     * changes are captured by a trigger and the tables are swapped under a short lock.
+     * @param tableName the table
+     * @param set the partitions
+     * @param keyColumn a not null, indexed column, rows are copied in the order of, usually the primary key
+     * @param verify compare row counts of both tables, before they are swapped
+     * @param options chunk size, pause between chunks and progress listener
+     * @return progress of the copy of every partition
+     */
+    List<Backfill.Progress> partitionTable(String tableName, PartitionSet set, String keyColumn, boolean verify, Backfill options);
 }
@@ -0,0 +1,189 @@
+package nl.myndocs.database.migrator.definition;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Options for copying data in key ordered chunks, used by online and chunked operations.
+ */
+public class Backfill {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final Consumer<Progress> listener;
+
+    private Backfill(Builder builder) {
+
+        if (builder.chunkSize <= 0) {
+            throw new InvalidSpecException("chunkSize must be positive");
+        }
+
+        if (builder.pauseMillis < 0) {
+            throw new InvalidSpecException("pauseMillis must not be negative");
+        }
+
+        chunkSize = builder.chunkSize;
+        pauseMillis = builder.pauseMillis;
+        listener = builder.listener;
+    }
+
+    public static Backfill defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * @return the chunkSize
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the pause between chunks in millis
+     */
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    /**
+     * @return the listener
+     */
+    public Consumer<Progress> getListener() {
+        return listener;
+    }
+
+    public static class Builder {
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private long pauseMillis;
+        private Consumer<Progress> listener;
+
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Throttles the copy by sleeping between chunks.
+         * @param pauseMillis millis to sleep after each chunk
+         * @return self
+         */
+        public Builder pause(long pauseMillis) {
+            this.pauseMillis = pauseMillis;
+            return this;
+        }
+
+        /**
+         * Called after each chunk. The listener may call {@link Progress#abort()}
+         * to stop the operation, which then cleans up after itself.
+         * @param listener the listener
+         * @return self
+         */
+        public Builder listener(Consumer<Progress> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Backfill build() {
+            return new Backfill(this);
+        }
+    }
+
+    /**
+     * Progress of a running copy.
+     */
+    public static class Progress {
+        private final String tableName;
+        private final String columnName;
+        private final long estimatedRows;
+        private long processedRows;
+        private int chunks;
+        private Object lastKey;
+        private boolean done;
+        private boolean aborted;
+
+        public Progress(String tableName, String columnName, long estimatedRows) {
+            this.tableName = tableName;
+            this.columnName = columnName;
+            this.estimatedRows = estimatedRows;
+        }
+
+        public void advance(long rows, Object lastKey) {
+            this.processedRows += rows;
+            this.lastKey = lastKey;
+            this.chunks++;
+        }
+
+        public void complete() {
+            this.done = true;
+        }
+
+        public void abort() {
+            this.aborted = true;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+
+        /**
+         * @return estimated row count or -1, if unknown
+         */
+        public long getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        public long getProcessedRows() {
+            return processedRows;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public Object getLastKey() {
+            return lastKey;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * @return percentage done, or -1 if the row count is unknown
+         */
+        public int getPercent() {
+
+            if (done) {
+                return 100;
+            }
+
+            if (estimatedRows <= 0) {
+                return -1;
+            }
+
+            return (int) Math.min(99, (processedRows * 100) / estimatedRows);
+        }
+
+        @Override
+        public String toString() {
+            return tableName + (Objects.nonNull(columnName) ? "." + columnName : "")
+                    + ": " + processedRows + " rows in " + chunks + " chunks"
+                    + (getPercent() >= 0 ? " (" + getPercent() + "%)" : "")
+                    + (aborted ? ", aborted" : "")
+                    + (done ? ", done" : "");
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package nl.myndocs.database.migrator.definition;
 
 import java.util.Objects;
+import java.util.function.Consumer;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 
 /**
  * Created by albert on 13-8-2017.
@@ -24,6 +27,49 @@ public class Column {
         UDT
     }
 
+    /**
+     * How a change to an existing column is carried out.
+     * For new columns with default any strategy, other than DEFAULT, forces a batched fill of existing rows.
+     */
+    public enum STRATEGY {
+        /**
+         * Let the dialect alter the column in place, switching to ONLINE for large tables in non transactional scripts
+         * (see {@link nl.myndocs.database.migrator.database.SizeThresholds}).
+         * New columns with default are filled in batches, if the server would rewrite a large table.
+         */
+        DEFAULT,
+        /**
+         * Alter the column in place, regardless of the table size.
+         */
+        IN_PLACE,
+        /**
+         * Copy into a trigger synchronized shadow column in chunks and swap afterwards,
+         * keeping the table writable for the duration of the copy.
+         * PostgreSQL adds NOT NULL through a NOT VALID check, validated under a weaker lock.
+         */
+        ONLINE,
+        /**
+         * Copy into a new column in key ordered chunks, committing after each chunk
+         * and recording a resume marker, then drop the old column and rename the new one.
+         * An interrupted copy continues from the marker, when the migration is run again.
+         */
+        CHUNKED
+    }
+
+    /**
+     * Values of a GENERATED ... AS IDENTITY column.
+     */
+    public enum IDENTITY {
+        /**
+         * Always generated, explicit values are rejected.
+         */
+        ALWAYS,
+        /**
+         * Generated, unless a value is given.
+         */
+        BY_DEFAULT
+    }
+
     private final TYPE type;
     private final String columnName;
     private final Boolean primary;
@@ -34,15 +80,37 @@ public class Column {
     private final String defaultValue;
     private final String rename;
     private final String udt;
+    private final STRATEGY strategy;
+    private final Backfill backfill;
+    private final Boolean allowRewrite;
+    private final IDENTITY identity;
+    private final Integer sequenceCache;
+    private final Integer sequenceIncrement;
+    private final Boolean sharedSequence;
 
     private Column(Builder builder) {
 
         Objects.requireNonNull(builder.columnName, "columnName must not be null");
         Objects.requireNonNull(builder.type, "New column types should have a type");
 
+        boolean generated = Objects.nonNull(builder.identity) || Boolean.TRUE.equals(builder.autoIncrement);
+        if (!generated && (Objects.nonNull(builder.sequenceCache) || Objects.nonNull(builder.sequenceIncrement)
+                || Boolean.TRUE.equals(builder.sharedSequence))) {
+            throw new InvalidSpecException("Sequence options need an auto increment or identity column " + builder.columnName);
+        }
+
+        if (Objects.nonNull(builder.identity) && Objects.nonNull(builder.defaultValue)) {
+            throw new InvalidSpecException("Identity column " + builder.columnName + " must not have a default");
+        }
+
+        if ((Objects.nonNull(builder.sequenceCache) && builder.sequenceCache < 1)
+         || (Objects.nonNull(builder.sequenceIncrement) && builder.sequenceIncrement == 0)) {
+            throw new InvalidSpecException("Sequence cache must be positive and increment must not be 0");
+        }
+
         columnName = builder.columnName;
         primary = builder.primary;
-        autoIncrement = builder.autoIncrement;
+        autoIncrement = Objects.nonNull(builder.identity) ? Boolean.TRUE : builder.autoIncrement;
         isNotNull = builder.notNull;
         isNull = builder.isNull;
         type = builder.type;
@@ -50,6 +118,13 @@ public class Column {
         defaultValue = builder.defaultValue;
         rename = builder.rename;
         udt = builder.udt;
+        strategy = builder.strategy;
+        backfill = builder.backfill != null ? builder.backfill.build() : Backfill.defaults();
+        allowRewrite = builder.allowRewrite;
+        identity = builder.identity;
+        sequenceCache = builder.sequenceCache;
+        sequenceIncrement = builder.sequenceIncrement;
+        sharedSequence = builder.sharedSequence;
     }
 
     public String getColumnName() {
@@ -94,6 +169,55 @@ public class Column {
         return udt;
     }
 
+    /**
+     * @return the strategy
+     */
+    public STRATEGY getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the backfill options
+     */
+    public Backfill getBackfill() {
+        return backfill;
+    }
+
+    /**
+     * @return whether a full table rewrite is accepted for this change
+     */
+    public Boolean getAllowRewrite() {
+        return allowRewrite;
+    }
+
+    /**
+     * @return the identity kind or null, if this is not an identity column
+     */
+    public IDENTITY getIdentity() {
+        return identity;
+    }
+
+    /**
+     * @return number of sequence values, preallocated per session, or null for the server default
+     */
+    public Integer getSequenceCache() {
+        return sequenceCache;
+    }
+
+    /**
+     * @return the sequence increment or null for the server default
+     */
+    public Integer getSequenceIncrement() {
+        return sequenceIncrement;
+    }
+
+    /**
+     * @return whether the partitions of a partitioned table draw from a single sequence
+     */
+    public Boolean getSharedSequence() {
+        return sharedSequence;
+    }
+
     public static class Builder {
         private String columnName;
         private Boolean primary;
@@ -105,6 +229,13 @@ public class Column {
         private String defaultValue;
         private String rename;
         private String udt;
+        private STRATEGY strategy = STRATEGY.DEFAULT;
+        private Backfill.Builder backfill;
+        private Boolean allowRewrite;
+        private IDENTITY identity;
+        private Integer sequenceCache;
+        private Integer sequenceIncrement;
+        private Boolean sharedSequence;
 
         public Builder(String columnName, Column.TYPE type) {
             this.columnName = columnName;
@@ -160,6 +291,64 @@ public class Column {
             return this;
         }
 
+        public Builder strategy(STRATEGY strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        public Builder backfill(Consumer<Backfill.Builder> backfill) {
+            this.backfill = new Backfill.Builder();
+            backfill.accept(this.backfill);
+            return this;
+        }
+
+        /**
+         * Accepts a full table rewrite for this change, even if the rewrite policy of the database refuses it.
+         * @param allowRewrite allow or not
+         * @return self
+         */
+        public Builder allowRewrite(Boolean allowRewrite) {
+            this.allowRewrite = allowRewrite;
+            return this;
+        }
+
+        /**
+         * Generates values as GENERATED ... AS IDENTITY, where supported, as auto increment otherwise.
+         * @param identity always or by default
+         * @return self
+         */
+        public Builder identity(IDENTITY identity) {
+            this.identity = identity;
+            return this;
+        }
+
+        /**
+         * Preallocates values of the sequence per session, so concurrent inserters do not contend on it.
+         * Values are then handed out in order per session only and a session, ending early, leaves a gap.
+         * @param sequenceCache number of values
+         * @return self
+         */
+        public Builder sequenceCache(Integer sequenceCache) {
+            this.sequenceCache = sequenceCache;
+            return this;
+        }
+
+        public Builder sequenceIncrement(Integer sequenceIncrement) {
+            this.sequenceIncrement = sequenceIncrement;
+            return this;
+        }
+
+        /**
+         * Draws the values of all partitions of a partitioned table from a single sequence of the table,
+         * instead of one sequence per partition, so values are unique across partitions.
+         * @param sharedSequence shared or not
+         * @return self
+         */
+        public Builder sharedSequence(Boolean sharedSequence) {
+            this.sharedSequence = sharedSequence;
+            return this;
+        }
+
         public Column build() {
             return new Column(this);
         }
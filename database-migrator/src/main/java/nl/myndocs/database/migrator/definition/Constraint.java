@@ -28,6 +28,7 @@ public class Constraint {
     private Collection<String> includeNames;
     private ForeignKey foreignKey;
     private String checkExpression;
+    private Boolean concurrently;
 
     private Constraint(Builder builder) {
 
@@ -57,6 +58,12 @@ public class Constraint {
             Objects.requireNonNull(builder.checkExpression, "checkExpression must not be null for check type constraint");
             this.checkExpression = builder.checkExpression;
         }
+
+        if (Boolean.TRUE.equals(builder.concurrently) && builder.type != TYPE.PRIMARY_KEY && builder.type != TYPE.UNIQUE) {
+            throw new InvalidSpecException("Only primary key and unique constraints can be added concurrently");
+        }
+
+        concurrently = builder.concurrently;
     }
 
     public String getConstraintName() {
@@ -89,6 +96,13 @@ public class Constraint {
         return checkExpression;
     }
 
+    /**
+     * @return whether the backing index is built without blocking writes
+     */
+    public Boolean getConcurrently() {
+        return concurrently;
+    }
+
     public static class Builder {
         private String constraintName;
         private TYPE type;
@@ -96,6 +110,7 @@ public class Constraint {
         private Collection<String> includeNames = new ArrayList<>();
         private ForeignKey.Builder foreignKey;
         private String checkExpression;
+        private Boolean concurrently;
 
         public Builder(String constraintName, TYPE type, String... columnNames) {
             this.constraintName = constraintName;
@@ -145,6 +160,19 @@ public class Constraint {
             return this;
         }
 
+        /**
+         * Builds the unique index of a primary key or unique constraint concurrently first
+         * and promotes it to the constraint then (ADD CONSTRAINT ... USING INDEX on PostgreSQL,
+         * ALGORITHM=INPLACE, LOCK=NONE on MySQL). Runs after the script transaction is committed,
+         * see {@link Index.Builder#concurrently(Boolean)}.
+         * @param concurrently build concurrently or not
+         * @return self
+         */
+        public Builder concurrently(Boolean concurrently) {
+            this.concurrently = concurrently;
+            return this;
+        }
+
         public Constraint build() {
             return new Constraint(this);
         }
@@ -0,0 +1,26 @@
+package nl.myndocs.database.migrator.definition;
+
+import nl.myndocs.database.migrator.definition.PartitionSet.TYPE;
+
+/**
+ * @author Mikhail Mikhailov
+ * The default partition of a LIST or RANGE partition set, holding rows, no other partition accepts.
+ */
+public class DefaultPartitionSpec extends PartitionSpec {
+
+    /**
+     * Constructor.
+     */
+    protected DefaultPartitionSpec() {
+        super();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The default partition fits LIST and RANGE sets, so there is no type.
+     */
+    @Override
+    public TYPE getType() {
+        return null;
+    }
+}
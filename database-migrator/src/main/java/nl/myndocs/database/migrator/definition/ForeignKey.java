@@ -23,10 +23,31 @@ public class ForeignKey {
         NO_ACTION
     }
 
+    /**
+     * @author Mikhail Mikhailov
+     * When existing rows are checked against the foreign key.
+     */
+    public enum VALIDATION {
+        /**
+         * Checked while the constraint is added, the tables are scanned under lock.
+         */
+        IMMEDIATE,
+        /**
+         * Added without a check (NOT VALID), validated after the migration script is committed.
+         */
+        SAME_RUN,
+        /**
+         * Added without a check (NOT VALID), validated by a separate maintenance phase,
+         * see {@link nl.myndocs.database.migrator.processor.Migrator#validateDeferred()}.
+         */
+        DEFERRED
+    }
+
     private String foreignTable;
     private Collection<String> foreignKeys;
     private CASCADE updateCascade;
     private CASCADE deleteCascade;
+    private VALIDATION validation;
 
     private ForeignKey(Builder builder) {
 
@@ -41,6 +62,7 @@ public class ForeignKey {
         foreignKeys = builder.foreignKeys;
         updateCascade = builder.updateCascade;
         deleteCascade = builder.deleteCascade;
+        validation = Objects.nonNull(builder.validation) ? builder.validation : VALIDATION.IMMEDIATE;
     }
 
     public String getForeignTable() {
@@ -59,11 +81,16 @@ public class ForeignKey {
         return deleteCascade;
     }
 
+    public VALIDATION getValidation() {
+        return validation;
+    }
+
     public static class Builder {
         private String foreignTable;
         private Collection<String> foreignKeys = new ArrayList<>();
         private CASCADE deleteCascade;
         private CASCADE updateCascade;
+        private VALIDATION validation;
 
         public Builder(String foreignTable, Collection<String> foreignKeys) {
             this.foreignTable = foreignTable;
@@ -99,6 +126,18 @@ public class ForeignKey {
             return this;
         }
 
+        /**
+         * Adds the constraint without checking existing rows and validates it later.
+         * Maps to NOT VALID on PostgreSQL and to foreign_key_checks on MySQL,
+         * other databases check the rows immediately.
+         * @param validation the validation mode
+         * @return self
+         */
+        public Builder validation(VALIDATION validation) {
+            this.validation = validation;
+            return this;
+        }
+
         public ForeignKey build() {
             return new ForeignKey(this);
         }
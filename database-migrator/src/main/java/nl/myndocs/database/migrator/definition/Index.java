@@ -25,6 +25,8 @@ public class Index {
     private TYPE type;
     private Collection<String> columnNames;
     private Collection<String> includeNames;
+    private Boolean concurrently;
+    private String tablespace;
 
     private Index(Builder builder) {
 
@@ -40,6 +42,8 @@ public class Index {
         type = builder.type;
         columnNames = builder.columnNames;
         includeNames = builder.includeNames;
+        concurrently = builder.concurrently;
+        tablespace = builder.tablespace;
     }
 
     public String getIndexName() {
@@ -61,11 +65,27 @@ public class Index {
         return includeNames;
     }
 
+    /**
+     * @return whether the index is built without blocking writes
+     */
+    public Boolean getConcurrently() {
+        return concurrently;
+    }
+
+    /**
+     * @return the tablespace or null for the one of the table
+     */
+    public String getTablespace() {
+        return tablespace;
+    }
+
     public static class Builder {
         private String indexName;
         private TYPE type;
         private Collection<String> columnNames = new ArrayList<>();
         private Collection<String> includeNames = new ArrayList<>();
+        private Boolean concurrently;
+        private String tablespace;
 
         public Builder(String indexName, TYPE type, Collection<String> columnNames) {
             this.indexName = indexName;
@@ -98,6 +118,28 @@ public class Index {
             return this;
         }
 
+        /**
+         * Builds the index without blocking writes: CREATE INDEX CONCURRENTLY on PostgreSQL,
+         * ALGORITHM=INPLACE, LOCK=NONE on MySQL. The migrator runs such statements
+         * after the script transaction is committed, as PostgreSQL refuses them inside a transaction.
+         * @param concurrently build concurrently or not
+         * @return self
+         */
+        public Builder concurrently(Boolean concurrently) {
+            this.concurrently = concurrently;
+            return this;
+        }
+
+        /**
+         * Creates the index in the tablespace (PostgreSQL only).
+         * @param tablespace the tablespace
+         * @return self
+         */
+        public Builder tablespace(String tablespace) {
+            this.tablespace = tablespace;
+            return this;
+        }
+
         public Index build() {
             return new Index(this);
         }
@@ -8,6 +8,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
 /**
  * @author Mikhail Mikhailov
  * Simple partition class.
@@ -18,6 +20,8 @@ public class Partition {
     private final String foreignNode;
     private final Map<String, String> foreignOptions;
     private final PartitionSpec partitionSpec;
+    private final PartitionSet subPartitions;
+    private final String tablespace;
     private final Collection<Constraint> newConstraints;
     private final Collection<Index> newIndexes;
     private final Collection<String> dropConstraints;
@@ -32,10 +36,20 @@ public class Partition {
         Objects.requireNonNull(builder.partitionName, "partitionName must not be null");
         Objects.requireNonNull(builder.partitionSpec, "partitionExpr must not be null");
 
+        if (Objects.nonNull(builder.subPartitions) && Objects.nonNull(builder.foreignNode) && builder.foreignNode.length() > 0) {
+            throw new InvalidSpecException("Foreign partition [" + builder.partitionName + "] cannot be sub-partitioned");
+        }
+
+        if (Objects.nonNull(builder.tablespace) && Objects.nonNull(builder.foreignNode) && builder.foreignNode.length() > 0) {
+            throw new InvalidSpecException("Foreign partition [" + builder.partitionName + "] cannot have a tablespace");
+        }
+
         this.partitionName = builder.partitionName;
         this.foreignNode = builder.foreignNode;
         this.foreignOptions = builder.foreignOptions;
         this.partitionSpec = builder.partitionSpec;
+        this.subPartitions = Objects.nonNull(builder.subPartitions) ? builder.subPartitions.build() : null;
+        this.tablespace = builder.tablespace;
         this.newConstraints = new ArrayList<>(builder.newConstraints.size());
         this.newIndexes = new ArrayList<>(builder.newIndexes.size());
 
@@ -75,6 +89,30 @@ public class Partition {
     public PartitionSpec getPartitionSpec() {
         return partitionSpec;
     }
+    /**
+     * @return true, if this is the default partition
+     */
+    public boolean isDefault() {
+        return partitionSpec instanceof DefaultPartitionSpec;
+    }
+    /**
+     * @return the sub-partitions or null
+     */
+    public PartitionSet getSubPartitions() {
+        return subPartitions;
+    }
+    /**
+     * @return true, if the partition is partitioned itself
+     */
+    public boolean isSubPartitioned() {
+        return Objects.nonNull(subPartitions) && !subPartitions.isEmpty();
+    }
+    /**
+     * @return the tablespace or null for the one of the partitioned table
+     */
+    public String getTablespace() {
+        return tablespace;
+    }
 
     public Collection<Constraint> getNewConstraints() {
         return newConstraints;
@@ -98,6 +136,8 @@ public class Partition {
     public static class Builder {
         private String partitionName;
         private PartitionSpec partitionSpec;
+        private PartitionSet.Builder subPartitions;
+        private String tablespace;
         private Collection<Constraint.Builder> newConstraints = new ArrayList<>();
         private Collection<Index.Builder> newIndexes = new ArrayList<>();
         private Collection<String> dropConstraints = new ArrayList<>();
@@ -135,6 +175,24 @@ public class Partition {
             return this;
         }
 
+        public Builder setTablespace(String tablespace) {
+            this.tablespace = tablespace;
+            return this;
+        }
+
+        /**
+         * Partitions this partition again, i. e. range by day, then hash by tenant.
+         * @param type the type of the sub-partitions
+         * @param c the sub-partitions
+         * @return self
+         */
+        public Builder addPartitions(PartitionSet.TYPE type, Consumer<PartitionSet.Builder> c) {
+            PartitionSet.Builder builder = new PartitionSet.Builder(type);
+            c.accept(builder);
+            this.subPartitions = builder;
+            return this;
+        }
+
         /**
          * {@link Builder#addIndex(String, Index.TYPE, String)}
          */
@@ -0,0 +1,132 @@
+package nl.myndocs.database.migrator.definition;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Partitions, generated by position on iteration in a fixed order. Nothing is retained,
+ * so very large sets (i. e. 20000 hourly partitions) are never held in memory at once.
+ */
+public class PartitionGenerator implements Iterable<Partition> {
+
+    private final int size;
+
+    private final IntFunction<Partition> generator;
+
+    /**
+     * Constructor.
+     * @param size number of partitions
+     * @param generator generates the partition at the given position, must return equal partitions for equal positions
+     */
+    public PartitionGenerator(int size, IntFunction<Partition> generator) {
+
+        Objects.requireNonNull(generator, "generator must not be null");
+        if (size <= 0) {
+            throw new InvalidSpecException("size must be positive");
+        }
+
+        this.size = size;
+        this.generator = generator;
+    }
+
+    /**
+     * Range partitions, one per period, covering [from, to). The first partition starts with the period, containing from,
+     * the last one ends with the period, containing the time before to. Partitions are named [prefix]_p[period start],
+     * as the ones of {@link RollingPartitions} with the same table name, so they can be maintained later on.
+     * @param prefix the name prefix, usually the table name
+     * @param period the period of a single partition
+     * @param from the start
+     * @param to the end, exclusive
+     * @return generator
+     */
+    public static PartitionGenerator every(String prefix, RollingPartitions.PERIOD period, LocalDateTime from, LocalDateTime to) {
+
+        Objects.requireNonNull(prefix, "prefix must not be null");
+        Objects.requireNonNull(period, "period must not be null");
+
+        long count = period.count(from, to);
+        if (count > Integer.MAX_VALUE) {
+            throw new InvalidSpecException("Too many partitions between " + from + " and " + to);
+        }
+
+        LocalDateTime start = period.truncate(from);
+        return new PartitionGenerator((int) count, i -> {
+
+            LocalDateTime lower = period.plus(start, i);
+            LocalDateTime upper = period.plus(start, i + 1L);
+
+            return new Partition.Builder()
+                    .setPartitionName(prefix + "_p" + period.format(lower))
+                    .setPartitionSpec(PartitionSpec.of(new String[] { period.literal(lower) }, new String[] { period.literal(upper) }))
+                    .build();
+        });
+    }
+
+    /**
+     * Hash partitions with remainders 0 to modulus - 1, named [prefix]_h[remainder].
+     * @param prefix the name prefix, usually the table name
+     * @param modulus number of partitions
+     * @return generator
+     */
+    public static PartitionGenerator hash(String prefix, int modulus) {
+
+        Objects.requireNonNull(prefix, "prefix must not be null");
+
+        return new PartitionGenerator(modulus, i -> new Partition.Builder()
+                .setPartitionName(prefix + "_h" + i)
+                .setPartitionSpec(PartitionSpec.of(i))
+                .build());
+    }
+
+    /**
+     * Sub-partitions every generated partition, i. e. range by day, then hash by tenant.
+     * @param type the type of the sub-partitions
+     * @param c the sub-partitions of the given partition
+     * @return generator of sub-partitioned partitions
+     */
+    public PartitionGenerator subPartitions(PartitionSet.TYPE type, BiConsumer<Partition, PartitionSet.Builder> c) {
+
+        Objects.requireNonNull(c, "sub-partitions must not be null");
+
+        return new PartitionGenerator(size, i -> {
+
+            Partition partition = generator.apply(i);
+            return new Partition.Builder()
+                    .setPartitionName(partition.getPartitionName())
+                    .setPartitionSpec(partition.getPartitionSpec())
+                    .setTablespace(partition.getTablespace())
+                    .addPartitions(type, set -> c.accept(partition, set))
+                    .build();
+        });
+    }
+
+    /**
+     * @return number of partitions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return partitions, generated lazily
+     */
+    public Stream<Partition> stream() {
+        return IntStream.range(0, size).mapToObj(generator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Partition> iterator() {
+        return stream().iterator();
+    }
+}
@@ -4,17 +4,21 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 
 /**
  * @author Mikhail Mikhailov
  * PartitionSet type.
+ * Partitions keep the order, in which they were added. Generated partitions follow the explicitly added ones
+ * and are created on iteration only.
  */
 public class PartitionSet {
     public enum TYPE {
@@ -24,6 +28,8 @@ public class PartitionSet {
 
     private final Map<String, Partition> partitions;
 
+    private final List<PartitionGenerator> generators;
+
     private final List<String> keyColumns;
     /**
      * Constructor.
@@ -33,18 +39,26 @@ public class PartitionSet {
         super();
 
         Objects.requireNonNull(builder.type, "type must not be null");
-        Objects.requireNonNull(builder.partitions, "partitions must not be null");
-        if (builder.partitions.isEmpty()) {
+        if ((builder.partitions == null || builder.partitions.isEmpty()) && builder.generators.isEmpty()) {
             throw new InvalidSpecException("partitions must not be empty");
         }
 
+        if (Objects.nonNull(builder.partitions)) {
+
+            long defaults = builder.partitions.values().stream().filter(Partition::isDefault).count();
+            if (defaults > 1 || (defaults > 0 && builder.type == TYPE.HASH)) {
+                throw new InvalidSpecException("LIST and RANGE partitions may have a single default partition, HASH partitions none");
+            }
+        }
+
         Objects.requireNonNull(builder.keyColumns, "keyColumns must not be null");
         if (builder.keyColumns.isEmpty()) {
             throw new InvalidSpecException("keyColumns must not be empty");
         }
 
         this.type = builder.type;
-        this.partitions = builder.partitions;
+        this.partitions = builder.partitions == null ? Collections.emptyMap() : builder.partitions;
+        this.generators = builder.generators;
         this.keyColumns = builder.keyColumns;
     }
     /**
@@ -54,8 +68,28 @@ public class PartitionSet {
         return type;
     }
 
+    /**
+     * Materializes generated partitions, use {@link #stream()} for large sets.
+     * @return the partitions
+     */
     public Collection<Partition> getPartitions() {
-        return partitions == null ? Collections.emptySet() : partitions.values();
+        return generators.isEmpty() ? partitions.values() : stream().collect(Collectors.toList());
+    }
+
+    /**
+     * @return the partitions in order, generated lazily
+     */
+    public Stream<Partition> stream() {
+        return Stream.concat(partitions.values().stream(), generators.stream().flatMap(PartitionGenerator::stream));
+    }
+
+    /**
+     * @return partitions of all levels in order, each followed by its sub-partitions
+     */
+    public Stream<Partition> streamTree() {
+        return stream().flatMap(p -> p.isSubPartitioned()
+                ? Stream.concat(Stream.of(p), p.getSubPartitions().streamTree())
+                : Stream.of(p));
     }
 
     /**
@@ -66,11 +100,14 @@ public class PartitionSet {
     }
 
     public boolean isEmpty() {
-        return partitions == null || partitions.isEmpty();
+        return getSize() == 0;
     }
 
+    /**
+     * @return number of partitions, generated ones included
+     */
     public int getSize() {
-        return partitions == null || partitions.isEmpty() ? 0 : partitions.size();
+        return partitions.size() + generators.stream().mapToInt(PartitionGenerator::size).sum();
     }
 
     public static class Builder {
@@ -78,6 +115,8 @@ public class PartitionSet {
 
         private Map<String, Partition> partitions;
 
+        private List<PartitionGenerator> generators = new ArrayList<>();
+
         private List<String> keyColumns = new ArrayList<>();
 
         public Builder(PartitionSet.TYPE type) {
@@ -105,7 +144,7 @@ public class PartitionSet {
             Objects.requireNonNull(partition, "partition must not be null");
 
             if (this.partitions == null) {
-                this.partitions =  new HashMap<>();
+                this.partitions =  new LinkedHashMap<>();
             }
 
             this.partitions.put(partition.getPartitionName(), partition);
@@ -117,7 +156,7 @@ public class PartitionSet {
             Objects.requireNonNull(partitionSupplier, "partition supplier must not be null");
 
             if (this.partitions == null) {
-                this.partitions =  new HashMap<>();
+                this.partitions =  new LinkedHashMap<>();
             }
 
             for (Partition p : partitionSupplier.get()) {
@@ -126,6 +165,31 @@ public class PartitionSet {
             return this;
         }
 
+        /**
+         * Adds the default partition, holding rows, no other partition accepts.
+         * @param partitionName the partition name
+         * @return self
+         */
+        public Builder defaultPartition(String partitionName) {
+            return partition(new Partition.Builder()
+                    .setPartitionName(partitionName)
+                    .setPartitionSpec(PartitionSpec.ofDefault())
+                    .build());
+        }
+
+        /**
+         * Adds partitions, generated on iteration.
+         * @param generator the generator
+         * @return self
+         */
+        public Builder partitions(PartitionGenerator generator) {
+
+            Objects.requireNonNull(generator, "partition generator must not be null");
+
+            this.generators.add(generator);
+            return this;
+        }
+
         public PartitionSet build() {
             return new PartitionSet(this);
         }
@@ -26,4 +26,11 @@ public abstract class PartitionSpec {
     public static PartitionSpec of (String[] from, String[] to) {
         return new RangePartitionSpec(from, to);
     }
+
+    /**
+     * @return spec of the default partition
+     */
+    public static PartitionSpec ofDefault() {
+        return new DefaultPartitionSpec();
+    }
 }
@@ -0,0 +1,396 @@
+package nl.myndocs.database.migrator.definition;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Objects;
+
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
+
+/**
+ * @author Mikhail Mikhailov
+ * Time based range partitions of a table, one per period, created ahead of time and retired after retention.
+ * Partitions are named [table]_p[period start], i. e. events_p20240131 for daily partitions.
+ * Bounds are written as timestamp literals without time zone, timestamptz keys take them in the session time zone.
+ */
+public class RollingPartitions {
+
+    /**
+     * Period, covered by a single partition.
+     */
+    public enum PERIOD {
+        HOUR(ChronoUnit.HOURS, "yyyyMMddHH"),
+        DAY(ChronoUnit.DAYS, "yyyyMMdd"),
+        WEEK(ChronoUnit.WEEKS, "yyyyMMdd"),
+        MONTH(ChronoUnit.MONTHS, "yyyyMM"),
+        YEAR(ChronoUnit.YEARS, "yyyy");
+
+        private final ChronoUnit unit;
+        private final DateTimeFormatter nameFormat;
+
+        PERIOD(ChronoUnit unit, String namePattern) {
+            this.unit = unit;
+            this.nameFormat = new DateTimeFormatterBuilder()
+                    .appendPattern(namePattern)
+                    .parseDefaulting(ChronoField.MONTH_OF_YEAR, 1)
+                    .parseDefaulting(ChronoField.DAY_OF_MONTH, 1)
+                    .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+                    .toFormatter();
+        }
+
+        /**
+         * @param time the time
+         * @return start of the period, containing the time (weeks start on Monday)
+         */
+        public LocalDateTime truncate(LocalDateTime time) {
+            switch (this) {
+            case HOUR:
+                return time.truncatedTo(ChronoUnit.HOURS);
+            case DAY:
+                return time.truncatedTo(ChronoUnit.DAYS);
+            case WEEK:
+                return time.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            default:
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1);
+            }
+        }
+
+        /**
+         * @param start period start
+         * @param periods number of periods, may be negative
+         * @return the shifted start
+         */
+        public LocalDateTime plus(LocalDateTime start, long periods) {
+            return start.plus(periods, unit);
+        }
+
+        /**
+         * @param from the time
+         * @param to the end time, exclusive
+         * @return number of periods, starting with the one containing from and ending with the one containing to
+         */
+        public long count(LocalDateTime from, LocalDateTime to) {
+
+            LocalDateTime start = truncate(from);
+            if (!start.isBefore(to)) {
+                return 0;
+            }
+
+            long periods = unit.between(start, to);
+            return plus(start, periods).isBefore(to) ? periods + 1 : periods;
+        }
+
+        /**
+         * @param start period start
+         * @return the start, as used in partition names
+         */
+        public String format(LocalDateTime start) {
+            return nameFormat.format(start);
+        }
+
+        /**
+         * @param time the time
+         * @return bound literal, a date for periods of a day and longer
+         */
+        public String literal(LocalDateTime time) {
+            return "'" + (this == HOUR ? TIMESTAMP_LITERAL : DATE_LITERAL).format(time) + "'";
+        }
+    }
+
+    /**
+     * What happens to partitions past retention.
+     */
+    public enum EXPIRY {
+        /**
+         * Detach and keep the table.
+         */
+        DETACH,
+        /**
+         * Detach and move the table to the archive schema.
+         */
+        ARCHIVE,
+        /**
+         * Detach and drop the table.
+         */
+        DROP
+    }
+
+    public static final int DEFAULT_PREMAKE = 7;
+
+    private static final DateTimeFormatter DATE_LITERAL = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIMESTAMP_LITERAL = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String tableName;
+    private final String keyColumn;
+    private final PERIOD period;
+    private final int premake;
+    private final int retain;
+    private final EXPIRY expiry;
+    private final String archiveSchema;
+    private final String tablespace;
+    private final String coldTablespace;
+    private final int coldAfter;
+    private final Backfill moveOptions;
+
+    private RollingPartitions(Builder builder) {
+
+        Objects.requireNonNull(builder.tableName, "tableName must not be null");
+        Objects.requireNonNull(builder.keyColumn, "keyColumn must not be null");
+        Objects.requireNonNull(builder.period, "period must not be null");
+        if (builder.premake < 0 || builder.retain < 0) {
+            throw new InvalidSpecException("premake and retain must not be negative");
+        }
+
+        if (builder.retain > 0 && Objects.isNull(builder.expiry)) {
+            throw new InvalidSpecException("retain needs an explicit expiry, DETACH, ARCHIVE or DROP");
+        }
+
+        if (builder.expiry == EXPIRY.ARCHIVE && Objects.isNull(builder.archiveSchema)) {
+            throw new InvalidSpecException("ARCHIVE expiry needs an archive schema");
+        }
+
+        if (Objects.nonNull(builder.coldTablespace) && builder.coldAfter <= 0) {
+            throw new InvalidSpecException("Partitions must be moved to the cold tablespace after a positive number of periods");
+        }
+
+        tableName = builder.tableName;
+        keyColumn = builder.keyColumn;
+        period = builder.period;
+        premake = builder.premake;
+        retain = builder.retain;
+        expiry = builder.expiry;
+        archiveSchema = builder.archiveSchema;
+        tablespace = builder.tablespace;
+        coldTablespace = builder.coldTablespace;
+        coldAfter = builder.coldAfter;
+        moveOptions = builder.moveOptions;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    public PERIOD getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return number of periods after the current one, which must have partitions
+     */
+    public int getPremake() {
+        return premake;
+    }
+
+    /**
+     * @return number of past periods to keep attached, 0 to keep all
+     */
+    public int getRetain() {
+        return retain;
+    }
+
+    /**
+     * @return what happens to partitions past retention, null, if all are kept
+     */
+    public EXPIRY getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * @return the archive schema or null
+     */
+    public String getArchiveSchema() {
+        return archiveSchema;
+    }
+
+    /**
+     * @return the tablespace of new partitions or null for the one of the table
+     */
+    public String getTablespace() {
+        return tablespace;
+    }
+
+    /**
+     * @return the tablespace, aging partitions are moved to, or null to keep them in place
+     */
+    public String getColdTablespace() {
+        return coldTablespace;
+    }
+
+    /**
+     * @return number of past periods to keep in the tablespace of new partitions
+     */
+    public int getColdAfter() {
+        return coldAfter;
+    }
+
+    /**
+     * @return chunk size, pause between chunks and progress listener of moves
+     */
+    public Backfill getMoveOptions() {
+        return moveOptions;
+    }
+
+    /**
+     * @param start period start
+     * @return name of the partition for the period
+     */
+    public String partitionName(LocalDateTime start) {
+        return tableName + "_p" + period.format(start);
+    }
+
+    /**
+     * Reverse of {@link #partitionName(LocalDateTime)}.
+     * @param partitionName the partition name
+     * @return period start or null, if the name does not follow the pattern
+     */
+    public LocalDateTime periodStart(String partitionName) {
+
+        String prefix = tableName + "_p";
+        if (!partitionName.toLowerCase().startsWith(prefix.toLowerCase())) {
+            return null;
+        }
+
+        try {
+            return LocalDateTime.parse(partitionName.substring(prefix.length()), period.nameFormat);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param time the time
+     * @return bound literal, a date for periods of a day and longer
+     */
+    public String literal(LocalDateTime time) {
+        return period.literal(time);
+    }
+
+    /**
+     * Reverse of {@link #literal(LocalDateTime)}, accepting dates and timestamps with or without zone offset.
+     * @param literal the literal
+     * @return time or null for MINVALUE, MAXVALUE and unknown literals
+     */
+    public static LocalDateTime parseLiteral(String literal) {
+
+        if (Objects.isNull(literal)) {
+            return null;
+        }
+
+        String value = literal.trim();
+        if (value.startsWith("'")) {
+            value = value.substring(1, value.indexOf('\'', 1) > 0 ? value.indexOf('\'', 1) : value.length());
+        }
+
+        try {
+            if (value.length() >= 19) {
+                return LocalDateTime.parse(value.substring(0, 19), TIMESTAMP_LITERAL);
+            }
+
+            return LocalDate.parse(value.length() >= 10 ? value.substring(0, 10) : value, DATE_LITERAL).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public static class Builder {
+        private final String tableName;
+        private final String keyColumn;
+        private final PERIOD period;
+        private int premake = DEFAULT_PREMAKE;
+        private int retain;
+        private EXPIRY expiry;
+        private String archiveSchema;
+        private String tablespace;
+        private String coldTablespace;
+        private int coldAfter;
+        private Backfill moveOptions = Backfill.defaults();
+
+        /**
+         * Constructor.
+         * @param tableName the partitioned table
+         * @param keyColumn the range key column, a date or timestamp
+         * @param period the period of a single partition
+         */
+        public Builder(String tableName, String keyColumn, PERIOD period) {
+            this.tableName = tableName;
+            this.keyColumn = keyColumn;
+            this.period = period;
+        }
+
+        public Builder premake(int premake) {
+            this.premake = premake;
+            return this;
+        }
+
+        public Builder retain(int retain) {
+            this.retain = retain;
+            return this;
+        }
+
+        public Builder expiry(EXPIRY expiry) {
+            this.expiry = expiry;
+            return this;
+        }
+
+        /**
+         * Moves expired partitions to the schema.
+         * @param archiveSchema the schema, created, if missing
+         * @return self
+         */
+        public Builder archiveTo(String archiveSchema) {
+            this.expiry = EXPIRY.ARCHIVE;
+            this.archiveSchema = archiveSchema;
+            return this;
+        }
+
+        /**
+         * Creates new partitions in the tablespace, i. e. on fast storage.
+         * @param tablespace the tablespace
+         * @return self
+         */
+        public Builder tablespace(String tablespace) {
+            this.tablespace = tablespace;
+            return this;
+        }
+
+        /**
+         * Moves partitions, ending after periods before the current one, to the tablespace, i. e. on cheaper storage.
+         * @param coldTablespace the tablespace
+         * @param after number of past periods to keep in place
+         * @return self
+         */
+        public Builder moveTo(String coldTablespace, int after) {
+            this.coldTablespace = coldTablespace;
+            this.coldAfter = after;
+            return this;
+        }
+
+        /**
+         * {@link #moveTo(String, int)} with the chunk size and pause between chunks of the copy.
+         * @param coldTablespace the tablespace
+         * @param after number of past periods to keep in place
+         * @param options chunk size, pause between chunks and progress listener
+         * @return self
+         */
+        public Builder moveTo(String coldTablespace, int after, Backfill options) {
+            this.moveOptions = Objects.nonNull(options) ? options : Backfill.defaults();
+            return moveTo(coldTablespace, after);
+        }
+
+        public RollingPartitions build() {
+            return new RollingPartitions(this);
+        }
+    }
+}
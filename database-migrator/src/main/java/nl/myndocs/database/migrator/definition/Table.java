@@ -20,8 +20,10 @@ public class Table {
     private Collection<String> dropColumns;
     private Collection<String> dropConstraints;
     private Collection<String> dropIndexes;
+    private Collection<String> dropIndexesConcurrently;
     private Collection<String> rawSQL;
     private PartitionSet partitions;
+    private String tablespace;
 
     private Table(Builder tableBuilder) {
 
@@ -42,10 +44,12 @@ public class Table {
         dropColumns = tableBuilder.dropColumns;
         dropConstraints = tableBuilder.dropConstraints;
         dropIndexes = tableBuilder.dropIndexes;
+        dropIndexesConcurrently = tableBuilder.dropIndexesConcurrently;
 
         rawSQL = tableBuilder.rawSQL;
 
         partitions = tableBuilder.partitions != null ? tableBuilder.partitions.build() : null;
+        tablespace = tableBuilder.tablespace;
     }
 
     public String getTableName() {
@@ -80,6 +84,10 @@ public class Table {
         return dropIndexes;
     }
 
+    public Collection<String> getDropIndexesConcurrently() {
+        return dropIndexesConcurrently;
+    }
+
     /**
      * @return the rawSQL
      */
@@ -94,8 +102,15 @@ public class Table {
         return partitions;
     }
 
+    /**
+     * @return the tablespace of a new table or null for the default one
+     */
+    public String getTablespace() {
+        return tablespace;
+    }
+
     public Stream<Partition> getPartitionStream() {
-        return isPartitioned() ? partitions.getPartitions().stream() : Stream.empty();
+        return isPartitioned() ? partitions.stream() : Stream.empty();
     }
 
     public boolean isPartitioned() {
@@ -103,7 +118,7 @@ public class Table {
     }
 
     public boolean isSharded() {
-        return isPartitioned() && partitions.getPartitions().stream().anyMatch(Partition::isForeign);
+        return isPartitioned() && partitions.stream().anyMatch(Partition::isForeign);
     }
 
     public static class Builder {
@@ -117,7 +132,9 @@ public class Table {
         private Collection<String> dropColumns = new ArrayList<>();
         private Collection<String> dropConstraints = new ArrayList<>();
         private Collection<String> dropIndexes = new ArrayList<>();
+        private Collection<String> dropIndexesConcurrently = new ArrayList<>();
         private Collection<String> rawSQL = new ArrayList<>();
+        private String tablespace;
 
         public Builder(String tableName, Consumer<Table> tableConsumer) {
             Objects.requireNonNull(tableName, "tableName must not be null");
@@ -237,6 +254,24 @@ public class Table {
             return this;
         }
 
+        /**
+         * Drops the index without blocking reads and writes, after the script transaction is committed.
+         * {@link Index.Builder#concurrently(Boolean)}
+         */
+        public Builder dropIndexConcurrently(String indexName) {
+            dropIndexesConcurrently.add(indexName);
+            return this;
+        }
+
+        /**
+         * Creates the table in the tablespace. Partitions of a partitioned table are created there,
+         * unless they have their own one.
+         */
+        public Builder tablespace(String tablespace) {
+            this.tablespace = tablespace;
+            return this;
+        }
+
         public Builder addRawSQL(String sql) {
             this.rawSQL.add(sql);
             return this;
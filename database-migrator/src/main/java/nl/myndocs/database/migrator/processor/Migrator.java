@@ -7,12 +7,23 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import nl.myndocs.database.migrator.MigrationScript;
+import nl.myndocs.database.migrator.database.ChangeSet;
+import nl.myndocs.database.migrator.database.MigrationPlan;
 import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 import nl.myndocs.database.migrator.database.query.Database;
 import nl.myndocs.database.migrator.definition.Column;
+import nl.myndocs.database.migrator.definition.Constraint;
 import nl.myndocs.database.migrator.definition.Index;
 import nl.myndocs.database.migrator.definition.Migration;
 import nl.myndocs.database.migrator.definition.Raw;
@@ -36,6 +47,26 @@ public class Migrator {
 
     private final String changeLogTable;
 
+    /**
+     * Whether the current script runs in a single transaction.
+     */
+    private boolean transactional = true;
+
+    /**
+     * Tables, the current script checked for blockers, in lower case.
+     */
+    private final Set<String> checkedTables = new HashSet<>();
+
+    /**
+     * Whether the current script ran statements, which may hold locks until it commits.
+     */
+    private boolean holdsLocks;
+
+    /**
+     * Tables, columns and indexes, touched by the current run.
+     */
+    private final ChangeSet changes = new ChangeSet();
+
     public Migrator(Database database) {
         this.database = database;
         this.changeLogTable = DEFAULT_CHANGE_LOG_TABLE;
@@ -58,6 +89,7 @@ public class Migrator {
 
             // Possibly switsch schema etc. activities
             database.init();
+            database.applyTuning(null);
 
             if (!database.hasTable(changeLogTable)) {
                 new Table.Builder(changeLogTable, newTableConsumer())
@@ -69,21 +101,11 @@ public class Migrator {
                         .save();
             }
 
+            changes.clear();
             connection.setAutoCommit(false);
             for (MigrationScript migrationScript : migrationScripts) {
 
-                boolean migrationExist = false;
-                try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT * FROM " + changeLogTable + " WHERE migration_id = ?")) {
-
-                    preparedStatement.setString(1, migrationScript.migrationId());
-                    preparedStatement.execute();
-
-                    try (ResultSet resultSet = preparedStatement.getResultSet()) {
-                        migrationExist = resultSet.next();
-                    }
-                }
-
-                if (migrationExist) {
+                if (isApplied(connection, migrationScript)) {
                     continue;
                 }
 
@@ -99,6 +121,10 @@ public class Migrator {
                             .append(") VALUES (?, ?, ?)")
                             .toString())) {
 
+                    startScript(migrationScript);
+                    database.applyTuning(migrationScript.tuningProfile());
+                    database.startScript(migrationScript.migrationId(), migrationScript.isTransactional());
+
                     Migration m = new Migration(migrationScript.migrationId(), database, newTableConsumer(), newRawConsumer(ctx), ctx);
                     migrationScript.migrate(m);
 
@@ -106,6 +132,7 @@ public class Migrator {
                     insertPreparedStatement.setString(2, migrationScript.author());
                     insertPreparedStatement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
                     insertPreparedStatement.execute();
+                    database.finishScript(true);
 
                     connection.commit();
 
@@ -115,26 +142,153 @@ public class Migrator {
 
                 } catch (Exception e) {
                     connection.rollback();
+                    database.finishScript(false);
                     throw new CouldNotProcessException("Migration [" + migrationScript.migrationId() + "] failed.", e);
                 }
+
+                // Foreign keys, added as NOT VALID by the script, are checked after the commit
+                database.validateConstraints();
             }
+
+            // Before the run reports completion, so the first queries are planned with fresh statistics
+            database.refreshStatistics(changes);
         } finally {
             connection.setAutoCommit(isAutocommit);
             database.finish();
         }
     }
 
+    /**
+     * Dry run. Collects the statements, pending scripts would run, with their lock levels and table sizes,
+     * without running them. Anything, run directly by the scripts, is rolled back.
+     * Tables, created by an earlier script of the same plan, are planned as missing.
+     * @param migrationScripts the scripts
+     * @return the plan
+     * @throws SQLException if the connection fails
+     */
+    public MigrationPlan plan(MigrationScript... migrationScripts) throws SQLException {
+
+        Connection connection = database.getConnection();
+        boolean isAutocommit = connection.getAutoCommit();
+        MigrationPlan plan = new MigrationPlan();
+        try {
+
+            database.init();
+            boolean hasChangeLog = database.hasTable(changeLogTable);
+
+            connection.setAutoCommit(false);
+            database.setPlan(plan);
+
+            for (MigrationScript migrationScript : migrationScripts) {
+
+                if (hasChangeLog && isApplied(connection, migrationScript)) {
+                    continue;
+                }
+
+                plan.startScript(migrationScript.migrationId());
+                startScript(migrationScript);
+                database.startScript(migrationScript.migrationId(), migrationScript.isTransactional());
+
+                try {
+                    migrationScript.migrate(new Migration(migrationScript.migrationId(), database, newTableConsumer(), newRawConsumer(null), null));
+                } finally {
+                    database.finishScript(false);
+                }
+            }
+        } finally {
+            database.setPlan(null);
+            connection.rollback();
+            connection.setAutoCommit(isAutocommit);
+            database.finish();
+        }
+
+        return plan;
+    }
+
+    /**
+     * Maintenance phase. Validates foreign keys, added with
+     * {@link nl.myndocs.database.migrator.definition.ForeignKey.VALIDATION#DEFERRED} validation
+     * or left unvalidated by a failed validation.
+     * @throws SQLException if the connection fails
+     */
+    public void validateDeferred() throws SQLException {
+
+        Connection connection = database.getConnection();
+        boolean isAutocommit = connection.getAutoCommit();
+        try {
+            database.init();
+            database.applyTuning(null);
+            connection.setAutoCommit(false);
+            database.validateDeferredConstraints();
+        } finally {
+            connection.setAutoCommit(isAutocommit);
+            database.finish();
+        }
+    }
+
+    private boolean isApplied(Connection connection, MigrationScript migrationScript) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT * FROM " + changeLogTable + " WHERE migration_id = ?")) {
+
+            preparedStatement.setString(1, migrationScript.migrationId());
+            preparedStatement.execute();
+
+            try (ResultSet resultSet = preparedStatement.getResultSet()) {
+                return resultSet.next();
+            }
+        }
+    }
+
     private Consumer<Table> newTableConsumer() {
         return (table -> {
+            Collection<String> lockedTables = lockedTables(table);
+            preflight(lockedTables);
+            database.estimateSizes(lockedTables);
             applyRaw(table);
             applyStart(table);
             applyDrop(table);
             applyAlter(table);
             applyCreate(table);
             applyFinish(table);
+            recordChanges(table);
+            holdsLocks = true;
         });
     }
 
+    private void startScript(MigrationScript migrationScript) {
+        transactional = migrationScript.isTransactional();
+        checkedTables.clear();
+        holdsLocks = false;
+    }
+
+    /**
+     * Checks the tables for blockers before the first statement on them. Non transactional scripts commit first,
+     * so no locks are held while waiting. Transactional scripts, which already ran statements, hold their locks
+     * until the commit, so they are not kept waiting and fail on blockers instead.
+     */
+    private void preflight(Collection<String> tableNames) {
+
+        if (!database.isPreflightEnabled()) {
+            return;
+        }
+
+        List<String> unchecked = tableNames.stream()
+            .filter(tableName -> checkedTables.add(tableName.toLowerCase(Locale.ROOT)))
+            .collect(Collectors.toList());
+        if (unchecked.isEmpty()) {
+            return;
+        }
+
+        if (!transactional) {
+            try {
+                database.getConnection().commit();
+            } catch (SQLException e) {
+                throw new CouldNotProcessException("Commit before the blocker check of " + unchecked + " failed.", e);
+            }
+        }
+
+        database.preflight(unchecked, !transactional || !holdsLocks);
+    }
+
     private Consumer<Raw> newRawConsumer(MigrationContext ctx) {
         return raw -> raw.getRawSQL().forEach(holder -> {
 
@@ -156,6 +310,46 @@ public class Migrator {
         });
     }
 
+    /**
+     * Existing tables are altered, tables referenced by new foreign keys are locked as well.
+     */
+    private Collection<String> lockedTables(Table table) {
+
+        Set<String> tableNames = new LinkedHashSet<>();
+        if (database.hasTable(table.getTableName())) {
+            tableNames.add(table.getTableName());
+        }
+
+        table.getNewConstraints().stream()
+            .filter(constraint -> Objects.nonNull(constraint.getForeignKey()))
+            .map(constraint -> constraint.getForeignKey().getForeignTable())
+            .forEach(tableNames::add);
+
+        return tableNames;
+    }
+
+    /**
+     * Partition indexes are recorded under the table, whose statistics cover the partitions.
+     */
+    private void recordChanges(Table table) {
+
+        String tableName = table.getTableName();
+        if (tableName.equalsIgnoreCase(changeLogTable)) {
+            return;
+        }
+
+        changes.addTable(tableName);
+        table.getNewColumns().forEach(column -> changes.addColumn(tableName, column.getColumnName()));
+        table.getChangeColumns().forEach(column -> changes.addColumn(tableName,
+                Objects.nonNull(column.getRename()) ? column.getRename() : column.getColumnName()));
+        table.getNewIndexes().forEach(index -> changes.addIndex(tableName, index.getIndexName()));
+
+        if (table.isPartitioned()) {
+            table.getPartitionStream().forEach(p -> p.getNewIndexes()
+                    .forEach(index -> changes.addIndex(tableName, index.getIndexName())));
+        }
+    }
+
     private void applyStart(Table table) {
 
         if (database.hasTable(table.getTableName())) {
@@ -166,8 +360,22 @@ public class Migrator {
         }
     }
 
+    private void applyOutOfTransaction(Connection connection, Runnable operation) throws SQLException {
+
+        connection.commit();
+        connection.setAutoCommit(true);
+        try {
+            operation.run();
+        } finally {
+            connection.setAutoCommit(false);
+        }
+    }
+
     private void applyDrop(Table table) {
 
+        table.getDropIndexesConcurrently().forEach(indexName ->
+            runConcurrently(indexName, () -> database.alterTable(table).dropIndexConcurrently(indexName)));
+
         table.getDropConstraints().forEach(constraintName -> database.alterTable(table).dropConstraint(constraintName));
         table.getDropIndexes().forEach(indexName -> database.alterTable(table).dropIndex(indexName));
 
@@ -222,25 +430,86 @@ public class Migrator {
 
     private void applyCreate(Table table) {
 
-        table.getNewConstraints().forEach(constraint -> database.alterTable(table).addConstraint(constraint));
-        table.getNewIndexes().forEach(index -> database.alterTable(table).addIndex(index));
+        table.getNewConstraints().forEach(constraint -> {
+            if (isConcurrent(constraint)) {
+                runConcurrently(constraint.getConstraintName(), () -> database.alterTable(table).addConstraint(constraint));
+            } else {
+                database.alterTable(table).addConstraint(constraint);
+            }
+        });
+        table.getNewIndexes().forEach(index -> {
+            if (database.isConcurrent(table.getTableName(), index)) {
+                runConcurrently(index.getIndexName(), () -> database.alterTable(table).addIndex(index));
+            } else {
+                database.alterTable(table).addIndex(index);
+            }
+        });
 
         if (table.isPartitioned()) {
             table.getPartitionStream().forEach(p -> {
-                p.getNewConstraints().forEach(constraint -> database.alterPartition(p).addConstraint(constraint));
-                p.getNewIndexes().forEach(index -> database.alterPartition(p).addIndex(index));
+                p.getNewConstraints().forEach(constraint -> {
+                    if (isConcurrent(constraint)) {
+                        runConcurrently(constraint.getConstraintName(), () -> database.alterPartition(p).addConstraint(constraint));
+                    } else {
+                        database.alterPartition(p).addConstraint(constraint);
+                    }
+                });
+                p.getNewIndexes().forEach(index -> {
+                    if (database.isConcurrent(p.getPartitionName(), index)) {
+                        runConcurrently(index.getIndexName(), () -> database.alterPartition(p).addIndex(index));
+                    } else {
+                        database.alterPartition(p).addIndex(index);
+                    }
+                });
             });
         }
     }
 
+    private boolean isConcurrent(Constraint constraint) {
+        return Boolean.TRUE.equals(constraint.getConcurrently());
+    }
+
+    /**
+     * Concurrent index operations cannot run in a transaction. Non transactional scripts commit
+     * and run them in place, keeping the order of the statements. Transactional scripts are refused,
+     * as a failed build after the commit would leave the script applied, but not recorded.
+     * @param name the index or constraint name
+     * @param operation the operation
+     */
+    private void runConcurrently(String name, Runnable operation) {
+
+        if (transactional) {
+            throw new InvalidSpecException("Concurrent index operation on [" + name + "] commits on its own"
+                    + " and must run in a non transactional script (see MigrationScript#isTransactional()).");
+        }
+
+        if (database.getPlan() != null) {
+            operation.run();
+            return;
+        }
+
+        try {
+            applyOutOfTransaction(database.getConnection(), operation);
+        } catch (SQLException e) {
+            throw new CouldNotProcessException("Concurrent index operation on [" + name + "] failed.", e);
+        }
+    }
+
     private void applyRaw(Table table) {
         table.getRawSQL().forEach(this::applyRawSQL);
     }
 
     private void applyRawSQL(String sql) {
+
+        if (database.getPlan() != null) {
+            database.getPlan().add(null, sql, null, MigrationPlan.IMPACT.UNKNOWN, -1L, -1L);
+            return;
+        }
+
         Connection connection = database.getConnection();
         try (Statement statement = connection.createStatement()) {
             statement.execute(sql);
+            holdsLocks = true;
         } catch (SQLException e) {
             throw new CouldNotProcessException("Execution of raw SQL [" + sql + "] failed.", e);
         }
@@ -0,0 +1,311 @@
+package nl.myndocs.database.migrator.processor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.myndocs.database.migrator.database.PartitionInfo;
+import nl.myndocs.database.migrator.database.query.Database;
+import nl.myndocs.database.migrator.definition.Backfill;
+import nl.myndocs.database.migrator.definition.Partition;
+import nl.myndocs.database.migrator.definition.PartitionSet;
+import nl.myndocs.database.migrator.definition.PartitionSpec;
+import nl.myndocs.database.migrator.definition.RollingPartitions;
+
+/**
+ * @author Mikhail Mikhailov
+ * Scheduled maintenance of rolling time based partitions. Creates partitions for the current and the next
+ * {@link RollingPartitions#getPremake()} periods and retires partitions past retention. Every run starts
+ * from the catalog, so runs are idempotent and pick up the work of interrupted ones:
+ * interrupted concurrent detaches are finalized and detached, but not yet retired partitions are retired.
+ * Statements run with autocommit, each in its own transaction.
+ * Partitions past {@link RollingPartitions#getColdAfter()} periods are moved to the cold tablespace, one at a time.
+ * Also splits hash partitions of tables, which outgrow their modulus, and converts tables to partitioned ones.
+ */
+public class PartitionMaintainer {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionMaintainer.class);
+
+    private final Database database;
+
+    public PartitionMaintainer(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Maintains the partitions as of now.
+     * @param rolling the partitions
+     * @return the partitions after maintenance
+     * @throws SQLException if the connection fails
+     */
+    public List<PartitionInfo> maintain(RollingPartitions rolling) throws SQLException {
+        return maintain(rolling, LocalDateTime.now());
+    }
+
+    /**
+     * Maintains the partitions as of the given time.
+     * @param rolling the partitions
+     * @param now the current time
+     * @return the partitions after maintenance
+     * @throws SQLException if the connection fails
+     */
+    public List<PartitionInfo> maintain(RollingPartitions rolling, LocalDateTime now) throws SQLException {
+
+        Connection connection = database.getConnection();
+        boolean isAutocommit = connection.getAutoCommit();
+        try {
+
+            database.init();
+            database.applyTuning(null);
+            connection.setAutoCommit(true);
+
+            List<PartitionInfo> partitions = database.loadPartitions(rolling.getTableName());
+            finalizeDetaches(rolling, partitions);
+            premake(rolling, partitions, now);
+            expire(rolling, partitions, now);
+            tier(rolling, partitions, now);
+
+            return database.loadPartitions(rolling.getTableName());
+        } finally {
+            connection.setAutoCommit(isAutocommit);
+            database.finish();
+        }
+    }
+
+    /**
+     * Splits every partition of a hash partitioned table into factor partitions,
+     * see {@link Database#splitHashPartitions(String, String, int, Backfill)}.
+     * @param tableName the hash partitioned table
+     * @param keyColumn a not null, indexed column, rows are copied in the order of
+     * @param factor number of partitions, every partition is split into
+     * @param options chunk size, pause between chunks and progress listener
+     * @return progress of the copy of every split partition
+     * @throws SQLException if the connection fails
+     */
+    public List<Backfill.Progress> split(String tableName, String keyColumn, int factor, Backfill options) throws SQLException {
+        return inTransaction(() -> database.splitHashPartitions(tableName, keyColumn, factor, options));
+    }
+
+    /**
+     * Converts an existing table to a partitioned one,
+     * see {@link Database#partitionTable(String, PartitionSet, String, boolean, Backfill)}.
+     * @param tableName the table
+     * @param set the partitions
+     * @param keyColumn a not null, indexed column, rows are copied in the order of
+     * @param verify compare row counts of both tables, before they are swapped
+     * @param options chunk size, pause between chunks and progress listener
+     * @return progress of the copy of every partition
+     * @throws SQLException if the connection fails
+     */
+    public List<Backfill.Progress> partition(String tableName, PartitionSet set, String keyColumn, boolean verify, Backfill options)
+            throws SQLException {
+        return inTransaction(() -> database.partitionTable(tableName, set, keyColumn, verify, options));
+    }
+
+    /**
+     * Moves a partition to another tablespace, see {@link Database#movePartition(String, String, String, String, Backfill)}.
+     * @param tableName the partitioned table
+     * @param partitionName the partition
+     * @param tablespace the target tablespace
+     * @param keyColumn a not null, indexed column, rows are copied in the order of
+     * @param options chunk size, pause between chunks and progress listener
+     * @return progress of the copy or null, if the partition is in the tablespace already
+     * @throws SQLException if the connection fails
+     */
+    public Backfill.Progress move(String tableName, String partitionName, String tablespace, String keyColumn, Backfill options)
+            throws SQLException {
+        return inTransaction(() -> database.movePartition(tableName, partitionName, tablespace, keyColumn, options));
+    }
+
+    /*
+     * Operations, which commit on their own, but need a transaction for the final swap.
+     */
+    private <T> T inTransaction(Supplier<T> operation) throws SQLException {
+
+        Connection connection = database.getConnection();
+        boolean isAutocommit = connection.getAutoCommit();
+        try {
+
+            database.init();
+            database.applyTuning(null);
+            connection.setAutoCommit(false);
+
+            return operation.get();
+        } finally {
+            connection.setAutoCommit(isAutocommit);
+            database.finish();
+        }
+    }
+
+    /**
+     * @param tableName the partitioned table
+     * @return partitions with their bounds and sizes
+     */
+    public List<PartitionInfo> inventory(String tableName) {
+        return database.loadPartitions(tableName);
+    }
+
+    private void finalizeDetaches(RollingPartitions rolling, List<PartitionInfo> partitions) {
+        partitions.stream()
+            .filter(p -> p.getState() == PartitionInfo.STATE.DETACH_PENDING)
+            .forEach(p -> database.detachPartition(rolling.getTableName(), p.getPartitionName()));
+    }
+
+    private void premake(RollingPartitions rolling, List<PartitionInfo> partitions, LocalDateTime now) {
+
+        RollingPartitions.PERIOD period = rolling.getPeriod();
+        LocalDateTime current = period.truncate(now);
+
+        if (partitions.stream().anyMatch(PartitionInfo::isDefault)) {
+            logger.warn("{} has a default partition, which is scanned for rows of every new partition", rolling.getTableName());
+        }
+
+        for (int i = 0; i <= rolling.getPremake(); i++) {
+
+            LocalDateTime from = period.plus(current, i);
+            LocalDateTime to = period.plus(current, i + 1L);
+
+            PartitionInfo overlapping = partitions.stream()
+                    .filter(p -> p.getState() != PartitionInfo.STATE.DETACHED && !p.isDefault())
+                    .filter(p -> overlaps(p, from, to))
+                    .findFirst()
+                    .orElse(null);
+
+            if (Objects.nonNull(overlapping)) {
+                logger.debug("Period {} of {} is covered by {}", from, rolling.getTableName(), overlapping.getPartitionName());
+                continue;
+            }
+
+            String partitionName = rolling.partitionName(from);
+            logger.info("Creating partition {} of {} for [{}, {})", partitionName, rolling.getTableName(), from, to);
+
+            Partition partition = new Partition.Builder()
+                    .setPartitionName(partitionName)
+                    .setPartitionSpec(PartitionSpec.of(new String[] { rolling.literal(from) }, new String[] { rolling.literal(to) }))
+                    .setTablespace(rolling.getTablespace())
+                    .build();
+
+            database.addPartition(rolling.getTableName(), new PartitionSet.Builder(PartitionSet.TYPE.RANGE)
+                    .keyColumn(rolling.getKeyColumn())
+                    .partition(partition)
+                    .build(), partition);
+        }
+    }
+
+    private void expire(RollingPartitions rolling, List<PartitionInfo> partitions, LocalDateTime now) {
+
+        if (rolling.getRetain() == 0) {
+            return;
+        }
+
+        RollingPartitions.PERIOD period = rolling.getPeriod();
+        LocalDateTime cutoff = period.plus(period.truncate(now), -rolling.getRetain());
+
+        for (PartitionInfo p : partitions) {
+
+            if (p.getState() == PartitionInfo.STATE.DETACHED) {
+
+                // Left over by an earlier run, which detached, but did not retire it
+                LocalDateTime start = rolling.periodStart(p.getPartitionName());
+                if (rolling.getExpiry() != RollingPartitions.EXPIRY.DETACH
+                 && Objects.nonNull(start) && !period.plus(start, 1).isAfter(cutoff)) {
+                    retire(rolling, p.getPartitionName());
+                }
+
+                continue;
+            }
+
+            if (p.isDefault()) {
+                continue;
+            }
+
+            LocalDateTime to = RollingPartitions.parseLiteral(p.getTo());
+            if (Objects.isNull(to) || to.isAfter(cutoff)) {
+                continue;
+            }
+
+            logger.info("Partition {} of {} ends at {}, before {}, detaching", p.getPartitionName(), rolling.getTableName(), to, cutoff);
+            if (p.getState() == PartitionInfo.STATE.ATTACHED) {
+                database.detachPartition(rolling.getTableName(), p.getPartitionName());
+            }
+
+            retire(rolling, p.getPartitionName());
+        }
+    }
+
+    /*
+     * Moves need a transaction for the final swap, so autocommit is off for the move.
+     */
+    private void tier(RollingPartitions rolling, List<PartitionInfo> partitions, LocalDateTime now) throws SQLException {
+
+        if (Objects.isNull(rolling.getColdTablespace())) {
+            return;
+        }
+
+        RollingPartitions.PERIOD period = rolling.getPeriod();
+        LocalDateTime cutoff = period.plus(period.truncate(now), -rolling.getColdAfter());
+        LocalDateTime expiry = rolling.getRetain() > 0 ? period.plus(period.truncate(now), -rolling.getRetain()) : null;
+
+        for (PartitionInfo p : partitions) {
+
+            if (p.getState() != PartitionInfo.STATE.ATTACHED || p.isDefault()
+             || rolling.getColdTablespace().equalsIgnoreCase(p.getTablespace())) {
+                continue;
+            }
+
+            // Expired ones are gone already
+            LocalDateTime to = RollingPartitions.parseLiteral(p.getTo());
+            if (Objects.isNull(to) || to.isAfter(cutoff) || (Objects.nonNull(expiry) && !to.isAfter(expiry))) {
+                continue;
+            }
+
+            logger.info("Partition {} of {} ends at {}, before {}, moving to {}",
+                    p.getPartitionName(), rolling.getTableName(), to, cutoff, rolling.getColdTablespace());
+
+            Connection connection = database.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                database.movePartition(rolling.getTableName(), p.getPartitionName(), rolling.getColdTablespace(),
+                        rolling.getKeyColumn(), rolling.getMoveOptions());
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void retire(RollingPartitions rolling, String partitionName) {
+        switch (rolling.getExpiry()) {
+        case ARCHIVE:
+            logger.info("Moving {} to {}", partitionName, rolling.getArchiveSchema());
+            database.retirePartition(partitionName, rolling.getArchiveSchema());
+            break;
+        case DROP:
+            logger.info("Dropping {}", partitionName);
+            database.retirePartition(partitionName, null);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /*
+     * Unparsable bounds (MINVALUE, MAXVALUE) are open.
+     */
+    private boolean overlaps(PartitionInfo partition, LocalDateTime from, LocalDateTime to) {
+
+        if (Objects.isNull(partition.getFrom()) && Objects.isNull(partition.getTo())) {
+            return false;
+        }
+
+        LocalDateTime start = RollingPartitions.parseLiteral(partition.getFrom());
+        LocalDateTime end = RollingPartitions.parseLiteral(partition.getTo());
+
+        return (Objects.isNull(start) || start.isBefore(to))
+            && (Objects.isNull(end) || end.isAfter(from));
+    }
+}
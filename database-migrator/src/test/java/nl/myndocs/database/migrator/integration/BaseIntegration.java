@@ -4,6 +4,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -15,8 +16,12 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -25,12 +30,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nl.myndocs.database.migrator.MigrationScript;
+import nl.myndocs.database.migrator.database.DefaultDatabase;
+import nl.myndocs.database.migrator.database.LockPolicy;
+import nl.myndocs.database.migrator.database.MigrationPlan;
 import nl.myndocs.database.migrator.database.Selector;
+import nl.myndocs.database.migrator.database.SizeThresholds;
+import nl.myndocs.database.migrator.database.StatisticsPolicy;
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 import nl.myndocs.database.migrator.database.query.Database;
+import nl.myndocs.database.migrator.definition.Backfill;
 import nl.myndocs.database.migrator.definition.Column;
 import nl.myndocs.database.migrator.definition.Constraint;
 import nl.myndocs.database.migrator.definition.ForeignKey;
 import nl.myndocs.database.migrator.definition.Index;
+import nl.myndocs.database.migrator.definition.Migration;
 import nl.myndocs.database.migrator.definition.PartitionSet;
 import nl.myndocs.database.migrator.integration.tools.SimpleMigrationScript;
 import nl.myndocs.database.migrator.processor.Migrator;
@@ -250,6 +264,59 @@ public abstract class BaseIntegration {
 
     }
 
+    @Test
+    public void testConcurrentIndex() throws ClassNotFoundException, SQLException {
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "test-concurrent_index",
+                migration -> {
+                    migration.table("concurrent_index")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true).primary(true))
+                            .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                            .save();
+                }
+        ));
+
+        Consumer<Migration> addIndex = migration -> {
+            migration.table("concurrent_index")
+                    .addIndex("concurrent_index_name", Index.TYPE.DEFAULT, index -> index
+                            .columns("name")
+                            .concurrently(true))
+                    .save();
+        };
+
+        // A failed build after the commit would leave the script applied, but not recorded
+        try {
+            migrator.migrate(new SimpleMigrationScript("test-concurrent_index-add", addIndex));
+            fail("Concurrent index operations should be refused in a transactional script");
+        } catch (CouldNotProcessException exception) {
+            assertThat(exception.getCause(), instanceOf(InvalidSpecException.class));
+        }
+
+        migrator.migrate(new SimpleMigrationScript("test-concurrent_index-add", false, addIndex));
+
+        migrator.migrate(new SimpleMigrationScript(
+                "test-concurrent_index-drop",
+                false,
+                migration -> {
+                    migration.table("concurrent_index")
+                            .dropIndexConcurrently("concurrent_index_name")
+                            .save();
+                }
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("SELECT COUNT(*) FROM migration_changelog WHERE migration_id LIKE 'test-concurrent_index%'");
+        ResultSet resultSet = statement.getResultSet();
+        assertTrue(resultSet.next());
+        assertEquals(3L, resultSet.getLong(1));
+
+        statement.close();
+        connection.close();
+    }
+
     @Test
     public void testTextField() throws ClassNotFoundException, SQLException {
         SimpleMigrationScript simpleMigrationScript = new SimpleMigrationScript(
@@ -325,6 +392,99 @@ public abstract class BaseIntegration {
         }
     }
 
+    @Test
+    public void testForeignKeyValidatedAfterCommit() throws Exception {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("some_validated_table")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .save();
+
+                    migration.table("some_validated_other_table")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("some_table_id", Column.TYPE.INTEGER)
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO some_validated_table (id) VALUES (1)");
+        statement.execute("INSERT INTO some_validated_other_table (id, some_table_id) VALUES (1, 1)");
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                migration -> {
+                    migration.table("some_validated_other_table")
+                            .addConstraint("some_validated_FK", Constraint.TYPE.FOREIGN_KEY, cb -> cb
+                                    .columns("some_table_id")
+                                    .foreignKey(fk -> fk
+                                            .foreignTable("some_validated_table")
+                                            .foreignKeys("id")
+                                            .validation(ForeignKey.VALIDATION.SAME_RUN)))
+                            .save();
+                }
+        ));
+
+        try {
+            statement.execute("INSERT INTO some_validated_other_table (id, some_table_id) VALUES (2, 2)");
+            fail("Exception should occur");
+        } catch (SQLException exception) {
+            // expected
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testForeignKeyValidationFailsOnOrphans() throws Exception {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("some_orphan_table")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .save();
+
+                    migration.table("some_orphan_other_table")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("some_table_id", Column.TYPE.INTEGER)
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO some_orphan_other_table (id, some_table_id) VALUES (1, 1)");
+
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-2",
+                    migration -> {
+                        migration.table("some_orphan_other_table")
+                                .addConstraint("some_orphan_FK", Constraint.TYPE.FOREIGN_KEY, cb -> cb
+                                        .columns("some_table_id")
+                                        .foreignKey(fk -> fk
+                                                .foreignTable("some_orphan_table")
+                                                .foreignKeys("id")
+                                                .validation(ForeignKey.VALIDATION.SAME_RUN)))
+                                .save();
+                    }
+            ));
+            fail("Validation should fail on rows without parent");
+        } catch (CouldNotProcessException exception) {
+            // expected
+        }
+
+        statement.close();
+        connection.close();
+    }
+
     @Test
     public void testRemoveForeignKeyConstraint() throws Exception {
         SimpleMigrationScript migrationScript = new SimpleMigrationScript(
@@ -623,6 +783,675 @@ public abstract class BaseIntegration {
         connection.close();
     }
 
+    @Test
+    public void testChunkedChangeType() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_chunked_change_type")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true).autoIncrement(true))
+                            .addColumn("amount", Column.TYPE.INTEGER)
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        for (int i = 0; i < 25; i++) {
+            statement.execute("INSERT INTO test_chunked_change_type (amount) VALUES (" + i + ")");
+        }
+
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-2",
+                    migration -> {
+                        migration.table("test_chunked_change_type")
+                                .changeColumn("amount", column -> column
+                                        .type(Column.TYPE.BIG_INTEGER)
+                                        .strategy(Column.STRATEGY.CHUNKED))
+                                .save();
+                    }
+            ));
+            fail("Chunked type change should be refused in a transactional script");
+        } catch (CouldNotProcessException exception) {
+            assertThat(exception.getCause(), instanceOf(InvalidSpecException.class));
+        }
+
+        List<Backfill.Progress> reports = new ArrayList<>();
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                false,
+                migration -> {
+                    migration.table("test_chunked_change_type")
+                            .changeColumn("amount", column -> column
+                                    .type(Column.TYPE.BIG_INTEGER)
+                                    .strategy(Column.STRATEGY.CHUNKED)
+                                    .backfill(backfill -> backfill.chunkSize(10).listener(reports::add)))
+                            .save();
+                }
+        ));
+
+        assertThat(reports.get(reports.size() - 1).isDone(), is(true));
+        assertThat(reports.get(reports.size() - 1).getProcessedRows(), is(25L));
+        assertThat(reports.get(reports.size() - 1).getChunks(), is(3));
+
+        statement.execute("SELECT SUM(amount) FROM test_chunked_change_type");
+        ResultSet resultSet = statement.getResultSet();
+        assertTrue(resultSet.next());
+        assertEquals(300L, resultSet.getLong(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testOnlineChangeTypeKeepsConstraints() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_online_change_type")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true).primary(true))
+                            .addColumn("code", Column.TYPE.INTEGER, column -> column.notNull(true).defaultValue("7"))
+                            .addColumn("amount", Column.TYPE.INTEGER)
+                            .addIndex("test_online_change_type_code", Index.TYPE.UNIQUE, "code")
+                            .addIndex("test_online_change_type_amount", Index.TYPE.DEFAULT, "amount")
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        for (int i = 1; i <= 5; i++) {
+            statement.execute("INSERT INTO test_online_change_type (id, code, amount) VALUES (" + i + ", " + (i * 10) + ", " + i + ")");
+        }
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                false,
+                migration -> {
+                    migration.table("test_online_change_type")
+                            .changeColumn("id", column -> column.type(Column.TYPE.BIG_INTEGER).strategy(Column.STRATEGY.ONLINE))
+                            .changeColumn("code", column -> column.type(Column.TYPE.BIG_INTEGER).strategy(Column.STRATEGY.ONLINE))
+                            .save();
+                }
+        ));
+
+        statement.execute("INSERT INTO test_online_change_type (id, code, amount) VALUES (3000000000, 3000000000, 6)");
+        statement.execute("SELECT SUM(code) FROM test_online_change_type");
+        ResultSet resultSet = statement.getResultSet();
+        assertTrue(resultSet.next());
+        assertEquals(3000000150L, resultSet.getLong(1));
+
+        try {
+            statement.execute("INSERT INTO test_online_change_type (id, code) VALUES (1, 11)");
+            fail("Primary key was lost");
+        } catch (Exception exception) {
+            assertTrue(isConstraintViolationException(exception));
+        }
+
+        try {
+            statement.execute("INSERT INTO test_online_change_type (id, code) VALUES (6, 10)");
+            fail("Unique index was lost");
+        } catch (Exception exception) {
+            assertTrue(isConstraintViolationException(exception));
+        }
+
+        try {
+            statement.execute("INSERT INTO test_online_change_type (id, code) VALUES (7, NULL)");
+            fail("NOT NULL was lost");
+        } catch (SQLException exception) {
+            // expected
+        }
+
+        List<String> indexes = new ArrayList<>();
+        for (String name : Arrays.asList("test_online_change_type", "TEST_ONLINE_CHANGE_TYPE")) {
+            try (ResultSet indexInfo = connection.getMetaData().getIndexInfo(null, null, name, false, false)) {
+                while (indexInfo.next()) {
+                    indexes.add(String.valueOf(indexInfo.getString("INDEX_NAME")).toLowerCase());
+                }
+            }
+        }
+
+        assertTrue(indexes.toString(), indexes.contains("test_online_change_type_amount"));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testBatchedAddColumn() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_batched_add_column")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true).autoIncrement(true))
+                            .addColumn("amount", Column.TYPE.INTEGER)
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        for (int i = 0; i < 25; i++) {
+            statement.execute("INSERT INTO test_batched_add_column (amount) VALUES (" + i + ")");
+        }
+
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-2",
+                    migration -> {
+                        migration.table("test_batched_add_column")
+                                .addColumn("status", Column.TYPE.VARCHAR, column -> column
+                                        .size(10)
+                                        .defaultValue("new")
+                                        .strategy(Column.STRATEGY.CHUNKED))
+                                .save();
+                    }
+            ));
+            fail("Batched add column should be refused in a transactional script");
+        } catch (CouldNotProcessException exception) {
+            assertThat(exception.getCause(), instanceOf(InvalidSpecException.class));
+        }
+
+        // Left over by an interrupted run, filled rows are kept
+        statement.execute("ALTER TABLE test_batched_add_column ADD COLUMN status VARCHAR(10)");
+        statement.execute("UPDATE test_batched_add_column SET status = 'old' WHERE amount < 5");
+
+        List<Backfill.Progress> reports = new ArrayList<>();
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                false,
+                migration -> {
+                    migration.table("test_batched_add_column")
+                            .addColumn("status", Column.TYPE.VARCHAR, column -> column
+                                    .size(10)
+                                    .defaultValue("new")
+                                    .notNull(true)
+                                    .strategy(Column.STRATEGY.CHUNKED)
+                                    .backfill(backfill -> backfill.chunkSize(10).listener(reports::add)))
+                            .save();
+                }
+        ));
+
+        assertThat(reports.get(reports.size() - 1).isDone(), is(true));
+        assertThat(reports.get(reports.size() - 1).getProcessedRows(), is(20L));
+
+        statement.execute("SELECT COUNT(*) FROM test_batched_add_column WHERE status = 'new'");
+        ResultSet resultSet = statement.getResultSet();
+        assertTrue(resultSet.next());
+        assertEquals(20L, resultSet.getLong(1));
+
+        try {
+            statement.execute("INSERT INTO test_batched_add_column (amount, status) VALUES (25, NULL)");
+            fail("NOT NULL should be added after the fill");
+        } catch (SQLException exception) {
+            // expected
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testConcurrentIndexKeepsOrder() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_concurrent_order")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true).primary(true))
+                            .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(20))
+                            .save();
+                }
+        ));
+
+        Consumer<Migration> buildAndReplace = migration -> {
+            migration.table("test_concurrent_order")
+                    .addIndex("test_concurrent_order_tmp", Index.TYPE.DEFAULT, index -> index
+                            .columns("name")
+                            .concurrently(true))
+                    .save();
+
+            migration.table("test_concurrent_order")
+                    .dropIndex("test_concurrent_order_tmp")
+                    .addIndex("test_concurrent_order_name", Index.TYPE.DEFAULT, index -> index.columns("name"))
+                    .save();
+        };
+
+        try {
+            migrator.migrate(new SimpleMigrationScript("migration-2", buildAndReplace));
+            fail("Concurrent index operations should be refused in a transactional script");
+        } catch (CouldNotProcessException exception) {
+            assertThat(exception.getCause(), instanceOf(InvalidSpecException.class));
+        }
+
+        migrator.migrate(new SimpleMigrationScript("migration-2", false, buildAndReplace));
+
+        List<String> indexes = new ArrayList<>();
+        for (String name : Arrays.asList("test_concurrent_order", "TEST_CONCURRENT_ORDER")) {
+            try (ResultSet indexInfo = connection.getMetaData().getIndexInfo(null, null, name, false, false)) {
+                while (indexInfo.next()) {
+                    indexes.add(String.valueOf(indexInfo.getString("INDEX_NAME")).toLowerCase());
+                }
+            }
+        }
+
+        assertTrue(indexes.toString(), indexes.contains("test_concurrent_order_name"));
+        assertTrue(indexes.toString(), !indexes.contains("test_concurrent_order_tmp"));
+
+        connection.close();
+    }
+
+    @Test
+    public void testConcurrentUniqueConstraint() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_concurrent_unique")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true).primary(true))
+                            .addColumn("code", Column.TYPE.VARCHAR, column -> column.size(10))
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_concurrent_unique (id, code) VALUES (1, 'a')");
+        statement.execute("INSERT INTO test_concurrent_unique (id, code) VALUES (2, 'a')");
+
+        SimpleMigrationScript addUnique = new SimpleMigrationScript(
+                "migration-2",
+                false,
+                migration -> {
+                    migration.table("test_concurrent_unique")
+                            .addConstraint("uq_test_concurrent_unique", Constraint.TYPE.UNIQUE, cb -> cb
+                                    .columns("code")
+                                    .concurrently(true))
+                            .save();
+                }
+        );
+
+        try {
+            migrator.migrate(addUnique);
+            fail("Duplicates should fail the unique constraint");
+        } catch (CouldNotProcessException exception) {
+            // expected
+        }
+
+        statement.execute("UPDATE test_concurrent_unique SET code = 'b' WHERE id = 2");
+        migrator.migrate(addUnique);
+
+        try {
+            statement.execute("INSERT INTO test_concurrent_unique (id, code) VALUES (3, 'a')");
+            fail("Unique constraint is missing");
+        } catch (Exception exception) {
+            assertTrue(isConstraintViolationException(exception));
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testLockPolicy() throws ClassNotFoundException, SQLException {
+        DefaultDatabase database = (DefaultDatabase) database();
+        List<LockPolicy.Attempt> attempts = new ArrayList<>();
+        database.setLockPolicy(new LockPolicy.Builder()
+                .lockTimeout(1000)
+                .listener(attempts::add)
+                .build());
+
+        new Migrator(database).migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_lock_policy")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(20))
+                            .save();
+                }
+        ));
+
+        assertTrue(database.hasTable("test_lock_policy"));
+        assertThat(attempts.isEmpty(), is(false));
+        for (LockPolicy.Attempt attempt : attempts) {
+            assertThat(attempt.getOutcome(), is(LockPolicy.OUTCOME.ACQUIRED));
+        }
+    }
+
+    @Test
+    public void testLockPolicyRetriesHeldLock() throws Exception {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_lock_retry")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(20))
+                            .save();
+                }
+        ));
+
+        Connection holder = getConnection();
+        holder.createStatement().execute("INSERT INTO test_lock_retry (id, name) VALUES (1, 'a')");
+        holder.setAutoCommit(false);
+        holder.createStatement().execute("UPDATE test_lock_retry SET name = 'b' WHERE id = 1");
+
+        DefaultDatabase database = (DefaultDatabase) database();
+        List<LockPolicy.Attempt> attempts = Collections.synchronizedList(new ArrayList<>());
+        database.setLockPolicy(new LockPolicy.Builder()
+                .lockTimeout(1000)
+                .backoff(200, 400)
+                .listener(attempts::add)
+                .build());
+
+        // Holds the lock over the first attempts
+        Thread release = new Thread(() -> {
+            try {
+                Thread.sleep(2500);
+                holder.commit();
+            } catch (InterruptedException | SQLException e) {
+                logger.warn("Failed to release the lock", e);
+            }
+        });
+        release.start();
+
+        try {
+            new Migrator(database).migrate(new SimpleMigrationScript(
+                    "migration-2",
+                    migration -> {
+                        migration.table("test_lock_retry")
+                                .addColumn("extra", Column.TYPE.INTEGER)
+                                .save();
+                    }
+            ));
+        } finally {
+            release.join();
+            holder.close();
+        }
+
+        List<LockPolicy.Attempt> retried = new ArrayList<>();
+        synchronized (attempts) {
+            attempts.stream()
+                .filter(attempt -> attempt.getStatement().toLowerCase().contains("extra"))
+                .forEach(retried::add);
+        }
+
+        assertTrue(retried.toString(), retried.size() > 1);
+        assertThat(retried.get(0).getOutcome(), is(LockPolicy.OUTCOME.TIMED_OUT));
+        assertTrue(retried.get(0).getBackoffMillis() >= 100L);
+        assertThat(retried.get(retried.size() - 1).getOutcome(), is(LockPolicy.OUTCOME.ACQUIRED));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("SELECT extra FROM test_lock_retry");
+        assertTrue(resultSet.next());
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testMigrationPlan() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Migrator migrator = getMigrator();
+
+        MigrationScript createTable = new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_migration_plan")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(20))
+                            .save();
+                }
+        );
+        MigrationScript alterTable = new SimpleMigrationScript(
+                "migration-2",
+                migration -> {
+                    migration.table("test_migration_plan")
+                            .addColumn("amount", Column.TYPE.INTEGER)
+                            .addIndex("ix_test_migration_plan_name", Index.TYPE.DEFAULT, "name")
+                            .save();
+                }
+        );
+
+        migrator.migrate(createTable);
+        MigrationPlan plan = migrator.plan(createTable, alterTable);
+
+        assertThat(plan.getEntries().isEmpty(), is(false));
+        for (MigrationPlan.Entry entry : plan.getEntries()) {
+            assertThat(entry.getMigrationId(), is("migration-2"));
+            assertTrue(entry.getTableName().equalsIgnoreCase("test_migration_plan"));
+        }
+
+        // Nothing was run
+        Statement statement = connection.createStatement();
+        statement.execute("SELECT * FROM test_migration_plan");
+        assertEquals(2, statement.getResultSet().getMetaData().getColumnCount());
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testMigrationPlanImpact() throws ClassNotFoundException, SQLException {
+        Migrator migrator = getMigrator();
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_plan_impact_parent")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .save();
+
+                    migration.table("test_plan_impact")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("parent_id", Column.TYPE.INTEGER)
+                            .addColumn("note", Column.TYPE.VARCHAR, column -> column.size(20))
+                            .save();
+                }
+        ));
+
+        MigrationPlan plan = migrator.plan(new SimpleMigrationScript(
+                "migration-2",
+                migration -> {
+                    migration.table("test_plan_impact")
+                            .dropColumn("note")
+                            .addConstraint("test_plan_impact_fk", Constraint.TYPE.FOREIGN_KEY, cb -> cb
+                                    .columns("parent_id")
+                                    .foreignKey(fk -> fk
+                                            .foreignTable("test_plan_impact_parent")
+                                            .foreignKeys("id")
+                                            .validation(ForeignKey.VALIDATION.DEFERRED)))
+                            .addConstraint("test_plan_impact_uq", Constraint.TYPE.UNIQUE, cb -> cb.columns("parent_id"))
+                            .save();
+                }
+        ));
+
+        MigrationPlan.Entry dropColumn = planEntry(plan, "DROP COLUMN");
+        assertThat(dropColumn.getImpact(), is(dropColumnImpact()));
+
+        MigrationPlan.Entry foreignKey = planEntry(plan, "ADD CONSTRAINT TEST_PLAN_IMPACT_FK");
+        assertThat(foreignKey.getImpact(), is(supportsForeignKeyNotValid() ? MigrationPlan.IMPACT.NONE : MigrationPlan.IMPACT.SCAN));
+
+        MigrationPlan.Entry unique = planEntry(plan, "ADD CONSTRAINT TEST_PLAN_IMPACT_UQ");
+        assertThat(unique.getImpact(), is(MigrationPlan.IMPACT.SCAN));
+    }
+
+    private MigrationPlan.Entry planEntry(MigrationPlan plan, String statementPart) {
+        return plan.getEntries().stream()
+                .filter(entry -> entry.getStatement().toUpperCase().contains(statementPart))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No [" + statementPart + "] in " + plan));
+    }
+
+    /**
+     * @return impact of DROP COLUMN in plans, embedded databases copy the table
+     */
+    protected MigrationPlan.IMPACT dropColumnImpact() {
+        return MigrationPlan.IMPACT.REWRITE;
+    }
+
+    /**
+     * @return true, if foreign keys with deferred validation are added without checking existing rows
+     */
+    protected boolean supportsForeignKeyNotValid() {
+        return false;
+    }
+
+    @Test
+    public void testSizeThresholds() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        DefaultDatabase database = (DefaultDatabase) database();
+        database.setSizeThresholds(new SizeThresholds.Builder()
+                .onlineRows(10)
+                .concurrentIndexRows(10)
+                .build());
+        Migrator migrator = new Migrator(database);
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_size_thresholds")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true).autoIncrement(true))
+                            .addColumn("amount", Column.TYPE.INTEGER)
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        for (int i = 0; i < 25; i++) {
+            statement.execute("INSERT INTO test_size_thresholds (amount) VALUES (" + i + ")");
+        }
+
+        // Transactional scripts run the same statements regardless of the table size
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                migration -> {
+                    migration.table("test_size_thresholds")
+                            .changeColumn("amount", column -> column.type(Column.TYPE.BIG_INTEGER))
+                            .addIndex("ix_test_size_thresholds_id_amount", Index.TYPE.DEFAULT, "id", "amount")
+                            .save();
+                }
+        ));
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-3",
+                false,
+                migration -> {
+                    migration.table("test_size_thresholds")
+                            .changeColumn("id", column -> column.type(Column.TYPE.BIG_INTEGER))
+                            .changeColumn("amount", column -> column.type(Column.TYPE.BIG_INTEGER))
+                            .addIndex("ix_test_size_thresholds_amount", Index.TYPE.DEFAULT, "amount")
+                            .save();
+                }
+        ));
+
+        statement.execute("SELECT SUM(amount) FROM test_size_thresholds");
+        ResultSet resultSet = statement.getResultSet();
+        assertTrue(resultSet.next());
+        assertEquals(300L, resultSet.getLong(1));
+
+        List<String> keyColumns = new ArrayList<>();
+        for (String tableName : Arrays.asList("test_size_thresholds", "TEST_SIZE_THRESHOLDS")) {
+            ResultSet keys = connection.getMetaData().getPrimaryKeys(null, null, tableName);
+            while (keys.next()) {
+                keyColumns.add(keys.getString("COLUMN_NAME").toLowerCase());
+            }
+            keys.close();
+        }
+        assertEquals(Collections.singletonList("id"), keyColumns);
+
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-4",
+                    false,
+                    migration -> {
+                        migration.table("test_size_thresholds")
+                                .changeColumn("id", column -> column
+                                        .type(Column.TYPE.BIG_INTEGER)
+                                        .strategy(Column.STRATEGY.CHUNKED))
+                                .save();
+                    }
+            ));
+            fail("Chunked change of the key column should be refused");
+        } catch (CouldNotProcessException exception) {
+            assertThat(exception.getCause(), instanceOf(InvalidSpecException.class));
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testStatisticsRefresh() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        DefaultDatabase database = (DefaultDatabase) database();
+        database.setStatisticsPolicy(new StatisticsPolicy.Builder()
+                .prewarm(true)
+                .histogramBuckets(16)
+                .build());
+        Migrator migrator = new Migrator(database);
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_statistics_refresh")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("amount", Column.TYPE.INTEGER)
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        for (int i = 1; i <= 100; i++) {
+            statement.execute("INSERT INTO test_statistics_refresh (id, amount) VALUES (" + i + ", " + (i % 10) + ")");
+        }
+
+        assertFalse(hasStatistics(statement, "test_statistics_refresh", "amount"));
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                migration -> {
+                    migration.table("test_statistics_refresh")
+                            .changeColumn("amount", column -> column.type(Column.TYPE.BIG_INTEGER))
+                            .addIndex("ix_test_statistics_refresh_amount", Index.TYPE.DEFAULT, "amount")
+                            .save();
+                }
+        ));
+
+        assertTrue(hasStatistics(statement, "test_statistics_refresh", "amount"));
+
+        statement.close();
+        connection.close();
+    }
+
+    /**
+     * @param statement statement to query the catalog with
+     * @param tableName the table
+     * @param columnName the column
+     * @return true, if the server holds statistics of the column, which reflect the rows of the table
+     * @throws SQLException on failure
+     */
+    protected boolean hasStatistics(Statement statement, String tableName, String columnName) throws SQLException {
+        return false;
+    }
+
+    @Test(expected = InvalidSpecException.class)
+    public void testStatisticsPolicyRejectsTooManyBuckets() {
+        new StatisticsPolicy.Builder()
+                .histogramBuckets(StatisticsPolicy.MAX_HISTOGRAM_BUCKETS + 1)
+                .build();
+    }
+
     @Test
     public void testDatabaseIsOfExpectedClass() {
         assertThat(database(), is(instanceOf(expectedDatabaseClass())));
@@ -2,9 +2,21 @@ package nl.myndocs.database.migrator.integration;
 
 import nl.myndocs.database.migrator.database.DerbyDatabase;
 import nl.myndocs.database.migrator.database.query.Database;
+import nl.myndocs.database.migrator.definition.Column;
+import nl.myndocs.database.migrator.integration.tools.SimpleMigrationScript;
+import org.junit.Test;
 import org.apache.derby.shared.common.error.DerbySQLIntegrityConstraintViolationException;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 
 public class DerbyTest extends BaseIntegration {
 
@@ -33,4 +45,56 @@ public class DerbyTest extends BaseIntegration {
     protected boolean isConstraintViolationException(Exception exception) {
         return exception instanceof DerbySQLIntegrityConstraintViolationException;
     }
+
+    @Test
+    public void testIdentityByDefaultWithIncrement() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_derby_identity")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.identity(Column.IDENTITY.BY_DEFAULT).sequenceIncrement(3))
+                        .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_derby_identity (id, name) VALUES (100, 'explicit')");
+        statement.execute("INSERT INTO test_derby_identity (name) VALUES ('first')");
+        statement.execute("INSERT INTO test_derby_identity (name) VALUES ('second')");
+
+        ResultSet resultSet = statement.executeQuery("SELECT id FROM test_derby_identity ORDER BY id");
+        List<Integer> ids = new ArrayList<>();
+        while (resultSet.next()) {
+            ids.add(resultSet.getInt(1));
+        }
+
+        assertEquals(Arrays.asList(1, 4, 100), ids);
+
+        statement.close();
+        connection.close();
+    }
+
+    /**
+     * Derby keeps statistics per index of the table.
+     */
+    @Override
+    protected boolean hasStatistics(Statement statement, String tableName, String columnName) throws SQLException {
+
+        try (PreparedStatement ps = statement.getConnection().prepareStatement(
+                "SELECT COUNT(*) FROM SYS.SYSSTATISTICS s JOIN SYS.SYSTABLES t ON s.TABLEID = t.TABLEID WHERE t.TABLENAME = ?")) {
+
+            ps.setString(1, tableName.toUpperCase());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * Derby has no session lock timeout, the statement waits for the lock holder.
+     */
+    @Override
+    @Test
+    public void testLockPolicyRetriesHeldLock() {
+    }
 }
@@ -4,6 +4,10 @@ import nl.myndocs.database.migrator.database.H2Database;
 import nl.myndocs.database.migrator.database.query.Database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * Created by albert on 14-8-2017.
@@ -26,6 +30,23 @@ public class H2Test extends BaseIntegration {
         );
     }
 
+    /**
+     * ANALYZE replaces the default selectivity of 50 by the share of distinct values.
+     */
+    @Override
+    protected boolean hasStatistics(Statement statement, String tableName, String columnName) throws SQLException {
+
+        try (PreparedStatement ps = statement.getConnection().prepareStatement(
+                "SELECT SELECTIVITY FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+
+            ps.setString(1, tableName.toUpperCase());
+            ps.setString(2, columnName.toUpperCase());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 10;
+            }
+        }
+    }
+
     @Override
     protected boolean isConstraintViolationException(Exception exception) {
         exception.printStackTrace();
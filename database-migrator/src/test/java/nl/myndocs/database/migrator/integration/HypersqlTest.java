@@ -2,6 +2,7 @@ package nl.myndocs.database.migrator.integration;
 
 import nl.myndocs.database.migrator.database.HyperSQLDatabase;
 import nl.myndocs.database.migrator.database.query.Database;
+import org.junit.Test;
 
 import java.sql.Connection;
 import java.sql.SQLIntegrityConstraintViolationException;
@@ -30,4 +31,20 @@ public class HypersqlTest extends BaseIntegration {
     protected boolean isConstraintViolationException(Exception exception) {
         return exception instanceof SQLIntegrityConstraintViolationException;
     }
+
+    /**
+     * HyperSQL keeps no statistics to refresh.
+     */
+    @Override
+    @Test
+    public void testStatisticsRefresh() {
+    }
+
+    /**
+     * HyperSQL has no session lock timeout, the statement waits for the lock holder.
+     */
+    @Override
+    @Test
+    public void testLockPolicyRetriesHeldLock() {
+    }
 }
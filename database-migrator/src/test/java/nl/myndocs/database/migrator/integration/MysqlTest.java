@@ -1,15 +1,45 @@
 package nl.myndocs.database.migrator.integration;
 
+import nl.myndocs.database.migrator.database.Capabilities;
+import nl.myndocs.database.migrator.database.MigrationPlan;
 import nl.myndocs.database.migrator.database.MySQLDatabase;
+import nl.myndocs.database.migrator.database.PartitionInfo;
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 import nl.myndocs.database.migrator.database.query.Database;
+import nl.myndocs.database.migrator.definition.Column;
+import nl.myndocs.database.migrator.definition.Partition;
+import nl.myndocs.database.migrator.definition.PartitionGenerator;
+import nl.myndocs.database.migrator.definition.PartitionSet;
+import nl.myndocs.database.migrator.definition.PartitionSpec;
+import nl.myndocs.database.migrator.definition.RollingPartitions;
+import nl.myndocs.database.migrator.integration.tools.SimpleMigrationScript;
+import nl.myndocs.database.migrator.processor.Migrator;
+import nl.myndocs.database.migrator.processor.PartitionMaintainer;
 
 import org.arquillian.cube.docker.impl.client.containerobject.dsl.Container;
 import org.arquillian.cube.docker.impl.client.containerobject.dsl.DockerContainer;
 import org.jboss.arquillian.junit.Arquillian;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created by albert on 14-8-2017.
@@ -47,4 +77,152 @@ public class MysqlTest extends BaseIntegration {
     protected boolean isConstraintViolationException(Exception exception) {
         return exception instanceof SQLIntegrityConstraintViolationException;
     }
-}
\ No newline at end of file
+
+    /**
+     * The image runs 8.0.29+, which drops columns INSTANT.
+     */
+    @Override
+    protected MigrationPlan.IMPACT dropColumnImpact() {
+        return MigrationPlan.IMPACT.NONE;
+    }
+
+    @Override
+    protected boolean supportsForeignKeyNotValid() {
+        return true;
+    }
+
+    /**
+     * Histograms of changed columns.
+     */
+    @Override
+    protected boolean hasStatistics(Statement statement, String tableName, String columnName) throws SQLException {
+
+        try (PreparedStatement ps = statement.getConnection().prepareStatement(
+                "SELECT COUNT(*) FROM information_schema.COLUMN_STATISTICS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, columnName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    @Test
+    public void testPartitionMaintenance() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_mysql_partitioned")
+                        .addColumn("created", Column.TYPE.DATE, column -> column.notNull(true))
+                        .addColumn("tenant", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.RANGE, set -> set
+                                .keyColumn("created")
+                                .partitions(PartitionGenerator.every("test_mysql_partitioned", RollingPartitions.PERIOD.DAY,
+                                        LocalDateTime.of(2026, 1, 9, 0, 0), LocalDateTime.of(2026, 1, 11, 0, 0)))
+                                .defaultPartition("test_mysql_partitioned_max"))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_mysql_partitioned (created, tenant) VALUES ('2026-01-09', 1), ('2026-01-12', 2)");
+
+        RollingPartitions rolling = new RollingPartitions.Builder("test_mysql_partitioned", "created", RollingPartitions.PERIOD.DAY)
+                .premake(1)
+                .retain(1)
+                .expiry(RollingPartitions.EXPIRY.DETACH)
+                .build();
+
+        List<PartitionInfo> partitions = new PartitionMaintainer(database()).maintain(rolling, LocalDateTime.of(2026, 1, 11, 12, 0));
+        assertEquals(Arrays.asList("test_mysql_partitioned_p20260110", "test_mysql_partitioned_p20260111",
+                        "test_mysql_partitioned_p20260112", "test_mysql_partitioned_max", "test_mysql_partitioned_p20260109"),
+                partitions.stream().map(PartitionInfo::getPartitionName).collect(Collectors.toList()));
+        assertEquals(PartitionInfo.STATE.DETACHED, partitions.get(4).getState());
+        assertTrue(partitions.get(3).isDefault());
+
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_mysql_partitioned_p20260109");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_mysql_partitioned PARTITION (test_mysql_partitioned_p20260112)");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        Database database = database();
+        database.reorganizePartitions("test_mysql_partitioned", Arrays.asList("test_mysql_partitioned_p20260110", "test_mysql_partitioned_p20260111"),
+                new PartitionSet.Builder(PartitionSet.TYPE.RANGE)
+                        .keyColumn("created")
+                        .partition(new Partition.Builder()
+                                .setPartitionName("test_mysql_partitioned_p202601")
+                                .setPartitionSpec(PartitionSpec.of(new String[] { "'2026-01-10'" }, new String[] { "'2026-01-12'" }))
+                                .build())
+                        .build());
+        statement.execute("UPDATE test_mysql_partitioned_p20260109 SET created = '2026-01-10'");
+        database.exchangePartition("test_mysql_partitioned", "test_mysql_partitioned_p202601", "test_mysql_partitioned_p20260109", true);
+        database.dropPartition("test_mysql_partitioned", "test_mysql_partitioned_p20260112");
+
+        assertEquals(Arrays.asList("test_mysql_partitioned_p202601", "test_mysql_partitioned_max", "test_mysql_partitioned_p20260109"),
+                database.loadPartitions("test_mysql_partitioned").stream().map(PartitionInfo::getPartitionName).collect(Collectors.toList()));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_mysql_partitioned");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testPartitionedTableTablespaceRefused() throws SQLException {
+        try {
+            getMigrator().migrate(new SimpleMigrationScript(
+                    "migration-1",
+                    migration -> migration.table("test_mysql_tablespace")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true))
+                            .tablespace("test_space")
+                            .addPartitions(PartitionSet.TYPE.HASH, set -> set
+                                    .keyColumn("id")
+                                    .partitions(PartitionGenerator.hash("test_mysql_tablespace", 2)))
+                            .save()
+            ));
+            fail("Partitioned tables in a tablespace should be refused");
+        } catch (CouldNotProcessException exception) {
+            assertThat(exception.getCause(), instanceOf(InvalidSpecException.class));
+        }
+    }
+
+    @Test
+    public void testStatementFormByCapabilities() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_mysql_capabilities")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                        .save()
+        ));
+
+        SimpleMigrationScript rename = new SimpleMigrationScript(
+                "migration-2",
+                migration -> migration.table("test_mysql_capabilities")
+                        .changeColumn("name", column -> column.rename("title"))
+                        .save()
+        );
+
+        // The image runs 8.0.28+, which renames columns INSTANT
+        List<String> statements = getMigrator().plan(rename).getEntries().stream()
+                .map(MigrationPlan.Entry::getStatement)
+                .collect(Collectors.toList());
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0), statements.get(0).contains("RENAME COLUMN name TO title"));
+        assertTrue(statements.get(0), statements.get(0).contains("ALGORITHM=INSTANT"));
+
+        // 5.7 needs the full column definition
+        Migrator migrator = new Migrator(new MySQLDatabase(getConnection(), new Capabilities("MySQL", "5.7.31", 5, 7)));
+        statements = migrator.plan(rename).getEntries().stream()
+                .map(MigrationPlan.Entry::getStatement)
+                .collect(Collectors.toList());
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0), statements.get(0).contains("CHANGE name title varchar(255)"));
+        assertFalse(statements.get(0), statements.get(0).contains("ALGORITHM"));
+    }
+}
@@ -1,13 +1,56 @@
 package nl.myndocs.database.migrator.integration;
 
+import nl.myndocs.database.migrator.database.Blocker;
+import nl.myndocs.database.migrator.database.Capabilities;
+import nl.myndocs.database.migrator.database.MigrationPlan;
+import nl.myndocs.database.migrator.database.PartitionInfo;
 import nl.myndocs.database.migrator.database.PostgresDatabase;
+import nl.myndocs.database.migrator.database.PreflightPolicy;
+import nl.myndocs.database.migrator.database.RewritePolicy;
+import nl.myndocs.database.migrator.database.StatisticsPolicy;
+import nl.myndocs.database.migrator.database.TuningProfile;
+import nl.myndocs.database.migrator.database.exception.CouldNotProcessException;
+import nl.myndocs.database.migrator.database.exception.InvalidSpecException;
 import nl.myndocs.database.migrator.database.query.Database;
+import nl.myndocs.database.migrator.definition.Backfill;
+import nl.myndocs.database.migrator.definition.Column;
+import nl.myndocs.database.migrator.definition.Constraint;
+import nl.myndocs.database.migrator.definition.ForeignKey;
+import nl.myndocs.database.migrator.definition.Index;
+import nl.myndocs.database.migrator.definition.Migration;
+import nl.myndocs.database.migrator.definition.Partition;
+import nl.myndocs.database.migrator.definition.PartitionGenerator;
+import nl.myndocs.database.migrator.definition.PartitionSet;
+import nl.myndocs.database.migrator.definition.PartitionSpec;
+import nl.myndocs.database.migrator.definition.RollingPartitions;
+import nl.myndocs.database.migrator.integration.tools.SimpleMigrationScript;
+import nl.myndocs.database.migrator.processor.Migrator;
+import nl.myndocs.database.migrator.processor.PartitionMaintainer;
 import org.arquillian.cube.docker.impl.client.containerobject.dsl.Container;
 import org.arquillian.cube.docker.impl.client.containerobject.dsl.DockerContainer;
 import org.jboss.arquillian.junit.Arquillian;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created by albert on 13-8-2017.
@@ -43,4 +86,1236 @@ public class PostgresTest extends BaseIntegration {
     protected boolean isConstraintViolationException(Exception exception) {
         return exception.getMessage().startsWith("ERROR: duplicate key value violates");
     }
+
+    @Test
+    public void testRewritePolicy() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        PostgresDatabase database = (PostgresDatabase) database();
+        database.setRewritePolicy(new RewritePolicy.Builder().maxTableBytes(0).build());
+        Migrator migrator = new Migrator(database);
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_rewrite_policy")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(20))
+                            .addColumn("amount", Column.TYPE.INTEGER)
+                            .save();
+                }
+        ));
+
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_rewrite_policy (id, name, amount) VALUES (1, 'name', 1)");
+
+        // Widening varchar is metadata only, the policy does not apply
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                migration -> {
+                    migration.table("test_rewrite_policy")
+                            .changeColumn("name", column -> column.type(Column.TYPE.VARCHAR).size(50))
+                            .save();
+                }
+        ));
+
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-3",
+                    migration -> {
+                        migration.table("test_rewrite_policy")
+                                .changeColumn("amount", column -> column.type(Column.TYPE.BIG_INTEGER))
+                                .save();
+                    }
+            ));
+            fail("Rewrite should be refused by the policy");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-4",
+                migration -> {
+                    migration.table("test_rewrite_policy")
+                            .changeColumn("amount", column -> column.type(Column.TYPE.BIG_INTEGER).allowRewrite(true))
+                            .save();
+                }
+        ));
+
+        statement.execute("SELECT character_maximum_length FROM information_schema.columns "
+                + "WHERE table_name = 'test_rewrite_policy' AND column_name = 'name'");
+        ResultSet resultSet = statement.getResultSet();
+        assertTrue(resultSet.next());
+        assertEquals(50, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testPreflightBlockers() throws ClassNotFoundException, SQLException {
+        PostgresDatabase database = (PostgresDatabase) database();
+        List<Blocker> found = new ArrayList<>();
+        database.setPreflightPolicy(new PreflightPolicy.Builder()
+                .action(PreflightPolicy.ACTION.FAIL)
+                .maxLockHolderAge(0)
+                .listener(found::addAll)
+                .build());
+        Migrator migrator = new Migrator(database);
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_preflight_blockers")
+                            .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                            .save();
+                }
+        ));
+
+        Connection blocker = getConnection();
+        blocker.setAutoCommit(false);
+        Statement statement = blocker.createStatement();
+        statement.execute("SELECT * FROM test_preflight_blockers");
+
+        AtomicInteger runs = new AtomicInteger();
+        SimpleMigrationScript addColumn = new SimpleMigrationScript(
+                "migration-2",
+                migration -> {
+                    runs.incrementAndGet();
+                    migration.table("test_preflight_blockers")
+                            .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(20))
+                            .save();
+                }
+        );
+
+        try {
+            migrator.migrate(addColumn);
+            fail("Lock holder should fail the preflight check");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        assertTrue(found.stream().anyMatch(b -> b.getKind() == Blocker.KIND.LOCK_HOLDER));
+
+        blocker.rollback();
+        migrator.migrate(addColumn);
+
+        // The check runs within the script, which is not run again to find its tables
+        assertEquals(2, runs.get());
+
+        statement.close();
+        blocker.close();
+    }
+
+    @Test
+    public void testTuningProfile() throws ClassNotFoundException, SQLException {
+        PostgresDatabase database = (PostgresDatabase) database();
+        database.setTuningProfile(new TuningProfile.Builder()
+                .set("maintenance_work_mem", "256MB")
+                .build());
+        Connection connection = database.getConnection();
+        String before = readSetting(connection, "maintenance_work_mem");
+
+        List<String> during = new ArrayList<>();
+        new Migrator(database).migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    try {
+                        during.add(readSetting(connection, "maintenance_work_mem"));
+                        during.add(readSetting(connection, "synchronous_commit"));
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+        ) {
+            @Override
+            public TuningProfile tuningProfile() {
+                return new TuningProfile.Builder().set("synchronous_commit", "off").build();
+            }
+        });
+
+        assertEquals("256MB", during.get(0));
+        assertEquals("off", during.get(1));
+        assertEquals(before, readSetting(connection, "maintenance_work_mem"));
+
+        connection.close();
+    }
+
+    @Test
+    public void testStatisticsRefreshAnalyzesTouchedTables() throws ClassNotFoundException, SQLException, InterruptedException {
+        PostgresDatabase database = (PostgresDatabase) database();
+        database.setStatisticsPolicy(new StatisticsPolicy.Builder().build());
+        Connection connection = database.getConnection();
+        Migrator migrator = new Migrator(database);
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_statistics_analyze")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                        .addColumn("amount", Column.TYPE.INTEGER)
+                        .save()
+        ));
+
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_statistics_analyze SELECT g, g % 10 FROM generate_series(1, 1000) g");
+        long analyzeCount = analyzeCount(statement, "test_statistics_analyze");
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-2",
+                migration -> migration.table("test_statistics_analyze")
+                        .addIndex("ix_test_statistics_analyze_amount", Index.TYPE.DEFAULT, "amount")
+                        .save()
+        ));
+
+        // CREATE INDEX updates reltuples as well, only the counter tells an explicit ANALYZE apart
+        long deadline = System.currentTimeMillis() + 5000;
+        while (analyzeCount(statement, "test_statistics_analyze") == analyzeCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(analyzeCount + 1, analyzeCount(statement, "test_statistics_analyze"));
+
+        ResultSet resultSet = statement.executeQuery(
+                "SELECT last_analyze FROM pg_stat_user_tables WHERE relname = 'test_statistics_analyze'");
+        assertTrue(resultSet.next());
+        assertNotNull(resultSet.getTimestamp(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    private long analyzeCount(Statement statement, String tableName) throws SQLException {
+
+        // Statistics views are reported with a delay and cached per transaction
+        statement.execute("SELECT pg_stat_clear_snapshot()");
+        try (ResultSet rs = statement.executeQuery(
+                "SELECT analyze_count FROM pg_stat_user_tables WHERE relname = '" + tableName + "'")) {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void testPartitionsStayAttached() throws ClassNotFoundException, SQLException {
+        Migrator migrator = getMigrator();
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_partitions_attached")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.HASH, this::attachedPartitions)
+                        .save()
+        ));
+
+        SimpleMigrationScript addColumn = new SimpleMigrationScript(
+                "migration-2",
+                migration -> migration.table("test_partitions_attached")
+                        .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                        .addPartitions(PartitionSet.TYPE.HASH, this::attachedPartitions)
+                        .save()
+        );
+
+        MigrationPlan plan = migrator.plan(addColumn);
+        assertFalse(plan.getEntries().isEmpty());
+        plan.getEntries().forEach(entry -> {
+            assertFalse(entry.getStatement(), entry.getStatement().contains("DETACH PARTITION"));
+            assertFalse(entry.getStatement(), entry.getStatement().contains("ATTACH PARTITION"));
+        });
+
+        migrator.migrate(addColumn);
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_partitions_attached (id, name) VALUES (1, 'one'), (2, 'two')");
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_inherits "
+                + "WHERE inhparent = 'test_partitions_attached'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testAttachWithPrevalidatedBounds() throws ClassNotFoundException, SQLException {
+        // Servers before 11 detach partitions while the table is altered
+        PostgresDatabase database = new PostgresDatabase(getConnection(), null,
+                new Capabilities("PostgreSQL", "10.23", 10, 23));
+        Migrator migrator = new Migrator(database);
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_prevalidated_bounds")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.RANGE, this::rangePartitions)
+                        .save()
+        ));
+
+        Connection connection = database.getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_prevalidated_bounds (id) SELECT g FROM generate_series(0, 199) g");
+
+        Consumer<Migration> addName = migration -> migration.table("test_prevalidated_bounds")
+                .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                .addPartitions(PartitionSet.TYPE.RANGE, this::rangePartitions)
+                .save();
+
+        // Transactional scripts do not commit validated checks in between
+        migrator.plan(new SimpleMigrationScript("migration-2", addName)).getEntries().stream()
+            .filter(entry -> entry.getStatement().contains("ATTACH PARTITION"))
+            .forEach(entry -> assertEquals(MigrationPlan.IMPACT.SCAN, entry.getImpact()));
+
+        SimpleMigrationScript addColumn = new SimpleMigrationScript("migration-2", false, addName);
+        MigrationPlan plan = migrator.plan(addColumn);
+        List<MigrationPlan.Entry> attaches = new ArrayList<>();
+        plan.getEntries().stream()
+            .filter(entry -> entry.getStatement().contains("ATTACH PARTITION"))
+            .forEach(attaches::add);
+        assertEquals(2, attaches.size());
+        attaches.forEach(entry -> assertEquals(MigrationPlan.IMPACT.NONE, entry.getImpact()));
+
+        migrator.migrate(addColumn);
+
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_prevalidated_bounds");
+        assertTrue(resultSet.next());
+        assertEquals(200, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_constraint WHERE conname LIKE 'test_prevalidated_bounds_%_bounds'");
+        assertTrue(resultSet.next());
+        assertEquals(0, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testAttachPreloadedPartitionWithPrevalidatedBounds() throws ClassNotFoundException, SQLException {
+        Partition first = new Partition.Builder().setPartitionName("test_preloaded_0").setPartitionSpec(PartitionSpec.of(0)).build();
+        Partition second = new Partition.Builder().setPartitionName("test_preloaded_1").setPartitionSpec(PartitionSpec.of(1)).build();
+
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_preloaded")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.HASH, set -> set.keyColumn("id").partition(first).partition(second))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_preloaded (id) SELECT g FROM generate_series(1, 200) g");
+        statement.execute("ALTER TABLE test_preloaded DETACH PARTITION test_preloaded_1");
+
+        Database database = database();
+        database.getConnection().setAutoCommit(true);
+        database.addPartition("test_preloaded", new PartitionSet.Builder(PartitionSet.TYPE.HASH)
+                .keyColumn("id")
+                .partition(first)
+                .partition(second)
+                .build(), second);
+
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_preloaded");
+        assertTrue(resultSet.next());
+        assertEquals(200, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_inherits WHERE inhparent = 'test_preloaded'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_constraint WHERE conname = 'test_preloaded_1_bounds'");
+        assertTrue(resultSet.next());
+        assertEquals(0, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testGeneratedPartitions() throws ClassNotFoundException, SQLException {
+        // 600 hourly partitions, more than a single chunk of DDL
+        PartitionGenerator hourly = PartitionGenerator.every("test_generated", RollingPartitions.PERIOD.HOUR,
+                LocalDateTime.of(2026, 1, 1, 0, 0), LocalDateTime.of(2026, 1, 26, 0, 0));
+        assertEquals(600, hourly.size());
+
+        SimpleMigrationScript script = new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_generated")
+                        .addColumn("created", Column.TYPE.TIMESTAMP, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.RANGE, set -> set
+                                .keyColumn("created")
+                                .partitions(hourly))
+                        .save()
+        );
+
+        Migrator migrator = getMigrator();
+        List<String> planned = migrator.plan(script).getEntries().stream()
+                .map(MigrationPlan.Entry::getStatement)
+                .filter(sql -> sql.contains(" PARTITION OF "))
+                .collect(Collectors.toList());
+        assertEquals(600, planned.size());
+        assertTrue(planned.get(0).startsWith("CREATE TABLE test_generated_p2026010100 "));
+        assertTrue(planned.get(599).startsWith("CREATE TABLE test_generated_p2026012523 "));
+
+        migrator.migrate(script);
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_generated (created) VALUES ('2026-01-25 23:59:59')");
+
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_inherits WHERE inhparent = 'test_generated'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals(600, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_generated_p2026012523");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testHashPartitionSplit() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_split")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                        .addIndex("test_split_id_idx", Index.TYPE.DEFAULT, "id")
+                        .addPartitions(PartitionSet.TYPE.HASH, set -> set
+                                .keyColumn("id")
+                                .partitions(PartitionGenerator.hash("test_split", 2)))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_split (id, name) SELECT g, 'name' || g FROM generate_series(1, 1000) g");
+
+        List<Backfill.Progress> reported = new ArrayList<>();
+        List<Backfill.Progress> progress = new PartitionMaintainer(database()).split("test_split", "id", 2,
+                new Backfill.Builder().chunkSize(100).listener(reported::add).build());
+
+        assertEquals(2, progress.size());
+        progress.forEach(p -> assertTrue(p.isDone()));
+        assertEquals(1000, progress.stream().mapToLong(Backfill.Progress::getProcessedRows).sum());
+        assertFalse(reported.isEmpty());
+
+        ResultSet resultSet = statement.executeQuery(
+                "SELECT string_agg(c.relname || ' ' || pg_get_expr(c.relpartbound, c.oid), ';' ORDER BY c.relname) "
+              + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'test_split'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals("test_split_h0 FOR VALUES WITH (modulus 4, remainder 0);"
+                   + "test_split_h1 FOR VALUES WITH (modulus 4, remainder 1);"
+                   + "test_split_h2 FOR VALUES WITH (modulus 4, remainder 2);"
+                   + "test_split_h3 FOR VALUES WITH (modulus 4, remainder 3)", resultSet.getString(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT id) FROM test_split");
+        assertTrue(resultSet.next());
+        assertEquals(1000, resultSet.getInt(1));
+        assertEquals(1000, resultSet.getInt(2));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_class WHERE relname LIKE 'test\\_split\\_%\\_s_' OR relname LIKE '%\\_split\\_log'");
+        assertTrue(resultSet.next());
+        assertEquals(0, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testPartitionExistingTable() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_convert")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                        .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                        .addIndex("test_convert_name_idx", Index.TYPE.DEFAULT, "name")
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_convert (id, name) SELECT g, 'name' || g FROM generate_series(0, 999) g");
+        statement.execute("GRANT SELECT ON test_convert TO PUBLIC");
+        statement.execute("ALTER TABLE test_convert ENABLE ROW LEVEL SECURITY");
+        statement.execute("CREATE POLICY test_convert_named ON test_convert FOR SELECT USING (name IS NOT NULL)");
+
+        PartitionSet set = new PartitionSet.Builder(PartitionSet.TYPE.RANGE)
+                .keyColumn("id")
+                .partitions(new PartitionGenerator(4, i -> new Partition.Builder()
+                        .setPartitionName("test_convert_" + i)
+                        .setPartitionSpec(PartitionSpec.of(new String[] { String.valueOf(i * 250) },
+                                new String[] { i == 3 ? "MAXVALUE" : String.valueOf((i + 1) * 250) }))
+                        .build()))
+                .build();
+
+        List<Backfill.Progress> progress = new PartitionMaintainer(database()).partition("test_convert", set, "id", true,
+                new Backfill.Builder().chunkSize(100).build());
+
+        assertEquals(4, progress.size());
+        assertEquals(1000, progress.stream().mapToLong(Backfill.Progress::getProcessedRows).sum());
+
+        ResultSet resultSet = statement.executeQuery("SELECT relkind FROM pg_class WHERE oid = 'test_convert'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals("p", resultSet.getString(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_inherits WHERE inhparent = 'test_convert'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals(4, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT id) FROM test_convert");
+        assertTrue(resultSet.next());
+        assertEquals(1000, resultSet.getInt(1));
+        assertEquals(1000, resultSet.getInt(2));
+
+        resultSet = statement.executeQuery("SELECT string_agg(indexrelid::regclass::text, ',' ORDER BY 1) FROM pg_index WHERE indrelid = 'test_convert'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals("test_convert_name_idx,test_convert_pkey", resultSet.getString(1));
+
+        resultSet = statement.executeQuery("SELECT to_regclass('test_convert_unpartitioned') IS NOT NULL, to_regclass('test_convert_partition_log') IS NULL");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+        assertTrue(resultSet.getBoolean(2));
+
+        resultSet = statement.executeQuery("SELECT has_table_privilege('public', 'test_convert', 'SELECT'), c.relrowsecurity, "
+                + "(SELECT string_agg(polname, ',') FROM pg_policy WHERE polrelid = c.oid) FROM pg_class c WHERE c.oid = 'test_convert'::regclass");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+        assertTrue(resultSet.getBoolean(2));
+        assertEquals("test_convert_named", resultSet.getString(3));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testPartitionExistingTableRefusesViews() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_convert_viewed")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.primary(true))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE VIEW test_convert_view AS SELECT id FROM test_convert_viewed");
+
+        PartitionSet set = new PartitionSet.Builder(PartitionSet.TYPE.HASH)
+                .keyColumn("id")
+                .partitions(PartitionGenerator.hash("test_convert_viewed", 2))
+                .build();
+
+        try {
+            new PartitionMaintainer(database()).partition("test_convert_viewed", set, "id", true, null);
+            fail("Tables, used by views, should be refused");
+        } catch (InvalidSpecException exception) {
+            assertTrue(exception.getMessage(), exception.getMessage().contains("views"));
+        }
+
+        ResultSet resultSet = statement.executeQuery("SELECT relkind FROM pg_class WHERE oid = 'test_convert_viewed'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals("r", resultSet.getString(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testSubPartitionsAndDefaultPartition() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_subpartitioned")
+                        .addColumn("id", Column.TYPE.BIG_INTEGER, column -> column.autoIncrement(true))
+                        .addColumn("created", Column.TYPE.TIMESTAMP, column -> column.notNull(true))
+                        .addColumn("tenant", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.RANGE, set -> set
+                                .keyColumn("created")
+                                .partitions(PartitionGenerator.every("test_subpartitioned", RollingPartitions.PERIOD.DAY,
+                                        LocalDateTime.of(2026, 1, 1, 0, 0), LocalDateTime.of(2026, 1, 3, 0, 0))
+                                    .subPartitions(PartitionSet.TYPE.HASH, (partition, tenants) -> tenants
+                                        .keyColumn("tenant")
+                                        .partitions(PartitionGenerator.hash(partition.getPartitionName(), 2))))
+                                .defaultPartition("test_subpartitioned_default"))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_subpartitioned (created, tenant) VALUES ('2026-01-02 10:00:00', 7), ('2027-01-01 00:00:00', 7)");
+
+        ResultSet resultSet = statement.executeQuery(
+                "SELECT string_agg(relid::text || ':' || level, ',' ORDER BY relid::text) FROM pg_partition_tree('test_subpartitioned') WHERE level > 0");
+        assertTrue(resultSet.next());
+        assertEquals("test_subpartitioned_default:1,"
+                   + "test_subpartitioned_p20260101:1,test_subpartitioned_p20260101_h0:2,test_subpartitioned_p20260101_h1:2,"
+                   + "test_subpartitioned_p20260102:1,test_subpartitioned_p20260102_h0:2,test_subpartitioned_p20260102_h1:2",
+                resultSet.getString(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_subpartitioned_default");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM test_subpartitioned_p20260102 WHERE id IS NOT NULL");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testSharedSequenceAndIdentity() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_shared_sequence")
+                        .addColumn("id", Column.TYPE.BIG_INTEGER, column -> column.autoIncrement(true).sharedSequence(true).sequenceCache(20))
+                        .addColumn("tenant", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.HASH, set -> set
+                                .keyColumn("tenant")
+                                .partitions(PartitionGenerator.hash("test_shared_sequence", 2)))
+                        .save()
+        ), new SimpleMigrationScript(
+                "migration-2",
+                migration -> migration.table("test_identity")
+                        .addColumn("id", Column.TYPE.BIG_INTEGER, column -> column.identity(Column.IDENTITY.ALWAYS)
+                                .sequenceCache(50).sequenceIncrement(2).primary(true))
+                        .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_shared_sequence (tenant) SELECT g FROM generate_series(1, 10) g");
+        statement.execute("INSERT INTO test_shared_sequence_h0 (tenant) SELECT tenant FROM test_shared_sequence_h0");
+
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT id) FROM test_shared_sequence");
+        assertTrue(resultSet.next());
+        assertEquals(resultSet.getInt(1), resultSet.getInt(2));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_sequences WHERE sequencename LIKE 'sq_test_shared_sequence%'");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        statement.execute("INSERT INTO test_identity (name) VALUES ('a'), ('b')");
+        resultSet = statement.executeQuery("SELECT MAX(id) - MIN(id), "
+                + "(SELECT cache_size FROM pg_sequences WHERE sequencename = 'test_identity_id_seq') FROM test_identity");
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getInt(1));
+        assertEquals(50, resultSet.getInt(2));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testIdentityFallbacksAndTypeChange() throws ClassNotFoundException, SQLException {
+        // Identity columns of partitioned tables propagate from 17 on only
+        PostgresDatabase database = new PostgresDatabase(getConnection(), null,
+                new Capabilities("PostgreSQL", "16.4", 16, 4));
+        new Migrator(database).migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_identity_partitioned")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.identity(Column.IDENTITY.BY_DEFAULT).sequenceIncrement(5))
+                        .addColumn("tenant", Column.TYPE.INTEGER, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.HASH, set -> set
+                                .keyColumn("tenant")
+                                .partitions(PartitionGenerator.hash("test_identity_partitioned", 2)))
+                        .save()
+        ));
+
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-2",
+                migration -> migration.table("test_serial_options")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.autoIncrement(true).sequenceIncrement(10).sequenceCache(5))
+                        .save()
+        ), new SimpleMigrationScript(
+                "migration-3",
+                migration -> migration.table("test_identity_widened")
+                        .addColumn("id", Column.TYPE.INTEGER, column -> column.identity(Column.IDENTITY.ALWAYS).primary(true))
+                        .addColumn("name", Column.TYPE.VARCHAR, column -> column.size(255))
+                        .save()
+        ));
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO test_identity_partitioned (tenant) SELECT g FROM generate_series(1, 4) g");
+
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(DISTINCT id), MAX(id) - MIN(id), "
+                + "(SELECT increment_by FROM pg_sequences WHERE sequencename = 'sq_test_identity_partitioned_id'), "
+                + "(SELECT attidentity FROM pg_attribute WHERE attrelid = 'test_identity_partitioned'::regclass AND attname = 'id') "
+                + "FROM test_identity_partitioned");
+        assertTrue(resultSet.next());
+        assertEquals(4, resultSet.getInt(1));
+        assertEquals(15, resultSet.getInt(2));
+        assertEquals(5, resultSet.getInt(3));
+        assertEquals("", resultSet.getString(4));
+
+        new Migrator(database).migrate(new SimpleMigrationScript(
+                "migration-4",
+                migration -> migration.table("test_identity_partitioned")
+                        .changeColumn("id", column -> column.type(Column.TYPE.BIG_INTEGER).identity(Column.IDENTITY.BY_DEFAULT))
+                        .save()
+        ));
+        statement.execute("INSERT INTO test_identity_partitioned (tenant) VALUES (5)");
+
+        resultSet = statement.executeQuery("SELECT format_type(atttypid, atttypmod), "
+                + "(SELECT data_type::text FROM pg_sequences WHERE sequencename = 'sq_test_identity_partitioned_id'), "
+                + "(SELECT COUNT(DISTINCT id) FROM test_identity_partitioned) "
+                + "FROM pg_attribute WHERE attrelid = 'test_identity_partitioned'::regclass AND attname = 'id'");
+        assertTrue(resultSet.next());
+        assertEquals("bigint", resultSet.getString(1));
+        assertEquals("bigint", resultSet.getString(2));
+        assertEquals(5, resultSet.getInt(3));
+
+        resultSet = statement.executeQuery("SELECT increment_by, cache_size FROM pg_sequences "
+                + "WHERE schemaname || '.' || sequencename = pg_get_serial_sequence('test_serial_options', 'id')");
+        assertTrue(resultSet.next());
+        assertEquals(10, resultSet.getInt(1));
+        assertEquals(5, resultSet.getInt(2));
+
+        statement.execute("INSERT INTO test_identity_widened (name) VALUES ('a')");
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-5",
+                migration -> migration.table("test_identity_widened")
+                        .changeColumn("id", column -> column.type(Column.TYPE.BIG_INTEGER).identity(Column.IDENTITY.ALWAYS))
+                        .save()
+        ));
+        statement.execute("INSERT INTO test_identity_widened (name) VALUES ('b')");
+
+        resultSet = statement.executeQuery("SELECT format_type(atttypid, atttypmod), attidentity FROM pg_attribute "
+                + "WHERE attrelid = 'test_identity_widened'::regclass AND attname = 'id'");
+        assertTrue(resultSet.next());
+        assertEquals("bigint", resultSet.getString(1));
+        assertEquals("a", resultSet.getString(2));
+
+        resultSet = statement.executeQuery("SELECT COUNT(DISTINCT id) FROM test_identity_widened");
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testMovePartitionToTablespace() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("COPY (SELECT 1) TO PROGRAM 'mkdir -p /tmp/test_cold'");
+        statement.execute("CREATE TABLESPACE test_cold LOCATION '/tmp/test_cold'");
+
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_tiered")
+                        .addColumn("id", Column.TYPE.BIG_INTEGER, column -> column.autoIncrement(true))
+                        .addColumn("created", Column.TYPE.TIMESTAMP, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.RANGE, set -> set
+                                .keyColumn("created")
+                                .partitions(PartitionGenerator.every("test_tiered", RollingPartitions.PERIOD.DAY,
+                                        LocalDateTime.of(2026, 1, 1, 0, 0), LocalDateTime.of(2026, 1, 4, 0, 0))))
+                        .addIndex("test_tiered_created", Index.TYPE.DEFAULT, index -> index.columns("created"))
+                        .save()
+        ));
+
+        statement.execute("INSERT INTO test_tiered (created) SELECT '2026-01-01'::timestamp + i * interval '1 minute' FROM generate_series(0, 2999) i");
+
+        RollingPartitions rolling = new RollingPartitions.Builder("test_tiered", "created", RollingPartitions.PERIOD.DAY)
+                .premake(0)
+                .moveTo("test_cold", 1, new Backfill.Builder().chunkSize(500).build())
+                .build();
+
+        List<PartitionInfo> partitions = new PartitionMaintainer(database()).maintain(rolling, LocalDateTime.of(2026, 1, 3, 12, 0));
+        assertEquals(Arrays.asList("test_cold", null, null),
+                partitions.stream().map(PartitionInfo::getTablespace).collect(Collectors.toList()));
+
+        ResultSet resultSet = statement.executeQuery(
+                "SELECT string_agg(COALESCE(t.spcname, '-'), ',' ORDER BY c.relname) FROM pg_index i "
+              + "JOIN pg_class c ON c.oid = i.indexrelid LEFT JOIN pg_tablespace t ON t.oid = c.reltablespace "
+              + "WHERE i.indrelid = 'test_tiered_p20260101'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals("test_cold", resultSet.getString(1));
+
+        resultSet = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT id) FROM test_tiered");
+        assertTrue(resultSet.next());
+        assertEquals(3000, resultSet.getInt(1));
+        assertEquals(3000, resultSet.getInt(2));
+
+        statement.execute("INSERT INTO test_tiered (created) VALUES ('2026-01-01 12:00:00')");
+        assertNull(new PartitionMaintainer(database()).move("test_tiered", "test_tiered_p20260101", "test_cold", "created", null));
+
+        statement.close();
+        connection.close();
+    }
+
+    private void rangePartitions(PartitionSet.Builder set) {
+        set.keyColumn("id");
+        for (int i = 0; i < 2; i++) {
+            set.partition(new Partition.Builder()
+                    .setPartitionName("test_prevalidated_bounds_" + i)
+                    .setPartitionSpec(PartitionSpec.of(new String[] { String.valueOf(i * 100) }, new String[] { String.valueOf((i + 1) * 100) }))
+                    .build());
+        }
+    }
+
+    @Test
+    public void testRollingPartitions() throws ClassNotFoundException, SQLException {
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> migration.table("test_rolling")
+                        .addColumn("created", Column.TYPE.TIMESTAMP, column -> column.notNull(true))
+                        .addPartitions(PartitionSet.TYPE.RANGE, set -> set
+                                .keyColumn("created")
+                                .partition(new Partition.Builder()
+                                        .setPartitionName("test_rolling_p20260109")
+                                        .setPartitionSpec(PartitionSpec.of(new String[] { "'2026-01-09'" }, new String[] { "'2026-01-10'" }))
+                                        .build()))
+                        .save()
+        ));
+
+        try {
+            new RollingPartitions.Builder("test_rolling", "created", RollingPartitions.PERIOD.DAY)
+                    .retain(1)
+                    .build();
+            fail("Retention without an expiry should be refused");
+        } catch (InvalidSpecException exception) {
+            assertTrue(exception.getMessage(), exception.getMessage().contains("expiry"));
+        }
+
+        RollingPartitions rolling = new RollingPartitions.Builder("test_rolling", "created", RollingPartitions.PERIOD.DAY)
+                .premake(2)
+                .retain(1)
+                .expiry(RollingPartitions.EXPIRY.DROP)
+                .build();
+        PartitionMaintainer maintainer = new PartitionMaintainer(database());
+
+        // Named like an expired partition, but not detached by the maintainer
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE test_rolling_p20260101 (id INTEGER)");
+
+        List<PartitionInfo> partitions = maintainer.maintain(rolling, LocalDateTime.of(2026, 1, 10, 12, 0));
+        assertEquals(Arrays.asList("test_rolling_p20260109", "test_rolling_p20260110", "test_rolling_p20260111", "test_rolling_p20260112"),
+                partitions.stream().map(PartitionInfo::getPartitionName).collect(Collectors.toList()));
+
+        // Idempotent
+        assertEquals(4, maintainer.maintain(rolling, LocalDateTime.of(2026, 1, 10, 18, 0)).size());
+
+        statement.execute("INSERT INTO test_rolling (created) VALUES ('2026-01-12 23:59:59')");
+
+        partitions = maintainer.maintain(rolling, LocalDateTime.of(2026, 1, 12, 0, 0));
+        assertEquals(Arrays.asList("test_rolling_p20260111", "test_rolling_p20260112", "test_rolling_p20260113", "test_rolling_p20260114"),
+                partitions.stream().map(PartitionInfo::getPartitionName).collect(Collectors.toList()));
+        partitions.forEach(p -> assertEquals(PartitionInfo.STATE.ATTACHED, p.getState()));
+
+        ResultSet resultSet = statement.executeQuery("SELECT to_regclass('test_rolling_p20260110') IS NULL");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+
+        resultSet = statement.executeQuery("SELECT to_regclass('test_rolling_p20260101') IS NOT NULL");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+
+        try {
+            database().retirePartition("test_rolling_p20260101", null);
+            fail("Tables, not detached by the maintainer, should be refused");
+        } catch (InvalidSpecException exception) {
+            assertTrue(exception.getMessage(), exception.getMessage().contains("not detached"));
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testOnlineChangeTypeCarriesOverDependencies() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE test_shadow_parent (id INTEGER PRIMARY KEY)");
+        statement.execute("CREATE TABLE test_shadow (id SERIAL PRIMARY KEY, parent_id INTEGER REFERENCES test_shadow_parent (id), "
+                + "amount INTEGER NOT NULL DEFAULT 5 CHECK (amount > 0))");
+        statement.execute("CREATE INDEX test_shadow_amount ON test_shadow (parent_id, amount)");
+        statement.execute("INSERT INTO test_shadow_parent VALUES (1)");
+        statement.execute("INSERT INTO test_shadow (parent_id, amount) VALUES (1, 1), (1, 2), (NULL, 3)");
+        // Left over by an interrupted run
+        statement.execute("ALTER TABLE test_shadow ADD COLUMN amount_shadow BIGINT");
+
+        Migrator migrator = getMigrator();
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-1",
+                    migration -> {
+                        migration.table("test_shadow")
+                                .changeColumn("amount", column -> column.type(Column.TYPE.BIG_INTEGER).strategy(Column.STRATEGY.ONLINE))
+                                .save();
+                    }
+            ));
+            fail("Online type change should be refused in a transactional script");
+        } catch (CouldNotProcessException e) {
+            assertTrue(causedBy(e, InvalidSpecException.class));
+        }
+
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-1",
+                    false,
+                    migration -> {
+                        migration.table("test_shadow_parent")
+                                .changeColumn("id", column -> column.type(Column.TYPE.BIG_INTEGER).strategy(Column.STRATEGY.ONLINE))
+                                .save();
+                    }
+            ));
+            fail("Column, referenced by a foreign key, should be refused");
+        } catch (CouldNotProcessException e) {
+            assertTrue(causedBy(e, InvalidSpecException.class));
+        }
+
+        // The interrupted script is recorded
+        ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM migration_resume WHERE marker_id = 'script:migration-1'");
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                false,
+                migration -> {
+                    migration.table("test_shadow")
+                            .changeColumn("id", column -> column.type(Column.TYPE.BIG_INTEGER).strategy(Column.STRATEGY.ONLINE))
+                            .changeColumn("parent_id", column -> column.type(Column.TYPE.BIG_INTEGER).strategy(Column.STRATEGY.ONLINE))
+                            .changeColumn("amount", column -> column.type(Column.TYPE.BIG_INTEGER).strategy(Column.STRATEGY.ONLINE))
+                            .save();
+                }
+        ));
+
+        resultSet = statement.executeQuery("SELECT count(*) FROM migration_resume WHERE marker_id = 'script:migration-1'");
+        assertTrue(resultSet.next());
+        assertEquals(0, resultSet.getInt(1));
+
+        resultSet = statement.executeQuery("SELECT string_agg(attname || ':' || format_type(atttypid, atttypmod) || ':' || attnotnull, ',' ORDER BY attname) "
+                + "FROM pg_attribute WHERE attrelid = 'test_shadow'::regclass AND attnum > 0 AND NOT attisdropped");
+        assertTrue(resultSet.next());
+        assertEquals("amount:bigint:true,id:bigint:true,parent_id:bigint:false", resultSet.getString(1));
+
+        // Keys, checks and foreign keys are back and validated
+        resultSet = statement.executeQuery("SELECT string_agg(conname || ':' || contype || ':' || convalidated, ',' ORDER BY conname) "
+                + "FROM pg_constraint WHERE conrelid = 'test_shadow'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals("test_shadow_amount_check:c:true,test_shadow_parent_id_fkey:f:true,test_shadow_pkey:p:true", resultSet.getString(1));
+
+        resultSet = statement.executeQuery("SELECT string_agg(c.relname || ':' || i.indisvalid, ',' ORDER BY c.relname) "
+                + "FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE i.indrelid = 'test_shadow'::regclass");
+        assertTrue(resultSet.next());
+        assertEquals("test_shadow_amount:true,test_shadow_pkey:true", resultSet.getString(1));
+
+        // The serial sequence and the default survive
+        statement.execute("INSERT INTO test_shadow DEFAULT VALUES");
+        resultSet = statement.executeQuery("SELECT id, amount FROM test_shadow WHERE parent_id IS NULL ORDER BY id DESC LIMIT 1");
+        assertTrue(resultSet.next());
+        assertEquals(4L, resultSet.getLong(1));
+        assertEquals(5L, resultSet.getLong(2));
+
+        try {
+            statement.execute("INSERT INTO test_shadow (parent_id) VALUES (2)");
+            fail("Foreign key was lost");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        try {
+            statement.execute("INSERT INTO test_shadow (id) VALUES (1)");
+            fail("Primary key was lost");
+        } catch (SQLException e) {
+            assertTrue(isConstraintViolationException(e));
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testOnlineChangeTypeDefersViolatedChecks() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE test_shadow_check (id INTEGER PRIMARY KEY, amount NUMERIC(10, 2) CHECK (amount < 2))");
+        statement.execute("INSERT INTO test_shadow_check VALUES (1, 1.5), (2, 0.25)");
+
+        // 1.5 rounds to 2, which violates the check
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                false,
+                migration -> migration.table("test_shadow_check")
+                        .changeColumn("amount", column -> column.type(Column.TYPE.INTEGER).strategy(Column.STRATEGY.ONLINE))
+                        .save()
+        ));
+
+        ResultSet resultSet = statement.executeQuery("SELECT convalidated FROM pg_constraint "
+                + "WHERE conrelid = 'test_shadow_check'::regclass AND contype = 'c'");
+        assertTrue(resultSet.next());
+        assertFalse(resultSet.getBoolean(1));
+
+        // A later run finds the check in the catalog
+        statement.execute("UPDATE test_shadow_check SET amount = 1 WHERE id = 1");
+        getMigrator().validateDeferred();
+
+        resultSet = statement.executeQuery("SELECT convalidated FROM pg_constraint "
+                + "WHERE conrelid = 'test_shadow_check'::regclass AND contype = 'c'");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testOnlineSetNotNull() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE test_online_not_null (id INTEGER PRIMARY KEY, amount INTEGER)");
+        statement.execute("INSERT INTO test_online_not_null VALUES (1, 1), (2, NULL)");
+
+        Migrator migrator = getMigrator();
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-1",
+                    migration -> {
+                        migration.table("test_online_not_null")
+                                .changeColumn("amount", column -> column.notNull(true).strategy(Column.STRATEGY.ONLINE))
+                                .save();
+                    }
+            ));
+            fail("Online SET NOT NULL should be refused in a transactional script");
+        } catch (CouldNotProcessException e) {
+            assertTrue(causedBy(e, InvalidSpecException.class));
+        }
+
+        try {
+            migrator.migrate(new SimpleMigrationScript(
+                    "migration-1",
+                    false,
+                    migration -> {
+                        migration.table("test_online_not_null")
+                                .changeColumn("amount", column -> column.notNull(true).strategy(Column.STRATEGY.ONLINE))
+                                .save();
+                    }
+            ));
+            fail("Validation should fail on NULL rows");
+        } catch (CouldNotProcessException e) {
+            // expected
+        }
+
+        // The failed check is dropped again
+        ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM pg_constraint WHERE conrelid = 'test_online_not_null'::regclass AND contype = 'c'");
+        assertTrue(resultSet.next());
+        assertEquals(0, resultSet.getInt(1));
+
+        statement.execute("UPDATE test_online_not_null SET amount = 2 WHERE id = 2");
+        migrator.migrate(new SimpleMigrationScript(
+                "migration-1",
+                false,
+                migration -> {
+                    migration.table("test_online_not_null")
+                            .changeColumn("amount", column -> column.notNull(true).strategy(Column.STRATEGY.ONLINE))
+                            .save();
+                }
+        ));
+
+        resultSet = statement.executeQuery("SELECT attnotnull FROM pg_attribute WHERE attrelid = 'test_online_not_null'::regclass AND attname = 'amount'");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+
+        resultSet = statement.executeQuery("SELECT count(*) FROM pg_constraint WHERE conrelid = 'test_online_not_null'::regclass AND contype = 'c'");
+        assertTrue(resultSet.next());
+        assertEquals(0, resultSet.getInt(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testConcurrentPrimaryKey() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE test_concurrent_key (id INTEGER NOT NULL, name VARCHAR(10))");
+        statement.execute("INSERT INTO test_concurrent_key VALUES (1, 'a'), (1, 'b')");
+
+        SimpleMigrationScript addKey = new SimpleMigrationScript(
+                "migration-1",
+                false,
+                migration -> {
+                    migration.table("test_concurrent_key")
+                            .addConstraint("test_concurrent_key_pkey", Constraint.TYPE.PRIMARY_KEY, cb -> cb
+                                    .columns("id")
+                                    .concurrently(true))
+                            .save();
+                }
+        );
+
+        Migrator migrator = getMigrator();
+        try {
+            migrator.migrate(addKey);
+            fail("Duplicates should fail the concurrent build");
+        } catch (CouldNotProcessException e) {
+            // expected
+        }
+
+        // The failed build leaves an INVALID index behind
+        ResultSet resultSet = statement.executeQuery("SELECT i.indisvalid FROM pg_index i "
+                + "WHERE i.indexrelid = to_regclass('test_concurrent_key_pkey')");
+        assertTrue(resultSet.next());
+        assertFalse(resultSet.getBoolean(1));
+
+        statement.execute("UPDATE test_concurrent_key SET id = 2 WHERE name = 'b'");
+        migrator.migrate(addKey);
+
+        resultSet = statement.executeQuery("SELECT i.indisvalid, i.indisprimary, c.contype FROM pg_index i "
+                + "JOIN pg_constraint c ON c.conindid = i.indexrelid "
+                + "WHERE i.indexrelid = to_regclass('test_concurrent_key_pkey')");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+        assertTrue(resultSet.getBoolean(2));
+        assertEquals("p", resultSet.getString(3));
+
+        try {
+            statement.execute("INSERT INTO test_concurrent_key VALUES (1, 'c')");
+            fail("Primary key is missing");
+        } catch (SQLException e) {
+            assertTrue(isConstraintViolationException(e));
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    @Override
+    @Test
+    public void testForeignKeyValidatedAfterCommit() throws Exception {
+        super.testForeignKeyValidatedAfterCommit();
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("SELECT convalidated FROM pg_constraint WHERE conname = 'some_validated_fk'");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Override
+    @Test
+    public void testForeignKeyValidationFailsOnOrphans() throws Exception {
+        super.testForeignKeyValidationFailsOnOrphans();
+
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+
+        // Added NOT VALID and committed with the script, the validation failed afterwards
+        ResultSet resultSet = statement.executeQuery("SELECT convalidated FROM pg_constraint WHERE conname = 'some_orphan_fk'");
+        assertTrue(resultSet.next());
+        assertFalse(resultSet.getBoolean(1));
+
+        statement.execute("INSERT INTO some_orphan_table (id) VALUES (1)");
+        getMigrator().validateDeferred();
+
+        resultSet = statement.executeQuery("SELECT convalidated FROM pg_constraint WHERE conname = 'some_orphan_fk'");
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testPartitionedForeignKeyValidatedPerPartition() throws ClassNotFoundException, SQLException {
+        Connection connection = getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE test_fk_parent (id INTEGER PRIMARY KEY)");
+        statement.execute("CREATE TABLE test_fk_child (id INTEGER, parent_id INTEGER) PARTITION BY RANGE (id)");
+        statement.execute("CREATE TABLE test_fk_child_a PARTITION OF test_fk_child FOR VALUES FROM (0) TO (10)");
+        statement.execute("CREATE TABLE test_fk_child_b PARTITION OF test_fk_child FOR VALUES FROM (10) TO (20)");
+        statement.execute("INSERT INTO test_fk_parent VALUES (1)");
+        statement.execute("INSERT INTO test_fk_child VALUES (1, 1), (11, 1)");
+
+        getMigrator().migrate(new SimpleMigrationScript(
+                "migration-1",
+                migration -> {
+                    migration.table("test_fk_child")
+                            .addConstraint("test_fk_child_parent_fk", Constraint.TYPE.FOREIGN_KEY, cb -> cb
+                                    .columns("parent_id")
+                                    .foreignKey(fk -> fk
+                                            .foreignTable("test_fk_parent")
+                                            .foreignKeys("id")
+                                            .validation(ForeignKey.VALIDATION.SAME_RUN)))
+                            .save();
+                }
+        ));
+
+        // The validated keys of the partitions are attached to the key of the partitioned table
+        ResultSet resultSet = statement.executeQuery("SELECT string_agg(c.conrelid::regclass::text || ':' || c.convalidated "
+                + "|| ':' || (c.conparentid <> 0), ',' ORDER BY 1) FROM pg_constraint c WHERE c.conname = 'test_fk_child_parent_fk'");
+        assertTrue(resultSet.next());
+        assertEquals("test_fk_child:true:false,test_fk_child_a:true:true,test_fk_child_b:true:true", resultSet.getString(1));
+
+        try {
+            statement.execute("INSERT INTO test_fk_child VALUES (12, 2)");
+            fail("Foreign key is missing");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        statement.close();
+        connection.close();
+    }
+
+    /**
+     * The column is only hidden, but the statement waits for ACCESS EXCLUSIVE.
+     */
+    @Override
+    protected MigrationPlan.IMPACT dropColumnImpact() {
+        return MigrationPlan.IMPACT.UNKNOWN;
+    }
+
+    @Override
+    protected boolean supportsForeignKeyNotValid() {
+        return true;
+    }
+
+    @Override
+    protected boolean hasStatistics(Statement statement, String tableName, String columnName) throws SQLException {
+
+        try (PreparedStatement ps = statement.getConnection().prepareStatement(
+                "SELECT COUNT(*) FROM pg_stats WHERE tablename = ? AND attname = ?")) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, columnName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private boolean causedBy(Throwable throwable, Class<? extends Throwable> type) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void attachedPartitions(PartitionSet.Builder set) {
+        set.keyColumn("id");
+        for (int i = 0; i < 2; i++) {
+            set.partition(new Partition.Builder()
+                    .setPartitionName("test_partitions_attached_" + i)
+                    .setPartitionSpec(PartitionSpec.of(i))
+                    .build());
+        }
+    }
+
+    private String readSetting(Connection connection, String name) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT current_setting('" + name + "')")) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
 }
@@ -8,9 +8,15 @@ import nl.myndocs.database.migrator.definition.Migration;
 public class SimpleMigrationScript implements MigrationScript {
     private final String migrationId;
     private final Consumer<Migration> migrationConsumer;
+    private final boolean transactional;
 
     public SimpleMigrationScript(String migrationId, Consumer<Migration> migrationConsumer) {
+        this(migrationId, true, migrationConsumer);
+    }
+
+    public SimpleMigrationScript(String migrationId, boolean transactional, Consumer<Migration> migrationConsumer) {
         this.migrationId = migrationId;
+        this.transactional = transactional;
         this.migrationConsumer = migrationConsumer;
     }
 
@@ -24,6 +30,11 @@ public class SimpleMigrationScript implements MigrationScript {
         migrationConsumer.accept(migration);
     }
 
+    @Override
+    public boolean isTransactional() {
+        return transactional;
+    }
+
     @Override
     public String author() {
         return "DEFAULT";